@@ -0,0 +1,111 @@
+package com.anguel.dissertation.ml;
+
+import com.anguel.dissertation.ml.smile.data.DataFrame;
+import com.anguel.dissertation.ml.smile.data.measure.NominalScale;
+import com.anguel.dissertation.ml.smile.data.type.DataTypes;
+import com.anguel.dissertation.ml.smile.data.type.StructField;
+import com.anguel.dissertation.ml.smile.data.vector.ByteVector;
+import com.anguel.dissertation.ml.smile.data.vector.DoubleVector;
+import com.anguel.dissertation.persistence.entity.sample.TrainingSample;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// builds the training data frame straight from the training samples, one row per app used in a session.
+// the columns are filled as primitive arrays, no arff file is written and parsed back
+public class SessionFrameBuilder {
+    // same schema as the arff file that was used before, so the formula and stats code stay the same
+    private static final NominalScale anxiousScale = new NominalScale("false", "true");
+    private static final StructField sessionLengthField = new StructField("sessionLength", DataTypes.DoubleType);
+    private static final StructField totalTimeInForegroundField = new StructField("totalTimeInForeground", DataTypes.DoubleType);
+    private static final StructField anxiousField = new StructField("anxious", anxiousScale.type(), anxiousScale);
+
+    private double[] sessionLength;
+    private double[] totalTimeInForeground;
+    private byte[] anxious;
+    private int size = 0;
+
+    public SessionFrameBuilder() {
+        this(1024);
+    }
+
+    public SessionFrameBuilder(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        sessionLength = new double[capacity];
+        totalTimeInForeground = new double[capacity];
+        anxious = new byte[capacity];
+    }
+
+    // adds a precomputed row
+    public SessionFrameBuilder add(TrainingSample sample) {
+        add(sample.getSessionLength(), sample.getTotalTimeInForeground(), (byte) (sample.isAnxious() ? 1 : 0));
+        return this;
+    }
+
+    public SessionFrameBuilder addSamples(Iterable<TrainingSample> samples) {
+        for (TrainingSample sample : samples) {
+            add(sample);
+        }
+        return this;
+    }
+
+    private void add(double length, double foreground, byte label) {
+        if (size == anxious.length) {
+            int capacity = size + (size >> 1);
+            sessionLength = Arrays.copyOf(sessionLength, capacity);
+            totalTimeInForeground = Arrays.copyOf(totalTimeInForeground, capacity);
+            anxious = Arrays.copyOf(anxious, capacity);
+        }
+        sessionLength[size] = length;
+        totalTimeInForeground[size] = foreground;
+        anxious[size] = label;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // shuffles the rows like the arff reader did, since the train/test split takes the first 70% of rows
+    public DataFrame build() {
+        return build(permutation(new Random()));
+    }
+
+    // the order of rows of a shuffle, row i of the shuffled frame is the added row rows[i]
+    public int[] permutation(Random random) {
+        int[] rows = new int[size];
+        for (int i = 0; i < size; i++) {
+            rows[i] = i;
+        }
+
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = rows[i];
+            rows[i] = rows[j];
+            rows[j] = t;
+        }
+        return rows;
+    }
+
+    // builds the frame with the added rows in the given order
+    public DataFrame build(int[] rows) {
+        int n = rows.length;
+        double[] x1 = new double[n];
+        double[] x2 = new double[n];
+        byte[] y = new byte[n];
+        for (int i = 0; i < n; i++) {
+            int r = rows[i];
+            x1[i] = sessionLength[r];
+            x2[i] = totalTimeInForeground[r];
+            y[i] = anxious[r];
+        }
+
+        return DataFrame.of(
+                DoubleVector.of(sessionLengthField, x1),
+                DoubleVector.of(totalTimeInForegroundField, x2),
+                ByteVector.of(anxiousField, y)
+        );
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2010-2020 Haifeng Li. All rights reserved.
+ *
+ * Smile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Smile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Smile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.anguel.dissertation.ml.smile.base.cart;
+
+/**
+ * The best split of a node found so far, in primitive fields. A tree
+ * reuses one instance for the search of every node, and only the best
+ * split of a node is turned into a {@link Split} object.
+ *
+ * @author Haifeng Li
+ */
+public class BestSplit {
+    /**
+     * The split feature, or -1 if no split has been found.
+     */
+    int feature = -1;
+    /**
+     * The split value. It is the level of a nominal feature.
+     */
+    double value;
+    /**
+     * Reduction in splitting criterion.
+     */
+    double score;
+    /**
+     * The number of samples in true branch.
+     */
+    int trueCount;
+    /**
+     * The number of samples in false branch.
+     */
+    int falseCount;
+
+    /**
+     * Forgets the split found so far.
+     */
+    void reset() {
+        feature = -1;
+        value = 0.0;
+        score = 0.0;
+        trueCount = 0;
+        falseCount = 0;
+    }
+
+    /**
+     * Keeps the split if it has a higher score than the split found so far.
+     *
+     * @param feature    the index of feature column.
+     * @param value      the split value.
+     * @param score      the split score.
+     * @param trueCount  the number of samples in true branch child.
+     * @param falseCount the number of samples false branch child.
+     */
+    public void offer(int feature, double value, double score, int trueCount, int falseCount) {
+        if (score > this.score) {
+            this.feature = feature;
+            this.value = value;
+            this.score = score;
+            this.trueCount = trueCount;
+            this.falseCount = falseCount;
+        }
+    }
+
+    /**
+     * Returns the score of the split found so far.
+     *
+     * @return the score of the split found so far, 0 if none.
+     */
+    public double score() {
+        return score;
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2010-2020 Haifeng Li. All rights reserved.
+ *
+ * Smile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Smile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Smile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.anguel.dissertation.ml.smile.base.cart;
+
+import com.anguel.dissertation.ml.smile.data.DataFrame;
+import com.anguel.dissertation.ml.smile.data.measure.NominalScale;
+import com.anguel.dissertation.ml.smile.data.type.StructField;
+import com.anguel.dissertation.ml.smile.data.type.StructType;
+import com.anguel.dissertation.ml.smile.data.vector.ByteVector;
+
+import java.util.Arrays;
+
+/**
+ * The numeric columns of training data quantized into at most 255 bins.
+ * The bins are built once before any tree is grown. A tree then finds
+ * the splits of a node from the class histogram of bins rather than
+ * scanning the samples in the order of values, so that the columns
+ * don't need to be sorted and the cost of a node is proportional to
+ * the number of bins.
+ * <p>
+ * The bin boundaries are the midpoints between consecutive distinct
+ * values. If a column has more distinct values than bins, the bins
+ * are chosen so that they hold about the same number of samples.
+ * A value x is in bin b if it is greater than the boundary b-1 and
+ * not greater than the boundary b. Therefore, a split between bin b
+ * and b+1 is the same as the test {@code x <= cut(j, b)} on the
+ * original values.
+ *
+ * @author Haifeng Li
+ */
+public class Binning {
+    /**
+     * The maximum number of bins of a column.
+     */
+    public static final int MAX_BINS = 255;
+
+    /**
+     * The bin of each sample, as an unsigned byte. Null for nominal columns.
+     */
+    private final ByteVector[] bins;
+    /**
+     * The upper boundaries of bins, except the last bin. Null for nominal columns.
+     */
+    private final double[][] cuts;
+    /**
+     * The offset of the first bin of a column in a histogram of all columns.
+     */
+    private final int[] offset;
+    /**
+     * The total number of bins of all columns.
+     */
+    private final int size;
+
+    /**
+     * Constructor.
+     *
+     * @param x       the training data.
+     * @param maxBins the maximum number of bins of a column.
+     */
+    public Binning(DataFrame x, int maxBins) {
+        if (maxBins < 2 || maxBins > MAX_BINS) {
+            throw new IllegalArgumentException("Invalid maximum number of bins: " + maxBins);
+        }
+
+        int n = x.size();
+        int p = x.ncol();
+        StructType schema = x.schema();
+
+        bins = new ByteVector[p];
+        cuts = new double[p][];
+        offset = new int[p];
+
+        int total = 0;
+        double[] a = new double[n];
+        double[] sorted = new double[n];
+        for (int j = 0; j < p; j++) {
+            StructField field = schema.field(j);
+            offset[j] = total;
+            if (field.measure instanceof NominalScale) {
+                continue;
+            }
+
+            x.column(j).toDoubleArray(a);
+            System.arraycopy(a, 0, sorted, 0, n);
+            Arrays.sort(sorted);
+            double[] cut = cuts(sorted, maxBins);
+
+            byte[] code = new byte[n];
+            for (int i = 0; i < n; i++) {
+                code[i] = (byte) bin(cut, a[i]);
+            }
+
+            cuts[j] = cut;
+            bins[j] = ByteVector.of(field.name, code);
+            total += cut.length + 1;
+        }
+
+        size = total;
+    }
+
+    /**
+     * Returns the bin boundaries of sorted values.
+     */
+    private static double[] cuts(double[] sorted, int maxBins) {
+        // NaN is sorted to the end
+        int n = sorted.length;
+        while (n > 0 && Double.isNaN(sorted[n - 1])) n--;
+
+        double[] cut = new double[maxBins - 1];
+        int m = 0;
+        for (int q = 1; q < maxBins && m < cut.length; q++) {
+            // the last sample of the q-th quantile, moved up to the end of its run of equal values
+            int i = (int) ((long) n * q / maxBins) - 1;
+            if (i < 0) continue;
+            double v = sorted[i];
+            int next = Arrays.binarySearch(sorted, i, n, Math.nextUp(v));
+            if (next < 0) next = -next - 1;
+            if (next >= n) break;
+
+            double c = (v + sorted[next]) / 2;
+            if (m == 0 || c > cut[m - 1]) {
+                cut[m++] = c;
+            }
+        }
+
+        return Arrays.copyOf(cut, m);
+    }
+
+    /**
+     * Returns the bin of a value, i.e. the number of boundaries less than the value.
+     */
+    private static int bin(double[] cut, double x) {
+        // NaN fails every test x <= cut
+        if (Double.isNaN(x)) return cut.length;
+
+        int lo = 0, hi = cut.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cut[mid] < x) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Returns true if the column is quantized.
+     *
+     * @param j the column index.
+     * @return true if the column is quantized.
+     */
+    public boolean isBinned(int j) {
+        return bins[j] != null;
+    }
+
+    /**
+     * Returns the bins of a column.
+     *
+     * @param j the column index.
+     * @return the bins of samples as unsigned bytes, or null if the column is nominal.
+     */
+    public ByteVector column(int j) {
+        return bins[j];
+    }
+
+    /**
+     * Returns the number of bins of a column.
+     *
+     * @param j the column index.
+     * @return the number of bins, or 0 if the column is nominal.
+     */
+    public int bins(int j) {
+        return cuts[j] == null ? 0 : cuts[j].length + 1;
+    }
+
+    /**
+     * Returns the split value between bin b and b+1 of a column.
+     *
+     * @param j the column index.
+     * @param b the bin index.
+     * @return the split value.
+     */
+    public double cut(int j, int b) {
+        return cuts[j][b];
+    }
+
+    /**
+     * Returns the offset of the first bin of a column in a histogram of all columns.
+     *
+     * @param j the column index.
+     * @return the offset of the first bin of the column.
+     */
+    public int offset(int j) {
+        return offset[j];
+    }
+
+    /**
+     * Returns the total number of bins of all columns.
+     *
+     * @return the total number of bins.
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -20,20 +20,29 @@ package com.anguel.dissertation.ml.smile.base.cart;
 import com.anguel.dissertation.ml.smile.data.DataFrame;
 import com.anguel.dissertation.ml.smile.data.Tuple;
 import com.anguel.dissertation.ml.smile.data.formula.Formula;
-import com.anguel.dissertation.ml.smile.data.measure.Measure;
 import com.anguel.dissertation.ml.smile.data.measure.NominalScale;
 import com.anguel.dissertation.ml.smile.data.type.StructField;
 import com.anguel.dissertation.ml.smile.data.type.StructType;
+import com.anguel.dissertation.ml.smile.data.vector.BaseVector;
 import com.anguel.dissertation.ml.smile.feature.SHAP;
 import com.anguel.dissertation.ml.smile.math.MathEx;
-import com.anguel.dissertation.ml.smile.sort.QuickSort;
+import com.anguel.dissertation.ml.smile.math.Random;
+import com.anguel.dissertation.ml.smile.sort.RadixSort;
 
 import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Objects;
-import java.util.Optional;
 import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.IntStream;
 
 /**
@@ -44,6 +53,17 @@ import java.util.stream.IntStream;
 public abstract class CART implements SHAP<Tuple>, Serializable {
     private static final long serialVersionUID = 2L;
 
+    /**
+     * The column size from which radix sort is faster than merge sort.
+     */
+    private static final int RADIX_SORT_SIZE = 1024;
+
+    /**
+     * The number of values of numeric columns from which the columns
+     * are sorted concurrently.
+     */
+    private static final long PARALLEL_SORT_SIZE = 1 << 16;
+
     /**
      * The model formula.
      */
@@ -123,6 +143,77 @@ public abstract class CART implements SHAP<Tuple>, Serializable {
      */
     private transient int[] buffer;
 
+    /**
+     * The shared index of training values that {@link #order} is taken from.
+     */
+    private transient SortedIndex sorted;
+
+    /**
+     * The workspace of {@link #order} and {@link #buffer}, which is
+     * returned to the shared index when the tree is built.
+     */
+    private transient SortedIndex.Workspace workspace;
+
+    /**
+     * The working mask of the samples going to the true branch of a split.
+     */
+    private transient boolean[] mask;
+
+    /**
+     * The working buffer of the columns to search for a split.
+     */
+    private transient int[] columns;
+
+    /**
+     * The best split of the node being searched.
+     */
+    private transient BestSplit best;
+
+    /**
+     * The numeric columns quantized into bins, if the splits are
+     * found from histograms.
+     */
+    protected transient Binning bins;
+
+    /**
+     * The histogram of the node being searched, in the binned mode.
+     */
+    protected transient int[] histogram;
+
+    /**
+     * The histograms of nodes that won't be split, to be reused.
+     */
+    private transient ArrayDeque<int[]> histograms;
+
+    /**
+     * The number of histograms kept by the splits waiting in the queue.
+     */
+    private transient int queuedHistograms;
+
+    /**
+     * The maximum number of histograms kept by the splits waiting in the
+     * queue. The children of other splits compute both histograms.
+     */
+    private static final int MAX_QUEUED_HISTOGRAMS = 64;
+
+    /**
+     * If true, the columns are not sorted and a numeric column is split
+     * at a random threshold between its minimum and maximum in the node,
+     * as in extremely randomized trees.
+     */
+    protected transient boolean randomized;
+
+    /**
+     * The maximum depth of the tree, or 0 if it is not calculated yet.
+     */
+    private transient int depth;
+
+    /**
+     * The random number generator of this tree. If null, the shared
+     * thread local generator of {@link MathEx} is used.
+     */
+    protected transient Random rng;
+
     /**
      * Private constructor for deserialization.
      */
@@ -130,6 +221,25 @@ public abstract class CART implements SHAP<Tuple>, Serializable {
 
     }
 
+    /**
+     * Constructor of a trained tree, e.g. decoded from a model file.
+     *
+     * @param schema     the schema of explanatory variables.
+     * @param response   the metadata of response variable.
+     * @param root       the root node.
+     * @param importance the variable importance.
+     */
+    protected CART(StructType schema, StructField response, Node root, double[] importance) {
+        if (importance.length != schema.length()) {
+            throw new IllegalArgumentException(String.format("Invalid importance vector size: %d, expected: %d", importance.length, schema.length()));
+        }
+
+        this.schema = schema;
+        this.response = response;
+        this.root = root;
+        this.importance = importance;
+    }
+
     /**
      * Constructor.
      *
@@ -147,7 +257,102 @@ public abstract class CART implements SHAP<Tuple>, Serializable {
      *                 that only numeric attributes need be sorted.
      */
     public CART(DataFrame x, StructField y, int maxDepth, int maxNodes, int nodeSize, int mtry, int[] samples, int[][] order) {
+        this(x, y, maxDepth, maxNodes, nodeSize, mtry, samples, order, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param x        the data frame of the explanatory variable.
+     * @param y        the response variables.
+     * @param maxDepth the maximum depth of the tree.
+     * @param maxNodes the maximum number of leaf nodes in the tree.
+     * @param nodeSize the minimum size of leaf nodes.
+     * @param mtry     the number of input variables to pick to split on at each
+     *                 node. It seems that sqrt(p) give generally good performance,
+     *                 where p is the number of variables.
+     * @param samples  the sample set of instances for stochastic learning.
+     *                 samples[i] is the number of sampling for instance i.
+     * @param order    the index of training values in ascending order. Note
+     *                 that only numeric attributes need be sorted.
+     * @param rng      the random number generator of this tree. If null,
+     *                 the thread local generator of MathEx is used.
+     */
+    public CART(DataFrame x, StructField y, int maxDepth, int maxNodes, int nodeSize, int mtry, int[] samples, int[][] order, Random rng) {
+        this(x, y, maxDepth, maxNodes, nodeSize, mtry, samples, order == null ? null : new SortedIndex(order, x.size()), rng);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param x        the data frame of the explanatory variable.
+     * @param y        the response variables.
+     * @param maxDepth the maximum depth of the tree.
+     * @param maxNodes the maximum number of leaf nodes in the tree.
+     * @param nodeSize the minimum size of leaf nodes.
+     * @param mtry     the number of input variables to pick to split on at each
+     *                 node. It seems that sqrt(p) give generally good performance,
+     *                 where p is the number of variables.
+     * @param samples  the sample set of instances for stochastic learning.
+     *                 samples[i] is the number of sampling for instance i.
+     * @param order    the shared index of training values in ascending order.
+     *                 If null, the training values are sorted for this tree.
+     * @param rng      the random number generator of this tree. If null,
+     *                 the thread local generator of MathEx is used.
+     */
+    public CART(DataFrame x, StructField y, int maxDepth, int maxNodes, int nodeSize, int mtry, int[] samples, SortedIndex order, Random rng) {
+        this(x, y, maxDepth, maxNodes, nodeSize, mtry, samples, order, null, false, rng);
+    }
+
+    /**
+     * Constructor. The splits of numeric columns are found from the
+     * class histograms of their bins instead of the sorted values.
+     *
+     * @param x        the data frame of the explanatory variable.
+     * @param y        the response variables.
+     * @param maxDepth the maximum depth of the tree.
+     * @param maxNodes the maximum number of leaf nodes in the tree.
+     * @param nodeSize the minimum size of leaf nodes.
+     * @param mtry     the number of input variables to pick to split on at each
+     *                 node. It seems that sqrt(p) give generally good performance,
+     *                 where p is the number of variables.
+     * @param samples  the sample set of instances for stochastic learning.
+     *                 samples[i] is the number of sampling for instance i.
+     * @param bins     the numeric columns quantized into bins.
+     * @param rng      the random number generator of this tree. If null,
+     *                 the thread local generator of MathEx is used.
+     */
+    public CART(DataFrame x, StructField y, int maxDepth, int maxNodes, int nodeSize, int mtry, int[] samples, Binning bins, Random rng) {
+        this(x, y, maxDepth, maxNodes, nodeSize, mtry, samples, null, Objects.requireNonNull(bins), false, rng);
+    }
+
+    /**
+     * Constructor of an extremely randomized tree, which is trained on all
+     * instances. The columns are not sorted. A numeric column is split at a
+     * random threshold between its minimum and maximum in the node.
+     *
+     * @param x        the data frame of the explanatory variable.
+     * @param y        the response variables.
+     * @param maxDepth the maximum depth of the tree.
+     * @param maxNodes the maximum number of leaf nodes in the tree.
+     * @param nodeSize the minimum size of leaf nodes.
+     * @param mtry     the number of input variables to pick to split on at each
+     *                 node. It seems that sqrt(p) give generally good performance,
+     *                 where p is the number of variables.
+     * @param rng      the random number generator of this tree. If null,
+     *                 the thread local generator of MathEx is used.
+     */
+    public CART(DataFrame x, StructField y, int maxDepth, int maxNodes, int nodeSize, int mtry, Random rng) {
+        this(x, y, maxDepth, maxNodes, nodeSize, mtry, null, null, null, true, rng);
+    }
+
+    /**
+     * Constructor.
+     */
+    private CART(DataFrame x, StructField y, int maxDepth, int maxNodes, int nodeSize, int mtry, int[] samples, SortedIndex order, Binning bins, boolean randomized, Random rng) {
         this.x = x;
+        this.rng = rng;
+        this.randomized = randomized;
         this.response = y;
         this.schema = x.schema();
         this.importance = new double[x.ncol()];
@@ -175,30 +380,77 @@ public abstract class CART implements SHAP<Tuple>, Serializable {
             throw new IllegalArgumentException("Invalid minimum size of leaf nodes: " + nodeSize);
         }
 
-        IntStream idx;
         if (samples == null) {
-            this.samples = Collections.nCopies(n, 1).parallelStream().mapToInt(i -> i).toArray();
-            idx = IntStream.range(0, n);
+            this.samples = new int[n];
+            Arrays.fill(this.samples, 1);
+            this.index = new int[n];
+            for (int i = 0; i < n; i++) {
+                index[i] = i;
+            }
         } else {
             this.samples = samples;
-            idx = IntStream.range(0, samples.length).filter(i -> samples[i] > 0);
+            int m = 0;
+            for (int s : samples) {
+                if (s > 0) m++;
+            }
+            this.index = new int[m];
+            for (int i = 0, j = 0; i < n; i++) {
+                if (samples[i] > 0) index[j++] = i;
+            }
         }
-        this.index = idx.toArray();
-
-        buffer = new int[index.length];
 
-        if (order == null) {
+        if (bins != null || randomized) {
+            // no column is sorted, the numeric columns are searched through their bins or at random thresholds
+            this.bins = bins;
+            this.order = new int[p][];
+            this.buffer = new int[index.length];
+            this.mask = new boolean[n];
+        } else if (order == null) {
             this.order = order(x);
+            this.buffer = new int[index.length];
+            this.mask = new boolean[n];
         } else {
-            this.order = new int[order.length][];
-            for (int i = 0; i < order.length; i++) {
-                if (order[i] != null) {
-                    this.order[i] = Arrays.stream(order[i]).filter(o -> this.samples[o] > 0).toArray();
-                }
-            }
+            // the sampled values are copied into a pooled workspace instead of new arrays per tree
+            this.sorted = order;
+            this.workspace = order.acquire(this.samples);
+            this.order = workspace.order;
+            this.buffer = workspace.buffer;
+            this.mask = workspace.mask;
+        }
+
+        this.columns = new int[p];
+        this.best = new BestSplit();
+        if (bins != null) {
+            this.histograms = new ArrayDeque<>();
         }
     }
 
+    /**
+     * Copy constructor of a worker, which shares the training data, the
+     * samples and the index with the tree being trained, but has its own
+     * working buffers of split search.
+     *
+     * @param tree the tree being trained.
+     */
+    protected CART(CART tree) {
+        this.schema = tree.schema;
+        this.response = tree.response;
+        this.maxDepth = tree.maxDepth;
+        this.maxNodes = tree.maxNodes;
+        this.nodeSize = tree.nodeSize;
+        this.mtry = tree.mtry;
+        this.x = tree.x;
+        this.samples = tree.samples;
+        this.index = tree.index;
+        this.order = tree.order;
+        this.buffer = tree.buffer;
+        this.mask = tree.mask;
+        this.randomized = tree.randomized;
+        this.rng = tree.rng;
+        this.columns = new int[schema.length()];
+        this.best = new BestSplit();
+    }
+
     /**
      * Returns the number of nodes in the tree.
      *
@@ -220,26 +472,104 @@ public abstract class CART implements SHAP<Tuple>, Serializable {
 
     /**
      * Returns the index of ordered samples for each ordinal column.
+     * The columns are sorted concurrently on large data.
      *
      * @param x the predictors.
      * @return the index of ordered samples for each ordinal column.
      */
     public static int[][] order(DataFrame x) {
+        return order(x, 0);
+    }
+
+    /**
+     * Returns the index of ordered samples for each ordinal column.
+     * Long columns are sorted by radix sort and short ones by merge sort.
+     * If the data are large enough, the columns are sorted concurrently
+     * on a dedicated fork-join pool.
+     *
+     * @param x       the predictors.
+     * @param threads the number of threads. If it is not positive, the number
+     *                of available processors is used. 1 sorts the columns
+     *                sequentially in the calling thread.
+     * @return the index of ordered samples for each ordinal column.
+     */
+    public static int[][] order(DataFrame x, int threads) {
         int n = x.size();
         int p = x.ncol();
         StructType schema = x.schema();
 
-        double[] a = new double[n];
         int[][] order = new int[p][];
+        int[] columns = IntStream.range(0, p).filter(j -> !(schema.field(j).measure instanceof NominalScale)).toArray();
 
-        for (int j = 0; j < p; j++) {
-            Measure measure = schema.field(j).measure;
-            if (!(measure instanceof NominalScale)) {
+        int nthreads = Math.min(threads > 0 ? threads : Runtime.getRuntime().availableProcessors(), columns.length);
+        if (nthreads <= 1 || (long) n * columns.length < PARALLEL_SORT_SIZE) {
+            double[] a = new double[n];
+            for (int j : columns) {
                 x.column(j).toDoubleArray(a);
-                order[j] = QuickSort.sort(a);
+                order[j] = sort(a);
+            }
+            return order;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(nthreads);
+        try {
+            // the values are sorted in place, so each column is copied to its own array
+            pool.submit(() -> Arrays.stream(columns).parallel().forEach(j -> order[j] = sort(x.column(j).toDoubleArray(new double[n])))).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Sorting is interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IllegalStateException("Sorting failed", cause);
+        } finally {
+            pool.shutdown();
+        }
+
+        return order;
+    }
+
+    /**
+     * Sorts the values of a column and returns the original index of
+     * sorted values. Equal values are in the order of samples whichever
+     * algorithm is used, as the split search depends on the order of ties.
+     * Both algorithms order the values by {@link Double#compare(double, double)},
+     * i.e. -0.0 before 0.0 and NaN last.
+     */
+    static int[] sort(double[] a) {
+        int n = a.length;
+        if (n >= RADIX_SORT_SIZE) {
+            return RadixSort.sort(a);
+        }
+
+        // bottom-up merge sort of the index, which is stable
+        int[] order = new int[n];
+        int[] buffer = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+
+        for (int width = 1; width < n; width <<= 1) {
+            for (int lo = 0; lo < n; lo += 2 * width) {
+                int mid = Math.min(lo + width, n);
+                int hi = Math.min(lo + 2 * width, n);
+                int i = lo, j = mid, l = lo;
+                while (i < mid && j < hi) {
+                    buffer[l++] = Double.compare(a[order[j]], a[order[i]]) < 0 ? order[j++] : order[i++];
+                }
+                while (i < mid) buffer[l++] = order[i++];
+                while (j < hi) buffer[l++] = order[j++];
             }
+
+            int[] t = order;
+            order = buffer;
+            buffer = t;
         }
 
+        double[] x = a.clone();
+        for (int i = 0; i < n; i++) {
+            a[i] = x[order[i]];
+        }
         return order;
     }
 
@@ -258,11 +588,23 @@ public abstract class CART implements SHAP<Tuple>, Serializable {
      * Clear the workspace of building tree.
      */
     protected void clear() {
+        if (workspace != null) {
+            sorted.release(workspace);
+            workspace = null;
+        }
+        this.sorted = null;
         this.x = null;
         this.order = null;
         this.index = null;
         this.samples = null;
         this.buffer = null;
+        this.mask = null;
+        this.columns = null;
+        this.best = null;
+        this.bins = null;
+        this.histogram = null;
+        this.histograms = null;
+        this.rng = null;
     }
 
     /**
@@ -273,40 +615,219 @@ public abstract class CART implements SHAP<Tuple>, Serializable {
      * @return true if split success.
      */
     protected boolean split(final Split split, PriorityQueue<Split> queue) {
+        Expansion expansion = expand(split);
+        if (expansion == null) {
+            return false;
+        }
+
+        if (!commit(split, expansion)) {
+            return false;
+        }
+
+        if (queue == null) {
+            // deep first split
+            if (expansion.trueSplit != null) split(expansion.trueSplit, null);
+            if (expansion.falseSplit != null) split(expansion.falseSplit, null);
+        } else {
+            // best first split
+            if (expansion.trueSplit != null) queue.add(expansion.trueSplit);
+            if (expansion.falseSplit != null) queue.add(expansion.falseSplit);
+        }
+
+        return true;
+    }
+
+    /**
+     * Grows the tree from the root split, expanding the splits on the
+     * frontier concurrently. The expansion of a split, i.e. partitioning
+     * its samples and searching its children for their best splits, only
+     * reads and writes the range of its samples, and is a function of the
+     * samples. So the pending splits are expanded ahead in parallel, while
+     * they are still committed to the tree one at a time in the same order
+     * as {@link #split(Split, PriorityQueue)}, best first if the number of
+     * leaf nodes is bounded and deep first otherwise. The tree is the same
+     * as the one grown sequentially.
+     * <p>
+     * As the searches must not depend on the order that they run in, all
+     * columns have to be searched at each node, and the binned and
+     * randomized modes are not supported.
+     *
+     * @param split    the best split of root node.
+     * @param executor the executor to expand the splits on.
+     */
+    protected void parallelSplit(final Split split, Executor executor) {
+        if (mtry < schema.length() || bins != null || randomized) {
+            throw new IllegalStateException("Parallel split search requires a deterministic search of all columns");
+        }
+
+        final boolean bestFirst = maxNodes != Integer.MAX_VALUE;
+        final PriorityQueue<Split> queue = bestFirst ? new PriorityQueue<>(2 * maxNodes, Split.comparator.reversed()) : null;
+        final ArrayDeque<Split> stack = bestFirst ? null : new ArrayDeque<>();
+        final IdentityHashMap<Split, Expansion> expanded = new IdentityHashMap<>();
+        final ConcurrentLinkedQueue<CART> workers = new ConcurrentLinkedQueue<>();
+        final ArrayList<Split> batch = new ArrayList<>();
+
+        if (bestFirst) {
+            queue.add(split);
+        } else {
+            stack.push(split);
+        }
+
+        for (int leaves = 1; leaves < maxNodes && !(bestFirst ? queue.isEmpty() : stack.isEmpty()); ) {
+            Split next = bestFirst ? queue.peek() : stack.peek();
+            if (!expanded.containsKey(next)) {
+                // the pending splits that may be committed next, at most as many as the remaining leaves
+                batch.clear();
+                if (bestFirst) {
+                    Split[] pending = queue.toArray(new Split[0]);
+                    Arrays.sort(pending, Split.comparator.reversed());
+                    for (Split s : pending) {
+                        if (batch.size() >= maxNodes - leaves) break;
+                        if (!expanded.containsKey(s)) batch.add(s);
+                    }
+                } else {
+                    for (Split s : stack) {
+                        if (!expanded.containsKey(s)) batch.add(s);
+                    }
+                }
+
+                Expansion[] expansions = expand(batch, workers, executor);
+                for (int i = 0; i < expansions.length; i++) {
+                    expanded.put(batch.get(i), expansions[i]);
+                }
+            }
+
+            next = bestFirst ? queue.poll() : stack.pop();
+            Expansion expansion = expanded.remove(next);
+            if (expansion != null && commit(next, expansion)) {
+                leaves++;
+                if (bestFirst) {
+                    if (expansion.trueSplit != null) queue.add(expansion.trueSplit);
+                    if (expansion.falseSplit != null) queue.add(expansion.falseSplit);
+                } else {
+                    // the true child is popped first as in the recursion
+                    if (expansion.falseSplit != null) stack.push(expansion.falseSplit);
+                    if (expansion.trueSplit != null) stack.push(expansion.trueSplit);
+                }
+            }
+        }
+    }
+
+    /**
+     * Expands the splits concurrently. Each task takes an idle worker
+     * with its own working buffers.
+     */
+    private Expansion[] expand(List<Split> splits, ConcurrentLinkedQueue<CART> workers, Executor executor) {
+        int n = splits.size();
+        Expansion[] expansions = new Expansion[n];
+        CompletableFuture<?>[] tasks = new CompletableFuture<?>[n];
+        for (int i = 0; i < n; i++) {
+            final int t = i;
+            tasks[i] = CompletableFuture.runAsync(() -> {
+                CART worker = workers.poll();
+                if (worker == null) {
+                    worker = fork();
+                }
+
+                try {
+                    expansions[t] = worker.expand(splits.get(t));
+                } finally {
+                    workers.offer(worker);
+                }
+            }, executor);
+        }
+
+        try {
+            CompletableFuture.allOf(tasks).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException("Parallel split search failed", cause);
+        }
+
+        return expansions;
+    }
+
+    /**
+     * Partitions the samples of a split and searches the children nodes
+     * for their best splits. The tree is not modified.
+     *
+     * @param split the split candidate.
+     * @return the children, or null if the node cannot be split.
+     */
+    private Expansion expand(final Split split) {
         if (split.feature < 0) {
             throw new IllegalStateException("Split a node with invalid feature.");
         }
 
         if (split.depth >= maxDepth) {
-            return false;
+            return null;
         }
 
         if (split.trueCount < nodeSize || split.falseCount < nodeSize) {
             // We should not reach here as findBestSplit filters this situation out.
-            return false;
+            return null;
         }
 
-        int[] trueSamples = Arrays.stream(index, split.lo, split.hi).filter(i -> split.predicate().test(i)).toArray();
+        // test the samples once, the mask is reused by every split of the tree
+        BaseVector xj = x.column(split.feature);
+        int[] index = this.index;
+        boolean[] trues = mask;
+        int mid = split.lo;
+        for (int i = split.lo; i < split.hi; i++) {
+            int o = index[i];
+            boolean t = split.test(xj, o);
+            trues[o] = t;
+            if (t) mid++;
+        }
 
-        // cache the results of predicate.test()
-        boolean[] trues = new boolean[samples.length];
-        for (int i : trueSamples) trues[i] = true;
+        shuffle(split.lo, mid, split.hi, trues);
 
-        int[] falseSamples = Arrays.stream(index, split.lo, split.hi).filter(i -> !trues[i]).toArray();
-        int mid = split.lo + trueSamples.length;
+        LeafNode trueChild = newNode(split.lo, mid);
+        LeafNode falseChild = newNode(mid, split.hi);
+        InternalNode node = split.toNode(trueChild, falseChild);
 
-        LeafNode trueChild = newNode(trueSamples);
+        int[] trueHistogram = null;
+        int[] falseHistogram = null;
+        if (bins != null) {
+            // build the histogram of the smaller child, and get the other one by subtracting it from the parent's
+            int[] parent = split.histogram;
+            if (parent != null) {
+                split.histogram = null;
+                queuedHistograms--;
+            }
 
-        LeafNode falseChild = newNode(falseSamples);
-        InternalNode node = split.toNode(trueChild, falseChild);
+            if (mid - split.lo <= split.hi - mid) {
+                trueHistogram = histogram(split.lo, mid, histograms.poll());
+                falseHistogram = parent == null ? histogram(mid, split.hi, histograms.poll()) : subtract(parent, trueHistogram);
+            } else {
+                falseHistogram = histogram(mid, split.hi, histograms.poll());
+                trueHistogram = parent == null ? histogram(split.lo, mid, histograms.poll()) : subtract(parent, falseHistogram);
+            }
+        }
 
-        shuffle(split.lo, mid, split.hi, trues);
+        Split trueSplit = findBestSplit(trueChild, split.lo, mid, split.unsplittable.clone(), trueHistogram);
+        Split falseSplit = findBestSplit(falseChild, mid, split.hi, split.unsplittable, falseHistogram); // reuse parent's array
 
-        Optional<Split> trueSplit = findBestSplit(trueChild, split.lo, mid, split.unsplittable.clone());
-        Optional<Split> falseSplit = findBestSplit(falseChild, mid, split.hi, split.unsplittable); // reuse parent's array
+        return new Expansion(node, trueSplit, falseSplit);
+    }
+
+    /**
+     * Replaces the leaf node of a split with the internal node of its
+     * expansion.
+     *
+     * @param split     the split candidate.
+     * @param expansion the children of split.
+     * @return true if split success.
+     */
+    private boolean commit(Split split, Expansion expansion) {
+        InternalNode node = expansion.node;
+        Split trueSplit = expansion.trueSplit;
+        Split falseSplit = expansion.falseSplit;
 
         // Prune the branch if both children are leaf nodes and of same output value.
-        if (trueChild.equals(falseChild) && !trueSplit.isPresent() && !falseSplit.isPresent()) {
+        if (node.trueChild.equals(node.falseChild) && trueSplit == null && falseSplit == null) {
             return false;
         }
 
@@ -321,72 +842,147 @@ public abstract class CART implements SHAP<Tuple>, Serializable {
         }
 
         importance[node.feature] += node.score;
-        trueSplit.ifPresent(s -> {
-            s.parent = node;
-            s.depth = split.depth + 1;
-        });
-        falseSplit.ifPresent(s -> {
-            s.parent = node;
-            s.depth = split.depth + 1;
-        });
-
-        if (queue == null) {
-            // deep first split
-            trueSplit.ifPresent(s -> split(s, null));
-            falseSplit.ifPresent(s -> split(s, null));
-        } else {
-            // best first split
-            trueSplit.ifPresent(queue::add);
-            falseSplit.ifPresent(queue::add);
+        if (trueSplit != null) {
+            trueSplit.parent = node;
+            trueSplit.depth = split.depth + 1;
+        }
+        if (falseSplit != null) {
+            falseSplit.parent = node;
+            falseSplit.depth = split.depth + 1;
         }
 
         return true;
     }
 
+    /**
+     * The children of a split before it is committed to the tree.
+     */
+    private static class Expansion {
+        /**
+         * The internal node that replaces the leaf node of split.
+         */
+        final InternalNode node;
+        /**
+         * The best split of true branch child, or null.
+         */
+        final Split trueSplit;
+        /**
+         * The best split of false branch child, or null.
+         */
+        final Split falseSplit;
+
+        /**
+         * Constructor.
+         */
+        Expansion(InternalNode node, Split trueSplit, Split falseSplit) {
+            this.node = node;
+            this.trueSplit = trueSplit;
+            this.falseSplit = falseSplit;
+        }
+    }
+
+    /**
+     * Finds the best attribute to split on a set of samples. at the current node. Returns
+     * <code>null</code> if a split doesn't exists to reduce the impurity.
+     *
+     * @param node         the leaf node to split.
+     * @param lo           the inclusive lower bound of the data partition in the reordered sample index array.
+     * @param hi           the exclusive upper bound of the data partition in the reordered sample index array.
+     * @param unsplittable unsplittable[j] is true if the column j cannot be split further in the node.
+     * @return the best split candidate, or null.
+     */
+    protected Split findBestSplit(LeafNode node, int lo, int hi, boolean[] unsplittable) {
+        return findBestSplit(node, lo, hi, unsplittable, bins == null ? null : histogram(lo, hi, histograms.poll()));
+    }
+
     /**
      * Finds the best attribute to split on a set of samples. at the current node. Returns
-     * <code>Optional.empty</code> if a split doesn't exists to reduce the impurity.
+     * <code>null</code> if a split doesn't exists to reduce the impurity.
      *
      * @param node         the leaf node to split.
      * @param lo           the inclusive lower bound of the data partition in the reordered sample index array.
      * @param hi           the exclusive upper bound of the data partition in the reordered sample index array.
      * @param unsplittable unsplittable[j] is true if the column j cannot be split further in the node.
-     * @return the best split candidate.
+     * @param histogram    the histogram of the node in the binned mode, otherwise null.
+     * @return the best split candidate, or null.
      */
-    protected Optional<Split> findBestSplit(LeafNode node, int lo, int hi, boolean[] unsplittable) {
+    private Split findBestSplit(LeafNode node, int lo, int hi, boolean[] unsplittable, int[] histogram) {
+        Split split = search(node, lo, hi, unsplittable, histogram);
+        if (histogram != null) {
+            if (split != null && queuedHistograms < MAX_QUEUED_HISTOGRAMS) {
+                // kept for the children of the split
+                split.histogram = histogram;
+                queuedHistograms++;
+            } else {
+                histograms.push(histogram);
+            }
+        }
+        return split;
+    }
+
+    /**
+     * Searches the columns for the best split of a node.
+     */
+    private Split search(LeafNode node, int lo, int hi, boolean[] unsplittable, int[] histogram) {
         if (node.size() < 2 * nodeSize) {
-            return Optional.empty(); // one child will has less than nodeSize samples.
+            return null; // one child will has less than nodeSize samples.
         }
 
         final double impurity = impurity(node);
         if (impurity == 0.0) {
-            return Optional.empty(); // all the samples in the node have the same response
+            return null; // all the samples in the node have the same response
         }
 
         // skip the unsplittable columns
         int p = schema.length();
-        int[] columns = IntStream.range(0, p).filter(i -> !unsplittable[i]).toArray();
+        int[] columns = this.columns;
+        int m = 0;
+        for (int j = 0; j < p; j++) {
+            if (!unsplittable[j]) columns[m++] = j;
+        }
 
         // random forest
         if (mtry < p) {
-            MathEx.permutate(columns);
+            if (rng == null) {
+                MathEx.permutate(columns, m);
+            } else {
+                rng.permutate(columns, m);
+            }
         }
 
-        IntStream stream = Arrays.stream(columns).limit(mtry);
-        Optional<Split> split = (mtry < p ? stream : stream.parallel()) // random forest is in parallel already
-                .mapToObj(j -> {
-                    Optional<Split> s = findBestSplit(node, j, impurity, lo, hi);
-                    if (!s.isPresent()) unsplittable[j] = true;
-                    return s;
-                })
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .max(Split.comparator);
+        BestSplit best = this.best;
+        best.reset();
+        this.histogram = histogram;
+        for (int c = 0, limit = Math.min(m, mtry); c < limit; c++) {
+            int j = columns[c];
+            if (!findBestSplit(node, j, impurity, lo, hi, best)) {
+                unsplittable[j] = true;
+            }
+        }
+        this.histogram = null;
+
+        if (best.feature < 0) {
+            return null;
+        }
 
-        split.ifPresent(s -> s.unsplittable = unsplittable);
+        Split split;
+        if (schema.field(best.feature).measure instanceof NominalScale) {
+            split = new NominalSplit(node, best.feature, (int) best.value, best.score, lo, hi, best.trueCount, best.falseCount);
+        } else {
+            split = new OrdinalSplit(node, best.feature, best.value, best.score, lo, hi, best.trueCount, best.falseCount);
+        }
+        split.unsplittable = unsplittable;
         return split;
     }
 
+    /**
+     * Returns a worker to search the nodes of this tree concurrently.
+     *
+     * @return a worker with its own working buffers.
+     * @see #CART(CART)
+     */
+    protected abstract CART fork();
+
     /**
      * Returns the impurity of node.
      *
@@ -398,22 +994,51 @@ public abstract class CART implements SHAP<Tuple>, Serializable {
     /**
      * Creates a new leaf node.
      *
-     * @param nodeSamples the samples belonging to this node.
+     * @param lo the inclusive lower bound of the node samples in the reordered sample index array.
+     * @param hi the exclusive upper bound of the node samples in the reordered sample index array.
      * @return the new leaf node.
      */
-    protected abstract LeafNode newNode(int[] nodeSamples);
+    protected abstract LeafNode newNode(int lo, int hi);
+
+    /**
+     * Returns the histogram of the samples in a range of the reordered
+     * sample index array over the bins of all numeric columns.
+     *
+     * @param lo     the inclusive lower bound of the samples.
+     * @param hi     the exclusive upper bound of the samples.
+     * @param buffer a histogram no longer used, to be overwritten. May be null.
+     * @return the histogram.
+     */
+    protected abstract int[] histogram(int lo, int hi, int[] buffer);
+
+    /**
+     * Subtracts a histogram from another in place.
+     *
+     * @param parent the histogram of parent node, which becomes the result.
+     * @param child  the histogram of a child node.
+     * @return the histogram of the other child.
+     */
+    private static int[] subtract(int[] parent, int[] child) {
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] -= child[i];
+        }
+        return parent;
+    }
 
     /**
-     * Finds the best split for given column.
+     * Finds the best split for given column, and offers it to the
+     * best split of the node. The search must not allocate memory
+     * as it is the innermost loop of training.
      *
      * @param node     the node to split.
      * @param column   the column to split on.
      * @param impurity the impurity of node.
      * @param lo       the lower bound of sample index in the node.
      * @param hi       the upper bound of sample index in the node.
-     * @return the best split.
+     * @param best     the best split of the node found so far.
+     * @return false if the column has no split that reduces the impurity.
      */
-    protected abstract Optional<Split> findBestSplit(LeafNode node, int column, double impurity, int lo, int hi);
+    protected abstract boolean findBestSplit(LeafNode node, int column, double impurity, int lo, int hi, BestSplit best);
 
     /**
      * Returns the variable importance. Every time a split of a node is made
@@ -428,6 +1053,15 @@ public abstract class CART implements SHAP<Tuple>, Serializable {
         return importance;
     }
 
+    /**
+     * Returns the metadata of response variable.
+     *
+     * @return the metadata of response variable.
+     */
+    public StructField response() {
+        return response;
+    }
+
     /**
      * Returs the root node.
      *
@@ -453,7 +1087,9 @@ public abstract class CART implements SHAP<Tuple>, Serializable {
      *                  the right side of the partition.
      */
     private void shuffle(int low, int split, int high, boolean[] predicate) {
-        Arrays.stream(order).filter(Objects::nonNull).forEach(o -> shuffle(o, low, split, high, predicate));
+        for (int[] o : order) {
+            if (o != null) shuffle(o, low, split, high, predicate);
+        }
         shuffle(index, low, split, high, predicate);
     }
 
@@ -463,9 +1099,9 @@ public abstract class CART implements SHAP<Tuple>, Serializable {
      * for which goesLeft(i) is true come before all elements for
      * which it is false, but element ordering is otherwise preserved.
      * The number of true values returned by goesLeft must equal
-     * {@code split - low}. buffer is scratch space large enough
-     * (i.e., at least {@code high - split} long) to hold all
-     * elements for which goesLeft is false.
+     * {@code split - low}. The range from low to high of buffer
+     * is the scratch space to hold all elements for which goesLeft
+     * is false.
      *
      * @param a         the array to shuffle.
      * @param low       the low bound of the segment of the order arrays
@@ -477,7 +1113,8 @@ public abstract class CART implements SHAP<Tuple>, Serializable {
      *                  the right side of the partition.
      */
     private void shuffle(int[] a, int low, int split, int high, boolean[] predicate) {
-        int k = 0;
+        // the buffer is used at the same range, so that disjoint ranges can be partitioned concurrently
+        int k = low;
         for (int i = low, j = low; i < high; i++) {
             if (predicate[a[i]]) {
                 a[j++] = a[i];
@@ -486,7 +1123,7 @@ public abstract class CART implements SHAP<Tuple>, Serializable {
             }
         }
 
-        System.arraycopy(buffer, 0, a, split, k);
+        System.arraycopy(buffer, low, a, split, k - low);
     }
 
 
@@ -503,18 +1140,50 @@ public abstract class CART implements SHAP<Tuple>, Serializable {
 
         int p = schema.length();
         double[] phi = new double[p * k];
-        Path m = new Path(new int[0], new double[0], new double[0], new double[0]);
-        recurse(phi, predictors(x), root, m, 1, 1, -1);
+        return shap(x, phi, new PathBuffer(depth()));
+    }
+
+    /**
+     * Adds the SHAP values of an instance to an accumulator, with the
+     * recursion paths in a preallocated buffer. It doesn't allocate
+     * memory once the buffer is large enough for the tree.
+     *
+     * @param x    an instance.
+     * @param phi  the accumulator of SHAP values, of the size {@code p x k}.
+     * @param path the buffer of recursion paths.
+     * @return the accumulator.
+     */
+    public double[] shap(Tuple x, double[] phi, PathBuffer path) {
+        path.reserve(depth(), phi.length / schema.length());
+        recurse(phi, predictors(x), root, path, 0, 0, 1, 1, -1);
         return phi;
     }
 
+    /**
+     * Returns the maximum depth of the tree, which is cached.
+     *
+     * @return the maximum depth of the tree.
+     */
+    private int depth() {
+        int d = depth;
+        if (d == 0) {
+            d = root.depth();
+            depth = d;
+        }
+        return d;
+    }
+
     /**
      * Recursively keep track of what proportion of all possible subsets
      * flow down into each of the leaves of the tree.
+     *
+     * @param parent the offset of parent's path in the buffer.
+     * @param l      the length of parent's path.
      */
-    private void recurse(double[] phi, Tuple x, Node node, Path m, double pz, double po, int pi) {
-        int l = m.length;
-        m = m.extend(pz, po, pi);
+    private void recurse(double[] phi, Tuple x, Node node, PathBuffer m, int parent, int l, double pz, double po, int pi) {
+        // the path of this node follows the parent's path
+        int offset = parent + l;
+        m.extend(parent, offset, l, pz, po, pi);
 
         if (node instanceof InternalNode) {
             InternalNode split = (InternalNode) node;
@@ -534,28 +1203,30 @@ public abstract class CART implements SHAP<Tuple>, Serializable {
 
             int k = 0;
             for (; k <= l; k++) {
-                if (m.d[k] == dj) break;
+                if (m.d[offset + k] == dj) break;
             }
 
             double iz = 1.0;
             double io = 1.0;
+            int length = l + 1;
             if (k <= l) {
-                iz = m.z[k];
-                io = m.o[k];
-                m.unwind(k);
+                iz = m.z[offset + k];
+                io = m.o[offset + k];
+                m.unwind(offset, l, k);
+                length--;
             }
 
-            recurse(phi, x, h, m, iz * rh / rj, io, dj);
-            recurse(phi, x, c, m, iz * rc / rj, 0, dj);
+            recurse(phi, x, h, m, offset, length, iz * rh / rj, io, dj);
+            recurse(phi, x, c, m, offset, length, iz * rc / rj, 0, dj);
         } else {
             if (node instanceof DecisionNode) {
                 DecisionNode leaf = ((DecisionNode) node);
                 int k = leaf.count().length;
-                double[] prob = new double[k];
-                leaf.posteriori(prob);
+                double[] prob = m.prob;
+                DecisionNode.posteriori(leaf.count(), prob);
                 for (int i = 1; i <= l; i++) {
-                    double w = m.unwoundSum(i) * (m.o[i] - m.z[i]);
-                    int di = m.d[i] * k;
+                    double w = m.unwoundSum(offset, l, i) * (m.o[offset + i] - m.z[offset + i]);
+                    int di = m.d[offset + i] * k;
                     for (int j = 0; j < k; j++) {
                         phi[di + j] += w * prob[j];
                     }
@@ -563,134 +1234,10 @@ public abstract class CART implements SHAP<Tuple>, Serializable {
             } else {
                 double vj = ((RegressionNode) node).output();
                 for (int i = 1; i <= l; i++) {
-                    double w = m.unwoundSum(i);
-                    phi[m.d[i]] += w * (m.o[i] - m.z[i]) * vj;
+                    double w = m.unwoundSum(offset, l, i);
+                    phi[m.d[offset + i]] += w * (m.o[offset + i] - m.z[offset + i]) * vj;
                 }
             }
         }
     }
-
-    /**
-     * The path of unique features we have split
-     * on so far during SHAP recursive traverse.
-     */
-    private static class Path {
-        /**
-         * The length of path.
-         */
-        int length;
-        /**
-         * The unique feature index.
-         */
-        int[] d;
-        /**
-         * The fraction of zero paths (where this feature is not
-         * in the non-zero index set S) that flow through this path.
-         */
-        double[] z;
-        /**
-         * The fraction of one paths (where this feature is
-         * in the non-zero index set S) that flow through this path.
-         */
-        double[] o;
-        /**
-         * The proportion of sets of a given cardinality that are present.
-         */
-        double[] w;
-
-        /**
-         * Constructor.
-         */
-        Path(int[] d, double[] z, double[] o, double[] w) {
-            this.length = d.length;
-            this.d = d;
-            this.z = z;
-            this.o = o;
-            this.w = w;
-        }
-
-        /**
-         * To keep track of each possible subset size during the recursion,
-         * grows all these subsets according to a given fraction of ones and
-         * zeros.
-         */
-        Path extend(double pz, double po, int pi) {
-            int l = length;
-            Path m = new Path(
-                    // Arrays.copyOf will truncate or pad with zeros.
-                    Arrays.copyOf(d, l + 1),
-                    Arrays.copyOf(z, l + 1),
-                    Arrays.copyOf(o, l + 1),
-                    Arrays.copyOf(w, l + 1)
-            );
-
-            m.d[l] = pi;
-            m.z[l] = pz;
-            m.o[l] = po;
-            m.w[l] = l == 0 ? 1 : 0;
-
-            for (int i = l - 1; i >= 0; i--) {
-                m.w[i + 1] += po * m.w[i] * (i + 1) / (l + 1);
-                m.w[i] = pz * m.w[i] * (l - i) / (l + 1);
-            }
-
-            return m;
-        }
-
-        /**
-         * Undo previous extensions when we split on the same feature twice,
-         * and undo each extension of the path inside a leaf to compute
-         * weights for each feature in the path.
-         */
-        void unwind(int i) {
-            double po = o[i];
-            double pz = z[i];
-            int l = --length;
-
-            double n = w[l];
-            if (po != 0) {
-                for (int j = l - 1; j >= 0; j--) {
-                    double t = w[j];
-                    w[j] = n * (l + 1) / ((j + 1) * po);
-                    n = t - w[j] * pz * (l - j) / (l + 1);
-                }
-            } else {
-                for (int j = l - 1; j >= 0; j--) {
-                    w[j] = (w[j] * (l + 1)) / (pz * (l - j));
-                }
-            }
-
-            for (int j = i; j < l; j++) {
-                d[j] = d[j + 1];
-                z[j] = z[j + 1];
-                o[j] = o[j + 1];
-            }
-        }
-
-        /**
-         * Return the total permutation weight if we unwind a previous
-         * extension in the decision path.
-         */
-        double unwoundSum(int i) {
-            double po = o[i];
-            double pz = z[i];
-            int l = length - 1;
-            double sum = 0.0;
-
-            double n = w[l];
-            if (po != 0) {
-                for (int j = l - 1; j >= 0; j--) {
-                    double t = n / ((j + 1) * po);
-                    sum += t;
-                    n = w[j] - t * pz * (l - j);
-                }
-            } else {
-                for (int j = l - 1; j >= 0; j--) {
-                    sum += w[j] / (pz * (l - j));
-                }
-            }
-
-            return sum * (l + 1);
-        }
-    }
 }
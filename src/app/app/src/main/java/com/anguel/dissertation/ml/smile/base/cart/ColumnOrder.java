@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2010-2020 Haifeng Li. All rights reserved.
+ *
+ * Smile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Smile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Smile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.anguel.dissertation.ml.smile.base.cart;
+
+import com.anguel.dissertation.ml.smile.data.DataFrame;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The index of values in ascending order of each numeric column of a
+ * data set that only grows by appending rows, e.g. the samples collected
+ * so far. When new rows are appended, only the new values are sorted, in
+ * O(m log m) time, and merged into the existing order in O(n + m) time
+ * instead of sorting all n + m values again. Equal values are in the
+ * order of rows, so the merged order is the same as that of
+ * {@link CART#order(DataFrame)} on all rows.
+ * <p>
+ * The order only holds the row indices, not the values, so it is small
+ * enough to be saved with the data. The order of training data that is
+ * a sample or a permutation of the rows is derived with
+ * {@link #select(int[], DataFrame)}, and passed to the trees as the
+ * {@code order} parameter.
+ *
+ * @author Haifeng Li
+ */
+public class ColumnOrder {
+    /**
+     * The magic number "SMCO" of serialized order.
+     */
+    private static final int MAGIC = 0x534D434F;
+
+    /**
+     * The index of rows in ascending order of values of each column.
+     * Only numeric columns are sorted, others have a null in the array.
+     */
+    private final int[][] order;
+    /**
+     * The number of rows.
+     */
+    private final int n;
+
+    /**
+     * Constructor. Sorts all rows.
+     *
+     * @param x the data.
+     */
+    public ColumnOrder(DataFrame x) {
+        this(CART.order(x), x.size());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param order the index of rows in ascending order of each column.
+     * @param n     the number of rows.
+     */
+    private ColumnOrder(int[][] order, int n) {
+        this.order = order;
+        this.n = n;
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return the number of rows.
+     */
+    public int size() {
+        return n;
+    }
+
+    /**
+     * Returns the index of rows in ascending order of each numeric column.
+     * The arrays must not be modified.
+     *
+     * @return the index of rows in ascending order of each numeric column.
+     */
+    public int[][] order() {
+        return order;
+    }
+
+    /**
+     * Returns the order of the data with appended rows. The first
+     * {@link #size()} rows must be the rows of this order, unchanged.
+     *
+     * @param x the data of all rows.
+     * @return the order of all rows.
+     * @throws IllegalArgumentException if the columns don't match or there are fewer rows.
+     * @throws IllegalStateException if the existing rows are not in the order,
+     *                               i.e. they have been changed.
+     */
+    public ColumnOrder append(DataFrame x) {
+        int size = x.size();
+        int m = size - n;
+        if (m < 0) {
+            throw new IllegalArgumentException(String.format("The data has %d rows, fewer than %d", size, n));
+        }
+
+        if (x.ncol() != order.length) {
+            throw new IllegalArgumentException(String.format("The data has %d columns, expected %d", x.ncol(), order.length));
+        }
+
+        int[][] merged = new int[order.length][];
+        for (int j = 0; j < order.length; j++) {
+            int[] src = order[j];
+            if (src == null) continue;
+
+            double[] a = x.column(j).toDoubleArray(new double[size]);
+            double[] b = Arrays.copyOfRange(a, n, size);
+            int[] index = CART.sort(b);
+
+            int[] dst = new int[size];
+            int i = 0, k = 0, l = 0;
+            double prev = Double.NEGATIVE_INFINITY;
+            while (i < n || k < m) {
+                if (i < n) {
+                    double ai = a[src[i]];
+                    if (Double.compare(ai, prev) < 0) {
+                        throw new IllegalStateException("The rows have been changed since they were sorted");
+                    }
+
+                    // equal values keep the order of rows, the existing rows first
+                    if (k == m || Double.compare(ai, b[k]) <= 0) {
+                        dst[l++] = src[i++];
+                        prev = ai;
+                        continue;
+                    }
+                }
+
+                dst[l++] = n + index[k++];
+            }
+
+            merged[j] = dst;
+        }
+
+        return new ColumnOrder(merged, size);
+    }
+
+    /**
+     * Returns the order of a data set derived from the rows, e.g. a
+     * sample or a permutation of the rows. Equal values are put in the
+     * order of rows of the derived data set, so that the order is the
+     * same as that of {@link CART#order(DataFrame)} on the derived data.
+     *
+     * @param position the position of each row in the derived data set,
+     *                 or -1 if the row is not in it.
+     * @param x        the derived data set.
+     * @return the index of rows of the derived data set in ascending
+     * order of each numeric column.
+     */
+    public int[][] select(int[] position, DataFrame x) {
+        if (position.length != n) {
+            throw new IllegalArgumentException(String.format("Invalid position array size: %d, expected: %d", position.length, n));
+        }
+
+        if (x.ncol() != order.length) {
+            throw new IllegalArgumentException(String.format("The data has %d columns, expected %d", x.ncol(), order.length));
+        }
+
+        int size = x.size();
+
+        int[][] selected = new int[order.length][];
+        for (int j = 0; j < order.length; j++) {
+            int[] src = order[j];
+            if (src == null) continue;
+
+            int[] dst = new int[size];
+            int l = 0;
+            for (int o : src) {
+                int p = position[o];
+                if (p >= 0) {
+                    if (l == size) {
+                        throw new IllegalArgumentException("More rows selected than " + size);
+                    }
+                    dst[l++] = p;
+                }
+            }
+
+            if (l != size) {
+                throw new IllegalArgumentException(String.format("%d rows selected, expected: %d", l, size));
+            }
+
+            // the runs of equal values are short, sorting them is linear in practice
+            double[] a = x.column(j).toDoubleArray(new double[size]);
+            for (int i = 1, start = 0; i <= size; i++) {
+                if (i == size || Double.compare(a[dst[i]], a[dst[start]]) != 0) {
+                    if (i - start > 1) Arrays.sort(dst, start, i);
+                    start = i;
+                }
+            }
+            selected[j] = dst;
+        }
+
+        return selected;
+    }
+
+    /**
+     * Writes the order.
+     *
+     * @param out the output.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(n);
+        out.writeInt(order.length);
+        for (int[] column : order) {
+            out.writeBoolean(column != null);
+            if (column != null) {
+                for (int o : column) {
+                    out.writeInt(o);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads an order.
+     *
+     * @param in the input.
+     * @return the order.
+     * @throws IOException if an I/O error occurs or the input is not an order.
+     */
+    public static ColumnOrder read(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a column order");
+        }
+
+        int n = in.readInt();
+        int p = in.readInt();
+        if (n < 0 || p < 0) {
+            throw new IOException(String.format("Invalid column order size: %d x %d", n, p));
+        }
+
+        int[][] order = new int[p][];
+        for (int j = 0; j < p; j++) {
+            if (in.readBoolean()) {
+                int[] column = new int[n];
+                for (int i = 0; i < n; i++) {
+                    int o = in.readInt();
+                    if (o < 0 || o >= n) {
+                        throw new IOException("Invalid row index: " + o);
+                    }
+                    column[i] = o;
+                }
+                order[j] = column;
+            }
+        }
+
+        return new ColumnOrder(order, n);
+    }
+}
@@ -0,0 +1,519 @@
+/*
+ * Copyright (c) 2010-2020 Haifeng Li. All rights reserved.
+ *
+ * Smile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Smile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Smile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.anguel.dissertation.ml.smile.base.cart;
+
+import com.anguel.dissertation.ml.smile.data.DataFrame;
+import com.anguel.dissertation.ml.smile.data.Tuple;
+import com.anguel.dissertation.ml.smile.math.MathEx;
+
+import java.util.Arrays;
+
+/**
+ * A set of classification trees compiled into parallel primitive arrays.
+ * Internal nodes of all trees are stored in the same arrays of split
+ * feature, split value and children. A child reference that is negative
+ * points to a leaf, whose index is the bitwise complement of the reference.
+ * Leaves keep the predicted class and the a posteriori probabilities.
+ * Evaluating a tree is a tight loop over these arrays instead of virtual
+ * calls on the node objects.
+ *
+ * @author Haifeng Li
+ */
+public class FlatForest {
+    /**
+     * The number of rows scored together by the batch prediction.
+     * The votes of a block fit in the L1 cache while the trees are
+     * evaluated one after another over the block.
+     */
+    private static final int BLOCK = 256;
+
+    /**
+     * The number of classes.
+     */
+    final int k;
+    /**
+     * The number of predictors.
+     */
+    final int p;
+    /**
+     * The root reference of each tree.
+     */
+    final int[] root;
+    /**
+     * The weight of each tree.
+     */
+    final double[] weight;
+    /**
+     * The split feature of internal nodes.
+     */
+    final int[] feature;
+    /**
+     * True if the internal node splits on a nominal feature.
+     */
+    final boolean[] nominal;
+    /**
+     * The split value of internal nodes.
+     */
+    final double[] value;
+    /**
+     * The reference of true branch child.
+     */
+    final int[] trueChild;
+    /**
+     * The reference of false branch child.
+     */
+    final int[] falseChild;
+    /**
+     * The predicted class of leaves.
+     */
+    final int[] output;
+    /**
+     * The a posteriori probabilities of leaves, k values per leaf.
+     */
+    final double[] posteriori;
+
+    /**
+     * The per-thread buffer of predictors.
+     */
+    private final ThreadLocal<double[]> row;
+    /**
+     * The per-thread buffer of votes.
+     */
+    private final ThreadLocal<int[]> votes;
+
+    /**
+     * Constructor.
+     *
+     * @param k          the number of classes.
+     * @param p          the number of predictors.
+     * @param root       the root reference of each tree.
+     * @param weight     the weight of each tree.
+     * @param feature    the split feature of internal nodes.
+     * @param nominal    true if the internal node splits on a nominal feature.
+     * @param value      the split value of internal nodes.
+     * @param trueChild  the reference of true branch child.
+     * @param falseChild the reference of false branch child.
+     * @param output     the predicted class of leaves.
+     * @param posteriori the a posteriori probabilities of leaves.
+     */
+    public FlatForest(int k, int p, int[] root, double[] weight, int[] feature, boolean[] nominal, double[] value,
+                      int[] trueChild, int[] falseChild, int[] output, double[] posteriori) {
+        this.k = k;
+        this.p = p;
+        this.root = root;
+        this.weight = weight;
+        this.feature = feature;
+        this.nominal = nominal;
+        this.value = value;
+        this.trueChild = trueChild;
+        this.falseChild = falseChild;
+        this.output = output;
+        this.posteriori = posteriori;
+        // ThreadLocal.withInitial is not available before API 26
+        this.row = new ThreadLocal<double[]>() {
+            protected double[] initialValue() {
+                return new double[p];
+            }
+        };
+        this.votes = new ThreadLocal<int[]>() {
+            protected int[] initialValue() {
+                return new int[k];
+            }
+        };
+    }
+
+    /**
+     * Compiles classification trees.
+     *
+     * @param trees  the root nodes of trees.
+     * @param weight the weight of each tree.
+     * @param p      the number of predictors.
+     * @return the compiled forest.
+     */
+    public static FlatForest of(Node[] trees, double[] weight, int p) {
+        if (trees.length == 0) {
+            throw new IllegalArgumentException("Empty forest");
+        }
+
+        if (trees.length != weight.length) {
+            throw new IllegalArgumentException(String.format("The number of trees and weights don't match: %d != %d", trees.length, weight.length));
+        }
+
+        int nodes = 0;
+        int leaves = 0;
+        for (Node tree : trees) {
+            int l = tree.leafs();
+            leaves += l;
+            nodes += l - 1;
+        }
+
+        Builder builder = new Builder(nodes, leaves, k(trees[0]));
+        int[] root = new int[trees.length];
+        for (int t = 0; t < trees.length; t++) {
+            root[t] = builder.add(trees[t]);
+        }
+
+        return new FlatForest(builder.k, p, root, weight.clone(), builder.feature, builder.nominal, builder.value,
+                builder.trueChild, builder.falseChild, builder.output, builder.posteriori);
+    }
+
+    /**
+     * Returns the number of classes of a classification tree.
+     */
+    private static int k(Node node) {
+        while (node instanceof InternalNode) {
+            node = ((InternalNode) node).trueChild;
+        }
+
+        if (!(node instanceof DecisionNode)) {
+            throw new IllegalArgumentException("Only classification trees can be compiled");
+        }
+
+        return ((DecisionNode) node).count().length;
+    }
+
+    /**
+     * Fills the arrays in depth-first order.
+     */
+    private static class Builder {
+        final int k;
+        final int[] feature;
+        final boolean[] nominal;
+        final double[] value;
+        final int[] trueChild;
+        final int[] falseChild;
+        final int[] output;
+        final double[] posteriori;
+        int nodes = 0;
+        int leaves = 0;
+
+        Builder(int nodes, int leaves, int k) {
+            this.k = k;
+            feature = new int[nodes];
+            nominal = new boolean[nodes];
+            value = new double[nodes];
+            trueChild = new int[nodes];
+            falseChild = new int[nodes];
+            output = new int[leaves];
+            posteriori = new double[leaves * k];
+        }
+
+        /**
+         * Adds a subtree and returns its reference.
+         */
+        int add(Node node) {
+            if (node instanceof InternalNode) {
+                int i = nodes++;
+                InternalNode split = (InternalNode) node;
+                feature[i] = split.feature;
+                if (split instanceof OrdinalNode) {
+                    value[i] = ((OrdinalNode) split).value;
+                } else if (split instanceof NominalNode) {
+                    nominal[i] = true;
+                    value[i] = ((NominalNode) split).value;
+                } else {
+                    throw new IllegalArgumentException("Unsupported node type: " + node.getClass());
+                }
+                trueChild[i] = add(split.trueChild);
+                falseChild[i] = add(split.falseChild);
+                return i;
+            }
+
+            if (!(node instanceof DecisionNode)) {
+                throw new IllegalArgumentException("Only classification trees can be compiled");
+            }
+
+            int i = leaves++;
+            DecisionNode leaf = (DecisionNode) node;
+            int[] count = leaf.count();
+            if (count.length != k) {
+                throw new IllegalArgumentException(String.format("Invalid number of classes: %d, expected: %d", count.length, k));
+            }
+
+            output[i] = leaf.output();
+            double n = MathEx.sum(count) + k;
+            for (int j = 0; j < k; j++) {
+                posteriori[i * k + j] = (count[j] + 1) / n;
+            }
+            return ~i;
+        }
+    }
+
+    /**
+     * Returns the number of trees.
+     *
+     * @return the number of trees.
+     */
+    public int size() {
+        return root.length;
+    }
+
+    /**
+     * Returns the number of classes.
+     *
+     * @return the number of classes.
+     */
+    public int numClasses() {
+        return k;
+    }
+
+    /**
+     * Copies the predictors of an instance into the buffer of calling thread.
+     * The buffer is reused by the next call in the same thread.
+     *
+     * @param x the instance.
+     * @return the predictors.
+     */
+    public double[] row(Tuple x) {
+        double[] a = row.get();
+        for (int j = 0; j < p; j++) {
+            a[j] = x.getDouble(j);
+        }
+        return a;
+    }
+
+    /**
+     * Copies the predictors of a row into the buffer of calling thread.
+     * The buffer is reused by the next call in the same thread.
+     *
+     * @param x the data frame of predictors.
+     * @param i the row index.
+     * @return the predictors.
+     */
+    public double[] row(DataFrame x, int i) {
+        double[] a = row.get();
+        for (int j = 0; j < p; j++) {
+            a[j] = x.column(j).getDouble(i);
+        }
+        return a;
+    }
+
+    /**
+     * Returns the columns of predictors as double arrays, which is the
+     * input of batch prediction.
+     *
+     * @param x the data frame of predictors.
+     * @return the columns of predictors.
+     */
+    public static double[][] columns(DataFrame x) {
+        int p = x.ncol();
+        double[][] columns = new double[p][];
+        for (int j = 0; j < p; j++) {
+            columns[j] = x.column(j).toDoubleArray();
+        }
+        return columns;
+    }
+
+    /**
+     * Returns the index of leaf that an instance falls into.
+     *
+     * @param tree the index of tree.
+     * @param x    the predictors.
+     * @return the index of leaf.
+     */
+    public int leaf(int tree, double[] x) {
+        int node = root[tree];
+        while (node >= 0) {
+            double xj = x[feature[node]];
+            boolean branch = nominal[node] ? (int) xj == (int) value[node] : xj <= value[node];
+            node = branch ? trueChild[node] : falseChild[node];
+        }
+        return ~node;
+    }
+
+    /**
+     * Returns the index of leaf that a row of columnar data falls into.
+     *
+     * @param tree the index of tree.
+     * @param x    the columns of predictors.
+     * @param i    the row index.
+     * @return the index of leaf.
+     */
+    public int leaf(int tree, double[][] x, int i) {
+        int node = root[tree];
+        while (node >= 0) {
+            double xj = x[feature[node]][i];
+            boolean branch = nominal[node] ? (int) xj == (int) value[node] : xj <= value[node];
+            node = branch ? trueChild[node] : falseChild[node];
+        }
+        return ~node;
+    }
+
+    /**
+     * Predicts the class label of a row of columnar data with a tree.
+     *
+     * @param tree the index of tree.
+     * @param x    the columns of predictors.
+     * @param i    the row index.
+     * @return the predicted class label.
+     */
+    public int predict(int tree, double[][] x, int i) {
+        return output[leaf(tree, x, i)];
+    }
+
+    /**
+     * Predicts the class label of a row of columnar data with a tree
+     * and also returns the a posteriori probabilities of leaf.
+     *
+     * @param tree the index of tree.
+     * @param x    the columns of predictors.
+     * @param i    the row index.
+     * @param prob the a posteriori probabilities on output.
+     * @return the predicted class label.
+     */
+    public int predict(int tree, double[][] x, int i, double[] prob) {
+        int leaf = leaf(tree, x, i);
+        System.arraycopy(posteriori, leaf * k, prob, 0, k);
+        return output[leaf];
+    }
+
+    /**
+     * Predicts the class label of an instance with a tree.
+     *
+     * @param tree the index of tree.
+     * @param x    the predictors.
+     * @return the predicted class label.
+     */
+    public int predict(int tree, double[] x) {
+        return output[leaf(tree, x)];
+    }
+
+    /**
+     * Predicts the class label of an instance with a tree and
+     * also returns the a posteriori probabilities of leaf.
+     *
+     * @param tree the index of tree.
+     * @param x    the predictors.
+     * @param prob the a posteriori probabilities on output.
+     * @return the predicted class label.
+     */
+    public int predict(int tree, double[] x, double[] prob) {
+        int leaf = leaf(tree, x);
+        System.arraycopy(posteriori, leaf * k, prob, 0, k);
+        return output[leaf];
+    }
+
+    /**
+     * Returns the majority vote of trees.
+     *
+     * @param x the predictors.
+     * @return the predicted class label.
+     */
+    public int vote(double[] x) {
+        int[] y = votes.get();
+        Arrays.fill(y, 0);
+        for (int t = 0; t < root.length; t++) {
+            y[output[leaf(t, x)]]++;
+        }
+        return MathEx.whichMax(y);
+    }
+
+    /**
+     * Returns the weighted vote of the a posteriori probabilities of trees.
+     *
+     * @param x    the predictors.
+     * @param prob the a posteriori probabilities on output.
+     * @return the predicted class label.
+     */
+    public int vote(double[] x, double[] prob) {
+        Arrays.fill(prob, 0.0);
+        for (int t = 0; t < root.length; t++) {
+            int leaf = leaf(t, x) * k;
+            double w = weight[t];
+            for (int i = 0; i < k; i++) {
+                prob[i] += w * posteriori[leaf + i];
+            }
+        }
+
+        MathEx.unitize1(prob);
+        return MathEx.whichMax(prob);
+    }
+
+    /**
+     * Returns the majority votes of trees for all rows of columnar data.
+     * The rows are processed in blocks and each tree is evaluated over
+     * the whole block before moving to the next tree.
+     *
+     * @param x the columns of predictors.
+     * @param n the number of rows.
+     * @return the predicted class labels.
+     */
+    public int[] vote(double[][] x, int n) {
+        int[] y = new int[n];
+        int[] count = new int[BLOCK * k];
+        for (int lo = 0; lo < n; lo += BLOCK) {
+            int hi = Math.min(n, lo + BLOCK);
+            Arrays.fill(count, 0);
+            for (int t = 0; t < root.length; t++) {
+                for (int i = lo; i < hi; i++) {
+                    count[(i - lo) * k + output[leaf(t, x, i)]]++;
+                }
+            }
+
+            for (int i = lo; i < hi; i++) {
+                int offset = (i - lo) * k;
+                int which = 0;
+                for (int j = 1; j < k; j++) {
+                    if (count[offset + j] > count[offset + which]) {
+                        which = j;
+                    }
+                }
+                y[i] = which;
+            }
+        }
+        return y;
+    }
+
+    /**
+     * Returns the weighted votes of the a posteriori probabilities of
+     * trees for all rows of columnar data. The rows are processed in
+     * blocks and each tree is evaluated over the whole block before
+     * moving to the next tree.
+     *
+     * @param x    the columns of predictors.
+     * @param n    the number of rows.
+     * @param prob the a posteriori probabilities of each row on output.
+     * @return the predicted class labels.
+     */
+    public int[] vote(double[][] x, int n, double[][] prob) {
+        int[] y = new int[n];
+        for (int lo = 0; lo < n; lo += BLOCK) {
+            int hi = Math.min(n, lo + BLOCK);
+            for (int i = lo; i < hi; i++) {
+                Arrays.fill(prob[i], 0.0);
+            }
+
+            for (int t = 0; t < root.length; t++) {
+                double w = weight[t];
+                for (int i = lo; i < hi; i++) {
+                    int leaf = leaf(t, x, i) * k;
+                    double[] pi = prob[i];
+                    for (int j = 0; j < k; j++) {
+                        pi[j] += w * posteriori[leaf + j];
+                    }
+                }
+            }
+
+            for (int i = lo; i < hi; i++) {
+                MathEx.unitize1(prob[i]);
+                y[i] = MathEx.whichMax(prob[i]);
+            }
+        }
+        return y;
+    }
+}
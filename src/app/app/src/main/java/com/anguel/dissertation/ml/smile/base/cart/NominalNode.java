@@ -53,6 +53,15 @@ public class NominalNode extends InternalNode {
         this.value = value;
     }
 
+    /**
+     * Returns the split value.
+     *
+     * @return the split value.
+     */
+    public int value() {
+        return value;
+    }
+
     @Override
     public LeafNode predict(Tuple x) {
         return x.getInt(feature) == value ? trueChild.predict(x) : falseChild.predict(x);
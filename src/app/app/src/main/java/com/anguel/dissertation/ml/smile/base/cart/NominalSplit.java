@@ -17,7 +17,7 @@
 
 package com.anguel.dissertation.ml.smile.base.cart;
 
-import java.util.function.IntPredicate;
+import com.anguel.dissertation.ml.smile.data.vector.BaseVector;
 
 /**
  * The data about of a potential split for a leaf node.
@@ -30,11 +30,6 @@ public class NominalSplit extends Split {
      */
     final int value;
 
-    /**
-     * The lambda returns true if the sample passes the test on the split feature.
-     */
-    final IntPredicate predicate;
-
     /**
      * Constructor.
      *
@@ -46,12 +41,10 @@ public class NominalSplit extends Split {
      * @param hi         the upper bound of sample index in the node.
      * @param trueCount  the number of samples in true branch child.
      * @param falseCount the number of samples false branch child.
-     * @param predicate  the lambda returns true if the sample passes the test on the split feature.
      */
-    public NominalSplit(LeafNode leaf, int feature, int value, double score, int lo, int hi, int trueCount, int falseCount, IntPredicate predicate) {
+    public NominalSplit(LeafNode leaf, int feature, int value, double score, int lo, int hi, int trueCount, int falseCount) {
         super(leaf, feature, score, lo, hi, trueCount, falseCount);
         this.value = value;
-        this.predicate = predicate;
     }
 
     @Override
@@ -60,7 +53,7 @@ public class NominalSplit extends Split {
     }
 
     @Override
-    public IntPredicate predicate() {
-        return predicate;
+    public boolean test(BaseVector x, int i) {
+        return x.getInt(i) == value;
     }
 }
@@ -51,6 +51,15 @@ public class OrdinalNode extends InternalNode {
         this.value = value;
     }
 
+    /**
+     * Returns the split value.
+     *
+     * @return the split value.
+     */
+    public double value() {
+        return value;
+    }
+
     @Override
     public LeafNode predict(Tuple x) {
         return x.getDouble(feature) <= value ? trueChild.predict(x) : falseChild.predict(x);
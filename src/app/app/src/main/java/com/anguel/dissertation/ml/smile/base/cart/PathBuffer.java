@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2010-2020 Haifeng Li. All rights reserved.
+ *
+ * Smile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Smile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Smile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.anguel.dissertation.ml.smile.base.cart;
+
+/**
+ * The paths of unique features split on so far during the recursive
+ * traverse of TreeSHAP, preallocated for a maximum tree depth. Each
+ * level of recursion extends a copy of its parent's path in its own
+ * slice of the arrays, right after the parent's slice, so that a path
+ * is undone by simply returning to the parent. The buffer grows as
+ * deeper trees are explained, and is reused by every tree and instance.
+ * <p>
+ * A buffer must not be shared by concurrent threads.
+ *
+ * @author Haifeng Li
+ */
+public class PathBuffer {
+    /**
+     * The unique feature index.
+     */
+    int[] d;
+    /**
+     * The fraction of zero paths (where this feature is not
+     * in the non-zero index set S) that flow through this path.
+     */
+    double[] z;
+    /**
+     * The fraction of one paths (where this feature is
+     * in the non-zero index set S) that flow through this path.
+     */
+    double[] o;
+    /**
+     * The proportion of sets of a given cardinality that are present.
+     */
+    double[] w;
+    /**
+     * The working posteriori probabilities of a leaf node.
+     */
+    double[] prob;
+    /**
+     * The working counts of features.
+     */
+    private int[] count = new int[0];
+    /**
+     * The maximum tree depth that the buffer can hold.
+     */
+    private int depth;
+
+    /**
+     * Constructor.
+     */
+    public PathBuffer() {
+        this(16);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param depth the maximum depth of trees to explain.
+     */
+    public PathBuffer(int depth) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("Invalid tree depth: " + depth);
+        }
+
+        allocate(depth);
+        this.prob = new double[2];
+    }
+
+    /**
+     * Allocates the arrays for the trees of given depth.
+     */
+    private void allocate(int depth) {
+        // the slice at recursion level t starts after the slices of levels 0 to t-1,
+        // which hold at most 1, 2, ..., t elements.
+        int size = (depth + 1) * (depth + 2) / 2;
+        this.d = new int[size];
+        this.z = new double[size];
+        this.o = new double[size];
+        this.w = new double[size];
+        this.depth = depth;
+    }
+
+    /**
+     * Ensures that the buffer can hold the paths of a tree.
+     *
+     * @param depth the maximum depth of tree.
+     * @param k     the number of classes, or 1 for regression.
+     */
+    void reserve(int depth, int k) {
+        if (depth > this.depth) {
+            allocate(depth);
+        }
+
+        if (k > prob.length) {
+            prob = new double[k];
+        }
+    }
+
+    /**
+     * Returns the working counts of features, which are all zero
+     * when not in use.
+     *
+     * @param p the number of features.
+     */
+    int[] count(int p) {
+        if (p > count.length) {
+            count = new int[p];
+        }
+        return count;
+    }
+
+    /**
+     * To keep track of each possible subset size during the recursion,
+     * grows all these subsets according to a given fraction of ones and
+     * zeros. The parent's path is copied to the new slice and extended
+     * by one element.
+     *
+     * @param parent the offset of parent's path.
+     * @param offset the offset of the extended path.
+     * @param l      the length of parent's path.
+     */
+    void extend(int parent, int offset, int l, double pz, double po, int pi) {
+        int[] d = this.d;
+        double[] z = this.z;
+        double[] o = this.o;
+        double[] w = this.w;
+
+        System.arraycopy(d, parent, d, offset, l);
+        System.arraycopy(z, parent, z, offset, l);
+        System.arraycopy(o, parent, o, offset, l);
+        System.arraycopy(w, parent, w, offset, l);
+
+        d[offset + l] = pi;
+        z[offset + l] = pz;
+        o[offset + l] = po;
+        w[offset + l] = l == 0 ? 1 : 0;
+
+        for (int i = l - 1; i >= 0; i--) {
+            w[offset + i + 1] += po * w[offset + i] * (i + 1) / (l + 1);
+            w[offset + i] = pz * w[offset + i] * (l - i) / (l + 1);
+        }
+    }
+
+    /**
+     * Undo previous extensions when we split on the same feature twice.
+     * The path is shortened by one element.
+     *
+     * @param offset the offset of path.
+     * @param l      the index of last element of path.
+     * @param i      the index of element to remove.
+     */
+    void unwind(int offset, int l, int i) {
+        int[] d = this.d;
+        double[] z = this.z;
+        double[] o = this.o;
+        double[] w = this.w;
+
+        double po = o[offset + i];
+        double pz = z[offset + i];
+
+        double n = w[offset + l];
+        if (po != 0) {
+            for (int j = l - 1; j >= 0; j--) {
+                double t = w[offset + j];
+                w[offset + j] = n * (l + 1) / ((j + 1) * po);
+                n = t - w[offset + j] * pz * (l - j) / (l + 1);
+            }
+        } else {
+            for (int j = l - 1; j >= 0; j--) {
+                w[offset + j] = (w[offset + j] * (l + 1)) / (pz * (l - j));
+            }
+        }
+
+        for (int j = i; j < l; j++) {
+            d[offset + j] = d[offset + j + 1];
+            z[offset + j] = z[offset + j + 1];
+            o[offset + j] = o[offset + j + 1];
+        }
+    }
+
+    /**
+     * Return the total permutation weight if we unwind a previous
+     * extension in the decision path.
+     *
+     * @param offset the offset of path.
+     * @param l      the index of last element of path.
+     * @param i      the index of element to unwind.
+     */
+    double unwoundSum(int offset, int l, int i) {
+        double[] w = this.w;
+        double po = o[offset + i];
+        double pz = z[offset + i];
+        double sum = 0.0;
+
+        double n = w[offset + l];
+        if (po != 0) {
+            for (int j = l - 1; j >= 0; j--) {
+                double t = n / ((j + 1) * po);
+                sum += t;
+                n = w[offset + j] - t * pz * (l - j);
+            }
+        } else {
+            for (int j = l - 1; j >= 0; j--) {
+                sum += w[offset + j] / (pz * (l - j));
+            }
+        }
+
+        return sum * (l + 1);
+    }
+}
@@ -0,0 +1,370 @@
+/*
+ * Copyright (c) 2010-2020 Haifeng Li. All rights reserved.
+ *
+ * Smile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Smile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Smile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.anguel.dissertation.ml.smile.base.cart;
+
+import com.anguel.dissertation.ml.smile.data.Tuple;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The precomputed SHAP weights of the leaves of a tree (Fast TreeSHAP).
+ * In the TreeSHAP recursion, the contribution of a leaf to the SHAP value
+ * of a feature on its path depends on the instance only through which of
+ * the unique features of the path the instance satisfies, i.e. goes down
+ * the path at every split on the feature. For a leaf of m unique features,
+ * the table holds the weights of the features for all 2<sup>m</sup>
+ * subsets of satisfied features. An instance is then explained by one
+ * traverse of the tree that collects the subset at each leaf, and the
+ * SHAP values are the sums of the looked up weights times leaf outputs,
+ * instead of the O(LD<sup>2</sup>) recursion of path weights for every
+ * instance.
+ * <p>
+ * The table of a tree takes {@link #size(CART)} weights, which grows
+ * exponentially with the number of unique features on the paths.
+ * It pays off when many instances are explained by the same tree.
+ *
+ * <h2>References</h2>
+ * <ol>
+ * <li>Jilei Yang. Fast TreeSHAP: Accelerating SHAP Value Computation for Trees. arXiv:2109.09847, 2021.</li>
+ * </ol>
+ *
+ * @author Haifeng Li
+ */
+public class ShapTable {
+    /**
+     * The maximum number of unique features on the path of a leaf.
+     */
+    private static final int MAX_FEATURES = 30;
+
+    /**
+     * The tree.
+     */
+    private final CART tree;
+    /**
+     * The internal nodes in pre-order.
+     */
+    private final InternalNode[] nodes;
+    /**
+     * The true branch child of internal nodes. A non-negative value is
+     * the index of internal node, otherwise the bitwise complement of
+     * the index of leaf.
+     */
+    private final int[] trueChild;
+    /**
+     * The false branch child of internal nodes, coded as trueChild.
+     */
+    private final int[] falseChild;
+    /**
+     * The root node, coded as trueChild.
+     */
+    private final int root;
+    /**
+     * The unique features on the path of each leaf.
+     */
+    private final int[][] features;
+    /**
+     * The weights of each leaf, of size 2<sup>m</sup> x m. The row of a
+     * subset of satisfied features, as the bit mask of the indices in
+     * features, holds the weights of features, i.e. the unwound sum of
+     * the path times the difference of one and zero fractions.
+     */
+    private final double[][] weights;
+    /**
+     * The output of each leaf, the posteriori probabilities for
+     * classification or the regression output.
+     */
+    private final double[][] output;
+    /**
+     * The number of predictors.
+     */
+    private final int p;
+    /**
+     * The number of outputs, the number of classes or 1 for regression.
+     */
+    private final int k;
+
+    /**
+     * Constructor.
+     *
+     * @param tree the tree.
+     */
+    public ShapTable(CART tree) {
+        long size = size(tree);
+        if (size == Long.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many unique features on the paths of tree");
+        }
+
+        this.tree = tree;
+        this.p = tree.schema.length();
+
+        List<InternalNode> nodes = new ArrayList<>();
+        List<int[]> children = new ArrayList<>();
+        List<int[]> features = new ArrayList<>();
+        List<double[]> weights = new ArrayList<>();
+        List<double[]> output = new ArrayList<>();
+
+        Builder builder = new Builder(tree.root.depth(), nodes, children, features, weights, output);
+        this.root = builder.visit(tree.root, 0);
+
+        this.nodes = nodes.toArray(new InternalNode[0]);
+        this.trueChild = new int[nodes.size()];
+        this.falseChild = new int[nodes.size()];
+        for (int i = 0; i < children.size(); i++) {
+            this.trueChild[i] = children.get(i)[0];
+            this.falseChild[i] = children.get(i)[1];
+        }
+        this.features = features.toArray(new int[0][]);
+        this.weights = weights.toArray(new double[0][]);
+        this.output = output.toArray(new double[0][]);
+        this.k = this.output[0].length;
+    }
+
+    /**
+     * Returns the number of weights in the table of a tree.
+     *
+     * @param tree the tree.
+     * @return the number of weights, or {@code Long.MAX_VALUE} if a path
+     * has too many unique features to tabulate.
+     */
+    public static long size(CART tree) {
+        return size(tree.root, new int[tree.schema.length()], 0);
+    }
+
+    /**
+     * Returns the number of weights of the leaves in a subtree.
+     *
+     * @param node  the root of subtree.
+     * @param count the number of splits on each feature along the path to the node.
+     * @param m     the number of unique features along the path to the node.
+     */
+    private static long size(Node node, int[] count, int m) {
+        if (node instanceof InternalNode) {
+            InternalNode split = (InternalNode) node;
+            int j = split.feature;
+            if (count[j]++ == 0) m++;
+            long size = size(split.trueChild, count, m);
+            if (size != Long.MAX_VALUE) {
+                long other = size(split.falseChild, count, m);
+                size = other == Long.MAX_VALUE || size > Long.MAX_VALUE - other ? Long.MAX_VALUE : size + other;
+            }
+            count[j]--;
+            return size;
+        }
+
+        return m > MAX_FEATURES ? Long.MAX_VALUE : (1L << m) * m;
+    }
+
+    /**
+     * Returns the number of SHAP values of an instance.
+     *
+     * @return the number of SHAP values, {@code p x k}.
+     */
+    public int length() {
+        return p * k;
+    }
+
+    /**
+     * Adds the SHAP values of an instance to an accumulator.
+     *
+     * @param x    an instance.
+     * @param phi  the accumulator of SHAP values, of the size {@code p x k}.
+     * @param path the buffer of which only the working counts are used.
+     * @return the accumulator.
+     */
+    public double[] shap(Tuple x, double[] phi, PathBuffer path) {
+        traverse(root, tree.predictors(x), phi, path.count(p));
+        return phi;
+    }
+
+    /**
+     * Visits every leaf with the number of splits on each feature where
+     * the instance goes to the other branch along the path.
+     */
+    private void traverse(int node, Tuple x, double[] phi, int[] cold) {
+        if (node >= 0) {
+            InternalNode split = nodes[node];
+            int j = split.feature;
+            int hot, other;
+            if (split.branch(x)) {
+                hot = trueChild[node];
+                other = falseChild[node];
+            } else {
+                hot = falseChild[node];
+                other = trueChild[node];
+            }
+
+            traverse(hot, x, phi, cold);
+            cold[j]++;
+            traverse(other, x, phi, cold);
+            cold[j]--;
+        } else {
+            int leaf = ~node;
+            int[] f = features[leaf];
+            int m = f.length;
+
+            int mask = 0;
+            for (int i = 0; i < m; i++) {
+                if (cold[f[i]] == 0) mask |= 1 << i;
+            }
+
+            double[] w = weights[leaf];
+            double[] v = output[leaf];
+            int base = mask * m;
+            for (int i = 0; i < m; i++) {
+                double wi = w[base + i];
+                int di = f[i] * k;
+                for (int l = 0; l < k; l++) {
+                    phi[di + l] += wi * v[l];
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the nodes and computes the weights of leaves.
+     */
+    private static class Builder {
+        /**
+         * The unique features along the path to the current node.
+         */
+        final int[] d;
+        /**
+         * The zero fractions of the unique features along the path.
+         */
+        final double[] z;
+        /**
+         * The internal nodes in pre-order.
+         */
+        final List<InternalNode> nodes;
+        /**
+         * The children of internal nodes.
+         */
+        final List<int[]> children;
+        /**
+         * The unique features of leaves.
+         */
+        final List<int[]> features;
+        /**
+         * The weights of leaves.
+         */
+        final List<double[]> weights;
+        /**
+         * The output of leaves.
+         */
+        final List<double[]> output;
+        /**
+         * The buffer of paths.
+         */
+        final PathBuffer path;
+
+        /**
+         * Constructor.
+         */
+        Builder(int depth, List<InternalNode> nodes, List<int[]> children, List<int[]> features, List<double[]> weights, List<double[]> output) {
+            this.d = new int[depth];
+            this.z = new double[depth];
+            this.nodes = nodes;
+            this.children = children;
+            this.features = features;
+            this.weights = weights;
+            this.output = output;
+            this.path = new PathBuffer(depth);
+        }
+
+        /**
+         * Visits a node and returns its code.
+         *
+         * @param node the node.
+         * @param m    the number of unique features along the path to the node.
+         */
+        int visit(Node node, int m) {
+            if (node instanceof InternalNode) {
+                InternalNode split = (InternalNode) node;
+                int index = nodes.size();
+                int[] child = new int[2];
+                nodes.add(split);
+                children.add(child);
+
+                child[0] = visit(split, split.trueChild, m);
+                child[1] = visit(split, split.falseChild, m);
+                return index;
+            }
+
+            int leaf = features.size();
+            features.add(Arrays.copyOf(d, m));
+            weights.add(weights(m));
+            if (node instanceof DecisionNode) {
+                int[] count = ((DecisionNode) node).count();
+                output.add(DecisionNode.posteriori(count, new double[count.length]));
+            } else {
+                output.add(new double[]{((RegressionNode) node).output()});
+            }
+            return ~leaf;
+        }
+
+        /**
+         * Visits a child with the zero fraction of the split feature.
+         */
+        int visit(InternalNode split, Node child, int m) {
+            int j = split.feature;
+            double r = (double) child.size() / split.size();
+
+            int i = 0;
+            while (i < m && d[i] != j) i++;
+
+            if (i < m) {
+                double zi = z[i];
+                z[i] = zi * r;
+                int code = visit(child, m);
+                z[i] = zi;
+                return code;
+            }
+
+            d[m] = j;
+            z[m] = r;
+            return visit(child, m + 1);
+        }
+
+        /**
+         * Returns the weights of the leaf whose path has m unique features.
+         */
+        double[] weights(int m) {
+            double[] w = new double[(1 << m) * m];
+            path.reserve(m, 1);
+
+            for (int mask = 0; mask < (1 << m); mask++) {
+                // the path of the recursion, led by the dummy element of the root
+                path.extend(0, 0, 0, 1, 1, -1);
+                int offset = 0;
+                for (int i = 0; i < m; i++) {
+                    int next = offset + i + 1;
+                    path.extend(offset, next, i + 1, z[i], (mask >> i) & 1, d[i]);
+                    offset = next;
+                }
+
+                for (int i = 1; i <= m; i++) {
+                    w[mask * m + i - 1] = path.unwoundSum(offset, m, i) * (path.o[offset + i] - path.z[offset + i]);
+                }
+            }
+
+            return w;
+        }
+    }
+}
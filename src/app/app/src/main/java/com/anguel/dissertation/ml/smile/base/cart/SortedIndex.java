@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2010-2020 Haifeng Li. All rights reserved.
+ *
+ * Smile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Smile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Smile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.anguel.dissertation.ml.smile.base.cart;
+
+import com.anguel.dissertation.ml.smile.data.DataFrame;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The index of training values in ascending order, shared by all trees
+ * of an ensemble. The index itself is never modified. A tree reads it
+ * through the mask of its bootstrap sample counts into a workspace,
+ * which is rearranged during training so that the values of each node
+ * occupy a contiguous range.
+ * <p>
+ * The workspaces are pooled. A tree returns its workspace when it is
+ * built, and the next tree reuses the arrays. Therefore, the number of
+ * workspaces allocated during training is the number of trees grown
+ * concurrently rather than the number of trees. The pool is released
+ * with the index when the training is done.
+ *
+ * @author Haifeng Li
+ */
+public class SortedIndex {
+    /**
+     * The index of training values in ascending order. Only numeric
+     * attributes are sorted, others have a null in the array.
+     */
+    private final int[][] order;
+    /**
+     * The number of training instances.
+     */
+    private final int n;
+    /**
+     * The idle workspaces.
+     */
+    private final ConcurrentLinkedQueue<Workspace> pool = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Constructor.
+     *
+     * @param x the training data.
+     */
+    public SortedIndex(DataFrame x) {
+        this(CART.order(x), x.size());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param x       the training data.
+     * @param threads the number of threads to sort the columns.
+     */
+    public SortedIndex(DataFrame x, int threads) {
+        this(CART.order(x, threads), x.size());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param order the index of training values in ascending order. Note
+     *              that only numeric attributes need be sorted.
+     * @param n     the number of training instances.
+     */
+    public SortedIndex(int[][] order, int n) {
+        this.order = order;
+        this.n = n;
+    }
+
+    /**
+     * Returns the index of training values in ascending order.
+     * The arrays must not be modified.
+     *
+     * @return the index of training values in ascending order.
+     */
+    public int[][] order() {
+        return order;
+    }
+
+    /**
+     * Returns the number of training instances.
+     *
+     * @return the number of training instances.
+     */
+    public int size() {
+        return n;
+    }
+
+    /**
+     * Takes an idle workspace, or creates a new one, and fills it with
+     * the index of the instances in the sample set.
+     *
+     * @param samples the sample set. samples[i] is the number of sampling
+     *                for instance i.
+     * @return the workspace.
+     */
+    Workspace acquire(int[] samples) {
+        Workspace workspace = pool.poll();
+        if (workspace == null) {
+            workspace = new Workspace(order, n);
+        }
+
+        for (int j = 0; j < order.length; j++) {
+            int[] src = order[j];
+            if (src != null) {
+                int[] dst = workspace.order[j];
+                int m = 0;
+                for (int o : src) {
+                    if (samples[o] > 0) {
+                        dst[m++] = o;
+                    }
+                }
+            }
+        }
+
+        return workspace;
+    }
+
+    /**
+     * Returns a workspace to the pool.
+     *
+     * @param workspace the workspace no longer used.
+     */
+    void release(Workspace workspace) {
+        pool.offer(workspace);
+    }
+
+    /**
+     * The scratch memory of building a tree that is proportional
+     * to the size of training data.
+     */
+    static class Workspace {
+        /**
+         * The index of the sampled values of each numeric attribute,
+         * rearranged during training. The arrays are as long as the
+         * training data, only the leading entries are used.
+         */
+        final int[][] order;
+        /**
+         * The partition buffer.
+         */
+        final int[] buffer;
+        /**
+         * The mask of the samples going to the true branch of a split.
+         */
+        final boolean[] mask;
+
+        /**
+         * Constructor.
+         *
+         * @param order the shared index of training values.
+         * @param n     the number of training instances.
+         */
+        Workspace(int[][] order, int n) {
+            this.order = new int[order.length][];
+            for (int j = 0; j < order.length; j++) {
+                if (order[j] != null) {
+                    this.order[j] = new int[n];
+                }
+            }
+            this.buffer = new int[n];
+            this.mask = new boolean[n];
+        }
+    }
+}
@@ -17,9 +17,10 @@
 
 package com.anguel.dissertation.ml.smile.base.cart;
 
+import com.anguel.dissertation.ml.smile.data.vector.BaseVector;
+
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.function.IntPredicate;
 import java.util.stream.Collectors;
 
 /**
@@ -97,6 +98,11 @@ public abstract class Split {
      */
     int depth = 1;
 
+    /**
+     * The histogram of the node in the binned mode, if it is kept for the children.
+     */
+    int[] histogram;
+
     /**
      * Constructor.
      *
@@ -128,11 +134,13 @@ public abstract class Split {
     public abstract InternalNode toNode(Node trueChild, Node falseChild);
 
     /**
-     * Returns the lambda that tests on the split feature.
+     * Returns true if the sample passes the test on the split feature.
      *
-     * @return the lambda that tests on the split feature.
+     * @param x the column of split feature.
+     * @param i the index of sample.
+     * @return true if the sample passes the test on the split feature.
      */
-    public abstract IntPredicate predicate();
+    public abstract boolean test(BaseVector x, int i);
 
     @Override
     public String toString() {
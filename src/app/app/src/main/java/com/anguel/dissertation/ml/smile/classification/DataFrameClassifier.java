@@ -18,6 +18,7 @@
 package com.anguel.dissertation.ml.smile.classification;
 
 import com.anguel.dissertation.ml.smile.data.DataFrame;
+import com.anguel.dissertation.ml.smile.data.RowCursor;
 import com.anguel.dissertation.ml.smile.data.Tuple;
 import com.anguel.dissertation.ml.smile.data.formula.Formula;
 import com.anguel.dissertation.ml.smile.data.type.StructType;
@@ -47,10 +48,10 @@ public interface DataFrameClassifier {
         // Binds the formula to the data frame's schema in case that
         // it is different from that of training data.
         formula().bind(data.schema());
-        int n = data.size();
-        int[] y = new int[n];
-        for (int i = 0; i < n; i++) {
-            y[i] = predict(data.get(i));
+        int[] y = new int[data.size()];
+        RowCursor row = data.cursor();
+        while (row.next()) {
+            y[row.index()] = predict(row);
         }
         return y;
     }
@@ -17,12 +17,15 @@
 
 package com.anguel.dissertation.ml.smile.classification;
 
+import com.anguel.dissertation.ml.smile.base.cart.BestSplit;
+import com.anguel.dissertation.ml.smile.base.cart.Binning;
 import com.anguel.dissertation.ml.smile.base.cart.CART;
 import com.anguel.dissertation.ml.smile.base.cart.DecisionNode;
+import com.anguel.dissertation.ml.smile.base.cart.FlatForest;
 import com.anguel.dissertation.ml.smile.base.cart.LeafNode;
-import com.anguel.dissertation.ml.smile.base.cart.NominalSplit;
-import com.anguel.dissertation.ml.smile.base.cart.OrdinalSplit;
+import com.anguel.dissertation.ml.smile.base.cart.Node;
 import com.anguel.dissertation.ml.smile.base.cart.Split;
+import com.anguel.dissertation.ml.smile.base.cart.SortedIndex;
 import com.anguel.dissertation.ml.smile.base.cart.SplitRule;
 import com.anguel.dissertation.ml.smile.data.DataFrame;
 import com.anguel.dissertation.ml.smile.data.Tuple;
@@ -33,11 +36,15 @@ import com.anguel.dissertation.ml.smile.data.type.StructField;
 import com.anguel.dissertation.ml.smile.data.type.StructType;
 import com.anguel.dissertation.ml.smile.data.vector.BaseVector;
 import com.anguel.dissertation.ml.smile.math.MathEx;
+import com.anguel.dissertation.ml.smile.math.Random;
 import com.anguel.dissertation.ml.smile.util.IntSet;
 
-import java.util.Optional;
+import java.util.Arrays;
+import java.util.Objects;
 import java.util.PriorityQueue;
 import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Decision tree. A classification/regression tree can be learned by
@@ -126,47 +133,111 @@ public class DecisionTree extends CART implements SoftClassifier<Tuple>, DataFra
      */
     private transient final int[] y;
 
+    /**
+     * The tree compiled into primitive arrays for prediction.
+     * It is built on first use, including after deserialization.
+     */
+    private transient volatile FlatForest flat;
+
+    /**
+     * The working class counts of the true branch of a numeric split.
+     */
+    private transient int[] trueCount;
+    /**
+     * The working class counts of the false branch.
+     */
+    private transient int[] falseCount;
+    /**
+     * The working class counts of each level of a nominal split.
+     */
+    private transient int[][] levelCount;
+    /**
+     * The working number of samples of each level of a nominal split.
+     */
+    private transient int[] levelSize;
+    /**
+     * The working values of the node samples in a randomized split.
+     */
+    private transient double[] values;
+
+    @Override
+    protected DecisionTree fork() {
+        return new DecisionTree(this);
+    }
+
     @Override
     protected double impurity(LeafNode node) {
         return ((DecisionNode) node).impurity(rule);
     }
 
     @Override
-    protected LeafNode newNode(int[] nodeSamples) {
+    protected LeafNode newNode(int lo, int hi) {
         int[] count = new int[k];
-        for (int i : nodeSamples) {
-            count[y[i]] += samples[i];
+        for (int i = lo; i < hi; i++) {
+            int o = index[i];
+            count[y[o]] += samples[o];
         }
         return new DecisionNode(count);
     }
 
     @Override
-    protected Optional<Split> findBestSplit(LeafNode leaf, int j, double impurity, int lo, int hi) {
+    protected int[] histogram(int lo, int hi, int[] buffer) {
+        int[] hist = buffer;
+        if (hist == null) {
+            hist = new int[bins.size() * k];
+        } else {
+            Arrays.fill(hist, 0);
+        }
+
+        int p = schema.length();
+        for (int j = 0; j < p; j++) {
+            if (bins.isBinned(j)) {
+                byte[] bin = bins.column(j).array();
+                int offset = bins.offset(j) * k;
+                for (int i = lo; i < hi; i++) {
+                    int o = index[i];
+                    hist[offset + (bin[o] & 0xFF) * k + y[o]] += samples[o];
+                }
+            }
+        }
+
+        return hist;
+    }
+
+    @Override
+    protected boolean findBestSplit(LeafNode leaf, int j, double impurity, int lo, int hi, BestSplit best) {
         DecisionNode node = (DecisionNode) leaf;
         BaseVector xj = x.column(j);
-        int[] falseCount = new int[k];
+        int[] count = node.count();
+        int size = node.size();
+        int[] falseCount = this.falseCount;
 
-        Split split = null;
+        double splitValue = 0.0;
         double splitScore = 0.0;
         int splitTrueCount = 0;
         int splitFalseCount = 0;
 
         Measure measure = schema.field(j).measure;
         if (measure instanceof NominalScale) {
-            int splitValue = -1;
-
             NominalScale scale = (NominalScale) measure;
             int m = scale.size();
-            int[][] trueCount = new int[m][k];
+            int[][] trueCount = levelCount;
+            int[] levelSize = this.levelSize;
+            for (int l = 0; l < m; l++) {
+                Arrays.fill(trueCount[l], 0);
+                levelSize[l] = 0;
+            }
 
             for (int i = lo; i < hi; i++) {
                 int o = index[i];
-                trueCount[xj.getInt(o)][y[o]] += samples[o];
+                int l = xj.getInt(o);
+                trueCount[l][y[o]] += samples[o];
+                levelSize[l] += samples[o];
             }
 
             for (int l : scale.values()) {
-                int tc = (int) MathEx.sum(trueCount[l]);
-                int fc = node.size() - tc;
+                int tc = levelSize[l];
+                int fc = size - tc;
 
                 // If either side is too small, skip this value.
                 if (tc < nodeSize || fc < nodeSize) {
@@ -174,10 +245,10 @@ public class DecisionTree extends CART implements SoftClassifier<Tuple>, DataFra
                 }
 
                 for (int q = 0; q < k; q++) {
-                    falseCount[q] = node.count()[q] - trueCount[l][q];
+                    falseCount[q] = count[q] - trueCount[l][q];
                 }
 
-                double gain = impurity - (double) tc / node.size() * DecisionNode.impurity(rule, tc, trueCount[l]) - (double) fc / node.size() * DecisionNode.impurity(rule, fc, falseCount);
+                double gain = impurity - (double) tc / size * DecisionNode.impurity(rule, tc, trueCount[l]) - (double) fc / size * DecisionNode.impurity(rule, fc, falseCount);
 
                 // new best split
                 if (gain > splitScore) {
@@ -187,62 +258,150 @@ public class DecisionTree extends CART implements SoftClassifier<Tuple>, DataFra
                     splitScore = gain;
                 }
             }
+        } else if (bins != null) {
+            // scan the boundaries of bins, the class counts of bins are in the node histogram
+            int[] hist = histogram;
+            int[] trueCount = this.trueCount;
+            Arrays.fill(trueCount, 0);
+            int nbins = bins.bins(j);
+            int tc = 0;
+
+            for (int b = 0, offset = bins.offset(j) * k; b < nbins - 1; b++, offset += k) {
+                int binSize = 0;
+                for (int l = 0; l < k; l++) {
+                    trueCount[l] += hist[offset + l];
+                    binSize += hist[offset + l];
+                }
 
-            if (splitScore > 0.0) {
-                final int value = splitValue;
-                split = new NominalSplit(leaf, j, splitValue, splitScore, lo, hi, splitTrueCount, splitFalseCount, (int o) -> xj.getInt(o) == value);
+                // an empty bin gives the same split as the previous boundary
+                if (binSize == 0) {
+                    continue;
+                }
+
+                tc += binSize;
+                int fc = size - tc;
+
+                // the false branch only gets smaller in the remaining bins
+                if (fc < nodeSize) {
+                    break;
+                }
+
+                // If either side is too small, skip this value.
+                if (tc >= nodeSize) {
+                    for (int l = 0; l < k; l++) {
+                        falseCount[l] = count[l] - trueCount[l];
+                    }
+
+                    double gain = impurity - (double) tc / size * DecisionNode.impurity(rule, tc, trueCount) - (double) fc / size * DecisionNode.impurity(rule, fc, falseCount);
+
+                    // new best split
+                    if (gain > splitScore) {
+                        splitValue = bins.cut(j, b);
+                        splitTrueCount = tc;
+                        splitFalseCount = fc;
+                        splitScore = gain;
+                    }
+                }
+            }
+        } else if (randomized) {
+            // the range of the column in the node, the values are kept for the counting pass
+            double[] values = this.values;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = lo; i < hi; i++) {
+                double xij = xj.getDouble(index[i]);
+                values[i] = xij;
+                if (xij < min) min = xij;
+                if (xij > max) max = xij;
+            }
+
+            // the column is constant in the node and its descendants
+            if (!(max > min)) {
+                return false;
+            }
+
+            double threshold = min + (max - min) * (rng == null ? MathEx.random() : rng.nextDouble());
+
+            int[] trueCount = this.trueCount;
+            Arrays.fill(trueCount, 0);
+            int tc = 0;
+            for (int i = lo; i < hi; i++) {
+                int o = index[i];
+                if (values[i] <= threshold) {
+                    trueCount[y[o]] += samples[o];
+                    tc += samples[o];
+                }
+            }
+
+            int fc = size - tc;
+            // If either side is too small, the column may still be split in the children.
+            if (tc < nodeSize || fc < nodeSize) {
+                return true;
+            }
+
+            for (int l = 0; l < k; l++) {
+                falseCount[l] = count[l] - trueCount[l];
+            }
+
+            splitValue = threshold;
+            splitTrueCount = tc;
+            splitFalseCount = fc;
+            splitScore = impurity - (double) tc / size * DecisionNode.impurity(rule, tc, trueCount) - (double) fc / size * DecisionNode.impurity(rule, fc, falseCount);
+
+            // a random threshold without gain doesn't rule out the column in the children
+            if (splitScore <= 0.0) {
+                return true;
             }
         } else {
-            double splitValue = 0.0;
-            int[] trueCount = new int[k];
+            int[] trueCount = this.trueCount;
+            Arrays.fill(trueCount, 0);
             int[] orderj = order[j];
 
             int first = orderj[lo];
             double prevx = xj.getDouble(first);
             int prevy = y[first];
+            // the running size of true branch
+            int tc = 0;
 
             for (int i = lo; i < hi; i++) {
-                int tc = 0;
-                int fc = 0;
-
                 int o = orderj[i];
                 int yi = y[o];
                 double xij = xj.getDouble(o);
 
                 if (yi != prevy && !MathEx.isZero(xij - prevx, 1E-7)) {
-                    tc = (int) MathEx.sum(trueCount);
-                    fc = node.size() - tc;
-                }
-
-                // If either side is empty, skip this value.
-                if (tc >= nodeSize && fc >= nodeSize) {
-                    for (int l = 0; l < k; l++) {
-                        falseCount[l] = node.count()[l] - trueCount[l];
-                    }
-
-                    double gain = impurity - (double) tc / node.size() * DecisionNode.impurity(rule, tc, trueCount) - (double) fc / node.size() * DecisionNode.impurity(rule, fc, falseCount);
-
-                    // new best split
-                    if (gain > splitScore) {
-                        splitValue = (xij + prevx) / 2;
-                        splitTrueCount = tc;
-                        splitFalseCount = fc;
-                        splitScore = gain;
+                    int fc = size - tc;
+
+                    // If either side is empty, skip this value.
+                    if (tc >= nodeSize && fc >= nodeSize) {
+                        for (int l = 0; l < k; l++) {
+                            falseCount[l] = count[l] - trueCount[l];
+                        }
+
+                        double gain = impurity - (double) tc / size * DecisionNode.impurity(rule, tc, trueCount) - (double) fc / size * DecisionNode.impurity(rule, fc, falseCount);
+
+                        // new best split
+                        if (gain > splitScore) {
+                            splitValue = (xij + prevx) / 2;
+                            splitTrueCount = tc;
+                            splitFalseCount = fc;
+                            splitScore = gain;
+                        }
                     }
                 }
 
                 prevx = xij;
                 prevy = yi;
-                trueCount[prevy] += samples[o];
+                trueCount[yi] += samples[o];
+                tc += samples[o];
             }
+        }
 
-            if (splitScore > 0.0) {
-                final double value = splitValue;
-                split = new OrdinalSplit(leaf, j, splitValue, splitScore, lo, hi, splitTrueCount, splitFalseCount, (int o) -> xj.getDouble(o) <= value);
-            }
+        if (splitScore > 0.0) {
+            best.offer(j, splitValue, splitScore, splitTrueCount, splitFalseCount);
+            return true;
         }
 
-        return Optional.ofNullable(split);
+        return false;
     }
 
     /**
@@ -265,10 +424,183 @@ public class DecisionTree extends CART implements SoftClassifier<Tuple>, DataFra
      *                 that only numeric attributes need be sorted.
      */
     public DecisionTree(DataFrame x, int[] y, StructField response, int k, SplitRule rule, int maxDepth, int maxNodes, int nodeSize, int mtry, int[] samples, int[][] order) {
-        super(x, response, maxDepth, maxNodes, nodeSize, mtry, samples, order);
+        this(x, y, response, k, rule, maxDepth, maxNodes, nodeSize, mtry, samples, order, null);
+    }
+
+    /**
+     * Constructor. Learns a classification tree for AdaBoost and Random Forest
+     * with a dedicated random number generator, so that several trees can be
+     * grown concurrently with reproducible results.
+     *
+     * @param x        the data frame of the explanatory variable.
+     * @param y        the response variables.
+     * @param response the metadata of response variable.
+     * @param k        the number of classes.
+     * @param maxDepth the maximum depth of the tree.
+     * @param maxNodes the maximum number of leaf nodes in the tree.
+     * @param nodeSize the minimum size of leaf nodes.
+     * @param mtry     the number of input variables to pick to split on at each
+     *                 node. It seems that sqrt(p) give generally good performance,
+     *                 where p is the number of variables.
+     * @param rule     the splitting rule.
+     * @param samples  the sample set of instances for stochastic learning.
+     *                 samples[i] is the number of sampling for instance i.
+     * @param order    the index of training values in ascending order. Note
+     *                 that only numeric attributes need be sorted.
+     * @param rng      the random number generator of this tree. If null,
+     *                 the thread local generator of MathEx is used.
+     */
+    public DecisionTree(DataFrame x, int[] y, StructField response, int k, SplitRule rule, int maxDepth, int maxNodes, int nodeSize, int mtry, int[] samples, int[][] order, Random rng) {
+        this(x, y, response, k, rule, maxDepth, maxNodes, nodeSize, mtry, samples, order == null ? null : new SortedIndex(order, x.size()), rng);
+    }
+
+    /**
+     * Constructor. Learns a classification tree for Random Forest, taking
+     * the sampled values from the index shared by all trees of the forest.
+     *
+     * @param x        the data frame of the explanatory variable.
+     * @param y        the response variables.
+     * @param response the metadata of response variable.
+     * @param k        the number of classes.
+     * @param maxDepth the maximum depth of the tree.
+     * @param maxNodes the maximum number of leaf nodes in the tree.
+     * @param nodeSize the minimum size of leaf nodes.
+     * @param mtry     the number of input variables to pick to split on at each
+     *                 node. It seems that sqrt(p) give generally good performance,
+     *                 where p is the number of variables.
+     * @param rule     the splitting rule.
+     * @param samples  the sample set of instances for stochastic learning.
+     *                 samples[i] is the number of sampling for instance i.
+     * @param order    the shared index of training values in ascending order.
+     *                 If null, the training values are sorted for this tree.
+     * @param rng      the random number generator of this tree. If null,
+     *                 the thread local generator of MathEx is used.
+     */
+    public DecisionTree(DataFrame x, int[] y, StructField response, int k, SplitRule rule, int maxDepth, int maxNodes, int nodeSize, int mtry, int[] samples, SortedIndex order, Random rng) {
+        super(x, response, maxDepth, maxNodes, nodeSize, mtry, samples, order, rng);
         this.k = k;
         this.y = y;
         this.rule = rule;
+        grow(null);
+    }
+
+    /**
+     * Constructor. Learns a classification tree for Random Forest, finding
+     * the splits of numeric columns from the class histograms of their bins.
+     *
+     * @param x        the data frame of the explanatory variable.
+     * @param y        the response variables.
+     * @param response the metadata of response variable.
+     * @param k        the number of classes.
+     * @param maxDepth the maximum depth of the tree.
+     * @param maxNodes the maximum number of leaf nodes in the tree.
+     * @param nodeSize the minimum size of leaf nodes.
+     * @param mtry     the number of input variables to pick to split on at each
+     *                 node. It seems that sqrt(p) give generally good performance,
+     *                 where p is the number of variables.
+     * @param rule     the splitting rule.
+     * @param samples  the sample set of instances for stochastic learning.
+     *                 samples[i] is the number of sampling for instance i.
+     * @param bins     the numeric columns quantized into bins.
+     * @param rng      the random number generator of this tree. If null,
+     *                 the thread local generator of MathEx is used.
+     */
+    public DecisionTree(DataFrame x, int[] y, StructField response, int k, SplitRule rule, int maxDepth, int maxNodes, int nodeSize, int mtry, int[] samples, Binning bins, Random rng) {
+        super(x, response, maxDepth, maxNodes, nodeSize, mtry, samples, bins, rng);
+        this.k = k;
+        this.y = y;
+        this.rule = rule;
+        grow(null);
+    }
+
+    /**
+     * Constructor. Learns an extremely randomized classification tree on
+     * all instances, which splits a numeric column at a random threshold
+     * between its minimum and maximum in the node.
+     *
+     * @param x        the data frame of the explanatory variable.
+     * @param y        the response variables.
+     * @param response the metadata of response variable.
+     * @param k        the number of classes.
+     * @param maxDepth the maximum depth of the tree.
+     * @param maxNodes the maximum number of leaf nodes in the tree.
+     * @param nodeSize the minimum size of leaf nodes.
+     * @param mtry     the number of input variables to pick to split on at each
+     *                 node. It seems that sqrt(p) give generally good performance,
+     *                 where p is the number of variables.
+     * @param rule     the splitting rule.
+     * @param rng      the random number generator of this tree. If null,
+     *                 the thread local generator of MathEx is used.
+     */
+    public DecisionTree(DataFrame x, int[] y, StructField response, int k, SplitRule rule, int maxDepth, int maxNodes, int nodeSize, int mtry, Random rng) {
+        super(x, response, maxDepth, maxNodes, nodeSize, mtry, rng);
+        this.k = k;
+        this.y = y;
+        this.rule = rule;
+        grow(null);
+    }
+
+    /**
+     * Constructor. Learns a classification tree on all instances and
+     * columns, searching the nodes on the frontier of the tree
+     * concurrently. The tree is the same as the one learned sequentially.
+     *
+     * @param x        the data frame of the explanatory variable.
+     * @param y        the response variables.
+     * @param response the metadata of response variable.
+     * @param k        the number of classes.
+     * @param rule     the splitting rule.
+     * @param maxDepth the maximum depth of the tree.
+     * @param maxNodes the maximum number of leaf nodes in the tree.
+     * @param nodeSize the minimum size of leaf nodes.
+     * @param executor the executor to search the nodes on.
+     */
+    public DecisionTree(DataFrame x, int[] y, StructField response, int k, SplitRule rule, int maxDepth, int maxNodes, int nodeSize, Executor executor) {
+        super(x, response, maxDepth, maxNodes, nodeSize, -1, null, null);
+        this.k = k;
+        this.y = y;
+        this.rule = rule;
+        grow(Objects.requireNonNull(executor));
+    }
+
+    /**
+     * Copy constructor of a worker to search the nodes concurrently.
+     */
+    private DecisionTree(DecisionTree tree) {
+        super(tree);
+        this.k = tree.k;
+        this.y = tree.y;
+        this.rule = tree.rule;
+        this.trueCount = new int[k];
+        this.falseCount = new int[k];
+        this.levelCount = new int[tree.levelCount.length][k];
+        this.levelSize = new int[tree.levelSize.length];
+        if (tree.values != null) {
+            this.values = new double[tree.values.length];
+        }
+    }
+
+    /**
+     * Grows the tree from the training data.
+     *
+     * @param executor the executor to search the nodes on, or null to
+     *                 grow the tree sequentially.
+     */
+    private void grow(Executor executor) {
+        // the scratch arrays of split search, reused by every node
+        int levels = 0;
+        for (StructField field : schema.fields()) {
+            if (field.measure instanceof NominalScale) {
+                levels = Math.max(levels, ((NominalScale) field.measure).size());
+            }
+        }
+        this.trueCount = new int[k];
+        this.falseCount = new int[k];
+        this.levelCount = new int[levels][k];
+        this.levelSize = new int[levels];
+        if (randomized) {
+            this.values = new double[index.length];
+        }
 
         final int[] count = new int[k];
         int n = x.size();
@@ -279,15 +611,18 @@ public class DecisionTree extends CART implements SoftClassifier<Tuple>, DataFra
         LeafNode node = new DecisionNode(count);
         this.root = node;
 
-        Optional<Split> split = findBestSplit(node, 0, index.length, new boolean[x.ncol()]);
+        Split split = findBestSplit(node, 0, index.length, new boolean[x.ncol()]);
 
-        if (maxNodes == Integer.MAX_VALUE) {
+        if (executor != null) {
+            // frontier parallel split
+            if (split != null) parallelSplit(split, executor);
+        } else if (maxNodes == Integer.MAX_VALUE) {
             // deep-first split
-            split.ifPresent(s -> split(s, null));
+            if (split != null) split(split, null);
         } else {
             // best-first split
             PriorityQueue<Split> queue = new PriorityQueue<>(2 * maxNodes, Split.comparator.reversed());
-            split.ifPresent(queue::add);
+            if (split != null) queue.add(split);
 
             for (int leaves = 1; leaves < this.maxNodes && !queue.isEmpty(); ) {
                 if (split(queue.poll(), queue)) leaves++;
@@ -298,6 +633,29 @@ public class DecisionTree extends CART implements SoftClassifier<Tuple>, DataFra
         this.root = this.root.merge();
 
         clear();
+        this.trueCount = null;
+        this.falseCount = null;
+        this.levelCount = null;
+        this.levelSize = null;
+        this.values = null;
+    }
+
+    /**
+     * Constructor of a trained tree, e.g. decoded from a model file.
+     * The tree is a part of ensemble and has no formula.
+     *
+     * @param schema     the schema of explanatory variables.
+     * @param response   the metadata of response variable.
+     * @param k          the number of classes.
+     * @param rule       the splitting rule.
+     * @param root       the root node.
+     * @param importance the variable importance.
+     */
+    public DecisionTree(StructType schema, StructField response, int k, SplitRule rule, Node root, double[] importance) {
+        super(schema, response, root, importance);
+        this.k = k;
+        this.y = null;
+        this.rule = rule;
     }
 
     /**
@@ -334,7 +692,11 @@ public class DecisionTree extends CART implements SoftClassifier<Tuple>, DataFra
     }
 
     /**
-     * Learns a classification tree.
+     * Learns a classification tree. As all columns are searched at each
+     * node, the nodes on the frontier of the tree are searched concurrently
+     * in the common fork join pool, if it has more than one thread.
+     * Otherwise, the tree is learned sequentially. The tree is the same
+     * in either case.
      *
      * @param formula  a symbolic description of the model to be fitted.
      * @param data     the data frame of the explanatory and response variables.
@@ -345,6 +707,10 @@ public class DecisionTree extends CART implements SoftClassifier<Tuple>, DataFra
      * @return the model.
      */
     public static DecisionTree fit(Formula formula, DataFrame data, SplitRule rule, int maxDepth, int maxNodes, int nodeSize) {
+        if (ForkJoinPool.getCommonPoolParallelism() > 1) {
+            return fit(formula, data, rule, maxDepth, maxNodes, nodeSize, ForkJoinPool.commonPool());
+        }
+
         formula = formula.expand(data.schema());
         DataFrame x = formula.x(data);
         BaseVector y = formula.y(data);
@@ -356,10 +722,50 @@ public class DecisionTree extends CART implements SoftClassifier<Tuple>, DataFra
         return tree;
     }
 
+    /**
+     * Learns a classification tree, searching the nodes on the frontier
+     * of the tree concurrently. The tree is the same as the one learned
+     * by {@link #fit(Formula, DataFrame, SplitRule, int, int, int)}.
+     *
+     * @param formula  a symbolic description of the model to be fitted.
+     * @param data     the data frame of the explanatory and response variables.
+     * @param rule     the splitting rule.
+     * @param maxDepth the maximum depth of the tree.
+     * @param maxNodes the maximum number of leaf nodes in the tree.
+     * @param nodeSize the minimum size of leaf nodes.
+     * @param executor the executor to search the nodes on.
+     * @return the model.
+     */
+    public static DecisionTree fit(Formula formula, DataFrame data, SplitRule rule, int maxDepth, int maxNodes, int nodeSize, Executor executor) {
+        formula = formula.expand(data.schema());
+        DataFrame x = formula.x(data);
+        BaseVector y = formula.y(data);
+        ClassLabels codec = ClassLabels.fit(y);
+
+        DecisionTree tree = new DecisionTree(x, codec.y, y.field(), codec.k, rule, maxDepth, maxNodes, nodeSize, executor);
+        tree.formula = formula;
+        tree.labels = codec.labels;
+        return tree;
+    }
+
+    /**
+     * Returns the tree compiled into primitive arrays.
+     *
+     * @return the compiled tree.
+     */
+    public FlatForest flat() {
+        FlatForest tree = flat;
+        if (tree == null) {
+            tree = FlatForest.of(new Node[]{root}, new double[]{1.0}, schema.length());
+            flat = tree;
+        }
+        return tree;
+    }
+
     @Override
     public int predict(Tuple x) {
-        DecisionNode leaf = (DecisionNode) root.predict(predictors(x));
-        int y = leaf.output();
+        FlatForest tree = flat();
+        int y = tree.predict(0, tree.row(predictors(x)));
         return labels == null ? y : labels.valueOf(y);
     }
 
@@ -371,12 +777,29 @@ public class DecisionTree extends CART implements SoftClassifier<Tuple>, DataFra
      */
     @Override
     public int predict(Tuple x, double[] posteriori) {
-        DecisionNode leaf = (DecisionNode) root.predict(predictors(x));
-        leaf.posteriori(posteriori);
-        int y = leaf.output();
+        FlatForest tree = flat();
+        int y = tree.predict(0, tree.row(predictors(x)), posteriori);
         return labels == null ? y : labels.valueOf(y);
     }
 
+    /**
+     * Returns the splitting rule.
+     *
+     * @return the splitting rule.
+     */
+    public SplitRule rule() {
+        return rule;
+    }
+
+    /**
+     * Returns the number of classes.
+     *
+     * @return the number of classes.
+     */
+    public int numClasses() {
+        return k;
+    }
+
     /**
      * Returns null if the tree is part of ensemble algorithm.
      */
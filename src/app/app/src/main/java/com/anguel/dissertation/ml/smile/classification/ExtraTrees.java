@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2010-2020 Haifeng Li. All rights reserved.
+ *
+ * Smile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Smile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Smile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.anguel.dissertation.ml.smile.classification;
+
+import com.anguel.dissertation.ml.ModelStats;
+import com.anguel.dissertation.ml.smile.base.cart.FlatForest;
+import com.anguel.dissertation.ml.smile.base.cart.Node;
+import com.anguel.dissertation.ml.smile.base.cart.SplitRule;
+import com.anguel.dissertation.ml.smile.data.DataFrame;
+import com.anguel.dissertation.ml.smile.data.formula.Formula;
+import com.anguel.dissertation.ml.smile.data.vector.BaseVector;
+import com.anguel.dissertation.ml.smile.math.MathEx;
+import com.anguel.dissertation.ml.smile.math.Random;
+import com.anguel.dissertation.ml.smile.util.IntSet;
+import com.anguel.dissertation.ml.smile.validation.ClassificationMetrics;
+import com.anguel.dissertation.ml.smile.validation.metric.Accuracy;
+import com.anguel.dissertation.ml.smile.validation.metric.Error;
+
+import java.util.Properties;
+import java.util.function.IntFunction;
+import java.util.stream.LongStream;
+
+/**
+ * Extremely randomized trees for classification. Like random forest, it
+ * is an ensemble of decision trees that outputs the majority vote of
+ * individual trees, and each node is split on a random subset of m
+ * input variables. It differs from random forest in two ways:
+ * <ol>
+ * <li> Each tree is grown on the whole training set rather than a
+ * bootstrap sample.
+ * <li> Instead of the best cut point, a numeric variable is cut at
+ * a threshold drawn uniformly between its minimum and maximum in the
+ * node. The best of these random splits on the m variables is used
+ * to split the node. Nominal variables are split as in random forest.
+ * </ol>
+ * The random thresholds reduce the variance of the ensemble further than
+ * bagging, and the training values don't need to be sorted, so that a
+ * candidate variable costs a scan of the node samples. Therefore, the
+ * training is much faster than random forest while the accuracy is
+ * usually comparable.
+ * <p>
+ * The model is a random forest in every other respect. It can be merged
+ * with random forests, which returns extremely randomized trees, and
+ * saved and loaded with {@link RandomForestCodec}.
+ * As there are no out-of-bag samples, the metrics of trees and of the
+ * ensemble are measured on the training data, which are optimistic and
+ * are only used as the weights of trees.
+ *
+ * <h2>References</h2>
+ * <ol>
+ * <li> P. Geurts, D. Ernst and L. Wehenkel. Extremely randomized trees. Machine Learning 63(1):3-42, 2006.</li>
+ * </ol>
+ *
+ * @author Haifeng Li
+ * @see RandomForest
+ */
+public class ExtraTrees extends RandomForest {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructor.
+     *
+     * @param formula    a symbolic description of the model to be fitted.
+     * @param k          the number of classes.
+     * @param models     the base models.
+     * @param metrics    the overall metric estimation on the training data.
+     * @param importance the feature importance.
+     * @param labels     the class label encoder.
+     */
+    public ExtraTrees(Formula formula, int k, Model[] models, ClassificationMetrics metrics, double[] importance, IntSet labels) {
+        super(formula, k, models, metrics, importance, labels);
+    }
+
+    public ExtraTrees(Formula formula, int k, Model[] models, ClassificationMetrics metrics, double[] importance, IntSet labels, ModelStats stats) {
+        super(formula, k, models, metrics, importance, labels, stats);
+    }
+
+    @Override
+    protected ExtraTrees merged(Formula formula, int k, Model[] models, ClassificationMetrics metrics, double[] importance, IntSet labels, ModelStats stats) {
+        return new ExtraTrees(formula, k, models, metrics, importance, labels, stats);
+    }
+
+    @Override
+    public ExtraTrees merge(RandomForest other) {
+        return (ExtraTrees) super.merge(other);
+    }
+
+    @Override
+    public ExtraTrees merge(RandomForest other, int maxTrees) {
+        return (ExtraTrees) super.merge(other, maxTrees);
+    }
+
+    @Override
+    public ExtraTrees merge(RandomForest other, int maxTrees, double diversity) {
+        return (ExtraTrees) super.merge(other, maxTrees, diversity);
+    }
+
+    /**
+     * Fits extremely randomized trees for classification.
+     *
+     * @param formula a symbolic description of the model to be fitted.
+     * @param data    the data frame of the explanatory and response variables.
+     * @param prop    the hyper-parameters.
+     * @return the model.
+     */
+    public static ExtraTrees fit(Formula formula, DataFrame data, Properties prop) {
+        int ntrees = Integer.parseInt(prop.getProperty("smile.extra.trees.trees", "500"));
+        int mtry = Integer.parseInt(prop.getProperty("smile.extra.trees.mtry", "0"));
+        SplitRule rule = SplitRule.valueOf(prop.getProperty("smile.extra.trees.split.rule", "GINI"));
+        int maxDepth = Integer.parseInt(prop.getProperty("smile.extra.trees.max.depth", "20"));
+        int maxNodes = Integer.parseInt(prop.getProperty("smile.extra.trees.max.nodes", String.valueOf(data.size() / 5)));
+        int nodeSize = Integer.parseInt(prop.getProperty("smile.extra.trees.node.size", "5"));
+        int threads = Integer.parseInt(prop.getProperty("smile.extra.trees.threads", "0"));
+        return fit(formula, data, ntrees, mtry, rule, maxDepth, maxNodes, nodeSize, null, threads);
+    }
+
+    /**
+     * Fits extremely randomized trees for classification. The trees are
+     * grown concurrently on a dedicated fork-join pool. Each tree draws
+     * from its own random number generator seeded by its entry of the
+     * seed stream, so the model is the same for any number of threads.
+     *
+     * @param formula  a symbolic description of the model to be fitted.
+     * @param data     the data frame of the explanatory and response variables.
+     * @param ntrees   the number of trees.
+     * @param mtry     the number of input variables to be used to determine the
+     *                 decision at a node of the tree. floor(sqrt(p)) generally
+     *                 gives good performance, where p is the number of variables.
+     * @param rule     Decision tree split rule.
+     * @param maxDepth the maximum depth of the tree.
+     * @param maxNodes the maximum number of leaf nodes in the tree.
+     * @param nodeSize the number of instances in a node below which the tree
+     *                 will not split, nodeSize = 5 generally gives good
+     *                 results.
+     * @param seeds    optional RNG seeds for each tree.
+     * @param threads  the number of threads to grow the trees. If it is not
+     *                 positive, the number of available processors is used.
+     *                 1 grows the trees sequentially in the calling thread.
+     * @return the model.
+     */
+    public static ExtraTrees fit(Formula formula, DataFrame data, int ntrees, int mtry,
+                                 SplitRule rule, int maxDepth, int maxNodes, int nodeSize,
+                                 LongStream seeds, int threads) {
+        if (ntrees < 1) {
+            throw new IllegalArgumentException("Invalid number of trees: " + ntrees);
+        }
+
+        formula = formula.expand(data.schema());
+        DataFrame x = formula.x(data);
+        BaseVector y = formula.y(data);
+
+        if (mtry > x.ncol()) {
+            throw new IllegalArgumentException("Invalid number of variables to split on at a node of the tree: " + mtry);
+        }
+
+        int mtryFinal = mtry > 0 ? mtry : (int) Math.sqrt(x.ncol());
+
+        ClassLabels codec = ClassLabels.fit(y);
+        final int k = codec.k;
+        final int n = x.nrow();
+
+        final double[][] columns = FlatForest.columns(x);
+        final int[][] prediction = new int[n][k]; // prediction on the training data
+
+        // generate seeds with sequential stream
+        long[] seedArray = (seeds != null ? seeds : LongStream.range(-ntrees, 0)).sequential().distinct().limit(ntrees).toArray();
+        if (seedArray.length != ntrees) {
+            throw new IllegalArgumentException(String.format("seed stream has only %d distinct values, expected %d", seedArray.length, ntrees));
+        }
+
+        IntFunction<Model> grow = t -> {
+            // each tree has its own RNG so that trees can be grown in any order
+            final Random rng = new Random(seedArray[t]);
+
+            long start = System.nanoTime();
+            DecisionTree tree = new DecisionTree(x, codec.y, y.field(), k, rule, maxDepth, maxNodes, nodeSize, mtryFinal, rng);
+            double fitTime = (System.nanoTime() - start) / 1E6;
+
+            // no sample is left out of the tree, so it is scored on the training data
+            start = System.nanoTime();
+            int[] fitted = new int[n];
+            FlatForest compiled = FlatForest.of(new Node[]{tree.root()}, new double[]{1.0}, x.ncol());
+            for (int i = 0; i < n; i++) {
+                fitted[i] = compiled.predict(0, columns, i);
+            }
+
+            synchronized (prediction) {
+                for (int i = 0; i < n; i++) {
+                    prediction[i][fitted[i]]++;
+                }
+            }
+            double scoreTime = (System.nanoTime() - start) / 1E6;
+
+            // only the accuracy as the weight of tree, the other metrics on the training data are of no use
+            ClassificationMetrics metrics = new ClassificationMetrics(fitTime, scoreTime, n,
+                    Error.of(codec.y, fitted),
+                    Accuracy.of(codec.y, fitted)
+            );
+
+            return new Model(tree, metrics);
+        };
+
+        Model[] models = grow(ntrees, threads, grow);
+
+        double fitTime = 0.0, scoreTime = 0.0;
+        for (Model model : models) {
+            fitTime += model.metrics.fitTime;
+            scoreTime += model.metrics.scoreTime;
+        }
+
+        int[] vote = new int[n];
+        for (int i = 0; i < n; i++) {
+            vote[i] = MathEx.whichMax(prediction[i]);
+        }
+
+        ClassificationMetrics metrics = new ClassificationMetrics(fitTime, scoreTime, n,
+                Error.of(codec.y, vote),
+                Accuracy.of(codec.y, vote)
+        );
+
+        return new ExtraTrees(formula, k, models, metrics, importance(models), codec.labels);
+    }
+}
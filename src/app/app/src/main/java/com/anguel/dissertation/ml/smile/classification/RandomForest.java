@@ -18,15 +18,21 @@
 package com.anguel.dissertation.ml.smile.classification;
 
 import com.anguel.dissertation.ml.ModelStats;
-import com.anguel.dissertation.ml.smile.base.cart.CART;
+import com.anguel.dissertation.ml.smile.base.cart.Binning;
+import com.anguel.dissertation.ml.smile.base.cart.ColumnOrder;
+import com.anguel.dissertation.ml.smile.base.cart.FlatForest;
+import com.anguel.dissertation.ml.smile.base.cart.Node;
+import com.anguel.dissertation.ml.smile.base.cart.SortedIndex;
 import com.anguel.dissertation.ml.smile.base.cart.SplitRule;
 import com.anguel.dissertation.ml.smile.data.DataFrame;
 import com.anguel.dissertation.ml.smile.data.Tuple;
 import com.anguel.dissertation.ml.smile.data.formula.Formula;
 import com.anguel.dissertation.ml.smile.data.type.StructType;
 import com.anguel.dissertation.ml.smile.data.vector.BaseVector;
+import com.anguel.dissertation.ml.smile.feature.PermutationImportance;
 import com.anguel.dissertation.ml.smile.feature.TreeSHAP;
 import com.anguel.dissertation.ml.smile.math.MathEx;
+import com.anguel.dissertation.ml.smile.math.Random;
 import com.anguel.dissertation.ml.smile.util.IntSet;
 import com.anguel.dissertation.ml.smile.util.Strings;
 import com.anguel.dissertation.ml.smile.validation.ClassificationMetrics;
@@ -42,10 +48,18 @@ import com.anguel.dissertation.ml.smile.validation.metric.Precision;
 import com.anguel.dissertation.ml.smile.validation.metric.Sensitivity;
 import com.anguel.dissertation.ml.smile.validation.metric.Specificity;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 import java.util.stream.LongStream;
 
 import lombok.Setter;
@@ -97,10 +111,22 @@ public class RandomForest implements SoftClassifier<Tuple>, DataFrameClassifier,
      * The base model.
      */
     public static class Model implements Serializable {
+        private static final long serialVersionUID = -4011140897047498450L;
+
+        /**
+         * The decision tree. It is null until first use if the
+         * model is decoded lazily.
+         */
+        private volatile DecisionTree tree;
+        /**
+         * The decoder of tree if the model is decoded lazily.
+         */
+        private transient Supplier<DecisionTree> loader;
         /**
-         * The decision tree.
+         * The variable importance of tree, which is available
+         * without decoding the tree.
          */
-        public final DecisionTree tree;
+        private transient double[] importance;
         /**
          * The performance metrics on out-of-bag samples.
          */
@@ -118,6 +144,65 @@ public class RandomForest implements SoftClassifier<Tuple>, DataFrameClassifier,
             this.metrics = metrics;
             this.weight = metrics.accuracy;
         }
+
+        /**
+         * Constructor of a lazily decoded tree.
+         *
+         * @param loader     the decoder of tree.
+         * @param importance the variable importance of tree.
+         * @param metrics    the performance metrics on out-of-bag samples.
+         */
+        Model(Supplier<DecisionTree> loader, double[] importance, ClassificationMetrics metrics) {
+            this.loader = loader;
+            this.importance = importance;
+            this.metrics = metrics;
+            this.weight = metrics.accuracy;
+        }
+
+        /**
+         * Returns the decision tree, which is decoded on first call
+         * if the model is loaded lazily.
+         *
+         * @return the decision tree.
+         */
+        public DecisionTree tree() {
+            DecisionTree t = tree;
+            if (t == null) {
+                synchronized (this) {
+                    t = tree;
+                    if (t == null) {
+                        t = loader.get();
+                        tree = t;
+                    }
+                }
+            }
+            return t;
+        }
+
+        /**
+         * Returns the decoder of tree, or null if the model is not
+         * decoded lazily.
+         */
+        Supplier<DecisionTree> loader() {
+            return loader;
+        }
+
+        /**
+         * Returns the variable importance of tree.
+         *
+         * @return the variable importance of tree.
+         */
+        public double[] importance() {
+            return importance != null ? importance : tree().importance();
+        }
+
+        /**
+         * Decodes the tree before the default serialization.
+         */
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            tree();
+            out.defaultWriteObject();
+        }
     }
 
     @Setter // sent to server
@@ -175,6 +260,18 @@ public class RandomForest implements SoftClassifier<Tuple>, DataFrameClassifier,
      */
     private final IntSet labels;
 
+    /**
+     * The trees compiled into primitive arrays for prediction.
+     * It is built on first use, including after deserialization.
+     */
+    private transient volatile FlatForest flat;
+
+    /**
+     * The compiler of trees if the forest is decoded from a model
+     * file, which builds the primitive arrays without node objects.
+     */
+    private transient Supplier<FlatForest> compiler;
+
 
     /**
      * Constructor.
@@ -200,6 +297,15 @@ public class RandomForest implements SoftClassifier<Tuple>, DataFrameClassifier,
         this.modelStats = stats;
     }
 
+    /**
+     * Constructor of a forest decoded from a model file, whose trees
+     * are compiled by the given function on first prediction.
+     */
+    RandomForest(Formula formula, int k, Model[] models, ClassificationMetrics metrics, double[] importance, IntSet labels, ModelStats stats, Supplier<FlatForest> compiler) {
+        this(formula, k, models, metrics, importance, labels, stats);
+        this.compiler = compiler;
+    }
+
     /**
      * Fits a random forest for classification.
      *
@@ -209,6 +315,22 @@ public class RandomForest implements SoftClassifier<Tuple>, DataFrameClassifier,
      * @return the model.
      */
     public static RandomForest fit(Formula formula, DataFrame data, Properties prop) {
+        return fit(formula, data, prop, null);
+    }
+
+    /**
+     * Fits a random forest for classification with the index of training
+     * values in ascending order, e.g. maintained by {@link ColumnOrder}
+     * as the data grow, instead of sorting the data.
+     *
+     * @param formula a symbolic description of the model to be fitted.
+     * @param data    the data frame of the explanatory and response variables.
+     * @param prop    the hyper-parameters.
+     * @param order   the index of training values in ascending order of each
+     *                predictor, null for nominal ones. If null, the data are sorted.
+     * @return the model.
+     */
+    public static RandomForest fit(Formula formula, DataFrame data, Properties prop, int[][] order) {
         int ntrees = Integer.parseInt(prop.getProperty("smile.random.forest.trees", "500"));
         int mtry = Integer.parseInt(prop.getProperty("smile.random.forest.mtry", "0"));
         SplitRule rule = SplitRule.valueOf(prop.getProperty("smile.random.forest.split.rule", "GINI"));
@@ -217,11 +339,58 @@ public class RandomForest implements SoftClassifier<Tuple>, DataFrameClassifier,
         int nodeSize = Integer.parseInt(prop.getProperty("smile.random.forest.node.size", "5"));
         double subsample = Double.parseDouble(prop.getProperty("smile.random.forest.sample.rate", "1.0"));
         int[] classWeight = Strings.parseIntArray(prop.getProperty("smile.random.forest.class.weight"));
-        return fit(formula, data, ntrees, mtry, rule, maxDepth, maxNodes, nodeSize, subsample, classWeight, null);
+        int threads = Integer.parseInt(prop.getProperty("smile.random.forest.threads", "0"));
+        int bins = Integer.parseInt(prop.getProperty("smile.random.forest.bins", "0"));
+        return fit(formula, data, ntrees, mtry, rule, maxDepth, maxNodes, nodeSize, subsample, classWeight, null, threads, bins, order);
     }
 
     /**
-     * Fits a random forest for classification.
+     * Fits a random forest for classification with the trees grown on
+     * as many threads as available processors.
+     *
+     * @return the model.
+     * @see #fit(Formula, DataFrame, int, int, SplitRule, int, int, int, double, int[], LongStream, int, int, int[])
+     */
+    public static RandomForest fit(Formula formula, DataFrame data, int ntrees, int mtry,
+                                   SplitRule rule, int maxDepth, int maxNodes, int nodeSize,
+                                   double subsample, int[] classWeight, LongStream seeds) {
+        return fit(formula, data, ntrees, mtry, rule, maxDepth, maxNodes, nodeSize, subsample, classWeight, seeds, 0);
+    }
+
+    /**
+     * Fits a random forest for classification with the exact splits
+     * on the sorted values.
+     *
+     * @param threads     the number of threads to grow the trees.
+     * @return the model.
+     * @see #fit(Formula, DataFrame, int, int, SplitRule, int, int, int, double, int[], LongStream, int, int, int[])
+     */
+    public static RandomForest fit(Formula formula, DataFrame data, int ntrees, int mtry,
+                                   SplitRule rule, int maxDepth, int maxNodes, int nodeSize,
+                                   double subsample, int[] classWeight, LongStream seeds, int threads) {
+        return fit(formula, data, ntrees, mtry, rule, maxDepth, maxNodes, nodeSize, subsample, classWeight, seeds, threads, 0);
+    }
+
+    /**
+     * Fits a random forest for classification, sorting the data.
+     *
+     * @param bins        the maximum number of bins of a numeric variable, or 0
+     *                    for the exact splits.
+     * @return the model.
+     * @see #fit(Formula, DataFrame, int, int, SplitRule, int, int, int, double, int[], LongStream, int, int, int[])
+     */
+    public static RandomForest fit(Formula formula, DataFrame data, int ntrees, int mtry,
+                                   SplitRule rule, int maxDepth, int maxNodes, int nodeSize,
+                                   double subsample, int[] classWeight, LongStream seeds, int threads, int bins) {
+        return fit(formula, data, ntrees, mtry, rule, maxDepth, maxNodes, nodeSize, subsample, classWeight, seeds, threads, bins, null);
+    }
+
+    /**
+     * Fits a random forest for classification. The trees are grown
+     * concurrently on a dedicated fork-join pool. Each tree draws
+     * from its own random number generator seeded by its entry of
+     * the seed stream, so the model is the same for any number of
+     * threads.
      *
      * @param formula     a symbolic description of the model to be fitted.
      * @param data        the data frame of the explanatory and response variables.
@@ -245,11 +414,24 @@ public class RandomForest implements SoftClassifier<Tuple>, DataFrameClassifier,
      *                    be [1, 4] (assuming label 0 is of negative, label 1 is of
      *                    positive).
      * @param seeds       optional RNG seeds for each regression tree.
+     * @param threads     the number of threads to grow the trees. If it is not
+     *                    positive, the number of available processors is used.
+     *                    1 grows the trees sequentially in the calling thread.
+     * @param bins        the maximum number of bins of a numeric variable. If it
+     *                    is positive, the numeric variables are quantized into
+     *                    at most this many bins (up to 255) once, and the trees
+     *                    find the splits from the class histograms of bins, which
+     *                    is much faster on large data at the cost of considering
+     *                    only the bin boundaries as split values. 0 finds the
+     *                    exact splits on the sorted values.
+     * @param order       the index of training values in ascending order of each
+     *                    predictor, null for nominal ones. If null, the data are
+     *                    sorted. It is not used with bins.
      * @return the model.
      */
     public static RandomForest fit(Formula formula, DataFrame data, int ntrees, int mtry,
                                    SplitRule rule, int maxDepth, int maxNodes, int nodeSize,
-                                   double subsample, int[] classWeight, LongStream seeds) {
+                                   double subsample, int[] classWeight, LongStream seeds, int threads, int bins, int[][] order) {
         if (ntrees < 1) {
             throw new IllegalArgumentException("Invalid number of trees: " + ntrees);
         }
@@ -274,7 +456,15 @@ public class RandomForest implements SoftClassifier<Tuple>, DataFrameClassifier,
 
         final int[] weight = classWeight != null ? classWeight : Collections.nCopies(k, 1).stream().mapToInt(i -> i).toArray();
 
-        final int[][] order = CART.order(x);
+        if (order != null && order.length != x.ncol()) {
+            throw new IllegalArgumentException(String.format("Invalid order of %d columns, expected: %d", order.length, x.ncol()));
+        }
+
+        // either quantized or sorted once (unless the order is given) and shared by all trees.
+        // in the exact mode, each tree reads its samples into a pooled workspace
+        final Binning binning = bins > 0 ? new Binning(x, bins) : null;
+        final SortedIndex index = binning != null ? null : order != null ? new SortedIndex(order, n) : new SortedIndex(x, threads);
+        final double[][] columns = FlatForest.columns(x);
         final int[][] prediction = new int[n][k]; // out-of-bag prediction
 
         // generate seeds with sequential stream
@@ -299,9 +489,9 @@ public class RandomForest implements SoftClassifier<Tuple>, DataFrameClassifier,
             yi[j][idx[j]++] = i;
         }
 
-        Model[] models = Arrays.stream(seedArray).mapToObj(seed -> {
-            // set RNG seed for the tree
-            if (seed > 1) MathEx.setSeed(seed);
+        IntFunction<Model> grow = t -> {
+            // each tree has its own RNG so that trees can be grown in any order
+            final Random rng = new Random(seedArray[t]);
 
             final int[] samples = new int[n];
             // Stratified sampling in case that class is unbalanced.
@@ -315,7 +505,7 @@ public class RandomForest implements SoftClassifier<Tuple>, DataFrameClassifier,
                     int size = ni / weight[i];
                     int[] yj = yi[i];
                     for (int j = 0; j < size; j++) {
-                        int xj = MathEx.randomInt(ni);
+                        int xj = rng.nextInt(ni);
                         samples[yj[xj]] += 1; //classWeight[i];
                     }
                 }
@@ -326,7 +516,7 @@ public class RandomForest implements SoftClassifier<Tuple>, DataFrameClassifier,
                     // But we switch to down sampling, which seems producing better AUC.
                     int size = (int) Math.round(subsample * count[i] / weight[i]);
                     int[] yj = yi[i];
-                    int[] permutation = MathEx.permutate(count[i]);
+                    int[] permutation = rng.permutate(count[i]);
                     for (int j = 0; j < size; j++) {
                         int xj = permutation[j];
                         samples[yj[xj]] += 1; //classWeight[i];
@@ -335,7 +525,9 @@ public class RandomForest implements SoftClassifier<Tuple>, DataFrameClassifier,
             }
 
             long start = System.nanoTime();
-            DecisionTree tree = new DecisionTree(x, codec.y, y.field(), k, rule, maxDepth, maxNodes, nodeSize, mtryFinal, samples, order);
+            DecisionTree tree = binning != null ?
+                    new DecisionTree(x, codec.y, y.field(), k, rule, maxDepth, maxNodes, nodeSize, mtryFinal, samples, binning, rng) :
+                    new DecisionTree(x, codec.y, y.field(), k, rule, maxDepth, maxNodes, nodeSize, mtryFinal, samples, index, rng);
             double fitTime = (System.nanoTime() - start) / 1E6;
 
             // estimate OOB metrics
@@ -350,40 +542,25 @@ public class RandomForest implements SoftClassifier<Tuple>, DataFrameClassifier,
             int[] truth = new int[noob];
             int[] oob = new int[noob];
             double[][] posteriori = new double[noob][k];
+            FlatForest compiled = FlatForest.of(new Node[]{tree.root()}, new double[]{1.0}, x.ncol());
             for (int i = 0, j = 0; i < n; i++) {
                 if (samples[i] == 0) {
                     truth[j] = codec.y[i];
-                    int p = tree.predict(x.get(i), posteriori[j]);
-                    oob[j] = p;
-                    prediction[i][p]++;
+                    oob[j] = compiled.predict(0, columns, i, posteriori[j]);
                     j++;
                 }
             }
-            double scoreTime = (System.nanoTime() - start) / 1E6;
 
-            // When data is very small, OOB samples may miss some classes.
-            int oobk = MathEx.unique(truth).length;
-            ClassificationMetrics metrics;
-            if (oobk == 2) {
-                double[] probability = Arrays.stream(posteriori).mapToDouble(p -> p[1]).toArray();
-                metrics = new ClassificationMetrics(fitTime, scoreTime, noob,
-                        Error.of(truth, oob),
-                        Accuracy.of(truth, oob),
-                        Sensitivity.of(truth, oob),
-                        Specificity.of(truth, oob),
-                        Precision.of(truth, oob),
-                        FScore.F1.score(truth, oob),
-                        MatthewsCorrelation.of(truth, oob),
-                        AUC.of(truth, probability),
-                        LogLoss.of(truth, probability)
-                );
-            } else {
-                metrics = new ClassificationMetrics(fitTime, scoreTime, noob,
-                        Error.of(truth, oob),
-                        Accuracy.of(truth, oob),
-                        CrossEntropy.of(truth, posteriori)
-                );
+            synchronized (prediction) {
+                for (int i = 0, j = 0; i < n; i++) {
+                    if (samples[i] == 0) {
+                        prediction[i][oob[j++]]++;
+                    }
+                }
             }
+            double scoreTime = (System.nanoTime() - start) / 1E6;
+
+            ClassificationMetrics metrics = metrics(fitTime, scoreTime, truth, oob, posteriori);
 
             if (noob != 0) {
 //                logger.info("Random forest tree OOB metrics: {}", metrics);
@@ -392,7 +569,9 @@ public class RandomForest implements SoftClassifier<Tuple>, DataFrameClassifier,
             }
 
             return new Model(tree, metrics);
-        }).toArray(Model[]::new);
+        };
+
+        Model[] models = grow(ntrees, threads, grow);
 
         double fitTime = 0.0, scoreTime = 0.0;
         for (Model model : models) {
@@ -413,14 +592,80 @@ public class RandomForest implements SoftClassifier<Tuple>, DataFrameClassifier,
         return new RandomForest(formula, k, models, metrics, importance(models), codec.labels);
     }
 
+    /**
+     * Grows the trees on a dedicated fork-join pool.
+     *
+     * @param ntrees  the number of trees.
+     * @param threads the number of threads. If it is not positive, the number
+     *                of available processors is used. 1 grows the trees
+     *                sequentially in the calling thread.
+     * @param grow    the function to grow the t-th tree.
+     * @return the base models.
+     */
+    static Model[] grow(int ntrees, int threads, IntFunction<Model> grow) {
+        final int nthreads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        if (nthreads == 1) {
+            return IntStream.range(0, ntrees).mapToObj(grow).toArray(Model[]::new);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(Math.min(nthreads, ntrees));
+        try {
+            return pool.submit(() -> IntStream.range(0, ntrees).parallel().mapToObj(grow).toArray(Model[]::new)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Random forest training is interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IllegalStateException("Random forest training failed", cause);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Returns the metrics of a tree on the samples that it is evaluated on.
+     *
+     * @param fitTime    the time of training the tree in milliseconds.
+     * @param scoreTime  the time of scoring the samples in milliseconds.
+     * @param truth      the class labels of samples.
+     * @param prediction the predictions of samples.
+     * @param posteriori the posteriori probabilities of samples.
+     * @return the metrics.
+     */
+    static ClassificationMetrics metrics(double fitTime, double scoreTime, int[] truth, int[] prediction, double[][] posteriori) {
+        // When data is very small, OOB samples may miss some classes.
+        int k = MathEx.unique(truth).length;
+        if (k == 2) {
+            double[] probability = Arrays.stream(posteriori).mapToDouble(p -> p[1]).toArray();
+            return new ClassificationMetrics(fitTime, scoreTime, truth.length,
+                    Error.of(truth, prediction),
+                    Accuracy.of(truth, prediction),
+                    Sensitivity.of(truth, prediction),
+                    Specificity.of(truth, prediction),
+                    Precision.of(truth, prediction),
+                    FScore.F1.score(truth, prediction),
+                    MatthewsCorrelation.of(truth, prediction),
+                    AUC.of(truth, probability),
+                    LogLoss.of(truth, probability)
+            );
+        } else {
+            return new ClassificationMetrics(fitTime, scoreTime, truth.length,
+                    Error.of(truth, prediction),
+                    Accuracy.of(truth, prediction),
+                    CrossEntropy.of(truth, posteriori)
+            );
+        }
+    }
+
     /**
      * Calculate the importance of the whole forest.
      */
-    private static double[] importance(Model[] models) {
-        int p = models[0].tree.importance().length;
+    static double[] importance(Model[] models) {
+        int p = models[0].importance().length;
         double[] importance = new double[p];
         for (Model model : models) {
-            double[] imp = model.tree.importance();
+            double[] imp = model.importance();
             for (int i = 0; i < p; i++) {
                 importance[i] += imp[i];
             }
@@ -435,7 +680,7 @@ public class RandomForest implements SoftClassifier<Tuple>, DataFrameClassifier,
 
     @Override
     public StructType schema() {
-        return models[0].tree.schema();
+        return models[0].tree().schema();
     }
 
     /**
@@ -463,6 +708,30 @@ public class RandomForest implements SoftClassifier<Tuple>, DataFrameClassifier,
         return importance;
     }
 
+    /**
+     * Returns the permutation importance of variables on a holdout data
+     * set, i.e. the decrease of accuracy when the values of a variable
+     * are shuffled. The predictors are copied into columns once, and
+     * each permutation is predicted by the compiled trees.
+     *
+     * @param data     the holdout data set, which includes the response variable.
+     * @param repeats  the number of permutations of each variable.
+     * @param seed     the seed of random number generators.
+     * @param executor the executor to run the permutations on. If null,
+     *                 the permutations run in the calling thread.
+     * @return the permutation importance.
+     */
+    public PermutationImportance importance(DataFrame data, int repeats, long seed, Executor executor) {
+        DataFrame x = formula.x(data);
+        int[] y = formula.y(data).toIntArray();
+        for (int i = 0; i < y.length; i++) {
+            y[i] = labels.indexOf(y[i]);
+        }
+
+        FlatForest forest = flat();
+        return PermutationImportance.of(forest::vote, FlatForest.columns(x), x.size(), y, repeats, seed, executor);
+    }
+
     /**
      * Returns the number of trees in the model.
      *
@@ -472,6 +741,29 @@ public class RandomForest implements SoftClassifier<Tuple>, DataFrameClassifier,
         return models.length;
     }
 
+    /**
+     * Returns the number of classes.
+     *
+     * @return the number of classes.
+     */
+    public int numClasses() {
+        return k;
+    }
+
+    /**
+     * Returns the class label encoder.
+     */
+    IntSet labels() {
+        return labels;
+    }
+
+    /**
+     * Returns the model statistics as is, which may be null.
+     */
+    ModelStats stats() {
+        return modelStats;
+    }
+
     /**
      * Returns the base models.
      *
@@ -483,7 +775,7 @@ public class RandomForest implements SoftClassifier<Tuple>, DataFrameClassifier,
 
     @Override
     public DecisionTree[] trees() {
-        return Arrays.stream(models).map(model -> model.tree).toArray(DecisionTree[]::new);
+        return Arrays.stream(models).map(Model::tree).toArray(DecisionTree[]::new);
     }
 
     /**
@@ -536,7 +828,196 @@ public class RandomForest implements SoftClassifier<Tuple>, DataFrameClassifier,
                 .accuracy((this.modelStats.getAccuracy() * other.getModelStats().getAccuracy()) / 2)
                 .build();
 
-        return new RandomForest(formula, k, forest, mergedMetrics, mergedImportance, labels, mergedStats);
+        return merged(formula, k, forest, mergedMetrics, mergedImportance, labels, mergedStats);
+    }
+
+    /**
+     * Merges two random forests and keeps at most {@code maxTrees} trees.
+     * The trees with the highest weight, i.e. out-of-bag accuracy, are kept.
+     *
+     * @param other    the other forest to merge with.
+     * @param maxTrees the maximum number of trees in the merged forest.
+     * @return the merged forest.
+     */
+    public RandomForest merge(RandomForest other, int maxTrees) {
+        return merge(other, maxTrees, 0.0);
+    }
+
+    /**
+     * Merges two random forests and keeps at most {@code maxTrees} trees.
+     * The trees are selected greedily by their weight, i.e. out-of-bag
+     * accuracy, minus a penalty on the largest cosine similarity between
+     * the variable importance of the tree and that of the trees already
+     * selected. The variable importance and the out-of-bag metrics of the
+     * merged forest are recomputed from the selected trees.
+     *
+     * @param other     the other forest to merge with.
+     * @param maxTrees  the maximum number of trees in the merged forest.
+     * @param diversity the weight of similarity penalty. 0 selects the trees
+     *                  by weight only.
+     * @return the merged forest.
+     */
+    public RandomForest merge(RandomForest other, int maxTrees, double diversity) {
+        if (!formula.equals(other.formula)) {
+            throw new IllegalArgumentException("RandomForest have different model formula");
+        }
+
+        if (maxTrees < 1) {
+            throw new IllegalArgumentException("Invalid maximum number of trees: " + maxTrees);
+        }
+
+        if (diversity < 0) {
+            throw new IllegalArgumentException("Invalid diversity: " + diversity);
+        }
+
+        Model[] forest = new Model[models.length + other.models.length];
+        System.arraycopy(models, 0, forest, 0, models.length);
+        System.arraycopy(other.models, 0, forest, models.length, other.models.length);
+
+        if (forest.length > maxTrees) {
+            forest = select(forest, maxTrees, diversity);
+        }
+
+        long testSize = modelStats.getTestSize() + other.getModelStats().getTestSize();
+        double w1 = testSize == 0 ? 0.5 : (double) modelStats.getTestSize() / testSize;
+        double w2 = 1.0 - w1;
+        ModelStats mergedStats = ModelStats.builder()
+                .testSize(testSize)
+                .trainSize(modelStats.getTrainSize() + other.getModelStats().getTrainSize())
+                .anxiousCountTrain(modelStats.getAnxiousCountTrain() + other.getModelStats().getAnxiousCountTrain())
+                .anxiousCountTest(modelStats.getAnxiousCountTest() + other.getModelStats().getAnxiousCountTest())
+                .specificity(w1 * modelStats.getSpecificity() + w2 * other.getModelStats().getSpecificity())
+                .sensitivity(w1 * modelStats.getSensitivity() + w2 * other.getModelStats().getSensitivity())
+                .precision(w1 * modelStats.getPrecision() + w2 * other.getModelStats().getPrecision())
+                .falsePositiveRate(w1 * modelStats.getFalsePositiveRate() + w2 * other.getModelStats().getFalsePositiveRate())
+                .falseDiscoveryRate(w1 * modelStats.getFalseDiscoveryRate() + w2 * other.getModelStats().getFalseDiscoveryRate())
+                .f1score(w1 * modelStats.getF1score() + w2 * other.getModelStats().getF1score())
+                .confusionMatrix(new ConfusionMatrix(sumConfusionMatrix(modelStats.getConfusionMatrix().matrix, other.getModelStats().getConfusionMatrix().matrix)))
+                .accuracy(w1 * modelStats.getAccuracy() + w2 * other.getModelStats().getAccuracy())
+                .build();
+
+        return merged(formula, k, forest, metrics(forest), importance(forest), labels, mergedStats);
+    }
+
+    /**
+     * Returns the forest of merged trees, which is of the same class as
+     * this forest. Subclasses override it so that a merge keeps their type.
+     *
+     * @param formula    a symbolic description of the model.
+     * @param k          the number of classes.
+     * @param models     the merged trees.
+     * @param metrics    the metrics of merged forest.
+     * @param importance the variable importance of merged forest.
+     * @param labels     the class label encoder.
+     * @param stats      the model statistics of merged forest.
+     * @return the merged forest.
+     */
+    protected RandomForest merged(Formula formula, int k, Model[] models, ClassificationMetrics metrics, double[] importance, IntSet labels, ModelStats stats) {
+        return new RandomForest(formula, k, models, metrics, importance, labels, stats);
+    }
+
+    /**
+     * Selects the trees to keep in a bounded merge.
+     *
+     * @param models    the candidate trees.
+     * @param size      the number of trees to select.
+     * @param diversity the weight of similarity penalty.
+     * @return the selected trees in their original order.
+     */
+    private static Model[] select(Model[] models, int size, double diversity) {
+        int n = models.length;
+        boolean[] selected = new boolean[n];
+
+        if (diversity == 0.0) {
+            Integer[] index = new Integer[n];
+            for (int i = 0; i < n; i++) index[i] = i;
+            // stable sort keeps the older trees first on ties
+            Arrays.sort(index, (a, b) -> Double.compare(models[b].weight, models[a].weight));
+            for (int i = 0; i < size; i++) selected[index[i]] = true;
+        } else {
+            // unit vectors of variable importance
+            double[][] imp = new double[n][];
+            for (int i = 0; i < n; i++) {
+                imp[i] = models[i].importance().clone();
+                double norm = MathEx.norm(imp[i]);
+                if (norm > 0.0) {
+                    for (int j = 0; j < imp[i].length; j++) imp[i][j] /= norm;
+                }
+            }
+
+            double[] similarity = new double[n];
+            for (int m = 0; m < size; m++) {
+                int best = -1;
+                double bestScore = Double.NEGATIVE_INFINITY;
+                for (int i = 0; i < n; i++) {
+                    if (selected[i]) continue;
+                    double score = models[i].weight - diversity * similarity[i];
+                    if (score > bestScore) {
+                        best = i;
+                        bestScore = score;
+                    }
+                }
+
+                selected[best] = true;
+                for (int i = 0; i < n; i++) {
+                    if (!selected[i]) {
+                        similarity[i] = Math.max(similarity[i], MathEx.dot(imp[i], imp[best]));
+                    }
+                }
+            }
+        }
+
+        Model[] forest = new Model[size];
+        for (int i = 0, j = 0; i < n; i++) {
+            if (selected[i]) forest[j++] = models[i];
+        }
+        return forest;
+    }
+
+    /**
+     * Aggregates the out-of-bag metrics of trees. The times are summed
+     * and the other metrics are averaged with the number of out-of-bag
+     * samples of each tree as weight.
+     */
+    private static ClassificationMetrics metrics(Model[] models) {
+        double fitTime = 0.0, scoreTime = 0.0;
+        int size = 0, error = 0;
+        double[] sum = new double[8];
+        double[] weight = new double[8];
+        for (Model model : models) {
+            ClassificationMetrics m = model.metrics;
+            fitTime += m.fitTime;
+            scoreTime += m.scoreTime;
+            size += m.size;
+            error += m.error;
+
+            double[] values = {m.sensitivity, m.specificity, m.precision, m.f1, m.mcc, m.auc, m.logloss, m.crossentropy};
+            for (int i = 0; i < values.length; i++) {
+                if (!Double.isNaN(values[i])) {
+                    sum[i] += m.size * values[i];
+                    weight[i] += m.size;
+                }
+            }
+        }
+
+        for (int i = 0; i < sum.length; i++) {
+            sum[i] = weight[i] > 0 ? sum[i] / weight[i] : Double.NaN;
+        }
+
+        double accuracy = size > 0 ? 1.0 - (double) error / size : Double.NaN;
+        return new ClassificationMetrics(fitTime, scoreTime, size, error, accuracy,
+                sum[0], sum[1], sum[2], sum[3], sum[4], sum[5], sum[6], sum[7]);
+    }
+
+    // sums the confusion matrices of the test sets of both forests
+    private int[][] sumConfusionMatrix(int[][] m1, int[][] m2) {
+        int[][] result = new int[m1.length][m1.length];
+        for (int x = 0; x < m1.length; x++) {
+            for (int y = 0; y < m1.length; y++) {
+                result[x][y] = m1[x][y] + m2[x][y];
+            }
+        }
+        return result;
     }
 
     // assume the confusion matrix is the same size since the class can be only values
@@ -550,16 +1031,33 @@ public class RandomForest implements SoftClassifier<Tuple>, DataFrameClassifier,
         return result;
     }
 
-    @Override
-    public int predict(Tuple x) {
-        Tuple xt = formula.x(x);
-        int[] y = new int[k];
-
-        for (Model model : models) {
-            y[model.tree.predict(xt)]++;
+    /**
+     * Returns the trees compiled into primitive arrays.
+     *
+     * @return the compiled trees.
+     */
+    public FlatForest flat() {
+        FlatForest forest = flat;
+        if (forest == null && compiler != null) {
+            forest = compiler.get();
+            flat = forest;
+        } else if (forest == null) {
+            Node[] roots = new Node[models.length];
+            double[] weight = new double[models.length];
+            for (int i = 0; i < models.length; i++) {
+                roots[i] = models[i].tree().root();
+                weight[i] = models[i].weight;
+            }
+            forest = FlatForest.of(roots, weight, schema().length());
+            flat = forest;
         }
+        return forest;
+    }
 
-        return labels.valueOf(MathEx.whichMax(y));
+    @Override
+    public int predict(Tuple x) {
+        FlatForest forest = flat();
+        return labels.valueOf(forest.vote(forest.row(formula.x(x))));
     }
 
     @Override
@@ -568,19 +1066,56 @@ public class RandomForest implements SoftClassifier<Tuple>, DataFrameClassifier,
             throw new IllegalArgumentException(String.format("Invalid posteriori vector size: %d, expected: %d", posteriori.length, k));
         }
 
-        Tuple xt = formula.x(x);
+        FlatForest forest = flat();
+        return labels.valueOf(forest.vote(forest.row(formula.x(x)), posteriori));
+    }
 
-        double[] prob = new double[k];
-        Arrays.fill(posteriori, 0.0);
-        for (Model model : models) {
-            model.tree.predict(xt, prob);
-            for (int i = 0; i < k; i++) {
-                posteriori[i] += model.weight * prob[i];
+    /**
+     * Predicts the class labels of a data frame. The predictors are
+     * extracted as columns once and each tree is evaluated over blocks
+     * of rows, without creating an object per row.
+     *
+     * @param data the data frame.
+     * @return the predicted class labels.
+     */
+    @Override
+    public int[] predict(DataFrame data) {
+        DataFrame x = formula.x(data);
+        int[] y = flat().vote(FlatForest.columns(x), x.size());
+        for (int i = 0; i < y.length; i++) {
+            y[i] = labels.valueOf(y[i]);
+        }
+        return y;
+    }
+
+    /**
+     * Predicts the class labels of a data frame and also calculates
+     * the a posteriori probabilities. The predictors are extracted as
+     * columns once and each tree is evaluated over blocks of rows,
+     * without creating an object per row.
+     *
+     * @param data       the data frame.
+     * @param posteriori the a posteriori probabilities of each row on output.
+     * @return the predicted class labels.
+     */
+    public int[] predict(DataFrame data, double[][] posteriori) {
+        DataFrame x = formula.x(data);
+        int n = x.size();
+        if (posteriori.length != n) {
+            throw new IllegalArgumentException(String.format("Invalid posteriori matrix size: %d, expected: %d", posteriori.length, n));
+        }
+
+        for (double[] prob : posteriori) {
+            if (prob.length != k) {
+                throw new IllegalArgumentException(String.format("Invalid posteriori vector size: %d, expected: %d", prob.length, k));
             }
         }
 
-        MathEx.unitize1(posteriori);
-        return labels.valueOf(MathEx.whichMax(posteriori));
+        int[] y = flat().vote(FlatForest.columns(x), n, posteriori);
+        for (int i = 0; i < n; i++) {
+            y[i] = labels.valueOf(y[i]);
+        }
+        return y;
     }
 
     /**
@@ -597,11 +1132,12 @@ public class RandomForest implements SoftClassifier<Tuple>, DataFrameClassifier,
         int[] p = new int[k];
         int[][] prediction = new int[ntrees][n];
 
+        FlatForest forest = flat();
+        double[][] columns = FlatForest.columns(x);
         for (int j = 0; j < n; j++) {
-            Tuple xj = x.get(j);
             Arrays.fill(p, 0);
             for (int i = 0; i < ntrees; i++) {
-                p[models[i].tree.predict(xj)]++;
+                p[forest.predict(i, columns, j)]++;
                 prediction[i][j] = MathEx.whichMax(p);
             }
         }
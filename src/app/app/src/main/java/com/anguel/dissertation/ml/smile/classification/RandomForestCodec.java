@@ -0,0 +1,1282 @@
+/*
+ * Copyright (c) 2010-2020 Haifeng Li. All rights reserved.
+ *
+ * Smile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Smile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Smile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.anguel.dissertation.ml.smile.classification;
+
+import com.anguel.dissertation.ml.ModelStats;
+import com.anguel.dissertation.ml.smile.base.cart.DecisionNode;
+import com.anguel.dissertation.ml.smile.base.cart.FlatForest;
+import com.anguel.dissertation.ml.smile.base.cart.InternalNode;
+import com.anguel.dissertation.ml.smile.base.cart.Node;
+import com.anguel.dissertation.ml.smile.base.cart.NominalNode;
+import com.anguel.dissertation.ml.smile.base.cart.OrdinalNode;
+import com.anguel.dissertation.ml.smile.base.cart.SplitRule;
+import com.anguel.dissertation.ml.smile.data.formula.Formula;
+import com.anguel.dissertation.ml.smile.data.formula.Term;
+import com.anguel.dissertation.ml.smile.data.measure.Measure;
+import com.anguel.dissertation.ml.smile.data.measure.NominalScale;
+import com.anguel.dissertation.ml.smile.data.type.DataType;
+import com.anguel.dissertation.ml.smile.data.type.StructField;
+import com.anguel.dissertation.ml.smile.data.type.StructType;
+import com.anguel.dissertation.ml.smile.util.IntSet;
+import com.anguel.dissertation.ml.smile.validation.ClassificationMetrics;
+import com.anguel.dissertation.ml.smile.validation.metric.ConfusionMatrix;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.function.Supplier;
+
+/**
+ * Compact binary format of random forest. Unlike Java serialization,
+ * the trees are stored as flat arrays of fixed size records, which
+ * are read straight from a memory mapped file.
+ * <p>
+ * A file consists of a header with the formula, schema and class labels,
+ * one or more segments of trees, a footer with the forest metrics,
+ * variable importance, model statistics and segment offsets, and a
+ * trailer with the footer offset. All values are big-endian. Within a
+ * segment, the internal nodes and leaves of all trees are stored in
+ * depth-first order. A negative child reference points to a leaf,
+ * whose index is the bitwise complement of the reference.
+ * <p>
+ * A forest read from a file is a read-only view of the mapped file.
+ * Only the metrics and importance of trees are read upfront. The node
+ * objects of a tree are decoded when the tree is first accessed, and
+ * the primitive arrays of {@link FlatForest} are built from the mapped
+ * records on first prediction. Writing a forest copies the records of
+ * mapped trees without decoding them. If the leading trees of a forest
+ * are exactly the trees of the file it is saved to, e.g. the result of
+ * merging a mapped forest with new trees, {@link #save} appends a new
+ * segment and footer to the file in place. The new segment and footer
+ * are written after the old trailer and synced before the new trailer,
+ * so that if the append is interrupted, e.g. the process is killed, the
+ * file is read up to the last complete trailer.
+ * <p>
+ * Optionally, the split values are stored as float and the class
+ * counts of leaves are stored as varint, which usually cuts the file
+ * size in half. Float split values may change the prediction of a
+ * sample that lies within the float rounding error of a split value.
+ * The counts of a varint segment are decoded into memory on first use.
+ *
+ * @author Haifeng Li
+ */
+public class RandomForestCodec {
+    /**
+     * The magic number "SMRF" at the start and end of files.
+     */
+    public static final int MAGIC = 0x534D5246;
+    /**
+     * The format version.
+     */
+    public static final int VERSION = 1;
+    /**
+     * The flag to store split values, scores and deviances as float.
+     */
+    public static final int FLOAT_VALUES = 1;
+    /**
+     * The flag to store the class counts of leaves as varint.
+     */
+    public static final int VARINT_COUNTS = 2;
+
+    /**
+     * The size of trailer, i.e. the footer offset and the magic number.
+     */
+    private static final int TRAILER = 12;
+    /**
+     * The size of classification metrics, i.e. 11 doubles and 2 ints.
+     */
+    private static final int METRICS = 96;
+
+    /**
+     * Private constructor to prevent object creation.
+     */
+    private RandomForestCodec() {
+
+    }
+
+    /**
+     * Writes a random forest to a file.
+     *
+     * @param forest the random forest.
+     * @param file   the output file.
+     * @param flags  the bitwise OR of FLOAT_VALUES and VARINT_COUNTS.
+     * @throws IOException when fails to write the file.
+     */
+    public static void write(RandomForest forest, File file, int flags) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            write(forest, out, flags);
+        }
+    }
+
+    /**
+     * Writes a random forest to an output stream. The stream is flushed
+     * but not closed.
+     *
+     * @param forest the random forest.
+     * @param output the output stream.
+     * @param flags  the bitwise OR of FLOAT_VALUES and VARINT_COUNTS.
+     * @throws IOException when fails to write the stream.
+     */
+    public static void write(RandomForest forest, OutputStream output, int flags) throws IOException {
+        if ((flags & ~(FLOAT_VALUES | VARINT_COUNTS)) != 0) {
+            throw new IllegalArgumentException("Invalid flags: " + flags);
+        }
+
+        Header header = Header.of(forest);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output, 65536));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(flags);
+        header.write(out);
+
+        long segment = out.size();
+        writeSegment(out, forest.models(), 0, forest.size(), header, flags);
+
+        long footer = out.size();
+        writeFooter(out, forest, new long[]{segment});
+
+        out.writeLong(footer);
+        out.writeInt(MAGIC);
+        out.flush();
+    }
+
+    /**
+     * Saves a random forest to a file. If the leading trees of forest
+     * are the trees of a forest read from the same file, in the same
+     * order, and the flags match, the other trees are appended to the
+     * file as a new segment, followed by a new footer. Otherwise, the
+     * forest is written to a temporary file, which then replaces the
+     * file.
+     *
+     * @param forest the random forest.
+     * @param file   the output file.
+     * @param flags  the bitwise OR of FLOAT_VALUES and VARINT_COUNTS.
+     * @throws IOException when fails to write the file.
+     */
+    public static void save(RandomForest forest, File file, int flags) throws IOException {
+        Mapping mapping = appendable(forest, file, flags);
+        if (mapping != null) {
+            append(forest, file, mapping);
+            return;
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            write(forest, temp, flags);
+        } catch (IOException | RuntimeException ex) {
+            temp.delete();
+            throw ex;
+        }
+
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Failed to rename " + temp + " to " + file);
+        }
+    }
+
+    /**
+     * Returns the mapping of file if the forest can be appended to it.
+     */
+    private static Mapping appendable(RandomForest forest, File file, int flags) throws IOException {
+        RandomForest.Model[] models = forest.models();
+        Supplier<DecisionTree> first = models[0].loader();
+        if (!(first instanceof MappedTree)) {
+            return null;
+        }
+
+        Mapping mapping = ((MappedTree) first).segment.mapping;
+        MappedTree[] trees = mapping.trees;
+        if (mapping.file == null || !mapping.file.equals(file.getCanonicalFile())
+                || mapping.flags != flags || file.length() != mapping.length
+                || models.length <= trees.length || !mapping.header.compatible(forest)) {
+            return null;
+        }
+
+        for (int i = 0; i < trees.length; i++) {
+            if (models[i].loader() != trees[i]) {
+                return null;
+            }
+        }
+
+        return mapping;
+    }
+
+    /**
+     * Appends the trees not in the mapped file as a new segment.
+     */
+    private static void append(RandomForest forest, File file, Mapping mapping) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long length = raf.length();
+            try {
+                FileChannel channel = raf.getChannel();
+                channel.position(length);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 65536));
+
+                long[] segments = Arrays.copyOf(mapping.segments, mapping.segments.length + 1);
+                segments[mapping.segments.length] = length;
+                writeSegment(out, forest.models(), mapping.trees.length, forest.size(), mapping.header, mapping.flags);
+
+                long footer = length + out.size();
+                writeFooter(out, forest, segments);
+                out.flush();
+                channel.force(false);
+
+                // the trailer goes last, so that an interrupted append leaves the old trailer as the last valid one
+                out.writeLong(footer);
+                out.writeInt(MAGIC);
+                out.flush();
+                channel.force(false);
+            } catch (IOException | RuntimeException ex) {
+                // drop the partial segment so that the old trailer is at the end again
+                raf.setLength(length);
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Writes a segment of trees from index {@code from} (inclusive) to
+     * {@code to} (exclusive).
+     */
+    private static void writeSegment(DataOutputStream out, RandomForest.Model[] models, int from, int to,
+                                     Header header, int flags) throws IOException {
+        int k = header.k;
+        FlatTree[] trees = new FlatTree[to - from];
+        int nodes = 0;
+        for (int t = 0; t < trees.length; t++) {
+            RandomForest.Model model = models[from + t];
+            Supplier<DecisionTree> loader = model.loader();
+            if (loader instanceof MappedTree && ((MappedTree) loader).segment.mapping.header.k == k) {
+                trees[t] = (MappedTree) loader;
+            } else {
+                trees[t] = new Flattener(model.tree().root(), k);
+            }
+            nodes += trees[t].nodes();
+        }
+
+        out.writeInt(trees.length);
+        out.writeInt(nodes);
+        out.writeInt(nodes + trees.length);
+
+        int nodeBase = 0;
+        for (int t = 0; t < trees.length; t++) {
+            RandomForest.Model model = models[from + t];
+            writeMetrics(out, model.metrics);
+            writeDoubles(out, model.importance());
+            out.writeInt(trees[t].nodes() > 0 ? nodeBase : ~(nodeBase + t));
+            nodeBase += trees[t].nodes();
+        }
+
+        boolean single = (flags & FLOAT_VALUES) != 0;
+        nodeBase = 0;
+        for (int t = 0; t < trees.length; t++) {
+            FlatTree tree = trees[t];
+            int n = tree.nodes();
+            for (int i = 0; i < n; i++) {
+                out.writeInt(tree.feature(i));
+                writeValue(out, tree.value(i), single);
+                writeValue(out, tree.score(i), single);
+                writeValue(out, tree.deviance(i), single);
+                out.writeInt(shift(tree.trueChild(i), nodeBase, nodeBase + t));
+                out.writeInt(shift(tree.falseChild(i), nodeBase, nodeBase + t));
+            }
+            nodeBase += n;
+        }
+
+        boolean varint = (flags & VARINT_COUNTS) != 0;
+        for (FlatTree tree : trees) {
+            int leaves = tree.nodes() + 1;
+            for (int l = 0; l < leaves; l++) {
+                for (int j = 0; j < k; j++) {
+                    int c = tree.count(l, j);
+                    if (varint) {
+                        writeVarint(out, c);
+                    } else {
+                        out.writeInt(c);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the footer.
+     */
+    private static void writeFooter(DataOutputStream out, RandomForest forest, long[] segments) throws IOException {
+        writeMetrics(out, forest.metrics());
+        double[] importance = forest.importance();
+        out.writeInt(importance.length);
+        writeDoubles(out, importance);
+
+        ModelStats stats = forest.stats();
+        out.writeBoolean(stats != null);
+        if (stats != null) {
+            out.writeDouble(stats.getAccuracy());
+            out.writeDouble(stats.getSensitivity());
+            out.writeDouble(stats.getSpecificity());
+            out.writeDouble(stats.getPrecision());
+            out.writeDouble(stats.getFalseDiscoveryRate());
+            out.writeDouble(stats.getFalsePositiveRate());
+            out.writeDouble(stats.getF1score());
+            out.writeLong(stats.getTrainSize());
+            out.writeLong(stats.getTestSize());
+            out.writeLong(stats.getAnxiousCountTrain());
+            out.writeLong(stats.getAnxiousCountTest());
+
+            ConfusionMatrix confusion = stats.getConfusionMatrix();
+            out.writeBoolean(confusion != null);
+            if (confusion != null) {
+                int[][] matrix = confusion.matrix;
+                out.writeInt(matrix.length);
+                for (int[] row : matrix) {
+                    out.writeInt(row.length);
+                    for (int c : row) {
+                        out.writeInt(c);
+                    }
+                }
+            }
+        }
+
+        out.writeInt(segments.length);
+        for (long offset : segments) {
+            out.writeLong(offset);
+        }
+    }
+
+    /**
+     * Returns the reference after moving the nodes and leaves of a tree
+     * to the given positions.
+     */
+    private static int shift(int ref, int nodeBase, int leafBase) {
+        return ref >= 0 ? ref + nodeBase : ~(~ref + leafBase);
+    }
+
+    /**
+     * Reads a random forest from a file, which is mapped into memory.
+     * The returned forest is a view of the file, which should not be
+     * modified other than by {@link #save} while the view is in use.
+     *
+     * @param file the input file.
+     * @return the random forest.
+     * @throws IOException when fails to read the file.
+     */
+    public static RandomForest read(File file) throws IOException {
+        ByteBuffer buffer;
+        try (FileInputStream input = new FileInputStream(file);
+             FileChannel channel = input.getChannel()) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return read(buffer, file.getCanonicalFile());
+    }
+
+    /**
+     * Reads a random forest from a buffer of a whole model file,
+     * starting at its position. The position of buffer is not changed.
+     * The returned forest is a view of the buffer, which should not be
+     * modified while the view is in use.
+     *
+     * @param buffer the buffer of a whole model file.
+     * @return the random forest.
+     * @throws IOException when the buffer is not a valid model file.
+     */
+    public static RandomForest read(ByteBuffer buffer) throws IOException {
+        return read(buffer, null);
+    }
+
+    /**
+     * Reads a random forest from a buffer of the given file.
+     */
+    private static RandomForest read(ByteBuffer buffer, File file) throws IOException {
+        Mapping mapping;
+        try {
+            mapping = new Mapping(buffer.duplicate(), file);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException ex) {
+            throw new IOException("Truncated model file", ex);
+        }
+
+        MappedTree[] trees = mapping.trees;
+        RandomForest.Model[] models = new RandomForest.Model[trees.length];
+        double[] weight = new double[trees.length];
+        for (int t = 0; t < trees.length; t++) {
+            models[t] = new RandomForest.Model(trees[t], trees[t].importance, trees[t].metrics);
+            weight[t] = models[t].weight;
+        }
+
+        Header header = mapping.header;
+        return new RandomForest(header.formula, header.k, models, mapping.metrics, mapping.importance, header.labels, mapping.stats,
+                () -> compile(trees, weight, header.k, header.schema.length()));
+    }
+
+    /**
+     * The header of model file.
+     */
+    private static class Header {
+        final Formula formula;
+        final StructType schema;
+        final StructField response;
+        final int k;
+        final IntSet labels;
+        final SplitRule rule;
+
+        Header(Formula formula, StructType schema, StructField response, int k, IntSet labels, SplitRule rule) {
+            this.formula = formula;
+            this.schema = schema;
+            this.response = response;
+            this.k = k;
+            this.labels = labels;
+            this.rule = rule;
+        }
+
+        Header(ByteBuffer in) throws IOException {
+            String y = readString(in);
+            String[] x = new String[in.getInt()];
+            for (int i = 0; i < x.length; i++) {
+                x[i] = readString(in);
+            }
+            formula = Formula.of(y, x);
+
+            StructField[] fields = new StructField[in.getInt()];
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = readField(in);
+            }
+            schema = new StructType(fields);
+            response = readField(in);
+
+            k = in.getInt();
+            int[] values = new int[k];
+            for (int i = 0; i < k; i++) {
+                values[i] = in.getInt();
+            }
+            labels = new IntSet(values);
+
+            try {
+                rule = SplitRule.valueOf(readString(in));
+            } catch (IllegalArgumentException ex) {
+                throw new IOException("Invalid split rule", ex);
+            }
+        }
+
+        /**
+         * Returns the header of a forest. The schema, response and rule
+         * are taken from the file of the first tree if it is mapped, so
+         * that the tree isn't decoded.
+         */
+        static Header of(RandomForest forest) {
+            Supplier<DecisionTree> first = forest.models()[0].loader();
+            if (first instanceof MappedTree) {
+                Header header = ((MappedTree) first).segment.mapping.header;
+                return new Header(forest.formula(), header.schema, header.response, forest.numClasses(), forest.labels(), header.rule);
+            }
+
+            DecisionTree tree = forest.models()[0].tree();
+            return new Header(forest.formula(), tree.schema(), tree.response(), forest.numClasses(), forest.labels(), tree.rule());
+        }
+
+        /**
+         * Returns true if the trees of forest can be stored under this header.
+         */
+        boolean compatible(RandomForest forest) {
+            return formula.equals(forest.formula()) && k == forest.numClasses() && Arrays.equals(labels.values, forest.labels().values);
+        }
+
+        /**
+         * Writes the header.
+         */
+        void write(DataOutputStream out) throws IOException {
+            Term[] predictors = formula.predictors();
+            writeString(out, formula.response().toString());
+            out.writeInt(predictors.length);
+            for (Term term : predictors) {
+                // only plain variables, which are rebuilt from their names
+                if (!term.variables().equals(Collections.singleton(term.toString()))) {
+                    throw new IllegalArgumentException("Unsupported formula term: " + term);
+                }
+                writeString(out, term.toString());
+            }
+
+            out.writeInt(schema.length());
+            for (StructField field : schema.fields()) {
+                writeField(out, field);
+            }
+            writeField(out, response);
+
+            out.writeInt(k);
+            for (int i = 0; i < k; i++) {
+                out.writeInt(labels.valueOf(i));
+            }
+            writeString(out, rule.name());
+        }
+    }
+
+    /**
+     * A model file mapped into memory.
+     */
+    private static class Mapping {
+        /**
+         * The buffer of the whole file.
+         */
+        final ByteBuffer buffer;
+        /**
+         * The canonical file, or null if the buffer isn't read from a file.
+         */
+        final File file;
+        /**
+         * The length of file.
+         */
+        final long length;
+        final int flags;
+        final Header header;
+        final ClassificationMetrics metrics;
+        final double[] importance;
+        final ModelStats stats;
+        /**
+         * The offset of segments in the file.
+         */
+        final long[] segments;
+        final MappedTree[] trees;
+        /**
+         * The size of a tree record, i.e. metrics, importance and root.
+         */
+        final int treeSize;
+        /**
+         * The size of a node record.
+         */
+        final int nodeSize;
+
+        Mapping(ByteBuffer in, File file) throws IOException {
+            this.file = file;
+            int base = in.position();
+            length = in.limit() - base;
+            if (length < 3 * Integer.BYTES + TRAILER || in.getInt(base) != MAGIC) {
+                throw new IOException("Not a random forest model file");
+            }
+
+            int version = in.getInt(base + Integer.BYTES);
+            if (version > VERSION) {
+                throw new IOException("Unsupported model file version: " + version);
+            }
+
+            // positions are relative to the start of file
+            in.position(base);
+            buffer = in.slice();
+            flags = buffer.getInt(2 * Integer.BYTES);
+            buffer.position(3 * Integer.BYTES);
+            header = new Header(buffer);
+
+            int p = header.schema.length();
+            treeSize = METRICS + p * Double.BYTES + Integer.BYTES;
+            nodeSize = 3 * Integer.BYTES + 3 * ((flags & FLOAT_VALUES) != 0 ? Float.BYTES : Double.BYTES);
+
+            buffer.position(footer(buffer, buffer.position(), (int) length, p));
+            metrics = readMetrics(buffer);
+            importance = readDoubles(buffer, buffer.getInt());
+            stats = buffer.get() != 0 ? readStats(buffer) : null;
+            segments = new long[buffer.getInt()];
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = buffer.getLong();
+            }
+
+            int ntrees = 0;
+            for (long offset : segments) {
+                ntrees += buffer.getInt((int) offset);
+            }
+
+            trees = new MappedTree[ntrees];
+            ntrees = 0;
+            for (long offset : segments) {
+                Segment segment = new Segment(this, (int) offset);
+                for (int t = 0; t < segment.ntrees; t++, ntrees++) {
+                    trees[ntrees] = new MappedTree(segment, t);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the offset of the footer of the last complete trailer. It is
+     * the trailer at the end of file, unless an append was interrupted, in
+     * which case the file is scanned back for the trailer of the previous
+     * version, which is followed by the partial segment or footer.
+     *
+     * @param buffer the buffer of file.
+     * @param start  the position of first segment, i.e. the end of header.
+     * @param length the length of file.
+     * @param p      the number of predictors.
+     */
+    private static int footer(ByteBuffer buffer, int start, int length, int p) throws IOException {
+        for (int trailer = length - TRAILER; trailer >= start; trailer--) {
+            if (buffer.getInt(trailer + Long.BYTES) == MAGIC) {
+                long footer = buffer.getLong(trailer);
+                if (footer >= start && footer < trailer && isFooter(buffer, start, (int) footer, trailer, p)) {
+                    return (int) footer;
+                }
+            }
+        }
+
+        throw new IOException("No complete trailer in model file");
+    }
+
+    /**
+     * Returns true if the bytes in [footer, trailer) are a footer, of which
+     * the segments are before the footer.
+     */
+    private static boolean isFooter(ByteBuffer buffer, int start, int footer, int trailer, int p) {
+        ByteBuffer in = buffer.duplicate();
+        in.limit(trailer);
+        in.position(footer);
+        try {
+            skip(in, METRICS);
+            if (in.getInt() != p) return false;
+            skip(in, p * Double.BYTES);
+            if (in.get() != 0) {
+                skip(in, 7 * Double.BYTES + 4 * Long.BYTES);
+                if (in.get() != 0) {
+                    int rows = in.getInt();
+                    if (rows < 0) return false;
+                    for (int i = 0; i < rows; i++) {
+                        int cols = in.getInt();
+                        if (cols < 0) return false;
+                        skip(in, (long) cols * Integer.BYTES);
+                    }
+                }
+            }
+
+            int n = in.getInt();
+            if (n <= 0 || (long) n * Long.BYTES != in.remaining()) return false;
+            long previous = start - 1;
+            for (int i = 0; i < n; i++) {
+                long offset = in.getLong();
+                if (offset <= previous || offset >= footer) return false;
+                previous = offset;
+            }
+            return true;
+        } catch (BufferUnderflowException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Skips bytes of a buffer.
+     *
+     * @throws BufferUnderflowException if there are fewer bytes remaining.
+     */
+    private static void skip(ByteBuffer in, long n) {
+        if (n > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        in.position(in.position() + (int) n);
+    }
+
+    /**
+     * A segment of trees in a mapped file.
+     */
+    private static class Segment {
+        final Mapping mapping;
+        final int ntrees;
+        final int nodes;
+        final int leaves;
+        /**
+         * The position of tree records.
+         */
+        final int treeOffset;
+        /**
+         * The position of node records.
+         */
+        final int nodeOffset;
+        /**
+         * The position of leaf records.
+         */
+        final int leafOffset;
+        /**
+         * The class counts of leaves decoded from varint.
+         */
+        private int[] counts;
+
+        Segment(Mapping mapping, int offset) {
+            this.mapping = mapping;
+            ByteBuffer buffer = mapping.buffer;
+            ntrees = buffer.getInt(offset);
+            nodes = buffer.getInt(offset + Integer.BYTES);
+            leaves = buffer.getInt(offset + 2 * Integer.BYTES);
+            treeOffset = offset + 3 * Integer.BYTES;
+            nodeOffset = treeOffset + ntrees * mapping.treeSize;
+            leafOffset = nodeOffset + nodes * mapping.nodeSize;
+        }
+
+        /**
+         * Returns the class count of a leaf.
+         */
+        int count(int leaf, int j) {
+            int i = leaf * mapping.header.k + j;
+            if ((mapping.flags & VARINT_COUNTS) == 0) {
+                return mapping.buffer.getInt(leafOffset + i * Integer.BYTES);
+            }
+            return counts()[i];
+        }
+
+        /**
+         * Decodes the varint class counts of all leaves in the segment.
+         */
+        private synchronized int[] counts() {
+            if (counts == null) {
+                ByteBuffer in = mapping.buffer.duplicate();
+                in.position(leafOffset);
+                int[] c = new int[leaves * mapping.header.k];
+                for (int i = 0; i < c.length; i++) {
+                    c[i] = readVarint(in);
+                }
+                counts = c;
+            }
+            return counts;
+        }
+    }
+
+    /**
+     * The nodes of a tree in depth-first order. The child references
+     * are relative to the tree. The root is the internal node 0, or
+     * the leaf 0 if the tree has no internal node.
+     */
+    private interface FlatTree {
+        /**
+         * Returns the number of internal nodes. The number of leaves
+         * is one more.
+         */
+        int nodes();
+
+        /**
+         * Returns the split feature, or its bitwise complement if the
+         * feature is nominal.
+         */
+        int feature(int node);
+
+        double value(int node);
+
+        double score(int node);
+
+        double deviance(int node);
+
+        int trueChild(int node);
+
+        int falseChild(int node);
+
+        int count(int leaf, int j);
+    }
+
+    /**
+     * A tree in a mapped file.
+     */
+    private static class MappedTree implements FlatTree, Supplier<DecisionTree> {
+        final Segment segment;
+        final ClassificationMetrics metrics;
+        final double[] importance;
+        /**
+         * The index of first internal node in the segment.
+         */
+        final int nodeStart;
+        /**
+         * The index of first leaf in the segment.
+         */
+        final int leafStart;
+        /**
+         * The number of internal nodes.
+         */
+        final int nodes;
+
+        MappedTree(Segment segment, int t) {
+            this.segment = segment;
+            Mapping mapping = segment.mapping;
+            ByteBuffer buffer = mapping.buffer.duplicate();
+            buffer.position(segment.treeOffset + t * mapping.treeSize);
+            metrics = readMetrics(buffer);
+            importance = readDoubles(buffer, mapping.header.schema.length());
+
+            // the trees are stored one after another and a tree of n
+            // internal nodes has n + 1 leaves
+            int root = buffer.getInt();
+            nodeStart = root >= 0 ? root : ~root - t;
+            leafStart = nodeStart + t;
+            int next;
+            if (t + 1 < segment.ntrees) {
+                next = buffer.getInt(segment.treeOffset + (t + 2) * mapping.treeSize - Integer.BYTES);
+                next = next >= 0 ? next : ~next - t - 1;
+            } else {
+                next = segment.nodes;
+            }
+            nodes = next - nodeStart;
+        }
+
+        /**
+         * Returns the position of a node record.
+         */
+        private int position(int node) {
+            return segment.nodeOffset + (nodeStart + node) * segment.mapping.nodeSize;
+        }
+
+        /**
+         * Reads a float or double value.
+         */
+        private double read(int position) {
+            Mapping mapping = segment.mapping;
+            return (mapping.flags & FLOAT_VALUES) != 0 ? mapping.buffer.getFloat(position) : mapping.buffer.getDouble(position);
+        }
+
+        /**
+         * Returns the size of a float or double value.
+         */
+        private int width() {
+            return (segment.mapping.flags & FLOAT_VALUES) != 0 ? Float.BYTES : Double.BYTES;
+        }
+
+        /**
+         * Returns the reference relative to the tree.
+         */
+        private int local(int ref) {
+            return ref >= 0 ? ref - nodeStart : ~(~ref - leafStart);
+        }
+
+        @Override
+        public int nodes() {
+            return nodes;
+        }
+
+        @Override
+        public int feature(int node) {
+            return segment.mapping.buffer.getInt(position(node));
+        }
+
+        @Override
+        public double value(int node) {
+            return read(position(node) + Integer.BYTES);
+        }
+
+        @Override
+        public double score(int node) {
+            return read(position(node) + Integer.BYTES + width());
+        }
+
+        @Override
+        public double deviance(int node) {
+            return read(position(node) + Integer.BYTES + 2 * width());
+        }
+
+        @Override
+        public int trueChild(int node) {
+            return local(segment.mapping.buffer.getInt(position(node) + Integer.BYTES + 3 * width()));
+        }
+
+        @Override
+        public int falseChild(int node) {
+            return local(segment.mapping.buffer.getInt(position(node) + 2 * Integer.BYTES + 3 * width()));
+        }
+
+        @Override
+        public int count(int leaf, int j) {
+            return segment.count(leafStart + leaf, j);
+        }
+
+        @Override
+        public DecisionTree get() {
+            Header header = segment.mapping.header;
+            return new DecisionTree(header.schema, header.response, header.k, header.rule, node(nodes > 0 ? 0 : ~0), importance);
+        }
+
+        /**
+         * Decodes the node objects of a subtree.
+         */
+        private Node node(int ref) {
+            int k = segment.mapping.header.k;
+            if (ref < 0) {
+                int[] count = new int[k];
+                for (int j = 0; j < k; j++) {
+                    count[j] = count(~ref, j);
+                }
+                return new DecisionNode(count);
+            }
+
+            Node t = node(trueChild(ref));
+            Node f = node(falseChild(ref));
+            int j = feature(ref);
+            if (j < 0) {
+                return new NominalNode(~j, (int) value(ref), score(ref), deviance(ref), t, f);
+            } else {
+                return new OrdinalNode(j, value(ref), score(ref), deviance(ref), t, f);
+            }
+        }
+    }
+
+    /**
+     * A tree of node objects collected in depth-first order.
+     */
+    private static class Flattener implements FlatTree {
+        final int k;
+        final int[] feature;
+        final double[] value;
+        final double[] score;
+        final double[] deviance;
+        final int[] trueChild;
+        final int[] falseChild;
+        final int[] count;
+        int nodes = 0;
+        int leaves = 0;
+
+        Flattener(Node root, int k) {
+            int n = root.leafs() - 1;
+            this.k = k;
+            feature = new int[n];
+            value = new double[n];
+            score = new double[n];
+            deviance = new double[n];
+            trueChild = new int[n];
+            falseChild = new int[n];
+            count = new int[(n + 1) * k];
+            add(root);
+        }
+
+        /**
+         * Adds a subtree and returns its reference.
+         */
+        int add(Node node) {
+            if (node instanceof InternalNode) {
+                int i = nodes++;
+                InternalNode split = (InternalNode) node;
+                if (split instanceof OrdinalNode) {
+                    feature[i] = split.feature();
+                    value[i] = ((OrdinalNode) split).value();
+                } else if (split instanceof NominalNode) {
+                    feature[i] = ~split.feature();
+                    value[i] = ((NominalNode) split).value();
+                } else {
+                    throw new IllegalArgumentException("Unsupported node type: " + node.getClass());
+                }
+                score[i] = split.score();
+                deviance[i] = split.deviance();
+                trueChild[i] = add(split.trueChild());
+                falseChild[i] = add(split.falseChild());
+                return i;
+            }
+
+            if (!(node instanceof DecisionNode)) {
+                throw new IllegalArgumentException("Only classification trees can be encoded");
+            }
+
+            int[] c = ((DecisionNode) node).count();
+            if (c.length != k) {
+                throw new IllegalArgumentException(String.format("Invalid number of classes: %d, expected: %d", c.length, k));
+            }
+
+            int i = leaves++;
+            System.arraycopy(c, 0, count, i * k, k);
+            return ~i;
+        }
+
+        @Override
+        public int nodes() {
+            return nodes;
+        }
+
+        @Override
+        public int feature(int node) {
+            return feature[node];
+        }
+
+        @Override
+        public double value(int node) {
+            return value[node];
+        }
+
+        @Override
+        public double score(int node) {
+            return score[node];
+        }
+
+        @Override
+        public double deviance(int node) {
+            return deviance[node];
+        }
+
+        @Override
+        public int trueChild(int node) {
+            return trueChild[node];
+        }
+
+        @Override
+        public int falseChild(int node) {
+            return falseChild[node];
+        }
+
+        @Override
+        public int count(int leaf, int j) {
+            return count[leaf * k + j];
+        }
+    }
+
+    /**
+     * Compiles the trees into primitive arrays for prediction.
+     */
+    private static FlatForest compile(FlatTree[] trees, double[] weight, int k, int p) {
+        int nodes = 0;
+        for (FlatTree tree : trees) {
+            nodes += tree.nodes();
+        }
+
+        int leaves = nodes + trees.length;
+        int[] root = new int[trees.length];
+        int[] feature = new int[nodes];
+        boolean[] nominal = new boolean[nodes];
+        double[] value = new double[nodes];
+        int[] trueChild = new int[nodes];
+        int[] falseChild = new int[nodes];
+        int[] output = new int[leaves];
+        double[] posteriori = new double[leaves * k];
+
+        int nodeBase = 0;
+        int leafBase = 0;
+        int[] count = new int[k];
+        for (int t = 0; t < trees.length; t++) {
+            FlatTree tree = trees[t];
+            int n = tree.nodes();
+            root[t] = n > 0 ? nodeBase : ~leafBase;
+            for (int i = 0; i < n; i++) {
+                int j = tree.feature(i);
+                feature[nodeBase + i] = j < 0 ? ~j : j;
+                nominal[nodeBase + i] = j < 0;
+                value[nodeBase + i] = tree.value(i);
+                trueChild[nodeBase + i] = shift(tree.trueChild(i), nodeBase, leafBase);
+                falseChild[nodeBase + i] = shift(tree.falseChild(i), nodeBase, leafBase);
+            }
+
+            for (int l = 0; l <= n; l++) {
+                int leaf = leafBase + l;
+                double size = k;
+                for (int j = 0; j < k; j++) {
+                    count[j] = tree.count(l, j);
+                    size += count[j];
+                }
+
+                int which = 0;
+                for (int j = 0; j < k; j++) {
+                    posteriori[leaf * k + j] = (count[j] + 1) / size;
+                    if (count[j] > count[which]) {
+                        which = j;
+                    }
+                }
+                output[leaf] = which;
+            }
+
+            nodeBase += n;
+            leafBase += n + 1;
+        }
+
+        return new FlatForest(k, p, root, weight, feature, nominal, value, trueChild, falseChild, output, posteriori);
+    }
+
+
+    /**
+     * Writes a string as its UTF-8 length and bytes.
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string of UTF-8 length and bytes.
+     */
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a field with its name, data type and nominal levels if any.
+     */
+    private static void writeField(DataOutputStream out, StructField field) throws IOException {
+        writeString(out, field.name);
+        writeString(out, field.type.name());
+        if (field.measure == null) {
+            out.writeInt(-1);
+        } else if (field.measure instanceof NominalScale) {
+            String[] levels = ((NominalScale) field.measure).levels();
+            out.writeInt(levels.length);
+            for (String level : levels) {
+                writeString(out, level);
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported measure: " + field.measure);
+        }
+    }
+
+    /**
+     * Reads a field.
+     */
+    private static StructField readField(ByteBuffer in) throws IOException {
+        String name = readString(in);
+        DataType type;
+        try {
+            type = DataType.of(readString(in));
+        } catch (ClassNotFoundException | IllegalArgumentException ex) {
+            throw new IOException("Invalid data type of field " + name, ex);
+        }
+
+        int n = in.getInt();
+        Measure measure = null;
+        if (n >= 0) {
+            String[] levels = new String[n];
+            for (int i = 0; i < n; i++) {
+                levels[i] = readString(in);
+            }
+            measure = new NominalScale(levels);
+        }
+
+        return new StructField(name, type, measure);
+    }
+
+    /**
+     * Writes the classification metrics.
+     */
+    private static void writeMetrics(DataOutputStream out, ClassificationMetrics metrics) throws IOException {
+        out.writeDouble(metrics.fitTime);
+        out.writeDouble(metrics.scoreTime);
+        out.writeInt(metrics.size);
+        out.writeInt(metrics.error);
+        out.writeDouble(metrics.accuracy);
+        out.writeDouble(metrics.sensitivity);
+        out.writeDouble(metrics.specificity);
+        out.writeDouble(metrics.precision);
+        out.writeDouble(metrics.f1);
+        out.writeDouble(metrics.mcc);
+        out.writeDouble(metrics.auc);
+        out.writeDouble(metrics.logloss);
+        out.writeDouble(metrics.crossentropy);
+    }
+
+    /**
+     * Reads the classification metrics.
+     */
+    private static ClassificationMetrics readMetrics(ByteBuffer in) {
+        double fitTime = in.getDouble();
+        double scoreTime = in.getDouble();
+        int size = in.getInt();
+        int error = in.getInt();
+        return new ClassificationMetrics(fitTime, scoreTime, size, error,
+                in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble(),
+                in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble());
+    }
+
+    /**
+     * Reads the model statistics.
+     */
+    private static ModelStats readStats(ByteBuffer in) {
+        ModelStats.ModelStatsBuilder builder = ModelStats.builder()
+                .accuracy(in.getDouble())
+                .sensitivity(in.getDouble())
+                .specificity(in.getDouble())
+                .precision(in.getDouble())
+                .falseDiscoveryRate(in.getDouble())
+                .falsePositiveRate(in.getDouble())
+                .f1score(in.getDouble())
+                .trainSize(in.getLong())
+                .testSize(in.getLong())
+                .anxiousCountTrain(in.getLong())
+                .anxiousCountTest(in.getLong());
+
+        if (in.get() != 0) {
+            int[][] matrix = new int[in.getInt()][];
+            for (int i = 0; i < matrix.length; i++) {
+                matrix[i] = new int[in.getInt()];
+                for (int j = 0; j < matrix[i].length; j++) {
+                    matrix[i][j] = in.getInt();
+                }
+            }
+            builder.confusionMatrix(new ConfusionMatrix(matrix));
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Writes a double array without its length.
+     */
+    private static void writeDoubles(DataOutputStream out, double[] x) throws IOException {
+        for (double xi : x) {
+            out.writeDouble(xi);
+        }
+    }
+
+    /**
+     * Reads a double array of given length.
+     */
+    private static double[] readDoubles(ByteBuffer in, int n) {
+        double[] x = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = in.getDouble();
+        }
+        return x;
+    }
+
+    /**
+     * Writes a value as float or double.
+     */
+    private static void writeValue(DataOutputStream out, double x, boolean single) throws IOException {
+        if (single) {
+            out.writeFloat((float) x);
+        } else {
+            out.writeDouble(x);
+        }
+    }
+
+    /**
+     * Writes a non-negative integer in 7-bit groups, least significant first.
+     */
+    private static void writeVarint(DataOutputStream out, int x) throws IOException {
+        while ((x & ~0x7F) != 0) {
+            out.writeByte((x & 0x7F) | 0x80);
+            x >>>= 7;
+        }
+        out.writeByte(x);
+    }
+
+    /**
+     * Reads a varint.
+     */
+    private static int readVarint(ByteBuffer in) {
+        int x = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            x |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return x;
+            }
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+}
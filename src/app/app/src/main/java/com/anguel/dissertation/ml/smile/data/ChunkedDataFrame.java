@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2010-2020 Haifeng Li. All rights reserved.
+ *
+ * Smile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Smile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Smile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.anguel.dissertation.ml.smile.data;
+
+import com.anguel.dissertation.ml.smile.data.vector.BaseVector;
+import com.anguel.dissertation.ml.smile.data.vector.ChunkedVector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A data frame of chunked columns, to which rows are appended without
+ * copying the existing rows. {@link #union(DataFrame...)} returns a new
+ * data frame that shares the full chunks of each column with this one, in
+ * time proportional to the number of new rows, while the union of a
+ * simple data frame copies all rows. The data frame stays unchanged, so
+ * that the versions of a growing data set can be used concurrently.
+ * <p>
+ * Double, integer and byte columns are supported. A chunked data frame
+ * is a regular data frame otherwise, e.g. the input of model training.
+ *
+ * @author Haifeng Li
+ */
+public class ChunkedDataFrame extends DataFrameImpl {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructor. Copies the data into chunks.
+     *
+     * @param data the data frame.
+     * @throws IllegalArgumentException if the type of a column is not supported.
+     */
+    public ChunkedDataFrame(DataFrame data) {
+        this(chunk(data));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param columns the chunked columns.
+     */
+    private ChunkedDataFrame(List<BaseVector> columns) {
+        super(columns);
+    }
+
+    /**
+     * Returns the chunked columns of a data frame.
+     */
+    private static List<BaseVector> chunk(DataFrame data) {
+        List<BaseVector> columns = new ArrayList<>(data.ncol());
+        for (int j = 0; j < data.ncol(); j++) {
+            columns.add(ChunkedVector.of(data.column(j)));
+        }
+        return columns;
+    }
+
+    @Override
+    public ChunkedDataFrame union(DataFrame... dataframes) {
+        for (DataFrame df : dataframes) {
+            if (!schema().equals(df.schema())) {
+                throw new IllegalArgumentException("Union data frames with different schema: " + schema() + " vs " + df.schema());
+            }
+        }
+
+        List<BaseVector> columns = new ArrayList<>(ncol());
+        for (int j = 0; j < ncol(); j++) {
+            BaseVector column = column(j);
+            for (DataFrame df : dataframes) {
+                column = ((ChunkedVector) column).append(df.column(j));
+            }
+            columns.add(column);
+        }
+
+        return new ChunkedDataFrame(columns);
+    }
+}
@@ -127,6 +127,16 @@ public interface DataFrame extends Dataset<Tuple>, Iterable<BaseVector> {
         return new DataFrameImpl(vectors);
     }
 
+    /**
+     * Returns a cursor over the rows, which reuses one object for all
+     * rows instead of creating a row per {@link #get(int)} call.
+     *
+     * @return the cursor positioned before the first row.
+     */
+    default RowCursor cursor() {
+        return new DataFrameCursor(this);
+    }
+
     /**
      * Returns the cell at (i, j).
      *
@@ -156,6 +166,13 @@ public interface DataFrame extends Dataset<Tuple>, Iterable<BaseVector> {
      * @return the data frame of selected rows.
      */
     default DataFrame of(int... index) {
+        // a range of rows doesn't need the index
+        int n = index.length;
+        if (n > 0 && index[0] >= 0 && index[n - 1] == index[0] + n - 1) {
+            int i = 1;
+            while (i < n && index[i] == index[i - 1] + 1) i++;
+            if (i == n) return slice(index[0], index[0] + n);
+        }
         return new IndexDataFrame(this, index);
     }
 
@@ -170,14 +187,15 @@ public interface DataFrame extends Dataset<Tuple>, Iterable<BaseVector> {
     }
 
     /**
-     * Copies the specified range into a new data frame.
+     * Returns a view of the specified range of rows, which doesn't copy
+     * the data of heap double and integer columns.
      *
-     * @param from the initial index of the range to be copied, inclusive
-     * @param to   the final index of the range to be copied, exclusive.
+     * @param from the initial index of the range, inclusive
+     * @param to   the final index of the range, exclusive.
      * @return the data frame of selected range of rows.
      */
     default DataFrame slice(int from, int to) {
-        return IntStream.range(from, to).mapToObj(this::get).collect(Collectors.collect());
+        return new SliceDataFrame(this, from, to);
     }
 
     /**
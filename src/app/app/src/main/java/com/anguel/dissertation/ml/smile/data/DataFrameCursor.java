@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2010-2020 Haifeng Li. All rights reserved.
+ *
+ * Smile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Smile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Smile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.anguel.dissertation.ml.smile.data;
+
+import com.anguel.dissertation.ml.smile.data.type.StructType;
+import com.anguel.dissertation.ml.smile.data.vector.BaseVector;
+import com.anguel.dissertation.ml.smile.data.vector.BooleanVector;
+import com.anguel.dissertation.ml.smile.data.vector.CharVector;
+
+/**
+ * A cursor that reads the values of current row from the columns of
+ * a data frame.
+ *
+ * @author Haifeng Li
+ */
+class DataFrameCursor implements RowCursor {
+    /**
+     * The schema of data frame.
+     */
+    private final StructType schema;
+    /**
+     * The columns of data frame.
+     */
+    private final BaseVector[] columns;
+    /**
+     * The number of rows.
+     */
+    private final int size;
+    /**
+     * The index of current row.
+     */
+    private int i = -1;
+
+    /**
+     * Constructor.
+     *
+     * @param data the data frame.
+     */
+    DataFrameCursor(DataFrame data) {
+        this.schema = data.schema();
+        this.size = data.size();
+        this.columns = new BaseVector[data.ncol()];
+        for (int j = 0; j < columns.length; j++) {
+            columns[j] = data.column(j);
+        }
+    }
+
+    @Override
+    public StructType schema() {
+        return schema;
+    }
+
+    @Override
+    public int index() {
+        return i;
+    }
+
+    @Override
+    public boolean next() {
+        if (i + 1 < size) {
+            i++;
+            return true;
+        }
+
+        i = size;
+        return false;
+    }
+
+    @Override
+    public void seek(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException(String.format("Row %d out of %d rows", i, size));
+        }
+        this.i = i;
+    }
+
+    @Override
+    public Object get(int j) {
+        return columns[j].get(i);
+    }
+
+    @Override
+    public boolean getBoolean(int j) {
+        return ((BooleanVector) columns[j]).getBoolean(i);
+    }
+
+    @Override
+    public char getChar(int j) {
+        return ((CharVector) columns[j]).getChar(i);
+    }
+
+    @Override
+    public byte getByte(int j) {
+        return columns[j].getByte(i);
+    }
+
+    @Override
+    public short getShort(int j) {
+        return columns[j].getShort(i);
+    }
+
+    @Override
+    public int getInt(int j) {
+        return columns[j].getInt(i);
+    }
+
+    @Override
+    public long getLong(int j) {
+        return columns[j].getLong(i);
+    }
+
+    @Override
+    public float getFloat(int j) {
+        return columns[j].getFloat(i);
+    }
+
+    @Override
+    public double getDouble(int j) {
+        return columns[j].getDouble(i);
+    }
+
+    @Override
+    public String toString() {
+        return schema.toString(this);
+    }
+}
@@ -262,6 +262,36 @@ class DataFrameImpl implements DataFrame, Serializable {
         return columns.get(j).get(i);
     }
 
+    @Override
+    public byte getByte(int i, int j) {
+        return columns.get(j).getByte(i);
+    }
+
+    @Override
+    public short getShort(int i, int j) {
+        return columns.get(j).getShort(i);
+    }
+
+    @Override
+    public int getInt(int i, int j) {
+        return columns.get(j).getInt(i);
+    }
+
+    @Override
+    public long getLong(int i, int j) {
+        return columns.get(j).getLong(i);
+    }
+
+    @Override
+    public float getFloat(int i, int j) {
+        return columns.get(j).getFloat(i);
+    }
+
+    @Override
+    public double getDouble(int i, int j) {
+        return columns.get(j).getDouble(i);
+    }
+
     @Override
     public Stream<Tuple> stream() {
         Spliterator<Tuple> spliterator = new DatasetSpliterator<>(this, Spliterator.ORDERED);
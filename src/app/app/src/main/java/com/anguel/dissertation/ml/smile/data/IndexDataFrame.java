@@ -32,10 +32,14 @@ import com.anguel.dissertation.ml.smile.data.vector.Vector;
 
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.stream.Stream;
 
 /**
  * A data frame with a new index instead of the default [0, n) row index.
+ * A column is copied to a new vector of the indexed rows when it is first
+ * accessed, so that the columns and cells are then read without going
+ * through the index.
  *
  * @author Haifeng Li
  */
@@ -48,6 +52,12 @@ public class IndexDataFrame implements DataFrame {
      * The row index.
      */
     private final int[] index;
+    /**
+     * The columns, which are materialized on first access. The array is
+     * read by concurrent workers, e.g. the trees of a forest, and the
+     * first column published is used by all of them.
+     */
+    private final AtomicReferenceArray<BaseVector> columns;
 
     /**
      * Constructor.
@@ -58,6 +68,7 @@ public class IndexDataFrame implements DataFrame {
     public IndexDataFrame(DataFrame df, int[] index) {
         this.df = df;
         this.index = index;
+        this.columns = new AtomicReferenceArray<>(df.ncol());
     }
 
     @Override
@@ -95,6 +106,36 @@ public class IndexDataFrame implements DataFrame {
         return df.get(index[i], j);
     }
 
+    @Override
+    public byte getByte(int i, int j) {
+        return column(j).getByte(i);
+    }
+
+    @Override
+    public short getShort(int i, int j) {
+        return column(j).getShort(i);
+    }
+
+    @Override
+    public int getInt(int i, int j) {
+        return column(j).getInt(i);
+    }
+
+    @Override
+    public long getLong(int i, int j) {
+        return column(j).getLong(i);
+    }
+
+    @Override
+    public float getFloat(int i, int j) {
+        return column(j).getFloat(i);
+    }
+
+    @Override
+    public double getDouble(int i, int j) {
+        return column(j).getDouble(i);
+    }
+
     @Override
     public Stream<Tuple> stream() {
         return Arrays.stream(index).mapToObj(df::get);
@@ -102,57 +143,65 @@ public class IndexDataFrame implements DataFrame {
 
     @Override
     public BaseVector column(int i) {
-        return df.column(i).get(index);
+        BaseVector column = columns.get(i);
+        if (column == null) {
+            column = df.column(i).get(index);
+            if (!columns.compareAndSet(i, null, column)) {
+                column = columns.get(i);
+            }
+        }
+        return column;
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public <T> Vector<T> vector(int i) {
-        return df.<T>vector(i).get(index);
+        return (Vector<T>) column(i);
     }
 
     @Override
     public BooleanVector booleanVector(int i) {
-        return df.booleanVector(i).get(index);
+        return (BooleanVector) column(i);
     }
 
     @Override
     public CharVector charVector(int i) {
-        return df.charVector(i).get(index);
+        return (CharVector) column(i);
     }
 
     @Override
     public ByteVector byteVector(int i) {
-        return df.byteVector(i).get(index);
+        return (ByteVector) column(i);
     }
 
     @Override
     public ShortVector shortVector(int i) {
-        return df.shortVector(i).get(index);
+        return (ShortVector) column(i);
     }
 
     @Override
     public IntVector intVector(int i) {
-        return df.intVector(i).get(index);
+        return (IntVector) column(i);
     }
 
     @Override
     public LongVector longVector(int i) {
-        return df.longVector(i).get(index);
+        return (LongVector) column(i);
     }
 
     @Override
     public FloatVector floatVector(int i) {
-        return df.floatVector(i).get(index);
+        return (FloatVector) column(i);
     }
 
     @Override
     public DoubleVector doubleVector(int i) {
-        return df.doubleVector(i).get(index);
+        return (DoubleVector) column(i);
     }
 
     @Override
     public StringVector stringVector(int i) {
-        return df.stringVector(i).get(index);
+        return (StringVector) column(i);
     }
 
     @Override
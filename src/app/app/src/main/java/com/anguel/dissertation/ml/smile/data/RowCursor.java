@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2010-2020 Haifeng Li. All rights reserved.
+ *
+ * Smile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Smile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Smile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.anguel.dissertation.ml.smile.data;
+
+/**
+ * A mutable tuple that scans the rows of a data frame. The cursor is
+ * a single object whose values are those of the current row, so that
+ * a loop over rows doesn't create an object per row. The cursor is
+ * positioned before the first row when it is created.
+ * <p>
+ * As the values change when the cursor moves, a reference to the
+ * cursor must not be kept as a row, e.g. collected in a list.
+ * {@link DataFrame#get(int)} returns an independent row instead.
+ *
+ * <pre>{@code
+ *     RowCursor row = data.cursor();
+ *     while (row.next()) {
+ *         y[row.index()] = model.predict(row);
+ *     }
+ * }</pre>
+ *
+ * @author Haifeng Li
+ */
+public interface RowCursor extends Tuple {
+    /**
+     * Returns the index of current row.
+     *
+     * @return the index of current row, -1 before the first row and
+     * the number of rows after the last row.
+     */
+    int index();
+
+    /**
+     * Moves the cursor to the next row.
+     *
+     * @return true if the cursor is on a row, false if there are no more rows.
+     */
+    boolean next();
+
+    /**
+     * Moves the cursor to a row.
+     *
+     * @param i the row index.
+     * @throws IndexOutOfBoundsException if the row index is out of range.
+     */
+    void seek(int i);
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2010-2020 Haifeng Li. All rights reserved.
+ *
+ * Smile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Smile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Smile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.anguel.dissertation.ml.smile.data;
+
+import com.anguel.dissertation.ml.smile.data.type.StructType;
+import com.anguel.dissertation.ml.smile.data.vector.BaseVector;
+import com.anguel.dissertation.ml.smile.data.vector.BooleanVector;
+import com.anguel.dissertation.ml.smile.data.vector.ByteVector;
+import com.anguel.dissertation.ml.smile.data.vector.CharVector;
+import com.anguel.dissertation.ml.smile.data.vector.DoubleVector;
+import com.anguel.dissertation.ml.smile.data.vector.FloatVector;
+import com.anguel.dissertation.ml.smile.data.vector.IntVector;
+import com.anguel.dissertation.ml.smile.data.vector.LongVector;
+import com.anguel.dissertation.ml.smile.data.vector.ShortVector;
+import com.anguel.dissertation.ml.smile.data.vector.StringVector;
+import com.anguel.dissertation.ml.smile.data.vector.Vector;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A data frame of a contiguous range of rows of another data frame.
+ * Rows are addressed by an offset, without an index array. The columns
+ * are the slices of the underlying columns, which are views of the same
+ * data for heap double and integer vectors, so that a slice is as fast
+ * as the underlying data frame, e.g. a training or test split.
+ *
+ * @author Haifeng Li
+ */
+public class SliceDataFrame implements DataFrame {
+    /**
+     * The underlying data frame.
+     */
+    private final DataFrame df;
+    /**
+     * The initial row of the range, inclusive.
+     */
+    private final int from;
+    /**
+     * The number of rows.
+     */
+    private final int size;
+    /**
+     * The columns, which are sliced on first access. The array is read
+     * by concurrent workers, e.g. the trees of a forest, and the first
+     * slice published is used by all of them.
+     */
+    private final AtomicReferenceArray<BaseVector> columns;
+
+    /**
+     * Constructor.
+     *
+     * @param df   The underlying data frame.
+     * @param from The initial row of the range, inclusive.
+     * @param to   The final row of the range, exclusive.
+     */
+    public SliceDataFrame(DataFrame df, int from, int to) {
+        if (from < 0 || to > df.size() || from > to) {
+            throw new IllegalArgumentException(String.format("Invalid range [%d, %d) of %d rows", from, to, df.size()));
+        }
+
+        this.df = df;
+        this.from = from;
+        this.size = to - from;
+        this.columns = new AtomicReferenceArray<>(df.ncol());
+    }
+
+    @Override
+    public StructType schema() {
+        return df.schema();
+    }
+
+    @Override
+    public String toString() {
+        return toString(10, true);
+    }
+
+    @Override
+    public Iterator<BaseVector> iterator() {
+        return IntStream.range(0, ncol()).mapToObj(this::column).iterator();
+    }
+
+    @Override
+    public int indexOf(String name) {
+        return df.indexOf(name);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int ncol() {
+        return columns.length();
+    }
+
+    @Override
+    public Object get(int i, int j) {
+        return column(j).get(i);
+    }
+
+    @Override
+    public byte getByte(int i, int j) {
+        return column(j).getByte(i);
+    }
+
+    @Override
+    public short getShort(int i, int j) {
+        return column(j).getShort(i);
+    }
+
+    @Override
+    public int getInt(int i, int j) {
+        return column(j).getInt(i);
+    }
+
+    @Override
+    public long getLong(int i, int j) {
+        return column(j).getLong(i);
+    }
+
+    @Override
+    public float getFloat(int i, int j) {
+        return column(j).getFloat(i);
+    }
+
+    @Override
+    public double getDouble(int i, int j) {
+        return column(j).getDouble(i);
+    }
+
+    @Override
+    public Stream<Tuple> stream() {
+        return IntStream.range(from, from + size).mapToObj(df::get);
+    }
+
+    @Override
+    public BaseVector column(int i) {
+        BaseVector column = columns.get(i);
+        if (column == null) {
+            column = df.column(i).slice(from, from + size);
+            if (!columns.compareAndSet(i, null, column)) {
+                column = columns.get(i);
+            }
+        }
+        return column;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> Vector<T> vector(int i) {
+        return (Vector<T>) column(i);
+    }
+
+    @Override
+    public BooleanVector booleanVector(int i) {
+        return (BooleanVector) column(i);
+    }
+
+    @Override
+    public CharVector charVector(int i) {
+        return (CharVector) column(i);
+    }
+
+    @Override
+    public ByteVector byteVector(int i) {
+        return (ByteVector) column(i);
+    }
+
+    @Override
+    public ShortVector shortVector(int i) {
+        return (ShortVector) column(i);
+    }
+
+    @Override
+    public IntVector intVector(int i) {
+        return (IntVector) column(i);
+    }
+
+    @Override
+    public LongVector longVector(int i) {
+        return (LongVector) column(i);
+    }
+
+    @Override
+    public FloatVector floatVector(int i) {
+        return (FloatVector) column(i);
+    }
+
+    @Override
+    public DoubleVector doubleVector(int i) {
+        return (DoubleVector) column(i);
+    }
+
+    @Override
+    public StringVector stringVector(int i) {
+        return (StringVector) column(i);
+    }
+
+    @Override
+    public DataFrame slice(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IllegalArgumentException(String.format("Invalid range [%d, %d) of %d rows", from, to, size));
+        }
+        return new SliceDataFrame(df, this.from + from, this.from + to);
+    }
+
+    @Override
+    public DataFrame select(int... cols) {
+        return new SliceDataFrame(df.select(cols), from, from + size);
+    }
+
+    @Override
+    public DataFrame drop(int... cols) {
+        return new SliceDataFrame(df.drop(cols), from, from + size);
+    }
+
+    @Override
+    public DataFrame merge(DataFrame... dataframes) {
+        return frame().merge(dataframes);
+    }
+
+    @Override
+    public DataFrame merge(BaseVector... vectors) {
+        return frame().merge(vectors);
+    }
+
+    @Override
+    public DataFrame union(DataFrame... dataframes) {
+        return frame().union(dataframes);
+    }
+
+    @Override
+    public Tuple get(int i) {
+        return df.get(from + i);
+    }
+
+    /**
+     * Returns a simple data frame of the sliced columns.
+     */
+    private DataFrame frame() {
+        return new DataFrameImpl(Arrays.asList(IntStream.range(0, ncol()).mapToObj(this::column).toArray(BaseVector[]::new)));
+    }
+}
@@ -17,7 +17,9 @@
 
 package com.anguel.dissertation.ml.smile.data.formula;
 
+import com.anguel.dissertation.ml.smile.data.AbstractTuple;
 import com.anguel.dissertation.ml.smile.data.DataFrame;
+import com.anguel.dissertation.ml.smile.data.RowCursor;
 import com.anguel.dissertation.ml.smile.data.Tuple;
 import com.anguel.dissertation.ml.smile.data.type.DataTypes;
 import com.anguel.dissertation.ml.smile.data.type.StructField;
@@ -107,6 +109,76 @@ public class Formula implements Serializable {
         Feature[] x;
     }
 
+    /**
+     * The predictors of the current row of a cursor.
+     */
+    private static class XCursor extends AbstractTuple implements RowCursor {
+        /**
+         * The binding of formula.
+         */
+        private final Binding binding;
+        /**
+         * The input cursor.
+         */
+        private final RowCursor cursor;
+
+        /**
+         * Constructor.
+         *
+         * @param binding the binding of formula.
+         * @param cursor  the input cursor.
+         */
+        XCursor(Binding binding, RowCursor cursor) {
+            this.binding = binding;
+            this.cursor = cursor;
+        }
+
+        @Override
+        public StructType schema() {
+            return binding.xschema;
+        }
+
+        @Override
+        public int index() {
+            return cursor.index();
+        }
+
+        @Override
+        public boolean next() {
+            return cursor.next();
+        }
+
+        @Override
+        public void seek(int i) {
+            cursor.seek(i);
+        }
+
+        @Override
+        public Object get(int i) {
+            return binding.x[i].apply(cursor);
+        }
+
+        @Override
+        public int getInt(int i) {
+            return binding.x[i].applyAsInt(cursor);
+        }
+
+        @Override
+        public long getLong(int i) {
+            return binding.x[i].applyAsLong(cursor);
+        }
+
+        @Override
+        public float getFloat(int i) {
+            return binding.x[i].applyAsFloat(cursor);
+        }
+
+        @Override
+        public double getDouble(int i) {
+            return binding.x[i].applyAsDouble(cursor);
+        }
+    }
+
     /**
      * Constructor.
      *
@@ -411,6 +483,19 @@ public class Formula implements Serializable {
         };
     }
 
+    /**
+     * Apply the formula on the rows of a cursor to generate the predictors
+     * data. The returned cursor moves the input cursor and projects its
+     * current row, so that a loop over rows doesn't create a tuple per row.
+     *
+     * @param cursor the input cursor.
+     * @return the cursor of predictors.
+     */
+    public RowCursor x(RowCursor cursor) {
+        bind(cursor.schema());
+        return new XCursor(binding.get(), cursor);
+    }
+
     /**
      * Returns a data frame of predictors and optionally response variable
      * (if input data frame has the related variable(s)).
@@ -23,6 +23,7 @@ import com.anguel.dissertation.ml.smile.data.type.StructField;
 
 import java.io.Serializable;
 import java.util.stream.BaseStream;
+import java.util.stream.IntStream;
 
 /**
  * Base interface for immutable named vectors, which are sequences of elements supporting
@@ -153,6 +154,22 @@ public interface BaseVector<T, TS, S extends BaseStream<TS, S>> extends Serializ
      */
     BaseVector<T, TS, S> get(int... index);
 
+    /**
+     * Returns the vector of entries in a range. Heap double and integer
+     * vectors return a view of the same data without copying. Other
+     * vectors copy the entries.
+     *
+     * @param from the initial index of the range, inclusive.
+     * @param to   the final index of the range, exclusive.
+     * @return the vector of entries in the range.
+     */
+    default BaseVector<T, TS, S> slice(int from, int to) {
+        if (from < 0 || to > size() || from > to) {
+            throw new IndexOutOfBoundsException(String.format("Invalid range [%d, %d) of size %d", from, to, size()));
+        }
+        return get(IntStream.range(from, to).toArray());
+    }
+
     /**
      * Returns the byte value at position i.
      *
@@ -21,6 +21,7 @@ import com.anguel.dissertation.ml.smile.data.measure.Measure;
 import com.anguel.dissertation.ml.smile.data.measure.NumericalMeasure;
 import com.anguel.dissertation.ml.smile.data.type.StructField;
 
+import java.util.Arrays;
 import java.util.stream.IntStream;
 
 /**
@@ -108,6 +109,11 @@ class ByteVectorImpl implements ByteVector {
         return new ByteVectorImpl(field(), v);
     }
 
+    @Override
+    public ByteVector slice(int from, int to) {
+        return new ByteVectorImpl(field(), Arrays.copyOfRange(vector, from, to));
+    }
+
     @Override
     public int size() {
         return vector.length;
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2010-2020 Haifeng Li. All rights reserved.
+ *
+ * Smile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Smile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Smile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.anguel.dissertation.ml.smile.data.vector;
+
+import com.anguel.dissertation.ml.smile.data.type.StructField;
+
+/**
+ * A vector of immutable fixed-size chunks, to which values are appended
+ * without copying the existing values. Appending returns a new vector that
+ * shares the full chunks with this one, so it takes time proportional to
+ * the number of new values, plus one partially filled last chunk at most.
+ * The vector stays unchanged and valid.
+ * <p>
+ * Random access goes through one more array lookup than a flat vector.
+ * Bulk reads, e.g. {@code toDoubleArray(double[])}, copy whole chunks.
+ * Double, integer and byte vectors are supported.
+ *
+ * @author Haifeng Li
+ */
+public interface ChunkedVector {
+    /**
+     * Returns the number of values.
+     *
+     * @return the number of values.
+     */
+    int size();
+
+    /**
+     * Returns a new vector with the values of another vector appended.
+     *
+     * @param other the vector of values to append, of the same type.
+     * @return the new vector.
+     * @throws IllegalArgumentException if the type of vector doesn't match.
+     */
+    BaseVector append(BaseVector other);
+
+    /**
+     * Returns the chunked copy of a vector.
+     *
+     * @param vector the vector.
+     * @return the chunked vector.
+     * @throws IllegalArgumentException if the type of vector is not supported.
+     */
+    static BaseVector of(BaseVector vector) {
+        if (vector instanceof ChunkedVector) {
+            return vector;
+        }
+
+        StructField field = vector.field();
+        int n = vector.size();
+        switch (field.type.id()) {
+            case Double:
+                return new DoubleChunkedVectorImpl(field, Chunks.append(new double[0][], 0, vector.toDoubleArray(), n, double[]::new), n);
+            case Integer:
+                return new IntChunkedVectorImpl(field, Chunks.append(new int[0][], 0, ((IntVector) vector).array(), n, int[]::new), n);
+            case Byte:
+                return new ByteChunkedVectorImpl(field, Chunks.append(new byte[0][], 0, ((ByteVector) vector).array(), n, byte[]::new), n);
+            default:
+                throw new IllegalArgumentException("Unsupported chunked vector type: " + field.type);
+        }
+    }
+}
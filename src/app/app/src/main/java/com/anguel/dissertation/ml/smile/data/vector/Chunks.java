@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2010-2020 Haifeng Li. All rights reserved.
+ *
+ * Smile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Smile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Smile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.anguel.dissertation.ml.smile.data.vector;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * The layout of chunked vectors.
+ *
+ * @author Haifeng Li
+ */
+final class Chunks {
+    /**
+     * The bits of index within a chunk.
+     */
+    static final int SHIFT = 12;
+    /**
+     * The number of values in a chunk.
+     */
+    static final int SIZE = 1 << SHIFT;
+    /**
+     * The mask of index within a chunk.
+     */
+    static final int MASK = SIZE - 1;
+
+    /**
+     * Private constructor to prevent instance creation.
+     */
+    private Chunks() {
+
+    }
+
+    /**
+     * Appends values to chunks. The full chunks are shared with the new
+     * chunks. The partially filled last chunk is copied, so that the old
+     * chunks stay unchanged.
+     *
+     * @param chunks the chunks.
+     * @param size   the number of values in chunks.
+     * @param values the primitive array of values to append.
+     * @param n      the number of values to append.
+     * @param chunk  the constructor of chunk arrays.
+     * @param <T>    the type of chunk arrays.
+     * @return the new chunks.
+     */
+    static <T> T[] append(T[] chunks, int size, Object values, int n, IntFunction<T> chunk) {
+        int total = size + n;
+        if (total < 0) {
+            throw new IllegalArgumentException("Too many values: " + ((long) size + n));
+        }
+
+        T[] result = Arrays.copyOf(chunks, (total + MASK) >>> SHIFT);
+        for (int i = size; i < total; ) {
+            int c = i >>> SHIFT;
+            int offset = i & MASK;
+            T dst = chunk.apply(SIZE);
+            if (offset > 0) {
+                System.arraycopy(chunks[c], 0, dst, 0, offset);
+            }
+
+            int m = Math.min(SIZE - offset, total - i);
+            System.arraycopy(values, i - size, dst, offset, m);
+            result[c] = dst;
+            i += m;
+        }
+        return result;
+    }
+
+    /**
+     * Copies the values of chunks to an array.
+     *
+     * @param chunks the chunks.
+     * @param size   the number of values in chunks.
+     * @param a      the primitive array to copy into.
+     * @return the array.
+     */
+    static <T> Object copy(T[] chunks, int size, Object a) {
+        for (int c = 0, i = 0; i < size; c++, i += SIZE) {
+            System.arraycopy(chunks[c], 0, a, i, Math.min(SIZE, size - i));
+        }
+        return a;
+    }
+}
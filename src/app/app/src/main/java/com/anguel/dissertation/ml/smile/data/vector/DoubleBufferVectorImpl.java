@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2010-2020 Haifeng Li. All rights reserved.
+ *
+ * Smile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Smile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Smile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.anguel.dissertation.ml.smile.data.vector;
+
+import com.anguel.dissertation.ml.smile.data.measure.CategoricalMeasure;
+import com.anguel.dissertation.ml.smile.data.measure.Measure;
+import com.anguel.dissertation.ml.smile.data.type.StructField;
+
+import java.nio.DoubleBuffer;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+
+/**
+ * An immutable double vector backed by a buffer, e.g. a memory mapped
+ * file, without copying the data to the heap. {@link #array()} and
+ * {@link #toDoubleArray()} return a copy of the data. The vector is
+ * serialized as a heap vector.
+ *
+ * @author Haifeng Li
+ */
+class DoubleBufferVectorImpl implements DoubleVector {
+    /**
+     * The name of vector.
+     */
+    private final String name;
+    /**
+     * Optional measure.
+     */
+    private final Measure measure;
+    /**
+     * The vector data, of which only absolute methods are used.
+     */
+    private final DoubleBuffer vector;
+
+    /**
+     * Constructor.
+     */
+    public DoubleBufferVectorImpl(StructField field, DoubleBuffer vector) {
+        if (field.measure instanceof CategoricalMeasure) {
+            throw new IllegalArgumentException(String.format("Invalid measure %s for %s", field.measure, type()));
+        }
+
+        this.name = field.name;
+        this.measure = field.measure;
+        this.vector = vector.slice();
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public Measure measure() {
+        return measure;
+    }
+
+    @Override
+    public double[] array() {
+        return toDoubleArray(new double[vector.capacity()]);
+    }
+
+    @Override
+    public double[] toDoubleArray(double[] a) {
+        // a duplicate has its own position
+        vector.duplicate().get(a, 0, vector.capacity());
+        return a;
+    }
+
+    @Override
+    public double getDouble(int i) {
+        return vector.get(i);
+    }
+
+    @Override
+    public Double get(int i) {
+        return vector.get(i);
+    }
+
+    @Override
+    public DoubleVector get(int... index) {
+        double[] v = new double[index.length];
+        for (int i = 0; i < index.length; i++) v[i] = vector.get(index[i]);
+        return new DoubleVectorImpl(field(), v);
+    }
+
+    @Override
+    public DoubleVector slice(int from, int to) {
+        DoubleBuffer buffer = vector.duplicate();
+        buffer.limit(to);
+        buffer.position(from);
+        return new DoubleBufferVectorImpl(field(), buffer);
+    }
+
+    @Override
+    public int size() {
+        return vector.capacity();
+    }
+
+    @Override
+    public DoubleStream stream() {
+        return IntStream.range(0, vector.capacity()).mapToDouble(vector::get);
+    }
+
+    @Override
+    public String toString() {
+        return toString(10);
+    }
+
+    /**
+     * Serializes the data as a heap vector, as buffers are not serializable.
+     */
+    private Object writeReplace() {
+        return new DoubleVectorImpl(field(), array());
+    }
+}
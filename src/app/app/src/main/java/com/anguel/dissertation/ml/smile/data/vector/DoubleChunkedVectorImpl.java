@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2010-2020 Haifeng Li. All rights reserved.
+ *
+ * Smile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Smile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Smile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.anguel.dissertation.ml.smile.data.vector;
+
+import com.anguel.dissertation.ml.smile.data.measure.CategoricalMeasure;
+import com.anguel.dissertation.ml.smile.data.measure.Measure;
+import com.anguel.dissertation.ml.smile.data.type.StructField;
+
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+
+/**
+ * An immutable double vector of fixed-size chunks.
+ *
+ * @author Haifeng Li
+ */
+class DoubleChunkedVectorImpl implements DoubleVector, ChunkedVector {
+    /**
+     * The name of vector.
+     */
+    private final String name;
+    /**
+     * Optional measure.
+     */
+    private final Measure measure;
+    /**
+     * The chunks of data, which are never modified.
+     */
+    private final double[][] chunks;
+    /**
+     * The number of values.
+     */
+    private final int size;
+
+    /**
+     * Constructor.
+     */
+    public DoubleChunkedVectorImpl(StructField field, double[][] chunks, int size) {
+        if (field.measure instanceof CategoricalMeasure) {
+            throw new IllegalArgumentException(String.format("Invalid measure %s for %s", field.measure, type()));
+        }
+
+        this.name = field.name;
+        this.measure = field.measure;
+        this.chunks = chunks;
+        this.size = size;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public Measure measure() {
+        return measure;
+    }
+
+    @Override
+    public double[] array() {
+        return toDoubleArray(new double[size]);
+    }
+
+    @Override
+    public double[] toDoubleArray(double[] a) {
+        Chunks.copy(chunks, size, a);
+        return a;
+    }
+
+    @Override
+    public double getDouble(int i) {
+        return chunks[i >>> Chunks.SHIFT][i & Chunks.MASK];
+    }
+
+    @Override
+    public Double get(int i) {
+        return getDouble(i);
+    }
+
+    @Override
+    public DoubleVector get(int... index) {
+        double[] v = new double[index.length];
+        for (int i = 0; i < index.length; i++) v[i] = getDouble(index[i]);
+        return new DoubleVectorImpl(field(), v);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public DoubleStream stream() {
+        return IntStream.range(0, size).mapToDouble(this::getDouble);
+    }
+
+    @Override
+    public BaseVector append(BaseVector other) {
+        if (!(other instanceof DoubleVector)) {
+            throw new IllegalArgumentException(String.format("Cannot append %s to %s", other.type(), type()));
+        }
+
+        int n = other.size();
+        return new DoubleChunkedVectorImpl(field(), Chunks.append(chunks, size, other.toDoubleArray(), n, double[]::new), size + n);
+    }
+
+    @Override
+    public String toString() {
+        return toString(10);
+    }
+}
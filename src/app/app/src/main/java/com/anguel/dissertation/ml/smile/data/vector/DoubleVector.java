@@ -23,6 +23,7 @@ import com.anguel.dissertation.ml.smile.data.type.DataType;
 import com.anguel.dissertation.ml.smile.data.type.DataTypes;
 import com.anguel.dissertation.ml.smile.data.type.StructField;
 
+import java.nio.DoubleBuffer;
 import java.util.stream.Collectors;
 import java.util.stream.DoubleStream;
 
@@ -122,4 +123,16 @@ public interface DoubleVector extends BaseVector<Double, Double, DoubleStream> {
     static DoubleVector of(StructField field, DoubleStream stream) {
         return new DoubleVectorImpl(field, stream.toArray());
     }
-}
\ No newline at end of file
+
+    /**
+     * Creates a named double vector backed by a buffer, e.g. a memory mapped file.
+     * The data are not copied.
+     *
+     * @param field  the struct field of vector.
+     * @param buffer the data of vector, from the position to the limit.
+     * @return the vector.
+     */
+    static DoubleVector of(StructField field, DoubleBuffer buffer) {
+        return new DoubleBufferVectorImpl(field, buffer);
+    }
+}
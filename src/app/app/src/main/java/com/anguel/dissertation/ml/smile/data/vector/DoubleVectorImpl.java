@@ -21,6 +21,7 @@ import com.anguel.dissertation.ml.smile.data.measure.CategoricalMeasure;
 import com.anguel.dissertation.ml.smile.data.measure.Measure;
 import com.anguel.dissertation.ml.smile.data.type.StructField;
 
+import java.nio.DoubleBuffer;
 import java.util.Arrays;
 import java.util.stream.DoubleStream;
 
@@ -108,6 +109,11 @@ class DoubleVectorImpl implements DoubleVector {
         return new DoubleVectorImpl(field(), v);
     }
 
+    @Override
+    public DoubleVector slice(int from, int to) {
+        return new DoubleBufferVectorImpl(field(), DoubleBuffer.wrap(vector, from, to - from));
+    }
+
     @Override
     public int size() {
         return vector.length;
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2010-2020 Haifeng Li. All rights reserved.
+ *
+ * Smile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Smile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Smile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.anguel.dissertation.ml.smile.data.vector;
+
+import com.anguel.dissertation.ml.smile.data.measure.Measure;
+import com.anguel.dissertation.ml.smile.data.measure.NumericalMeasure;
+import com.anguel.dissertation.ml.smile.data.type.StructField;
+
+import java.nio.IntBuffer;
+import java.util.stream.IntStream;
+
+/**
+ * An immutable integer vector backed by a buffer, e.g. a memory mapped
+ * file, without copying the data to the heap. {@link #array()} and
+ * {@link #toIntArray()} return a copy of the data. The vector is
+ * serialized as a heap vector.
+ *
+ * @author Haifeng Li
+ */
+class IntBufferVectorImpl implements IntVector {
+    /**
+     * The name of vector.
+     */
+    private final String name;
+    /**
+     * Optional measure.
+     */
+    private final Measure measure;
+    /**
+     * The vector data, of which only absolute methods are used.
+     */
+    private final IntBuffer vector;
+
+    /**
+     * Constructor.
+     */
+    public IntBufferVectorImpl(StructField field, IntBuffer vector) {
+        if (field.measure instanceof NumericalMeasure) {
+            throw new IllegalArgumentException(String.format("Invalid measure %s for %s", field.measure, type()));
+        }
+
+        this.name = field.name;
+        this.measure = field.measure;
+        this.vector = vector.slice();
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public Measure measure() {
+        return measure;
+    }
+
+    @Override
+    public int[] array() {
+        return toIntArray(new int[vector.capacity()]);
+    }
+
+    @Override
+    public int[] toIntArray(int[] a) {
+        // a duplicate has its own position
+        vector.duplicate().get(a, 0, vector.capacity());
+        return a;
+    }
+
+    @Override
+    public double[] toDoubleArray(double[] a) {
+        for (int i = 0; i < a.length; i++) a[i] = vector.get(i);
+        return a;
+    }
+
+    @Override
+    public int getInt(int i) {
+        return vector.get(i);
+    }
+
+    @Override
+    public Integer get(int i) {
+        return vector.get(i);
+    }
+
+    @Override
+    public IntVector get(int... index) {
+        int[] v = new int[index.length];
+        for (int i = 0; i < index.length; i++) v[i] = vector.get(index[i]);
+        return new IntVectorImpl(field(), v);
+    }
+
+    @Override
+    public IntVector slice(int from, int to) {
+        IntBuffer buffer = vector.duplicate();
+        buffer.limit(to);
+        buffer.position(from);
+        return new IntBufferVectorImpl(field(), buffer);
+    }
+
+    @Override
+    public int size() {
+        return vector.capacity();
+    }
+
+    @Override
+    public IntStream stream() {
+        return IntStream.range(0, vector.capacity()).map(vector::get);
+    }
+
+    @Override
+    public String toString() {
+        return toString(10);
+    }
+
+    /**
+     * Serializes the data as a heap vector, as buffers are not serializable.
+     */
+    private Object writeReplace() {
+        return new IntVectorImpl(field(), array());
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2010-2020 Haifeng Li. All rights reserved.
+ *
+ * Smile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Smile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Smile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.anguel.dissertation.ml.smile.data.vector;
+
+import com.anguel.dissertation.ml.smile.data.measure.Measure;
+import com.anguel.dissertation.ml.smile.data.measure.NumericalMeasure;
+import com.anguel.dissertation.ml.smile.data.type.StructField;
+
+import java.util.stream.IntStream;
+
+/**
+ * An immutable integer vector of fixed-size chunks.
+ *
+ * @author Haifeng Li
+ */
+class IntChunkedVectorImpl implements IntVector, ChunkedVector {
+    /**
+     * The name of vector.
+     */
+    private final String name;
+    /**
+     * Optional measure.
+     */
+    private final Measure measure;
+    /**
+     * The chunks of data, which are never modified.
+     */
+    private final int[][] chunks;
+    /**
+     * The number of values.
+     */
+    private final int size;
+
+    /**
+     * Constructor.
+     */
+    public IntChunkedVectorImpl(StructField field, int[][] chunks, int size) {
+        if (field.measure instanceof NumericalMeasure) {
+            throw new IllegalArgumentException(String.format("Invalid measure %s for %s", field.measure, type()));
+        }
+
+        this.name = field.name;
+        this.measure = field.measure;
+        this.chunks = chunks;
+        this.size = size;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public Measure measure() {
+        return measure;
+    }
+
+    @Override
+    public int[] array() {
+        return toIntArray(new int[size]);
+    }
+
+    @Override
+    public int[] toIntArray(int[] a) {
+        Chunks.copy(chunks, size, a);
+        return a;
+    }
+
+    @Override
+    public double[] toDoubleArray(double[] a) {
+        for (int c = 0, i = 0; i < size; c++) {
+            int[] chunk = chunks[c];
+            for (int k = 0; k < chunk.length && i < size; k++, i++) a[i] = chunk[k];
+        }
+        return a;
+    }
+
+    @Override
+    public int getInt(int i) {
+        return chunks[i >>> Chunks.SHIFT][i & Chunks.MASK];
+    }
+
+    @Override
+    public Integer get(int i) {
+        return getInt(i);
+    }
+
+    @Override
+    public IntVector get(int... index) {
+        int[] v = new int[index.length];
+        for (int i = 0; i < index.length; i++) v[i] = getInt(index[i]);
+        return new IntVectorImpl(field(), v);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public IntStream stream() {
+        return IntStream.range(0, size).map(this::getInt);
+    }
+
+    @Override
+    public BaseVector append(BaseVector other) {
+        if (!(other instanceof IntVector)) {
+            throw new IllegalArgumentException(String.format("Cannot append %s to %s", other.type(), type()));
+        }
+
+        int n = other.size();
+        return new IntChunkedVectorImpl(field(), Chunks.append(chunks, size, ((IntVector) other).array(), n, int[]::new), size + n);
+    }
+
+    @Override
+    public String toString() {
+        return toString(10);
+    }
+}
@@ -23,6 +23,7 @@ import com.anguel.dissertation.ml.smile.data.type.DataType;
 import com.anguel.dissertation.ml.smile.data.type.DataTypes;
 import com.anguel.dissertation.ml.smile.data.type.StructField;
 
+import java.nio.IntBuffer;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -122,4 +123,16 @@ public interface IntVector extends BaseVector<Integer, Integer, IntStream> {
     static IntVector of(StructField field, IntStream stream) {
         return new IntVectorImpl(field, stream.toArray());
     }
-}
\ No newline at end of file
+
+    /**
+     * Creates a named integer vector backed by a buffer, e.g. a memory mapped file.
+     * The data are not copied.
+     *
+     * @param field  the struct field of vector.
+     * @param buffer the data of vector, from the position to the limit.
+     * @return the vector.
+     */
+    static IntVector of(StructField field, IntBuffer buffer) {
+        return new IntBufferVectorImpl(field, buffer);
+    }
+}
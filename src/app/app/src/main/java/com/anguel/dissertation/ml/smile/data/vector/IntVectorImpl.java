@@ -21,6 +21,7 @@ import com.anguel.dissertation.ml.smile.data.measure.Measure;
 import com.anguel.dissertation.ml.smile.data.measure.NumericalMeasure;
 import com.anguel.dissertation.ml.smile.data.type.StructField;
 
+import java.nio.IntBuffer;
 import java.util.Arrays;
 import java.util.stream.IntStream;
 
@@ -114,6 +115,11 @@ class IntVectorImpl implements IntVector {
         return new IntVectorImpl(field(), v);
     }
 
+    @Override
+    public IntVector slice(int from, int to) {
+        return new IntBufferVectorImpl(field(), IntBuffer.wrap(vector, from, to - from));
+    }
+
     @Override
     public int size() {
         return vector.length;
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2010-2020 Haifeng Li. All rights reserved.
+ *
+ * Smile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Smile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Smile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.anguel.dissertation.ml.smile.feature;
+
+import com.anguel.dissertation.ml.smile.base.cart.CART;
+import com.anguel.dissertation.ml.smile.base.cart.PathBuffer;
+import com.anguel.dissertation.ml.smile.base.cart.ShapTable;
+import com.anguel.dissertation.ml.smile.data.Tuple;
+import com.anguel.dissertation.ml.smile.data.formula.Formula;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The SHAP explainer of a tree ensemble for batches of instances
+ * (Fast TreeSHAP). The explainer precomputes a {@link ShapTable} of
+ * leaf weights for each tree, so that an instance is explained by
+ * table lookups rather than the TreeSHAP recursion of path weights.
+ * It pays off when the same model explains many instances, e.g.
+ * with {@link #shap(com.anguel.dissertation.ml.smile.data.DataFrame)}.
+ * <p>
+ * As a table grows exponentially with the number of unique features
+ * on the paths of a tree, the tables are limited by a memory budget.
+ * The trees are assigned to the budget in order. The trees that don't
+ * fit are explained by the recursion. A table is built when its tree
+ * explains the first instance. The SHAP values are the same as those
+ * of the model up to rounding errors.
+ * <p>
+ * The explainer is thread safe.
+ *
+ * @author Haifeng Li
+ */
+public class FastTreeSHAP implements TreeSHAP {
+    /**
+     * The default memory budget of tables in bytes.
+     */
+    public static final long DEFAULT_MEMORY = 64L << 20;
+
+    /**
+     * The model to explain.
+     */
+    private final TreeSHAP model;
+    /**
+     * The trees of model.
+     */
+    private final CART[] trees;
+    /**
+     * The flag if the table of a tree fits the memory budget.
+     */
+    private final boolean[] tabulated;
+    /**
+     * The tables built so far.
+     */
+    private final AtomicReferenceArray<ShapTable> tables;
+
+    /**
+     * Constructor with the default memory budget.
+     *
+     * @param model the model to explain.
+     */
+    public FastTreeSHAP(TreeSHAP model) {
+        this(model, DEFAULT_MEMORY);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param model  the model to explain.
+     * @param memory the memory budget of tables in bytes.
+     */
+    public FastTreeSHAP(TreeSHAP model, long memory) {
+        if (memory < 0) {
+            throw new IllegalArgumentException("Invalid memory budget: " + memory);
+        }
+
+        this.model = model;
+        this.trees = model.trees();
+        this.tabulated = new boolean[trees.length];
+        this.tables = new AtomicReferenceArray<>(trees.length);
+
+        long budget = memory / Double.BYTES;
+        for (int i = 0; i < trees.length; i++) {
+            long size = ShapTable.size(trees[i]);
+            if (size <= budget) {
+                tabulated[i] = true;
+                budget -= size;
+            }
+        }
+    }
+
+    @Override
+    public CART[] trees() {
+        return trees;
+    }
+
+    @Override
+    public Formula formula() {
+        return model.formula();
+    }
+
+    /**
+     * Returns the number of trees with a table.
+     *
+     * @return the number of trees with a table.
+     */
+    public int tabulated() {
+        int count = 0;
+        for (boolean b : tabulated) {
+            if (b) count++;
+        }
+        return count;
+    }
+
+    @Override
+    public double[] shap(Tuple x, double[] phi, PathBuffer path) {
+        for (int i = 0; i < trees.length; i++) {
+            ShapTable table = table(i);
+            if (table != null) {
+                if (phi == null) phi = new double[table.length()];
+                table.shap(x, phi, path);
+            } else if (phi == null) {
+                phi = trees[i].shap(x);
+            } else {
+                trees[i].shap(x, phi, path);
+            }
+        }
+        return phi;
+    }
+
+    /**
+     * Returns the table of a tree, which is built on the first call.
+     *
+     * @param i the index of tree.
+     * @return the table, or null if it doesn't fit the memory budget.
+     */
+    private ShapTable table(int i) {
+        if (!tabulated[i]) return null;
+
+        ShapTable table = tables.get(i);
+        if (table == null) {
+            // concurrent builds produce the same table, only one is kept
+            tables.compareAndSet(i, null, new ShapTable(trees[i]));
+            table = tables.get(i);
+        }
+        return table;
+    }
+}
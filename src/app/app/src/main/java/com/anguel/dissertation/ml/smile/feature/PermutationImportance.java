@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2010-2020 Haifeng Li. All rights reserved.
+ *
+ * Smile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Smile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Smile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.anguel.dissertation.ml.smile.feature;
+
+import com.anguel.dissertation.ml.smile.math.Random;
+
+import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * Permutation feature importance. The importance of a feature is the
+ * decrease of accuracy on a holdout data set when the values of the
+ * feature are randomly shuffled, which breaks the relationship between
+ * the feature and the response. Unlike the impurity based importance
+ * of trees, it is measured on data that the model was not trained on
+ * and is not biased towards features of many distinct values.
+ * <p>
+ * The data are copied into columns once. Each (feature, repeat) job
+ * shuffles one column into a buffer and predicts the columns with the
+ * buffer in place of the original column. The buffers are pooled, so
+ * that the number of buffers is the number of jobs running concurrently.
+ * Each job draws from its own random number generator, so the result
+ * doesn't depend on the executor.
+ *
+ * <h2>References</h2>
+ * <ol>
+ * <li>L. Breiman. Random Forests. Machine Learning 45(1):5-32, 2001.</li>
+ * <li>A. Fisher, C. Rudin and F. Dominici. All Models are Wrong, but Many are Useful. JMLR 20(177):1-81, 2019.</li>
+ * </ol>
+ *
+ * @author Haifeng Li
+ */
+public class PermutationImportance implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The accuracy on the holdout data without permutation.
+     */
+    public final double accuracy;
+    /**
+     * The mean decrease of accuracy of each feature over repeats.
+     */
+    public final double[] mean;
+    /**
+     * The standard deviation of decrease of accuracy of each feature over repeats.
+     */
+    public final double[] sd;
+
+    /**
+     * The classifier of columnar data.
+     */
+    @FunctionalInterface
+    public interface Model {
+        /**
+         * Predicts the class labels of columnar data.
+         *
+         * @param x the columns of predictors.
+         * @param n the number of rows.
+         * @return the predicted class labels.
+         */
+        int[] predict(double[][] x, int n);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param accuracy the accuracy on the holdout data without permutation.
+     * @param mean     the mean decrease of accuracy of each feature.
+     * @param sd       the standard deviation of decrease of accuracy of each feature.
+     */
+    public PermutationImportance(double accuracy, double[] mean, double[] sd) {
+        this.accuracy = accuracy;
+        this.mean = mean;
+        this.sd = sd;
+    }
+
+    /**
+     * Computes the permutation importance of features.
+     *
+     * @param model    the classifier.
+     * @param x        the columns of predictors of holdout data, which are not modified.
+     * @param n        the number of rows.
+     * @param y        the true class labels of holdout data as class indices,
+     *                 i.e. in the same encoding as the predictions of the model.
+     * @param repeats  the number of permutations of each feature.
+     * @param seed     the seed of random number generators.
+     * @param executor the executor to run the jobs on. If null, the jobs
+     *                 run in the calling thread.
+     * @return the permutation importance.
+     */
+    public static PermutationImportance of(Model model, double[][] x, int n, int[] y, int repeats, long seed, Executor executor) {
+        if (repeats < 1) {
+            throw new IllegalArgumentException("Invalid number of repeats: " + repeats);
+        }
+
+        if (n < 1 || y.length != n) {
+            throw new IllegalArgumentException(String.format("Invalid holdout size: %d rows, %d labels", n, y.length));
+        }
+
+        int p = x.length;
+        double accuracy = accuracy(y, model.predict(x, n));
+
+        ConcurrentLinkedQueue<Workspace> workspaces = new ConcurrentLinkedQueue<>();
+        double[] score = new double[p * repeats];
+        Runnable[] jobs = new Runnable[p * repeats];
+        for (int i = 0; i < jobs.length; i++) {
+            final int job = i;
+            jobs[i] = () -> {
+                Workspace workspace = workspaces.poll();
+                if (workspace == null) {
+                    workspace = new Workspace(x, n);
+                }
+
+                int j = job / repeats;
+                double[][] columns = workspace.columns;
+                double[] buffer = workspace.buffer;
+                System.arraycopy(x[j], 0, buffer, 0, n);
+                shuffle(buffer, n, new Random(seed + job));
+
+                columns[j] = buffer;
+                try {
+                    score[job] = accuracy - accuracy(y, model.predict(columns, n));
+                } finally {
+                    columns[j] = x[j];
+                    workspaces.offer(workspace);
+                }
+            };
+        }
+
+        if (executor == null) {
+            for (Runnable job : jobs) {
+                job.run();
+            }
+        } else {
+            CompletableFuture<?>[] tasks = new CompletableFuture<?>[jobs.length];
+            for (int i = 0; i < jobs.length; i++) {
+                tasks[i] = CompletableFuture.runAsync(jobs[i], executor);
+            }
+
+            try {
+                CompletableFuture.allOf(tasks).join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                throw new IllegalStateException("Permutation importance failed", cause);
+            }
+        }
+
+        double[] mean = new double[p];
+        double[] sd = new double[p];
+        for (int j = 0; j < p; j++) {
+            double sum = 0.0;
+            for (int r = 0; r < repeats; r++) {
+                sum += score[j * repeats + r];
+            }
+            mean[j] = sum / repeats;
+
+            if (repeats > 1) {
+                double ss = 0.0;
+                for (int r = 0; r < repeats; r++) {
+                    double d = score[j * repeats + r] - mean[j];
+                    ss += d * d;
+                }
+                sd[j] = Math.sqrt(ss / (repeats - 1));
+            }
+        }
+
+        return new PermutationImportance(accuracy, mean, sd);
+    }
+
+    /**
+     * The columns of a job, which are the columns of data with the
+     * shuffle buffer in place of the permuted one, and the buffer.
+     */
+    private static class Workspace {
+        /**
+         * The columns passed to the model.
+         */
+        final double[][] columns;
+        /**
+         * The buffer of the permuted column.
+         */
+        final double[] buffer;
+
+        /**
+         * Constructor.
+         * @param x the columns of data.
+         * @param n the number of rows.
+         */
+        Workspace(double[][] x, int n) {
+            columns = x.clone();
+            buffer = new double[n];
+        }
+    }
+
+    /**
+     * Returns the proportion of correct predictions.
+     */
+    private static double accuracy(int[] truth, int[] prediction) {
+        int match = 0;
+        for (int i = 0; i < truth.length; i++) {
+            if (truth[i] == prediction[i]) {
+                match++;
+            }
+        }
+        return (double) match / truth.length;
+    }
+
+    /**
+     * Shuffles the leading elements of an array.
+     */
+    private static void shuffle(double[] x, int n, Random rng) {
+        for (int i = 0; i < n - 1; i++) {
+            int j = i + rng.nextInt(n - i);
+            double t = x[i];
+            x[i] = x[j];
+            x[j] = t;
+        }
+    }
+}
@@ -18,10 +18,18 @@
 package com.anguel.dissertation.ml.smile.feature;
 
 import com.anguel.dissertation.ml.smile.base.cart.CART;
+import com.anguel.dissertation.ml.smile.base.cart.PathBuffer;
 import com.anguel.dissertation.ml.smile.data.DataFrame;
+import com.anguel.dissertation.ml.smile.data.RowCursor;
 import com.anguel.dissertation.ml.smile.data.Tuple;
 import com.anguel.dissertation.ml.smile.data.formula.Formula;
 
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
 /**
  * SHAP of ensemble tree methods. TreeSHAP is a fast and exact method to
  * estimate SHAP values for tree models and ensembles of trees, under
@@ -48,25 +56,31 @@ public interface TreeSHAP extends SHAP<Tuple> {
     @Override
     default double[] shap(Tuple x) {
         CART[] forest = trees();
-        Tuple xt = formula().x(x);
+        double[] phi = shap(formula().x(x), null, new PathBuffer());
+        for (int i = 0; i < phi.length; i++) {
+            phi[i] /= forest.length;
+        }
 
-        double[] phi = null;
-        for (CART tree : forest) {
-            double[] phii = tree.shap(xt);
+        return phi;
+    }
 
+    /**
+     * Adds up the SHAP values of the trees for an instance.
+     *
+     * @param x    the predictors of an instance, by the model formula.
+     * @param phi  the accumulator of SHAP values, or null to allocate a new one.
+     * @param path the buffer of recursion paths.
+     * @return the accumulator.
+     */
+    default double[] shap(Tuple x, double[] phi, PathBuffer path) {
+        // the first tree allocates the values, the others add to them
+        for (CART tree : trees()) {
             if (phi == null) {
-                phi = phii;
+                phi = tree.shap(x);
             } else {
-                for (int i = 0; i < phi.length; i++) {
-                    phi[i] += phii[i];
-                }
+                tree.shap(x, phi, path);
             }
         }
-
-        for (int i = 0; i < phi.length; i++) {
-            phi[i] /= forest.length;
-        }
-
         return phi;
     }
 
@@ -77,9 +91,85 @@ public interface TreeSHAP extends SHAP<Tuple> {
      * @return the average of absolute SHAP values.
      */
     default double[] shap(DataFrame data) {
+        return shap(data, 0);
+    }
+
+    /**
+     * Returns the average of absolute SHAP values over a data frame.
+     * The rows are split into a block per thread, and each thread sums
+     * the absolute SHAP values of its rows into its own accumulator,
+     * with a path buffer and a working array of SHAP values reused by
+     * every row. The accumulators are then summed up.
+     *
+     * @param data    the data.
+     * @param threads the number of threads. If it is not positive, the number
+     *                of available processors is used. 1 computes the values
+     *                in the calling thread.
+     * @return the average of absolute SHAP values.
+     */
+    default double[] shap(DataFrame data, int threads) {
         // Binds the formula to the data frame's schema in case that
         // it is different from that of training data.
-        formula().bind(data.schema());
-        return shap(data.stream().parallel());
+        Formula formula = formula();
+        formula.bind(data.schema());
+        CART[] forest = trees();
+
+        int n = data.size();
+        int nthreads = Math.min(threads > 0 ? threads : Runtime.getRuntime().availableProcessors(), Math.max(n, 1));
+        IntFunction<double[]> block = t -> {
+            PathBuffer path = new PathBuffer();
+            RowCursor x = formula.x(data.cursor());
+            double[] phi = null;
+            double[] sum = null;
+            for (int i = (int) ((long) n * t / nthreads), end = (int) ((long) n * (t + 1) / nthreads); i < end; i++) {
+                if (phi != null) Arrays.fill(phi, 0.0);
+                x.seek(i);
+                phi = shap(x, phi, path);
+
+                if (sum == null) sum = new double[phi.length];
+                for (int j = 0; j < phi.length; j++) {
+                    sum[j] += Math.abs(phi[j]);
+                }
+            }
+            return sum;
+        };
+
+        double[][] sums;
+        if (nthreads == 1) {
+            sums = new double[][]{block.apply(0)};
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(nthreads);
+            try {
+                sums = pool.submit(() -> IntStream.range(0, nthreads).parallel().mapToObj(block).toArray(double[][]::new)).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("SHAP computation is interrupted", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new IllegalStateException("SHAP computation failed", cause);
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        double[] mean = null;
+        for (double[] sum : sums) {
+            if (sum == null) continue;
+            if (mean == null) {
+                mean = sum;
+            } else {
+                for (int j = 0; j < mean.length; j++) {
+                    mean[j] += sum[j];
+                }
+            }
+        }
+
+        // the average over trees and rows, as the SHAP values of a row are the average over trees
+        for (int j = 0; mean != null && j < mean.length; j++) {
+            mean[j] /= (double) n * forest.length;
+        }
+
+        return mean;
     }
 }
@@ -0,0 +1,723 @@
+/*
+ * Copyright (c) 2010-2020 Haifeng Li. All rights reserved.
+ *
+ * Smile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Smile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Smile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.anguel.dissertation.ml.smile.io;
+
+import com.anguel.dissertation.ml.smile.data.DataFrame;
+import com.anguel.dissertation.ml.smile.data.measure.Measure;
+import com.anguel.dissertation.ml.smile.data.measure.NominalScale;
+import com.anguel.dissertation.ml.smile.data.type.DataType;
+import com.anguel.dissertation.ml.smile.data.type.DataTypes;
+import com.anguel.dissertation.ml.smile.data.type.StructField;
+import com.anguel.dissertation.ml.smile.data.type.StructType;
+import com.anguel.dissertation.ml.smile.data.vector.BaseVector;
+import com.anguel.dissertation.ml.smile.data.vector.BooleanVector;
+import com.anguel.dissertation.ml.smile.data.vector.ByteVector;
+import com.anguel.dissertation.ml.smile.data.vector.CharVector;
+import com.anguel.dissertation.ml.smile.data.vector.DoubleVector;
+import com.anguel.dissertation.ml.smile.data.vector.FloatVector;
+import com.anguel.dissertation.ml.smile.data.vector.IntVector;
+import com.anguel.dissertation.ml.smile.data.vector.LongVector;
+import com.anguel.dissertation.ml.smile.data.vector.ShortVector;
+import com.anguel.dissertation.ml.smile.data.vector.StringVector;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * The binary columnar file format of data frames. The file starts with
+ * the magic number and version, followed by a block of each column, and
+ * ends with the header and its offset. The header holds the schema, i.e.
+ * the names, types and nominal levels of columns, the number of rows,
+ * the offset, length and encoding of each column block, and the minimum
+ * and maximum of numeric columns.
+ * <p>
+ * A column block holds the primitive values in little endian byte order,
+ * which is the native order of Android devices, and starts at an offset
+ * aligned to 8 bytes. A block may be compressed with deflate. A string
+ * column holds the lengths of UTF-8 bytes, -1 for null, and then the
+ * bytes. Only primitive and string columns are supported.
+ * <p>
+ * When read, an uncompressed double or integer column is a vector backed
+ * by the memory mapped block, without copying the data to the heap. Other
+ * columns are decoded into arrays. So a data frame written once is
+ * reopened in about the time of mapping the file, instead of parsing it.
+ *
+ * @author Haifeng Li
+ */
+public class Columnar implements AutoCloseable {
+    /**
+     * The magic number "SMDF" of files.
+     */
+    private static final int MAGIC = 0x534D4446;
+    /**
+     * The version of file format.
+     */
+    private static final int VERSION = 1;
+    /**
+     * The alignment of column blocks.
+     */
+    private static final int ALIGNMENT = 8;
+    /**
+     * The size of footer, the offset of header and the magic number.
+     */
+    private static final int FOOTER = Long.BYTES + Integer.BYTES;
+    /**
+     * The encoding of uncompressed blocks.
+     */
+    private static final byte RAW = 0;
+    /**
+     * The encoding of blocks compressed with deflate.
+     */
+    private static final byte DEFLATE = 1;
+    /**
+     * The size of buffer to encode values.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The file channel.
+     */
+    private final FileChannel channel;
+    /**
+     * The schema of data.
+     */
+    private final StructType schema;
+    /**
+     * The number of rows.
+     */
+    private final int size;
+    /**
+     * The encoding of column blocks.
+     */
+    private final byte[] encoding;
+    /**
+     * The offset of column blocks.
+     */
+    private final long[] offset;
+    /**
+     * The length of column blocks in bytes.
+     */
+    private final long[] length;
+    /**
+     * The minimum of numeric columns, NaN for others.
+     */
+    private final double[] min;
+    /**
+     * The maximum of numeric columns, NaN for others.
+     */
+    private final double[] max;
+
+    /**
+     * Constructor. Reads the header.
+     *
+     * @param channel the file channel, which is closed with the reader.
+     * @throws IOException when fails to read the file or it is not a columnar file.
+     */
+    public Columnar(FileChannel channel) throws IOException {
+        this.channel = channel;
+
+        long fileSize = channel.size();
+        ByteBuffer prefix = read(channel, 0, 2 * Integer.BYTES);
+        ByteBuffer footer = read(channel, fileSize - FOOTER, FOOTER);
+        if (prefix.getInt() != MAGIC || footer.getInt(Long.BYTES) != MAGIC) {
+            throw new IOException("Not a columnar data frame file");
+        }
+
+        int version = prefix.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported columnar file version: " + version);
+        }
+
+        long headerOffset = footer.getLong(0);
+        long headerLength = fileSize - FOOTER - headerOffset;
+        if (headerOffset < 2 * Integer.BYTES || headerLength < 0 || headerLength > Integer.MAX_VALUE) {
+            throw new IOException("Invalid header offset: " + headerOffset);
+        }
+
+        ByteBuffer header = read(channel, headerOffset, (int) headerLength);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(header.array()));
+        size = in.readInt();
+        int p = in.readInt();
+        if (size < 0 || p <= 0) {
+            throw new IOException(String.format("Invalid data frame size: %d x %d", size, p));
+        }
+
+        StructField[] fields = new StructField[p];
+        encoding = new byte[p];
+        offset = new long[p];
+        length = new long[p];
+        min = new double[p];
+        max = new double[p];
+        for (int j = 0; j < p; j++) {
+            String name = in.readUTF();
+            DataType type = type(in.readUTF());
+
+            Measure measure = null;
+            if (in.readBoolean()) {
+                int k = in.readInt();
+                if (k < 0) {
+                    throw new IOException("Invalid number of levels: " + k);
+                }
+
+                int[] values = new int[k];
+                String[] levels = new String[k];
+                for (int l = 0; l < k; l++) {
+                    values[l] = in.readInt();
+                    levels[l] = in.readUTF();
+                }
+                measure = new NominalScale(values, levels);
+            }
+            fields[j] = new StructField(name, type, measure);
+
+            encoding[j] = in.readByte();
+            offset[j] = in.readLong();
+            length[j] = in.readLong();
+            if ((encoding[j] != RAW && encoding[j] != DEFLATE) || offset[j] < 0 || length[j] < 0 || offset[j] + length[j] > headerOffset) {
+                throw new IOException("Invalid block of column " + name);
+            }
+
+            int width = width(type);
+            if (encoding[j] == RAW && width > 0 && length[j] != (long) width * size) {
+                throw new IOException(String.format("Invalid block length of column %s: %d", name, length[j]));
+            }
+
+            if (in.readBoolean()) {
+                min[j] = in.readDouble();
+                max[j] = in.readDouble();
+            } else {
+                min[j] = Double.NaN;
+                max[j] = Double.NaN;
+            }
+        }
+
+        schema = DataTypes.struct(fields);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Returns the data schema.
+     *
+     * @return the data schema.
+     */
+    public StructType schema() {
+        return schema;
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return the number of rows.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the minimum of a numeric column, ignoring NaN.
+     *
+     * @param j the index of column.
+     * @return the minimum, or NaN if the column is not numeric or has no values.
+     */
+    public double min(int j) {
+        return min[j];
+    }
+
+    /**
+     * Returns the maximum of a numeric column, ignoring NaN.
+     *
+     * @param j the index of column.
+     * @return the maximum, or NaN if the column is not numeric or has no values.
+     */
+    public double max(int j) {
+        return max[j];
+    }
+
+    /**
+     * Reads the data frame. The uncompressed double and integer columns
+     * are backed by the memory mapped file, which stays valid after the
+     * channel is closed.
+     *
+     * @return the data frame.
+     * @throws IOException when fails to read the file.
+     */
+    public DataFrame read() throws IOException {
+        StructField[] fields = schema.fields();
+        BaseVector[] vectors = new BaseVector[fields.length];
+        for (int j = 0; j < fields.length; j++) {
+            StructField field = fields[j];
+            DataType.ID id = field.type.id();
+            if (encoding[j] == RAW && (id == DataType.ID.Double || id == DataType.ID.Integer)) {
+                ByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, offset[j], length[j]).order(ByteOrder.LITTLE_ENDIAN);
+                vectors[j] = id == DataType.ID.Double ?
+                        DoubleVector.of(field, block.asDoubleBuffer()) :
+                        IntVector.of(field, block.asIntBuffer());
+            } else {
+                vectors[j] = decode(field, block(j));
+            }
+        }
+
+        return DataFrame.of(vectors);
+    }
+
+    /**
+     * Returns the uncompressed bytes of a column block.
+     */
+    private ByteBuffer block(int j) throws IOException {
+        if (length[j] > Integer.MAX_VALUE) {
+            throw new IOException("Column block too large: " + length[j]);
+        }
+
+        ByteBuffer block = read(channel, offset[j], (int) length[j]);
+        if (encoding[j] == DEFLATE) {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(block.array());
+                ByteArrayOutputStream out = new ByteArrayOutputStream(block.capacity() * 4);
+                byte[] buffer = new byte[BUFFER_SIZE];
+                while (!inflater.finished()) {
+                    int n = inflater.inflate(buffer);
+                    if (n == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IOException("Truncated column block");
+                    }
+                    out.write(buffer, 0, n);
+                }
+                block = ByteBuffer.wrap(out.toByteArray());
+            } catch (DataFormatException ex) {
+                throw new IOException("Invalid column block", ex);
+            } finally {
+                inflater.end();
+            }
+        }
+
+        int width = width(schema.field(j).type);
+        if (width > 0 && block.capacity() != (long) width * size) {
+            throw new IOException("Invalid column block size: " + block.capacity());
+        }
+
+        return block.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Decodes a column block into a heap vector.
+     */
+    private BaseVector decode(StructField field, ByteBuffer block) throws IOException {
+        int n = size;
+        switch (field.type.id()) {
+            case Boolean: {
+                boolean[] a = new boolean[n];
+                for (int i = 0; i < n; i++) a[i] = block.get(i) != 0;
+                return BooleanVector.of(field, a);
+            }
+
+            case Byte: {
+                byte[] a = new byte[n];
+                block.get(a);
+                return ByteVector.of(field, a);
+            }
+
+            case Char: {
+                char[] a = new char[n];
+                block.asCharBuffer().get(a);
+                return CharVector.of(field, a);
+            }
+
+            case Short: {
+                short[] a = new short[n];
+                block.asShortBuffer().get(a);
+                return ShortVector.of(field, a);
+            }
+
+            case Integer: {
+                int[] a = new int[n];
+                block.asIntBuffer().get(a);
+                return IntVector.of(field, a);
+            }
+
+            case Long: {
+                long[] a = new long[n];
+                block.asLongBuffer().get(a);
+                return LongVector.of(field, a);
+            }
+
+            case Float: {
+                float[] a = new float[n];
+                block.asFloatBuffer().get(a);
+                return FloatVector.of(field, a);
+            }
+
+            case Double: {
+                double[] a = new double[n];
+                block.asDoubleBuffer().get(a);
+                return DoubleVector.of(field, a);
+            }
+
+            case String: {
+                if (block.capacity() < (long) Integer.BYTES * n) {
+                    throw new IOException("Invalid string column block size: " + block.capacity());
+                }
+
+                String[] a = new String[n];
+                byte[] bytes = block.array();
+                int pos = block.arrayOffset() + Integer.BYTES * n;
+                int end = block.arrayOffset() + block.capacity();
+                for (int i = 0; i < n; i++) {
+                    int len = block.getInt(Integer.BYTES * i);
+                    if (len >= 0) {
+                        if (len > end - pos) {
+                            throw new IOException("Invalid string length: " + len);
+                        }
+                        a[i] = new String(bytes, pos, len, StandardCharsets.UTF_8);
+                        pos += len;
+                    }
+                }
+                return StringVector.of(field, a);
+            }
+
+            default:
+                throw new IOException("Unsupported column type: " + field.type);
+        }
+    }
+
+    /**
+     * Writes a data frame.
+     *
+     * @param data       the data frame.
+     * @param channel    the file channel, which is written from the start.
+     * @param compressed the names of columns to compress with deflate.
+     * @throws IOException when fails to write the file.
+     * @throws IllegalArgumentException if a column is not primitive or string,
+     *                                  or has a measure other than nominal scale.
+     */
+    public static void write(DataFrame data, FileChannel channel, String... compressed) throws IOException {
+        StructField[] fields = data.schema().fields();
+        Set<String> deflate = new HashSet<>(Arrays.asList(compressed));
+        for (StructField field : fields) {
+            if (width(field.type) < 0) {
+                throw new IllegalArgumentException("Unsupported column type: " + field);
+            }
+
+            if (field.measure != null && !(field.measure instanceof NominalScale)) {
+                throw new IllegalArgumentException("Unsupported measure: " + field);
+            }
+
+            deflate.remove(field.name);
+        }
+
+        if (!deflate.isEmpty()) {
+            throw new IllegalArgumentException("Unknown columns to compress: " + deflate);
+        }
+        deflate.addAll(Arrays.asList(compressed));
+
+        channel.truncate(0);
+        channel.position(0);
+
+        // the stream is not closed, which would close the channel
+        OutputStream out = Channels.newOutputStream(channel);
+        ByteBuffer prefix = ByteBuffer.allocate(2 * Integer.BYTES).putInt(MAGIC).putInt(VERSION);
+        out.write(prefix.array());
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(bytes);
+        int n = data.size();
+        header.writeInt(n);
+        header.writeInt(fields.length);
+        for (int j = 0; j < fields.length; j++) {
+            StructField field = fields[j];
+            BaseVector column = data.column(j);
+
+            // pads the block to the alignment
+            int padding = (int) ((ALIGNMENT - channel.position() % ALIGNMENT) % ALIGNMENT);
+            out.write(new byte[padding]);
+            long start = channel.position();
+
+            boolean compress = deflate.contains(field.name);
+            if (compress) {
+                Deflater deflater = new Deflater();
+                try {
+                    DeflaterOutputStream zip = new DeflaterOutputStream(out, deflater, BUFFER_SIZE);
+                    encode(column, field.type, n, zip, buffer);
+                    zip.finish();
+                } finally {
+                    deflater.end();
+                }
+            } else {
+                encode(column, field.type, n, out, buffer);
+            }
+
+            header.writeUTF(field.name);
+            header.writeUTF(field.type.id().name());
+            header.writeBoolean(field.measure != null);
+            if (field.measure != null) {
+                NominalScale scale = (NominalScale) field.measure;
+                String[] levels = scale.levels();
+                int[] values = scale.values();
+                header.writeInt(levels.length);
+                for (int l = 0; l < levels.length; l++) {
+                    header.writeInt(values[l]);
+                    header.writeUTF(levels[l]);
+                }
+            }
+
+            header.writeByte(compress ? DEFLATE : RAW);
+            header.writeLong(start);
+            header.writeLong(channel.position() - start);
+
+            double[] range = range(column, field.type, n);
+            header.writeBoolean(range != null);
+            if (range != null) {
+                header.writeDouble(range[0]);
+                header.writeDouble(range[1]);
+            }
+        }
+
+        long headerOffset = channel.position();
+        header.writeLong(headerOffset);
+        header.writeInt(MAGIC);
+        bytes.writeTo(out);
+    }
+
+    /**
+     * Writes the values of a column in little endian byte order.
+     */
+    private static void encode(BaseVector column, DataType type, int n, OutputStream out, ByteBuffer buffer) throws IOException {
+        switch (type.id()) {
+            case Boolean: {
+                boolean[] a = (boolean[]) column.array();
+                byte[] b = buffer.array();
+                for (int i = 0; i < n; ) {
+                    int m = Math.min(n - i, b.length);
+                    for (int k = 0; k < m; k++) b[k] = (byte) (a[i + k] ? 1 : 0);
+                    out.write(b, 0, m);
+                    i += m;
+                }
+                break;
+            }
+
+            case Byte:
+                out.write((byte[]) column.array(), 0, n);
+                break;
+
+            case Char: {
+                char[] a = (char[]) column.array();
+                for (int i = 0; i < n; ) {
+                    int m = Math.min(n - i, buffer.capacity() / Character.BYTES);
+                    buffer.clear();
+                    buffer.asCharBuffer().put(a, i, m);
+                    out.write(buffer.array(), 0, m * Character.BYTES);
+                    i += m;
+                }
+                break;
+            }
+
+            case Short: {
+                short[] a = (short[]) column.array();
+                for (int i = 0; i < n; ) {
+                    int m = Math.min(n - i, buffer.capacity() / Short.BYTES);
+                    buffer.clear();
+                    buffer.asShortBuffer().put(a, i, m);
+                    out.write(buffer.array(), 0, m * Short.BYTES);
+                    i += m;
+                }
+                break;
+            }
+
+            case Integer: {
+                int[] a = (int[]) column.array();
+                for (int i = 0; i < n; ) {
+                    int m = Math.min(n - i, buffer.capacity() / Integer.BYTES);
+                    buffer.clear();
+                    buffer.asIntBuffer().put(a, i, m);
+                    out.write(buffer.array(), 0, m * Integer.BYTES);
+                    i += m;
+                }
+                break;
+            }
+
+            case Long: {
+                long[] a = (long[]) column.array();
+                for (int i = 0; i < n; ) {
+                    int m = Math.min(n - i, buffer.capacity() / Long.BYTES);
+                    buffer.clear();
+                    buffer.asLongBuffer().put(a, i, m);
+                    out.write(buffer.array(), 0, m * Long.BYTES);
+                    i += m;
+                }
+                break;
+            }
+
+            case Float: {
+                float[] a = (float[]) column.array();
+                for (int i = 0; i < n; ) {
+                    int m = Math.min(n - i, buffer.capacity() / Float.BYTES);
+                    buffer.clear();
+                    buffer.asFloatBuffer().put(a, i, m);
+                    out.write(buffer.array(), 0, m * Float.BYTES);
+                    i += m;
+                }
+                break;
+            }
+
+            case Double: {
+                double[] a = (double[]) column.array();
+                for (int i = 0; i < n; ) {
+                    int m = Math.min(n - i, buffer.capacity() / Double.BYTES);
+                    buffer.clear();
+                    buffer.asDoubleBuffer().put(a, i, m);
+                    out.write(buffer.array(), 0, m * Double.BYTES);
+                    i += m;
+                }
+                break;
+            }
+
+            case String: {
+                byte[][] strings = new byte[n][];
+                for (int i = 0; i < n; i++) {
+                    Object s = column.get(i);
+                    if (s != null) strings[i] = s.toString().getBytes(StandardCharsets.UTF_8);
+                }
+
+                for (int i = 0; i < n; ) {
+                    int m = Math.min(n - i, buffer.capacity() / Integer.BYTES);
+                    buffer.clear();
+                    for (int k = 0; k < m; k++) {
+                        byte[] s = strings[i + k];
+                        buffer.putInt(s == null ? -1 : s.length);
+                    }
+                    out.write(buffer.array(), 0, m * Integer.BYTES);
+                    i += m;
+                }
+
+                for (byte[] s : strings) {
+                    if (s != null) out.write(s);
+                }
+                break;
+            }
+
+            default:
+                throw new IllegalArgumentException("Unsupported column type: " + type);
+        }
+    }
+
+    /**
+     * Returns the minimum and maximum of a numeric column, ignoring NaN.
+     *
+     * @return the range, or null if the column is not numeric or has no values.
+     */
+    private static double[] range(BaseVector column, DataType type, int n) {
+        switch (type.id()) {
+            case Byte:
+            case Short:
+            case Integer:
+            case Long:
+            case Float:
+            case Double:
+                double min = Double.POSITIVE_INFINITY;
+                double max = Double.NEGATIVE_INFINITY;
+                for (int i = 0; i < n; i++) {
+                    double x = column.getDouble(i);
+                    if (x < min) min = x;
+                    if (x > max) max = x;
+                }
+                return min <= max ? new double[]{min, max} : null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns the number of bytes of a value, 0 for variable length
+     * strings, or -1 if the type is not supported.
+     */
+    private static int width(DataType type) {
+        switch (type.id()) {
+            case Boolean:
+            case Byte:
+                return 1;
+            case Char:
+            case Short:
+                return 2;
+            case Integer:
+            case Float:
+                return 4;
+            case Long:
+            case Double:
+                return 8;
+            case String:
+                return 0;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Returns the data type of a type id.
+     */
+    private static DataType type(String id) throws IOException {
+        switch (id) {
+            case "Boolean": return DataTypes.BooleanType;
+            case "Byte": return DataTypes.ByteType;
+            case "Char": return DataTypes.CharType;
+            case "Short": return DataTypes.ShortType;
+            case "Integer": return DataTypes.IntegerType;
+            case "Long": return DataTypes.LongType;
+            case "Float": return DataTypes.FloatType;
+            case "Double": return DataTypes.DoubleType;
+            case "String": return DataTypes.StringType;
+            default: throw new IOException("Unsupported column type: " + id);
+        }
+    }
+
+    /**
+     * Reads a range of the file into a heap buffer.
+     */
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        if (position < 0 || position + length > channel.size()) {
+            throw new IOException("Not a columnar data frame file");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,1292 @@
+/*
+ * Copyright (c) 2010-2020 Haifeng Li. All rights reserved.
+ *
+ * Smile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Smile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Smile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.anguel.dissertation.ml.smile.io;
+
+import android.content.Context;
+
+import com.anguel.dissertation.ml.smile.data.DataFrame;
+import com.anguel.dissertation.ml.smile.data.measure.CategoricalMeasure;
+import com.anguel.dissertation.ml.smile.data.type.DataType;
+import com.anguel.dissertation.ml.smile.data.type.StructField;
+import com.anguel.dissertation.ml.smile.data.type.StructType;
+import com.anguel.dissertation.ml.smile.data.vector.BaseVector;
+import com.anguel.dissertation.ml.smile.data.vector.ByteVector;
+import com.anguel.dissertation.ml.smile.data.vector.DoubleVector;
+import com.anguel.dissertation.ml.smile.data.vector.FloatVector;
+import com.anguel.dissertation.ml.smile.data.vector.IntVector;
+import com.anguel.dissertation.ml.smile.data.vector.ShortVector;
+import com.anguel.dissertation.ml.smile.data.vector.StringVector;
+import com.anguel.dissertation.ml.smile.data.vector.Vector;
+import com.anguel.dissertation.ml.smile.math.MathEx;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * The ARFF reader that scans the bytes of a memory mapped file. It reads
+ * the same files to the same data frames as {@link Arff}, but the data
+ * section is not tokenized into Strings and tuples. The fields are parsed
+ * from the UTF-8 bytes in place and appended to growable primitive column
+ * buffers. Nominal values are matched against the bytes of the levels and
+ * stored as int codes. Only the values of string attributes and the rare
+ * numbers that are not plain decimals, e.g. {@code NaN} or numbers of
+ * more than 18 significant digits, are decoded to Strings.
+ * <p>
+ * The header is parsed by {@link Arff}, so the schema is the same. When
+ * all records are read, the data section is split at line boundaries into
+ * chunks that are parsed in parallel, and the column buffers of the chunks
+ * are concatenated at the end. As with {@link Arff}, the rows are returned
+ * in random order and a column of missing values is boxed. Unlike
+ * {@link Arff}, an empty data section is read to an empty data frame,
+ * and a string attribute missing from a sparse instance is null.
+ * <p>
+ * A file is mapped into a single buffer, so it must be smaller than 2GB.
+ *
+ * @author Haifeng Li
+ */
+public class FastArff implements AutoCloseable {
+    /**
+     * The size of chunks of the data section parsed in parallel.
+     */
+    private static final int CHUNK_SIZE = 4 << 20;
+    /**
+     * The keyword used to denote the start of the arff data section
+     */
+    private static final byte[] ARFF_DATA = "@data".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * The maximum number of significant digits of a number that is parsed in place.
+     */
+    private static final int MAX_DIGITS = 18;
+    /**
+     * The powers of 10 that are exact in double precision.
+     */
+    private static final double[] DOUBLE_POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    /**
+     * The powers of 10 that are exact in single precision.
+     */
+    private static final float[] FLOAT_POW10 = {
+            1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+    };
+
+    /** The type of token: end of line. */
+    private static final int EOL = -1;
+    /** The type of token: end of data. */
+    private static final int EOF = -2;
+    /** The type of token: a word or quoted string. */
+    private static final int WORD = -3;
+
+    /**
+     * The file channel.
+     */
+    private final FileChannel channel;
+    /**
+     * The mapped file.
+     */
+    private final ByteBuffer buffer;
+    /**
+     * The offset of data section.
+     */
+    private final int start;
+    /**
+     * The name of ARFF relation.
+     */
+    private final String name;
+    /**
+     * The schema of ARFF relation.
+     */
+    private final StructType schema;
+    /**
+     * The UTF-8 bytes of the levels of nominal attributes, null for others.
+     */
+    private final byte[][][] levels;
+    /**
+     * The values of the levels of nominal attributes, null for others.
+     */
+    private final int[][] values;
+
+    /**
+     * Constructor.
+     *
+     * @param path    the input file path.
+     * @param context android context
+     * @throws IOException    when fails to read the file.
+     * @throws ParseException when fails to parse the file.
+     */
+    public FastArff(String path, Context context) throws IOException, ParseException {
+        this(Input.channel(path, context));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param channel the file channel, which is closed with the reader.
+     * @throws IOException    when fails to read the file.
+     * @throws ParseException when fails to parse the file.
+     */
+    public FastArff(FileChannel channel) throws IOException, ParseException {
+        this.channel = channel;
+
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("File too large to map: " + size);
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+        start = dataOffset();
+        byte[] header = new byte[start];
+        for (int i = 0; i < start; i++) {
+            header[i] = buffer.get(i);
+        }
+
+        Arff arff = new Arff(new StringReader(new String(header, StandardCharsets.UTF_8)));
+        name = arff.name();
+        schema = arff.schema();
+
+        StructField[] fields = schema.fields();
+        levels = new byte[fields.length][][];
+        values = new int[fields.length][];
+        for (int j = 0; j < fields.length; j++) {
+            if (fields[j].measure instanceof CategoricalMeasure) {
+                CategoricalMeasure measure = (CategoricalMeasure) fields[j].measure;
+                String[] level = measure.levels();
+                levels[j] = new byte[level.length][];
+                values[j] = new int[level.length];
+                for (int k = 0; k < level.length; k++) {
+                    levels[j][k] = level[k].getBytes(StandardCharsets.UTF_8);
+                    values[j][k] = measure.valueOf(level[k]).intValue();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Returns the name of relation.
+     *
+     * @return the name of relation.
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Returns the data schema.
+     *
+     * @return the data schema.
+     */
+    public StructType schema() {
+        return schema;
+    }
+
+    /**
+     * Returns the offset after the line of {@code @data} keyword. If there
+     * is no such line, returns the size of file so that the header parser
+     * reports the error.
+     */
+    private int dataOffset() {
+        int n = buffer.limit();
+        int pos = 0;
+        while (pos < n) {
+            int i = pos;
+            while (i < n && isBlank(buffer.get(i))) i++;
+
+            boolean data = i + ARFF_DATA.length <= n;
+            for (int k = 0; data && k < ARFF_DATA.length; k++) {
+                data = Character.toLowerCase(buffer.get(i + k)) == ARFF_DATA[k];
+            }
+            if (data) {
+                int e = i + ARFF_DATA.length;
+                data = e == n || (buffer.get(e) & 0xFF) <= ' ' || buffer.get(e) == '%';
+            }
+
+            while (i < n && !isNewline(buffer.get(i))) i++;
+            if (data) return i < n ? i + 1 : n;
+            pos = i + 1;
+        }
+        return n;
+    }
+
+    /**
+     * Reads all the records. The data section is parsed in parallel.
+     *
+     * @return the data frame.
+     * @throws IOException    when fails to read the file.
+     * @throws ParseException when fails to parse the file.
+     */
+    public DataFrame read() throws IOException, ParseException {
+        return read(Integer.MAX_VALUE, CHUNK_SIZE);
+    }
+
+    /**
+     * Reads a limited number of records. The data section is parsed
+     * sequentially up to the limit.
+     *
+     * @param limit the number number of records to read.
+     * @return the data frame.
+     * @throws IOException    when fails to read the file.
+     * @throws ParseException when fails to parse the file.
+     */
+    public DataFrame read(int limit) throws IOException, ParseException {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Invalid limit: " + limit);
+        }
+
+        return read(limit, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Reads a limited number of records.
+     *
+     * @param limit     the number number of records to read. The chunks
+     *                  are parsed in parallel only without a limit.
+     * @param chunkSize the size of chunks of the data section.
+     */
+    private DataFrame read(int limit, int chunkSize) throws IOException, ParseException {
+        int end = buffer.limit();
+        List<Chunk> chunks = new ArrayList<>();
+        if (limit < Integer.MAX_VALUE) {
+            chunks.add(new Chunk(start, end, limit));
+        } else {
+            // the rows don't span lines, so the chunks start at the beginning of lines
+            for (int from = start; from < end; ) {
+                int to = from + Math.min(chunkSize, end - from);
+                while (to < end && !isNewline(buffer.get(to - 1))) to++;
+                chunks.add(new Chunk(from, to, limit));
+                from = to;
+            }
+        }
+
+        if (chunks.size() == 1) {
+            chunks.get(0).run();
+        } else if (chunks.size() > 1) {
+            CompletableFuture<?>[] tasks = new CompletableFuture<?>[chunks.size()];
+            for (int i = 0; i < tasks.length; i++) {
+                tasks[i] = CompletableFuture.runAsync(chunks.get(i));
+            }
+
+            try {
+                CompletableFuture.allOf(tasks).join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Error) throw (Error) cause;
+                throw new IllegalStateException("ARFF parsing failed", cause);
+            }
+        }
+
+        // the first error in the order of file
+        int n = 0;
+        for (Chunk chunk : chunks) {
+            if (chunk.error instanceof ParseException) throw (ParseException) chunk.error;
+            if (chunk.error instanceof RuntimeException) throw (RuntimeException) chunk.error;
+            n += chunk.size;
+        }
+
+        // shuffle the rows as Arff does, while the chunks are copied into columns
+        int[] index = MathEx.permutate(n);
+
+        StructField[] fields = schema.fields();
+        List<BaseVector> vectors = new ArrayList<>(fields.length);
+        Column[] parts = new Column[chunks.size()];
+        for (int j = 0; j < fields.length; j++) {
+            for (int k = 0; k < parts.length; k++) {
+                parts[k] = chunks.get(k).columns[j];
+            }
+
+            Column column = parts.length > 0 ? parts[0] : column(j);
+            vectors.add(column.vector(fields[j], parts, n, index));
+        }
+
+        close();
+        return DataFrame.of(vectors.toArray(new BaseVector[0]));
+    }
+
+    /**
+     * Returns a new column buffer of an attribute.
+     */
+    private Column column(int j) {
+        StructField field = schema.field(j);
+        if (levels[j] != null) {
+            return new NominalColumn(buffer, field.type, levels[j], values[j]);
+        }
+
+        switch (field.type.id()) {
+            case Double:
+                return new DoubleColumn(buffer);
+            case Float:
+                return new FloatColumn(buffer);
+            case Integer:
+                return new IntColumn(buffer, field.type);
+            case String:
+                return new StringColumn(buffer);
+            default:
+                throw new UnsupportedOperationException("Unsupported ARFF attribute type: " + field.type);
+        }
+    }
+
+    /**
+     * Returns true if the byte is a newline character.
+     */
+    private static boolean isNewline(byte b) {
+        return b == '\n' || b == '\r';
+    }
+
+    /**
+     * Returns true if the byte is a white space in a line.
+     */
+    private static boolean isBlank(byte b) {
+        return (b & 0xFF) <= ' ' && !isNewline(b);
+    }
+
+    /**
+     * Returns true if the byte is part of a word, i.e. not a white space,
+     * separator, comment, brace or quote.
+     */
+    private static boolean isWord(byte b) {
+        int c = b & 0xFF;
+        return c > ' ' && c != ',' && c != '%' && c != '{' && c != '}' && c != '\'' && c != '"';
+    }
+
+    /**
+     * Decodes the UTF-8 bytes of a range.
+     */
+    private static String string(ByteBuffer buffer, int s, int e) {
+        byte[] bytes = new byte[e - s];
+        for (int i = s; i < e; i++) {
+            bytes[i - s] = buffer.get(i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decodes a quoted string with the escape sequences of
+     * {@link java.io.StreamTokenizer}.
+     */
+    private static String unescape(ByteBuffer buffer, int s, int e) {
+        String text = string(buffer, s, e);
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != '\\' || i + 1 == text.length()) {
+                sb.append(c);
+                continue;
+            }
+
+            c = text.charAt(++i);
+            switch (c) {
+                case 'a': sb.append((char) 7); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'v': sb.append((char) 0x0B); break;
+                default:
+                    if (c >= '0' && c <= '7') {
+                        // up to 3 octal digits, at most \377
+                        int code = c - '0';
+                        int max = c <= '3' ? 2 : 1;
+                        for (int k = 0; k < max && i + 1 < text.length(); k++) {
+                            char d = text.charAt(i + 1);
+                            if (d < '0' || d > '7') break;
+                            code = code * 8 + (d - '0');
+                            i++;
+                        }
+                        sb.append((char) code);
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The rows of a range of lines of the data section.
+     */
+    private class Chunk implements Runnable {
+        /**
+         * The offset of first line.
+         */
+        final int from;
+        /**
+         * The offset after the last line.
+         */
+        final int to;
+        /**
+         * The maximum number of rows to read.
+         */
+        final int limit;
+        /**
+         * The column buffers.
+         */
+        final Column[] columns;
+        /**
+         * The row that last set each attribute of a sparse instance.
+         */
+        final int[] stamp;
+        /**
+         * The number of rows read.
+         */
+        int size;
+        /**
+         * The error of parsing, if any.
+         */
+        Exception error;
+
+        /**
+         * The current position.
+         */
+        int pos;
+        /**
+         * The start of current token.
+         */
+        int s;
+        /**
+         * The end of current token.
+         */
+        int e;
+        /**
+         * True if the current token is quoted.
+         */
+        boolean quoted;
+        /**
+         * True if the current token has escape sequences.
+         */
+        boolean escaped;
+
+        /**
+         * Constructor.
+         */
+        Chunk(int from, int to, int limit) {
+            this.from = from;
+            this.to = to;
+            this.limit = limit;
+
+            int p = schema.length();
+            columns = new Column[p];
+            for (int j = 0; j < p; j++) {
+                columns[j] = column(j);
+            }
+            stamp = new int[p];
+        }
+
+        @Override
+        public void run() {
+            try {
+                parse();
+            } catch (ParseException | RuntimeException ex) {
+                error = ex;
+            }
+        }
+
+        /**
+         * Parses the rows.
+         */
+        void parse() throws ParseException {
+            pos = from;
+            while (size < limit) {
+                int token = next();
+                if (token == EOF) break;
+                if (token == EOL) continue;
+
+                if (token == '{') {
+                    readSparseInstance();
+                } else if (token == WORD) {
+                    readInstance();
+                } else {
+                    throw new ParseException("unexpected '" + (char) token + "'", lineno());
+                }
+
+                token = next();
+                if (token != EOL && token != EOF) {
+                    throw new ParseException("end of line expected", lineno());
+                }
+                size++;
+            }
+        }
+
+        /**
+         * Reads a single instance, of which the first token has been read.
+         */
+        void readInstance() throws ParseException {
+            for (int j = 0; j < columns.length; j++) {
+                if (j > 0) {
+                    nextWord();
+                }
+
+                if (!quoted && e - s == 1 && buffer.get(s) == '?') {
+                    columns[j].missing();
+                } else if (!value(columns[j])) {
+                    columns[j].missing();
+                }
+            }
+        }
+
+        /**
+         * Reads a sparse instance, of which the opening brace has been read.
+         * The attributes not in the instance are 0.
+         */
+        void readSparseInstance() throws ParseException {
+            int row = size + 1;
+            int p = columns.length;
+            while (true) {
+                int token = next();
+                if (token == '}') break;
+                checkWord(token);
+
+                int i = quoted || escaped ? Integer.parseInt(token().trim()) : IntColumn.parseInt(buffer, s, e);
+                if (i < 0 || i >= p) {
+                    throw new ParseException("Invalid attribute index: " + i, lineno());
+                }
+
+                nextWord();
+                if (stamp[i] == row) {
+                    columns[i].pop();
+                }
+                stamp[i] = row;
+
+                if (quoted) {
+                    while (s < e && (buffer.get(s) & 0xFF) <= ' ') s++;
+                    while (e > s && (buffer.get(e - 1) & 0xFF) <= ' ') e--;
+                }
+
+                if ((e - s == 1 && buffer.get(s) == '?') || !value(columns[i])) {
+                    columns[i].zero();
+                }
+            }
+
+            for (int j = 0; j < p; j++) {
+                if (stamp[j] != row) {
+                    columns[j].zero();
+                }
+            }
+        }
+
+        /**
+         * Appends the current token to a column.
+         *
+         * @return false if the token is not a valid value.
+         */
+        boolean value(Column column) {
+            return escaped ? column.parse(token()) : column.parse(s, e);
+        }
+
+        /**
+         * Returns the current token as a String.
+         */
+        String token() {
+            return escaped ? unescape(buffer, s, e) : string(buffer, s, e);
+        }
+
+        /**
+         * Reads the next token, which must be a word.
+         */
+        void nextWord() throws ParseException {
+            checkWord(next());
+        }
+
+        /**
+         * Checks if a token is a word.
+         */
+        void checkWord(int token) throws ParseException {
+            if (token == EOL) {
+                throw new ParseException("premature end of line", lineno());
+            } else if (token == EOF) {
+                throw new ParseException("premature end of file", lineno());
+            } else if (token != WORD) {
+                throw new ParseException("unexpected '" + (char) token + "'", lineno());
+            }
+        }
+
+        /**
+         * Reads the next token. White spaces and commas separate tokens,
+         * and a comment runs to the end of line.
+         *
+         * @return the type of token, or the brace character.
+         */
+        int next() {
+            while (pos < to) {
+                byte b = buffer.get(pos);
+                if (isNewline(b)) {
+                    pos++;
+                    return EOL;
+                }
+
+                if ((b & 0xFF) <= ' ' || b == ',') {
+                    pos++;
+                } else if (b == '%') {
+                    while (pos < to && !isNewline(buffer.get(pos))) pos++;
+                } else if (b == '{' || b == '}') {
+                    pos++;
+                    return b;
+                } else if (b == '\'' || b == '"') {
+                    quote(b);
+                    return WORD;
+                } else {
+                    s = pos;
+                    while (pos < to && isWord(buffer.get(pos))) pos++;
+                    e = pos;
+                    quoted = false;
+                    escaped = false;
+                    return WORD;
+                }
+            }
+            return EOF;
+        }
+
+        /**
+         * Reads a quoted string, which ends at the closing quote or
+         * the end of line.
+         */
+        void quote(byte q) {
+            s = ++pos;
+            quoted = true;
+            escaped = false;
+            while (pos < to) {
+                byte b = buffer.get(pos);
+                if (b == q || isNewline(b)) break;
+                if (b == '\\' && pos + 1 < to && !isNewline(buffer.get(pos + 1))) {
+                    escaped = true;
+                    pos++;
+                }
+                pos++;
+            }
+            e = pos;
+            if (pos < to && buffer.get(pos) == q) pos++;
+        }
+
+        /**
+         * Returns the line number of current position.
+         */
+        int lineno() {
+            int line = 1;
+            for (int i = 0; i < pos; i++) {
+                if (buffer.get(i) == '\n') line++;
+            }
+            return line;
+        }
+    }
+
+    /**
+     * The growable buffer of a column.
+     */
+    private abstract static class Column {
+        /**
+         * The mapped file.
+         */
+        final ByteBuffer buffer;
+        /**
+         * The number of values.
+         */
+        int size;
+        /**
+         * The flags of missing values, null if there are none.
+         */
+        boolean[] missing;
+
+        /**
+         * Constructor.
+         */
+        Column(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * Returns the capacity of buffer.
+         */
+        abstract int capacity();
+
+        /**
+         * Resizes the buffer.
+         */
+        abstract void resize(int capacity);
+
+        /**
+         * Appends the value of a byte range.
+         *
+         * @return false if the bytes are not a valid value.
+         */
+        abstract boolean parse(int s, int e);
+
+        /**
+         * Appends a value.
+         *
+         * @return false if the string is not a valid value.
+         */
+        abstract boolean parse(String s);
+
+        /**
+         * Appends 0.
+         */
+        abstract void zero();
+
+        /**
+         * Returns a value, boxed.
+         */
+        abstract Object get(int i);
+
+        /**
+         * Returns the primitive vector of the concatenated chunks, in the
+         * order of index.
+         */
+        abstract BaseVector primitive(StructField field, Column[] parts, int n, int[] index);
+
+        /**
+         * Makes room for a value.
+         */
+        void ensure() {
+            int capacity = capacity();
+            if (size == capacity) {
+                capacity = Math.max(1024, capacity * 2);
+                resize(capacity);
+                if (missing != null) {
+                    missing = Arrays.copyOf(missing, capacity);
+                }
+            }
+        }
+
+        /**
+         * Appends a missing value.
+         */
+        void missing() {
+            zero();
+            if (missing == null) {
+                missing = new boolean[capacity()];
+            }
+            missing[size - 1] = true;
+        }
+
+        /**
+         * Removes the last value.
+         */
+        void pop() {
+            size--;
+            if (missing != null) {
+                missing[size] = false;
+            }
+        }
+
+        /**
+         * Returns the vector of the concatenated chunks, in the order of index.
+         * The vector is boxed if there are missing values.
+         *
+         * @param field the field of column.
+         * @param parts the column buffers of chunks.
+         * @param n     the total number of values.
+         * @param index the position of values in the vector.
+         */
+        BaseVector vector(StructField field, Column[] parts, int n, int[] index) {
+            boolean boxed = false;
+            for (Column part : parts) {
+                boxed |= part.missing != null;
+            }
+
+            if (!boxed) {
+                return primitive(field, parts, n, index);
+            }
+
+            Object[] values = new Object[n];
+            int r = 0;
+            for (Column part : parts) {
+                for (int i = 0; i < part.size; i++) {
+                    values[index[r++]] = part.missing != null && part.missing[i] ? null : part.get(i);
+                }
+            }
+
+            DataType type = field.type.isPrimitive() ? field.type.boxed() : field.type;
+            return Vector.of(new StructField(field.name, type, field.measure), values);
+        }
+
+        /**
+         * Parses the mantissa and decimal exponent of a plain decimal number,
+         * of at most {@link #MAX_DIGITS} significant digits.
+         *
+         * @param decimal the output of mantissa and decimal exponent.
+         * @return false if the bytes are not a plain decimal number.
+         */
+        static boolean decimal(ByteBuffer buffer, int s, int e, long[] decimal) {
+            int i = s;
+            boolean negative = false;
+            if (i < e) {
+                byte b = buffer.get(i);
+                if (b == '-' || b == '+') {
+                    negative = b == '-';
+                    i++;
+                }
+            }
+
+            long m = 0;
+            int exponent = 0;
+            int digits = 0;
+            boolean any = false;
+            boolean fraction = false;
+            for (; i < e; i++) {
+                int d = buffer.get(i) - '0';
+                if (d < 0 || d > 9) {
+                    if (!fraction && buffer.get(i) == '.') {
+                        fraction = true;
+                        continue;
+                    }
+                    break;
+                }
+
+                any = true;
+                if ((m != 0 || d != 0) && ++digits > MAX_DIGITS) return false;
+                m = m * 10 + d;
+                if (fraction) exponent--;
+            }
+            if (!any) return false;
+
+            if (i < e && (buffer.get(i) == 'e' || buffer.get(i) == 'E')) {
+                i++;
+                boolean minus = false;
+                if (i < e && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+                    minus = buffer.get(i++) == '-';
+                }
+
+                int x = 0;
+                int start = i;
+                for (; i < e; i++) {
+                    int d = buffer.get(i) - '0';
+                    if (d < 0 || d > 9 || x > 100000) break;
+                    x = x * 10 + d;
+                }
+                if (i == start) return false;
+                exponent += minus ? -x : x;
+            }
+            if (i != e) return false;
+
+            decimal[0] = negative ? -m : m;
+            decimal[1] = exponent;
+            // the sign of zero
+            decimal[2] = negative ? 1 : 0;
+            return true;
+        }
+    }
+
+    /**
+     * The buffer of a double column.
+     */
+    private static class DoubleColumn extends Column {
+        /** The values. */
+        double[] data = new double[0];
+        /** The workspace of decimal numbers. */
+        final long[] decimal = new long[3];
+
+        DoubleColumn(ByteBuffer buffer) {
+            super(buffer);
+        }
+
+        @Override
+        int capacity() {
+            return data.length;
+        }
+
+        @Override
+        void resize(int capacity) {
+            data = Arrays.copyOf(data, capacity);
+        }
+
+        @Override
+        boolean parse(int s, int e) {
+            ensure();
+            if (decimal(buffer, s, e, decimal)) {
+                long m = decimal[0];
+                int exponent = (int) decimal[1];
+                if (m == 0) {
+                    data[size++] = decimal[2] != 0 ? -0.0 : 0.0;
+                    return true;
+                }
+
+                // both the mantissa and power of 10 are exact, so is the rounding of product
+                if (Math.abs(m) < 1L << 53 && exponent >= -22 && exponent <= 22) {
+                    double x = m;
+                    data[size++] = exponent >= 0 ? x * DOUBLE_POW10[exponent] : x / DOUBLE_POW10[-exponent];
+                    return true;
+                }
+            }
+
+            return parse(string(buffer, s, e));
+        }
+
+        @Override
+        boolean parse(String s) {
+            ensure();
+            data[size++] = Double.parseDouble(s);
+            return true;
+        }
+
+        @Override
+        void zero() {
+            ensure();
+            data[size++] = 0.0;
+        }
+
+        @Override
+        Object get(int i) {
+            return data[i];
+        }
+
+        @Override
+        BaseVector primitive(StructField field, Column[] parts, int n, int[] index) {
+            double[] values = new double[n];
+            int r = 0;
+            for (Column part : parts) {
+                double[] x = ((DoubleColumn) part).data;
+                for (int i = 0; i < part.size; i++) {
+                    values[index[r++]] = x[i];
+                }
+            }
+            return DoubleVector.of(field, values);
+        }
+    }
+
+    /**
+     * The buffer of a float column.
+     */
+    private static class FloatColumn extends Column {
+        /** The values. */
+        float[] data = new float[0];
+        /** The workspace of decimal numbers. */
+        final long[] decimal = new long[3];
+
+        FloatColumn(ByteBuffer buffer) {
+            super(buffer);
+        }
+
+        @Override
+        int capacity() {
+            return data.length;
+        }
+
+        @Override
+        void resize(int capacity) {
+            data = Arrays.copyOf(data, capacity);
+        }
+
+        @Override
+        boolean parse(int s, int e) {
+            ensure();
+            if (decimal(buffer, s, e, decimal)) {
+                long m = decimal[0];
+                int exponent = (int) decimal[1];
+                if (m == 0) {
+                    data[size++] = decimal[2] != 0 ? -0.0f : 0.0f;
+                    return true;
+                }
+
+                // both the mantissa and power of 10 are exact, so is the rounding of product
+                if (Math.abs(m) < 1L << 24 && exponent >= -10 && exponent <= 10) {
+                    float x = m;
+                    data[size++] = exponent >= 0 ? x * FLOAT_POW10[exponent] : x / FLOAT_POW10[-exponent];
+                    return true;
+                }
+            }
+
+            return parse(string(buffer, s, e));
+        }
+
+        @Override
+        boolean parse(String s) {
+            ensure();
+            data[size++] = Float.parseFloat(s);
+            return true;
+        }
+
+        @Override
+        void zero() {
+            ensure();
+            data[size++] = 0.0f;
+        }
+
+        @Override
+        Object get(int i) {
+            return data[i];
+        }
+
+        @Override
+        BaseVector primitive(StructField field, Column[] parts, int n, int[] index) {
+            float[] values = new float[n];
+            int r = 0;
+            for (Column part : parts) {
+                float[] x = ((FloatColumn) part).data;
+                for (int i = 0; i < part.size; i++) {
+                    values[index[r++]] = x[i];
+                }
+            }
+            return FloatVector.of(field, values);
+        }
+    }
+
+    /**
+     * The buffer of an integer column, or the codes of a nominal column
+     * of byte, short or integer type.
+     */
+    private static class IntColumn extends Column {
+        /** The values. */
+        int[] data = new int[0];
+        /** The data type of column. */
+        final DataType type;
+
+        IntColumn(ByteBuffer buffer, DataType type) {
+            super(buffer);
+            this.type = type;
+        }
+
+        /**
+         * Parses an integer as {@link Integer#parseInt(String)}.
+         */
+        static int parseInt(ByteBuffer buffer, int s, int e) {
+            int i = s;
+            boolean negative = false;
+            if (i < e && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+                negative = buffer.get(i++) == '-';
+            }
+
+            long x = 0;
+            int start = i;
+            for (; i < e && i - start <= 10; i++) {
+                int d = buffer.get(i) - '0';
+                if (d < 0 || d > 9) break;
+                x = x * 10 + d;
+            }
+
+            if (i == e && i > start) {
+                x = negative ? -x : x;
+                if (x >= Integer.MIN_VALUE && x <= Integer.MAX_VALUE) {
+                    return (int) x;
+                }
+            }
+
+            // throws the same exception as the tokenizer based parser
+            return Integer.parseInt(string(buffer, s, e));
+        }
+
+        @Override
+        int capacity() {
+            return data.length;
+        }
+
+        @Override
+        void resize(int capacity) {
+            data = Arrays.copyOf(data, capacity);
+        }
+
+        @Override
+        boolean parse(int s, int e) {
+            int x = parseInt(buffer, s, e);
+            ensure();
+            data[size++] = x;
+            return true;
+        }
+
+        @Override
+        boolean parse(String s) {
+            int x = Integer.parseInt(s);
+            ensure();
+            data[size++] = x;
+            return true;
+        }
+
+        @Override
+        void zero() {
+            ensure();
+            data[size++] = 0;
+        }
+
+        @Override
+        Object get(int i) {
+            switch (type.id()) {
+                case Byte:
+                    return (byte) data[i];
+                case Short:
+                    return (short) data[i];
+                default:
+                    return data[i];
+            }
+        }
+
+        @Override
+        BaseVector primitive(StructField field, Column[] parts, int n, int[] index) {
+            switch (type.id()) {
+                case Byte: {
+                    byte[] values = new byte[n];
+                    int r = 0;
+                    for (Column part : parts) {
+                        int[] x = ((IntColumn) part).data;
+                        for (int i = 0; i < part.size; i++) {
+                            values[index[r++]] = (byte) x[i];
+                        }
+                    }
+                    return ByteVector.of(field, values);
+                }
+
+                case Short: {
+                    short[] values = new short[n];
+                    int r = 0;
+                    for (Column part : parts) {
+                        int[] x = ((IntColumn) part).data;
+                        for (int i = 0; i < part.size; i++) {
+                            values[index[r++]] = (short) x[i];
+                        }
+                    }
+                    return ShortVector.of(field, values);
+                }
+
+                default: {
+                    int[] values = new int[n];
+                    int r = 0;
+                    for (Column part : parts) {
+                        int[] x = ((IntColumn) part).data;
+                        for (int i = 0; i < part.size; i++) {
+                            values[index[r++]] = x[i];
+                        }
+                    }
+                    return IntVector.of(field, values);
+                }
+            }
+        }
+    }
+
+    /**
+     * The buffer of the codes of a nominal column. A value that is not
+     * a level is missing.
+     */
+    private static class NominalColumn extends IntColumn {
+        /** The UTF-8 bytes of levels. */
+        final byte[][] levels;
+        /** The values of levels. */
+        final int[] values;
+
+        NominalColumn(ByteBuffer buffer, DataType type, byte[][] levels, int[] values) {
+            super(buffer, type);
+            this.levels = levels;
+            this.values = values;
+        }
+
+        @Override
+        boolean parse(int s, int e) {
+            int length = e - s;
+            for (int k = 0; k < levels.length; k++) {
+                byte[] level = levels[k];
+                if (level.length != length) continue;
+
+                int i = 0;
+                while (i < length && level[i] == buffer.get(s + i)) i++;
+                if (i == length) {
+                    ensure();
+                    data[size++] = values[k];
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        boolean parse(String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            for (int k = 0; k < levels.length; k++) {
+                if (Arrays.equals(levels[k], bytes)) {
+                    ensure();
+                    data[size++] = values[k];
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * The buffer of a string column.
+     */
+    private static class StringColumn extends Column {
+        /** The values. */
+        String[] data = new String[0];
+
+        StringColumn(ByteBuffer buffer) {
+            super(buffer);
+        }
+
+        @Override
+        int capacity() {
+            return data.length;
+        }
+
+        @Override
+        void resize(int capacity) {
+            data = Arrays.copyOf(data, capacity);
+        }
+
+        @Override
+        boolean parse(int s, int e) {
+            return parse(string(buffer, s, e));
+        }
+
+        @Override
+        boolean parse(String s) {
+            ensure();
+            data[size++] = s;
+            return true;
+        }
+
+        @Override
+        void zero() {
+            ensure();
+            data[size++] = null;
+        }
+
+        @Override
+        void missing() {
+            zero();
+        }
+
+        @Override
+        Object get(int i) {
+            return data[i];
+        }
+
+        @Override
+        BaseVector primitive(StructField field, Column[] parts, int n, int[] index) {
+            String[] values = new String[n];
+            int r = 0;
+            for (Column part : parts) {
+                String[] x = ((StringColumn) part).data;
+                for (int i = 0; i < part.size; i++) {
+                    values[index[r++]] = x[i];
+                }
+            }
+            return StringVector.of(field, values);
+        }
+    }
+}
@@ -23,6 +23,7 @@ import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 
 /**
@@ -45,4 +46,17 @@ public interface Input {
         return new BufferedReader(inputStreamReader);
     }
 
+    /**
+     * Returns the file channel of a file path.
+     *
+     * @param path    the input file path.
+     * @param context android context
+     * @return the file channel.
+     * @throws IOException when fails to read the file.
+     */
+    static FileChannel channel(String path, Context context) throws IOException {
+        FileInputStream fis = context.openFileInput(path);
+        return fis.getChannel();
+    }
+
 }
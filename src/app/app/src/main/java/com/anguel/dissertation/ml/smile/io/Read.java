@@ -23,6 +23,7 @@ import com.anguel.dissertation.ml.smile.data.DataFrame;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
 import java.text.ParseException;
 
 /**
@@ -56,6 +57,10 @@ public interface Read {
      * Also, the ability to include comments ensure we can record extra information
      * about the data set, including how it was derived, where it came from, and
      * how it might be cited.
+     * <p>
+     * The file is read by {@link FastArff}, which parses the mapped bytes
+     * of the file in parallel. A file too large to map is read by
+     * {@link Arff}.
      *
      * @param path    the input file path.
      * @param context android context
@@ -65,8 +70,31 @@ public interface Read {
      * @throws URISyntaxException when the file path syntax is wrong.
      */
     static DataFrame arff(String path, Context context) throws IOException, ParseException, URISyntaxException {
+        FileChannel channel = Input.channel(path, context);
+        if (channel.size() <= Integer.MAX_VALUE) {
+            try (FastArff arff = new FastArff(channel)) {
+                return arff.read();
+            }
+        }
+
+        channel.close();
         Arff arff = new Arff(path, context);
         return arff.read();
     }
 
+    /**
+     * Reads a data frame in the binary columnar format of {@link Columnar}.
+     * The uncompressed double and integer columns are backed by the memory
+     * mapped file rather than copied.
+     *
+     * @param path    the input file path.
+     * @param context android context
+     * @return the data frame.
+     * @throws IOException when fails to read the file.
+     */
+    static DataFrame columnar(String path, Context context) throws IOException {
+        try (Columnar columnar = new Columnar(Input.channel(path, context))) {
+            return columnar.read();
+        }
+    }
 }
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2010-2020 Haifeng Li. All rights reserved.
+ *
+ * Smile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Smile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Smile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.anguel.dissertation.ml.smile.io;
+
+import android.content.Context;
+
+import com.anguel.dissertation.ml.smile.data.DataFrame;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes data to external storage systems.
+ *
+ * @author Haifeng Li
+ */
+public interface Write {
+
+    /**
+     * Writes a data frame in the binary columnar format of {@link Columnar},
+     * which is read by {@link Read#columnar(String, Context)}. The file is
+     * written to a temporary file first, which then replaces the old file,
+     * so that a reader never sees a partially written file.
+     *
+     * @param data       the data frame.
+     * @param path       the output file path.
+     * @param context    android context
+     * @param compressed the names of columns to compress with deflate.
+     * @throws IOException when fails to write the file.
+     */
+    static void columnar(DataFrame data, String path, Context context, String... compressed) throws IOException {
+        File file = new File(context.getFilesDir(), path);
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileChannel channel = new FileOutputStream(temp).getChannel()) {
+            Columnar.write(data, channel, compressed);
+        } catch (IOException | RuntimeException ex) {
+            temp.delete();
+            throw ex;
+        }
+
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException(String.format("Failed to rename %s to %s", temp, file));
+        }
+    }
+}
@@ -454,6 +454,16 @@ public class MathEx {
         random.get().permutate(x);
     }
 
+    /**
+     * Permutates the leading elements of an array.
+     *
+     * @param x the array.
+     * @param n the number of leading elements to permutate.
+     */
+    public static void permutate(int[] x, int n) {
+        random.get().permutate(x, n);
+    }
+
     /**
      * Combines the arguments to form a vector.
      *
@@ -1166,6 +1176,36 @@ public class MathEx {
         return norm;
     }
 
+    /**
+     * L<sub>2</sub> vector norm.
+     *
+     * @param x a vector.
+     * @return L<sub>2</sub> norm.
+     */
+    public static double norm(double[] x) {
+        return sqrt(dot(x, x));
+    }
+
+    /**
+     * Returns the dot product between two vectors.
+     *
+     * @param x a vector.
+     * @param y a vector.
+     * @return the dot product.
+     */
+    public static double dot(double[] x, double[] y) {
+        if (x.length != y.length) {
+            throw new IllegalArgumentException(String.format("Arrays have different length: x[%d], y[%d]", x.length, y.length));
+        }
+
+        double sum = 0.0;
+        for (int i = 0; i < x.length; i++) {
+            sum += x[i] * y[i];
+        }
+
+        return sum;
+    }
+
 
     /**
      * Unitize an array so that L<sub>1</sub> norm of x is 1.
@@ -144,8 +144,18 @@ public class Random {
      * @param x the array.
      */
     public void permutate(int[] x) {
-        for (int i = 0; i < x.length; i++) {
-            int j = i + nextInt(x.length - i);
+        permutate(x, x.length);
+    }
+
+    /**
+     * Permutates the leading elements of an array.
+     *
+     * @param x the array.
+     * @param n the number of leading elements to permutate.
+     */
+    public void permutate(int[] x, int n) {
+        for (int i = 0; i < n; i++) {
+            int j = i + nextInt(n - i);
             MathEx.swap(x, i, j);
         }
     }
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2010-2020 Haifeng Li. All rights reserved.
+ *
+ * Smile is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Smile is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Smile.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.anguel.dissertation.ml.smile.sort;
+
+/**
+ * Least significant digit (LSD) radix sort of double values. The IEEE-754
+ * bits of a double are mapped to a long whose unsigned order is the
+ * numerical order: the sign bit of a positive number is flipped, and
+ * all bits of a negative number are flipped. The keys are then sorted
+ * by counting sort on each byte, from the least significant one, in
+ * O(n) time per byte. A byte on which all keys agree, e.g. the sign
+ * and exponent of values in a narrow range, is skipped.
+ * <p>
+ * Radix sort is stable and makes no comparisons, so it is faster than
+ * Quicksort on large arrays, but it needs O(n) extra memory for the keys
+ * and index. Note that -0.0 is sorted before 0.0 and NaN after positive
+ * infinity, like {@link Double#compare(double, double)}.
+ *
+ * @author Haifeng Li
+ */
+public class RadixSort {
+    /**
+     * Private constructor to prevent instance creation.
+     */
+    private RadixSort() {
+
+    }
+
+    /**
+     * The number of bits of a digit.
+     */
+    private static final int BITS = 8;
+    /**
+     * The number of values of a digit.
+     */
+    private static final int RADIX = 1 << BITS;
+    /**
+     * The number of digits of a key.
+     */
+    private static final int DIGITS = Long.SIZE / BITS;
+
+    /**
+     * Sorts the specified array into ascending numerical order.
+     *
+     * @param x the array to sort.
+     * @return the original index of elements after sorting in range [0, n).
+     */
+    public static int[] sort(double[] x) {
+        int n = x.length;
+        long[] key = new long[n];
+        int[] count = new int[DIGITS * RADIX];
+        for (int i = 0; i < n; i++) {
+            // all NaNs have the same key, the largest one
+            long bits = Double.doubleToLongBits(x[i]);
+            long k = bits < 0 ? ~bits : bits ^ Long.MIN_VALUE;
+            key[i] = k;
+            for (int d = 0; d < DIGITS; d++) {
+                count[d * RADIX + (int) ((k >>> (d * BITS)) & (RADIX - 1))]++;
+            }
+        }
+
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+
+        long[] key2 = new long[n];
+        int[] order2 = new int[n];
+        for (int d = 0; d < DIGITS; d++) {
+            int offset = d * RADIX;
+            int shift = d * BITS;
+
+            // all keys have the same digit
+            if (n == 0 || count[offset + (int) ((key[0] >>> shift) & (RADIX - 1))] == n) {
+                continue;
+            }
+
+            // the starting position of each digit value
+            int sum = 0;
+            for (int b = 0; b < RADIX; b++) {
+                int c = count[offset + b];
+                count[offset + b] = sum;
+                sum += c;
+            }
+
+            for (int i = 0; i < n; i++) {
+                long k = key[i];
+                int pos = count[offset + (int) ((k >>> shift) & (RADIX - 1))]++;
+                key2[pos] = k;
+                order2[pos] = order[i];
+            }
+
+            long[] t = key;
+            key = key2;
+            key2 = t;
+
+            int[] o = order;
+            order = order2;
+            order2 = o;
+        }
+
+        for (int i = 0; i < n; i++) {
+            long k = key[i];
+            x[i] = Double.longBitsToDouble(k < 0 ? k ^ Long.MIN_VALUE : ~k);
+        }
+
+        return order;
+    }
+}
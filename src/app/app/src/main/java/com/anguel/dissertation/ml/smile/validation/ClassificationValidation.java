@@ -21,6 +21,7 @@ import com.anguel.dissertation.ml.smile.classification.Classifier;
 import com.anguel.dissertation.ml.smile.classification.DataFrameClassifier;
 import com.anguel.dissertation.ml.smile.classification.SoftClassifier;
 import com.anguel.dissertation.ml.smile.data.DataFrame;
+import com.anguel.dissertation.ml.smile.data.RowCursor;
 import com.anguel.dissertation.ml.smile.data.Tuple;
 import com.anguel.dissertation.ml.smile.data.formula.Formula;
 import com.anguel.dissertation.ml.smile.math.MathEx;
@@ -234,17 +235,19 @@ public class ClassificationValidation<M> implements Serializable {
         start = System.nanoTime();
         int n = test.nrow();
         int[] prediction = new int[n];
+        RowCursor row = test.cursor();
         if (model instanceof SoftClassifier) {
             double[][] posteriori = new double[n][k];
-            for (int i = 0; i < n; i++) {
-                prediction[i] = ((SoftClassifier<Tuple>) model).predict(test.get(i), posteriori[i]);
+            while (row.next()) {
+                int i = row.index();
+                prediction[i] = ((SoftClassifier<Tuple>) model).predict(row, posteriori[i]);
             }
             double scoreTime = (System.nanoTime() - start) / 1E6;
 
             return new ClassificationValidation<>(model, testy, prediction, posteriori, fitTime, scoreTime);
         } else {
-            for (int i = 0; i < n; i++) {
-                prediction[i] = model.predict(test.get(i));
+            while (row.next()) {
+                prediction[row.index()] = model.predict(row);
             }
             double scoreTime = (System.nanoTime() - start) / 1E6;
 
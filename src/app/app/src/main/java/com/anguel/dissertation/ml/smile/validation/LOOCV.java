@@ -21,6 +21,7 @@ import com.anguel.dissertation.ml.smile.classification.Classifier;
 import com.anguel.dissertation.ml.smile.classification.DataFrameClassifier;
 import com.anguel.dissertation.ml.smile.classification.SoftClassifier;
 import com.anguel.dissertation.ml.smile.data.DataFrame;
+import com.anguel.dissertation.ml.smile.data.RowCursor;
 import com.anguel.dissertation.ml.smile.data.Tuple;
 import com.anguel.dissertation.ml.smile.data.formula.Formula;
 import com.anguel.dissertation.ml.smile.math.MathEx;
@@ -188,17 +189,19 @@ public interface LOOCV {
         long scoreTime = 0;
         boolean soft = false;
 
+        RowCursor row = data.cursor();
         for (int i = 0; i < n; i++) {
             long start = System.nanoTime();
             DataFrameClassifier model = trainer.apply(formula, data.of(train[i]));
             fitTime += System.nanoTime() - start;
 
             start = System.nanoTime();
+            row.seek(i);
             if (model instanceof SoftClassifier) {
                 soft = true;
-                prediction[i] = ((SoftClassifier<Tuple>) model).predict(data.get(i), posteriori[i]);
+                prediction[i] = ((SoftClassifier<Tuple>) model).predict(row, posteriori[i]);
             } else {
-                prediction[i] = model.predict(data.get(i));
+                prediction[i] = model.predict(row);
             }
             scoreTime += System.nanoTime() - start;
         }
@@ -56,6 +56,8 @@ public class CustomDataChannelObserver implements DataChannel.Observer {
                 }
                 break;
             case FINISHED:
+                // everything was received, save it before sharing back
+                peerConnection.flushReceivedData();
                 // tell peerconnection to share data
                 peerConnection.sendData(true);
                 break;
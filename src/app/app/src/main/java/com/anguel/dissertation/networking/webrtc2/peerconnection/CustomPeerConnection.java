@@ -36,8 +36,6 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
-import java.util.concurrent.Executor;
-import java.util.stream.Collectors;
 
 import io.sentry.Sentry;
 
@@ -51,6 +49,11 @@ public class CustomPeerConnection {
     // put these here to try to prevent a phone sending back data that it received from the sender. def could do better
     private final long currentTime;
     private final long previousTime;
+    // sessions read from the database at a time when sharing
+    private static final int sessionPageSize = 50;
+    // received sessions kept before they are written in one transaction
+    private static final int receivedBatchSize = 200;
+    private final List<SessionWithApps> receivedSessions = new ArrayList<>();
 
     public CustomPeerConnection(Context context, CustomWebSocketListener signallingClient) {
         this.client = signallingClient;
@@ -161,28 +164,34 @@ public class CustomPeerConnection {
 
     }
 
-    public void saveData(Session session, List<App> apps) {
-        Trace trace = FirebasePerformance.getInstance().newTrace("peerConnectionSaveData");
-        trace.start();
-        DatabaseAPI databaseAPI = DatabaseAPI.getInstance();
-
-        long sessionId = Objects.requireNonNull(databaseAPI).saveSession(session, context);
+    // received sessions are saved in batches, one transaction per batch instead of one commit per session and app list
+    public synchronized void saveData(Session session, List<App> apps) {
+        receivedSessions.add(SessionWithApps.of(session, apps));
+        if (receivedSessions.size() >= receivedBatchSize) {
+            flushReceivedData();
+        }
+    }
 
-        if (sessionId == -1L) {
-            trace.incrementMetric("session_save_fail", 1);
-            trace.stop();
+    // saves whatever has been received so far, called when the other device finishes sending or the connection closes
+    public synchronized void flushReceivedData() {
+        if (receivedSessions.isEmpty()) {
             return;
         }
+        List<SessionWithApps> batch = new ArrayList<>(receivedSessions);
+        receivedSessions.clear();
 
-        apps = apps
-                .stream()
-                .peek(app -> app.setSessionIdFK(sessionId))
-                .collect(Collectors.toList());
-
-        long count = databaseAPI.saveApps(apps, context).size();
-
-        trace.incrementMetric("save_data_app_count", count);
-        trace.stop();
+        Trace trace = FirebasePerformance.getInstance().newTrace("peerConnectionSaveData");
+        trace.start();
+        Objects.requireNonNull(DatabaseAPI.getInstance())
+                .saveSessionsWithAppsAsync(batch, context)
+                .whenComplete((ids, e) -> {
+                    if (ids == null || ids.size() != batch.size()) {
+                        trace.incrementMetric("session_save_fail", batch.size());
+                    } else {
+                        trace.incrementMetric("save_data_session_count", ids.size());
+                    }
+                    trace.stop();
+                });
     }
 
     public void sendData(boolean answer) {
@@ -193,45 +202,25 @@ public class CustomPeerConnection {
         // if database can't be reached, or if there is an issue with processing later on, just cancel and tell the other device to share.
         if (databaseAPI != null) {
             try {
-                List<SessionWithApps> sessions = databaseAPI.getSessionsInTimePeriod(previousTime, currentTime, context);
-                Executor executor = ContextCompat.getMainExecutor(context);
-                executor.execute(() -> {
-                    try {
-                        List<String> sessionStrings = new ArrayList<>(sessions.size());
-                        sessions.forEach(sessionWithApps -> {
-                            try {
-                                sessionStrings.add(SessionWithAppsConverter.sessionToString(sessionWithApps));
-                            } catch (Exception e) {
-                                Sentry.captureException(e, TAG.concat(": second try"));
-                                sendDcMsg(DCMessageType.ERROR, context.getString(R.string.webrtc_error_msg));
-                                decreaseTimeInterval();
-                                trace.incrementMetric("send_data_session_string_failure", 1);
-                            }
-                        });
-                        if (sessionStrings.size() != 0) {
-                            // SEND EM
-                            sessionStrings.forEach(session -> sendDcMsg(DCMessageType.SESSION, session));
-                            trace.incrementMetric("send_data_session_string_size", sessionStrings.size());
-                            increaseTimeInterval();
-                        }
-                        // send the FINISH or CLOSE here
-                        if (answer) {
-                            sendDcMsg(DCMessageType.CLOSE, "close");
-                        } else {
-                            sendDcMsg(DCMessageType.FINISHED, "finished");
-                        }
-
-                    } catch (Exception e) {
-                        sendDcMsg(DCMessageType.ERROR, context.getString(R.string.webrtc_error_msg));
-                        Sentry.captureException(e, TAG.concat(": first try"));
-                        decreaseTimeInterval();
-                        if (answer) {
-                            sendDcMsg(DCMessageType.CLOSE, "close");
-                        } else {
-                            sendDcMsg(DCMessageType.FINISHED, "finished");
-                        }
-                    }
-                });
+                // the sessions are read a page at a time and each page is sent before the next one is read,
+                // so only one page is held in memory
+                long count = databaseAPI.streamSessionsInTimePeriod(previousTime, currentTime, sessionPageSize, context,
+                        sessions -> sendSessions(sessions, trace));
+                // a failure part way through is reported after what was already sent
+                if (count < 0) {
+                    sendDcMsg(DCMessageType.ERROR, context.getString(R.string.webrtc_error_msg));
+                    Sentry.captureException(new Throwable(TAG.concat(": database error on streaming sessions in time period")));
+                    decreaseTimeInterval();
+                } else if (count != 0) {
+                    trace.incrementMetric("send_data_session_string_size", count);
+                    increaseTimeInterval();
+                }
+                // send the FINISH or CLOSE here
+                if (answer) {
+                    sendDcMsg(DCMessageType.CLOSE, "close");
+                } else {
+                    sendDcMsg(DCMessageType.FINISHED, "finished");
+                }
             } catch (Exception e) {
                 sendDcMsg(DCMessageType.ERROR, context.getString(R.string.webrtc_error_msg));
                 Sentry.captureException(new Throwable(TAG.concat(": database error on getting sessions in time period")));
@@ -255,6 +244,19 @@ public class CustomPeerConnection {
         trace.stop();
     }
 
+    private void sendSessions(List<SessionWithApps> sessions, Trace trace) {
+        sessions.forEach(sessionWithApps -> {
+            try {
+                sendDcMsg(DCMessageType.SESSION, SessionWithAppsConverter.sessionToString(sessionWithApps));
+            } catch (Exception e) {
+                Sentry.captureException(e, TAG.concat(": converting session"));
+                sendDcMsg(DCMessageType.ERROR, context.getString(R.string.webrtc_error_msg));
+                decreaseTimeInterval();
+                trace.incrementMetric("send_data_session_string_failure", 1);
+            }
+        });
+    }
+
     private void sendDcMsg(DCMessageType type, String msg) {
         DCMessage message = new DCMessage();
         message.setType(type);
@@ -363,6 +365,7 @@ public class CustomPeerConnection {
     //    gotta catch em all!
     @AddTrace(name = "peerConnectionClose")
     public void close() {
+        flushReceivedData();
         ContextCompat.getMainExecutor(context)
                 .execute(() -> {
                     if (dataChannel != null) {
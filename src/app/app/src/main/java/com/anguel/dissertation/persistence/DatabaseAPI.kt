@@ -2,15 +2,21 @@ package com.anguel.dissertation.persistence
 
 import android.content.Context
 import com.anguel.dissertation.persistence.coroutines.app.AppCoroutines
+import com.anguel.dissertation.persistence.coroutines.sample.TrainingSampleCoroutines
 import com.anguel.dissertation.persistence.coroutines.session.SessionCoroutines
 import com.anguel.dissertation.persistence.entity.SessionWithApps
 import com.anguel.dissertation.persistence.entity.app.App
+import com.anguel.dissertation.persistence.entity.sample.TrainingSample
 import com.anguel.dissertation.persistence.entity.session.Session
 import com.google.firebase.perf.metrics.AddTrace
 import io.sentry.Sentry
 import kotlinx.coroutines.*
+import java.util.concurrent.CompletableFuture
+import java.util.function.Consumer
 
 class DatabaseAPI private constructor() {
+    // a failed call doesn't cancel the others
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
 
     @AddTrace(name = "databaseSaveSession")
     fun saveSession(session: Session, context: Context): Long {
@@ -38,6 +44,32 @@ class DatabaseAPI private constructor() {
         }
     }
 
+    // hands the sessions of a time period to the consumer one page at a time, so they are never all in memory at once.
+    // returns how many sessions were handed over, or -1 if it failed
+    @AddTrace(name = "databaseStreamSessionsInTimePeriod")
+    @JvmSuppressWildcards // so java lambdas get plain lists
+    fun streamSessionsInTimePeriod(startTime: Long, endTime: Long, pageSize: Int, context: Context, consumer: Consumer<List<SessionWithApps>>): Long {
+        require(pageSize > 0) { "Invalid page size: $pageSize" }
+        return runBlocking {
+            try {
+                var count = 0L
+                var afterId = 0L // ids are autogenerated and start at 1
+                while (true) {
+                    val page = SessionCoroutines.getSessionsInTimePeriodPage(startTime, endTime, afterId, pageSize, context)
+                    if (page.isEmpty()) break
+                    consumer.accept(page)
+                    count += page.size
+                    if (page.size < pageSize) break
+                    afterId = page[page.size - 1].session.sessionId
+                }
+                count
+            } catch (e: Exception) {
+                Sentry.captureException(e)
+                -1L
+            }
+        }
+    }
+
     @AddTrace(name = "databaseGetAllSessions")
     fun getAllSessions(context: Context): List<SessionWithApps> {
         return runBlocking {
@@ -61,6 +93,89 @@ class DatabaseAPI private constructor() {
         }
     }
 
+    // saves the sessions with their apps and training samples in one transaction.
+    // returns the new session ids, or an empty list if nothing was saved
+    suspend fun saveSessionsWithApps(sessions: List<SessionWithApps>, context: Context): List<Long> {
+        return try {
+            SessionCoroutines.saveSessionsWithApps(sessions, context)
+        } catch (e: Exception) {
+            Sentry.captureException(e)
+            ArrayList()
+        }
+    }
+
+    // same as saveSessionsWithApps, without blocking the calling thread
+    @AddTrace(name = "databaseSaveSessionsWithApps")
+    fun saveSessionsWithAppsAsync(sessions: List<SessionWithApps>, context: Context): CompletableFuture<List<Long>> {
+        return future { saveSessionsWithApps(sessions, context) }
+    }
+
+    suspend fun getTrainingSamples(startTime: Long, endTime: Long, context: Context): List<TrainingSample> {
+        return try {
+            TrainingSampleCoroutines.getSamplesInTimePeriod(startTime, endTime, context)
+        } catch (e: Exception) {
+            Sentry.captureException(e)
+            ArrayList()
+        }
+    }
+
+    @AddTrace(name = "databaseGetTrainingSamplesAsync")
+    fun getTrainingSamplesAsync(startTime: Long, endTime: Long, context: Context): CompletableFuture<List<TrainingSample>> {
+        return future { getTrainingSamples(startTime, endTime, context) }
+    }
+
+    suspend fun getSessions(startTime: Long, endTime: Long, context: Context): List<SessionWithApps> {
+        return try {
+            SessionCoroutines.getSessionsInTimePeriod(startTime, endTime, context)
+        } catch (e: Exception) {
+            Sentry.captureException(e)
+            ArrayList()
+        }
+    }
+
+    @AddTrace(name = "databaseGetSessionsAsync")
+    fun getSessionsAsync(startTime: Long, endTime: Long, context: Context): CompletableFuture<List<SessionWithApps>> {
+        return future { getSessions(startTime, endTime, context) }
+    }
+
+    // runs the call in the background, the suspend functions above already report errors and return a fallback
+    private fun <T> future(block: suspend () -> T): CompletableFuture<T> {
+        val future = CompletableFuture<T>()
+        scope.launch {
+            try {
+                future.complete(block())
+            } catch (e: Exception) {
+                future.completeExceptionally(e)
+            }
+        }
+        return future
+    }
+
+    // same as streamSessionsInTimePeriod, for the training samples
+    @AddTrace(name = "databaseStreamTrainingSamplesInTimePeriod")
+    @JvmSuppressWildcards
+    fun streamTrainingSamplesInTimePeriod(startTime: Long, endTime: Long, pageSize: Int, context: Context, consumer: Consumer<List<TrainingSample>>): Long {
+        require(pageSize > 0) { "Invalid page size: $pageSize" }
+        return runBlocking {
+            try {
+                var count = 0L
+                var afterId = 0L
+                while (true) {
+                    val page = TrainingSampleCoroutines.getSamplesInTimePeriodPage(startTime, endTime, afterId, pageSize, context)
+                    if (page.isEmpty()) break
+                    consumer.accept(page)
+                    count += page.size
+                    if (page.size < pageSize) break
+                    afterId = page[page.size - 1].sampleId
+                }
+                count
+            } catch (e: Exception) {
+                Sentry.captureException(e)
+                -1L
+            }
+        }
+    }
+
     companion object {
         @JvmStatic
         @Volatile
@@ -0,0 +1,27 @@
+package com.anguel.dissertation.persistence.coroutines.sample
+
+import android.content.Context
+import com.anguel.dissertation.persistence.entity.SessionDatabase
+import com.anguel.dissertation.persistence.entity.sample.TrainingSample
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+
+class TrainingSampleCoroutines {
+
+    companion object {
+        @JvmStatic
+        suspend fun getSamplesInTimePeriod(startTime: Long, endTime: Long, context: Context): List<TrainingSample> {
+            return withContext(CoroutineScope(Dispatchers.IO).coroutineContext) {
+                SessionDatabase.getInstance(context).trainingSampleDao().getSamplesInTimeframe(startTime, endTime)
+            }
+        }
+
+        @JvmStatic
+        suspend fun getSamplesInTimePeriodPage(startTime: Long, endTime: Long, afterId: Long, limit: Int, context: Context): List<TrainingSample> {
+            return withContext(CoroutineScope(Dispatchers.IO).coroutineContext) {
+                SessionDatabase.getInstance(context).trainingSampleDao().getSamplesInTimeframePage(startTime, endTime, afterId, limit)
+            }
+        }
+    }
+}
@@ -3,10 +3,13 @@ package com.anguel.dissertation.persistence.coroutines.session
 import android.content.Context
 import com.anguel.dissertation.persistence.entity.SessionDatabase
 import com.anguel.dissertation.persistence.entity.SessionWithApps
+import com.anguel.dissertation.persistence.entity.app.App
+import com.anguel.dissertation.persistence.entity.sample.TrainingSample
 import com.anguel.dissertation.persistence.entity.session.Session
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
+import java.util.concurrent.Callable
 
 class SessionCoroutines {
 
@@ -18,6 +21,35 @@ class SessionCoroutines {
             }
         }
 
+        // saves the sessions with their apps and training samples in a single transaction, so there is one commit
+        // for the whole batch and nothing is kept if any insert fails. returns the new session ids in order
+        @JvmStatic
+        suspend fun saveSessionsWithApps(sessions: List<SessionWithApps>, context: Context): List<Long> {
+            return withContext(CoroutineScope(Dispatchers.IO).coroutineContext) {
+                val database = SessionDatabase.getInstance(context)
+                database.runInTransaction(Callable {
+                    val ids = ArrayList<Long>(sessions.size)
+                    val apps = ArrayList<App>()
+                    for (sessionWithApps in sessions) {
+                        val sessionId = database.sessionDao().insertSession(sessionWithApps.session)
+                        sessionWithApps.session.sessionId = sessionId
+                        sessionWithApps.sessionApps.forEach { app -> app.sessionIdFK = sessionId }
+                        apps.addAll(sessionWithApps.sessionApps)
+                        ids.add(sessionId)
+                    }
+                    // the samples point at their app, so they are built once the apps have their ids
+                    val appIds = database.appDao().insertApps(apps)
+                    apps.forEachIndexed { i, app -> app.appId = appIds[i] }
+                    val samples = ArrayList<TrainingSample>(apps.size)
+                    for (sessionWithApps in sessions) {
+                        samples.addAll(TrainingSample.of(sessionWithApps.session, sessionWithApps.sessionApps))
+                    }
+                    database.trainingSampleDao().insertSamples(samples)
+                    ids
+                })
+            }
+        }
+
         @JvmStatic
         suspend fun getSessionsInTimePeriod(startTime: Long, endTime: Long, context: Context): List<SessionWithApps> {
             return withContext(CoroutineScope(Dispatchers.IO).coroutineContext) {
@@ -25,6 +57,13 @@ class SessionCoroutines {
             }
         }
 
+        @JvmStatic
+        suspend fun getSessionsInTimePeriodPage(startTime: Long, endTime: Long, afterId: Long, limit: Int, context: Context): List<SessionWithApps> {
+            return withContext(CoroutineScope(Dispatchers.IO).coroutineContext) {
+                SessionDatabase.getInstance(context).sessionDao().getSessionsInTimeframePage(startTime, endTime, afterId, limit)
+            }
+        }
+
         @JvmStatic
         suspend fun getAllSessions(context: Context): List<SessionWithApps> {
             return withContext(CoroutineScope(Dispatchers.IO).coroutineContext) {
@@ -2,30 +2,79 @@ package com.anguel.dissertation.persistence.entity;
 
 import android.content.Context;
 
+import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
 import com.anguel.dissertation.R;
 import com.anguel.dissertation.persistence.entity.app.App;
 import com.anguel.dissertation.persistence.entity.app.AppDao;
+import com.anguel.dissertation.persistence.entity.sample.TrainingSample;
+import com.anguel.dissertation.persistence.entity.sample.TrainingSampleDao;
 import com.anguel.dissertation.persistence.entity.session.Session;
 import com.anguel.dissertation.persistence.entity.session.SessionDao;
 
-@Database(entities = {App.class, Session.class}, version = 2)
+@Database(entities = {App.class, Session.class, TrainingSample.class}, version = 5)
 public abstract class SessionDatabase extends RoomDatabase {
 
     public abstract AppDao appDao();
 
     public abstract SessionDao sessionDao();
 
+    public abstract TrainingSampleDao trainingSampleDao();
+
     private static volatile SessionDatabase INSTANCE;
 
+    // adds the training samples table and fills it from the sessions already collected, so no data is lost
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `TrainingSample` (`sampleId` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`sessionIdFK` INTEGER NOT NULL, `sessionStart` INTEGER NOT NULL, `sessionEnd` INTEGER NOT NULL, "
+                    + "`sessionLength` INTEGER NOT NULL, `totalTimeInForeground` INTEGER NOT NULL, `anxious` INTEGER NOT NULL)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_TrainingSample_sessionStart_sessionEnd` ON `TrainingSample` (`sessionStart`, `sessionEnd`)");
+            database.execSQL("INSERT OR IGNORE INTO `TrainingSample` (`sessionIdFK`, `sessionStart`, `sessionEnd`, `sessionLength`, `totalTimeInForeground`, `anxious`) "
+                    + "SELECT s.`sessionId`, s.`sessionStart`, s.`sessionEnd`, abs(s.`sessionEnd` - s.`sessionStart`), abs(a.`totalTimeInForeground`), s.`anxious` "
+                    + "FROM `Session` s JOIN `App` a ON a.`sessionIdFK` = s.`sessionId`");
+        }
+    };
+
+    // indexes the time range filter on the sessions and the app lookup done for every session by the relation
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_Session_sessionStart_sessionEnd` ON `Session` (`sessionStart`, `sessionEnd`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_App_sessionIdFK` ON `App` (`sessionIdFK`)");
+        }
+    };
+
+    // ties every training sample to the app row it was computed from, with a unique index so a session that is
+    // saved again replaces its samples. the table only holds derived data, so it is rebuilt from the sessions and
+    // apps, which also drops the duplicates left by sessions received more than once
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("DROP TABLE IF EXISTS `TrainingSample`");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `TrainingSample` (`sampleId` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`sessionIdFK` INTEGER NOT NULL, `appIdFK` INTEGER NOT NULL, `sessionStart` INTEGER NOT NULL, `sessionEnd` INTEGER NOT NULL, "
+                    + "`sessionLength` INTEGER NOT NULL, `totalTimeInForeground` INTEGER NOT NULL, `anxious` INTEGER NOT NULL)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_TrainingSample_sessionStart_sessionEnd` ON `TrainingSample` (`sessionStart`, `sessionEnd`)");
+            database.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_TrainingSample_sessionIdFK_appIdFK` ON `TrainingSample` (`sessionIdFK`, `appIdFK`)");
+            database.execSQL("INSERT OR IGNORE INTO `TrainingSample` (`sessionIdFK`, `appIdFK`, `sessionStart`, `sessionEnd`, `sessionLength`, `totalTimeInForeground`, `anxious`) "
+                    + "SELECT s.`sessionId`, a.`appId`, s.`sessionStart`, s.`sessionEnd`, abs(s.`sessionEnd` - s.`sessionStart`), abs(a.`totalTimeInForeground`), s.`anxious` "
+                    + "FROM `Session` s JOIN `App` a ON a.`sessionIdFK` = s.`sessionId` ORDER BY a.`appId`");
+        }
+    };
+
     public static SessionDatabase getInstance(Context context) {
         if (INSTANCE == null) {
             synchronized (SessionDatabase.class) {
                 if (INSTANCE == null) {
                     INSTANCE = Room.databaseBuilder(context.getApplicationContext(), SessionDatabase.class, context.getString(R.string.session_db))
+                            .addMigrations(MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5)
                             .fallbackToDestructiveMigration()
                             .build();
                 }
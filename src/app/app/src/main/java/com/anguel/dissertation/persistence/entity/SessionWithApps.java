@@ -20,4 +20,11 @@ public class SessionWithApps {
             entityColumn = "sessionIdFK"
     )
     public List<App> sessionApps;
+
+    public static SessionWithApps of(Session session, List<App> apps) {
+        SessionWithApps sessionWithApps = new SessionWithApps();
+        sessionWithApps.session = session;
+        sessionWithApps.sessionApps = apps;
+        return sessionWithApps;
+    }
 }
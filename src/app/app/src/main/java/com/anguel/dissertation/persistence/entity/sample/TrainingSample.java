@@ -0,0 +1,61 @@
+package com.anguel.dissertation.persistence.entity.sample;
+
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+import com.anguel.dissertation.persistence.entity.app.App;
+import com.anguel.dissertation.persistence.entity.session.Session;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// one row per app used in a session, with the features the model is trained on already computed.
+// written together with the session, so training is a range scan instead of joining sessions and apps.
+// the unique index ties every row to the session and app it came from, so a session saved again doesn't duplicate it
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity(tableName = "TrainingSample", indices = {@Index({"sessionStart", "sessionEnd"}), @Index(value = {"sessionIdFK", "appIdFK"}, unique = true)})
+public class TrainingSample {
+
+    @PrimaryKey(autoGenerate = true)
+    public long sampleId;
+
+    public long sessionIdFK;
+
+    public long appIdFK;
+
+    // kept to select the samples of a time period like the sessions are
+    public long sessionStart;
+    public long sessionEnd;
+
+    public long sessionLength;
+    public long totalTimeInForeground;
+
+    public boolean anxious;
+
+    // the samples of a session, the apps need to be saved already so they have their app and session ids set
+    public static List<TrainingSample> of(Session session, List<App> apps) {
+        List<TrainingSample> samples = new ArrayList<>(apps.size());
+        long sessionLength = Math.abs(session.getSessionEnd() - session.getSessionStart());
+        for (App app : apps) {
+            samples.add(TrainingSample.builder()
+                    .sessionIdFK(app.getSessionIdFK())
+                    .appIdFK(app.getAppId())
+                    .sessionStart(session.getSessionStart())
+                    .sessionEnd(session.getSessionEnd())
+                    .sessionLength(sessionLength)
+                    .totalTimeInForeground(Math.abs(app.getTotalTimeInForeground()))
+                    .anxious(session.isAnxious())
+                    .build());
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,25 @@
+package com.anguel.dissertation.persistence.entity.sample;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface TrainingSampleDao {
+
+    // same time filter as the sessions, served by the (sessionStart, sessionEnd) index
+    @Query("SELECT * FROM TrainingSample WHERE sessionStart >= :sessionStart AND sessionEnd <= :sessionEnd")
+    List<TrainingSample> getSamplesInTimeframe(long sessionStart, long sessionEnd);
+
+    // one page of the samples in a time period, continuing after the last sample id of the previous page
+    @Query("SELECT * FROM TrainingSample WHERE sessionStart >= :sessionStart AND sessionEnd <= :sessionEnd AND sampleId > :afterId ORDER BY sampleId LIMIT :limit")
+    List<TrainingSample> getSamplesInTimeframePage(long sessionStart, long sessionEnd, long afterId, int limit);
+
+    // a session and app that are already there get their sample replaced instead of added again
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    List<Long> insertSamples(List<TrainingSample> samples);
+
+}
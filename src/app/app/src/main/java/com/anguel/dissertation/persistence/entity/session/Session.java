@@ -1,6 +1,7 @@
 package com.anguel.dissertation.persistence.entity.session;
 
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 import lombok.AllArgsConstructor;
@@ -12,7 +13,7 @@ import lombok.NoArgsConstructor;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Entity(tableName = "Session")
+@Entity(tableName = "Session", indices = {@Index({"sessionStart", "sessionEnd"})})
 public class Session {
 
     @PrimaryKey(autoGenerate = true)
@@ -21,6 +21,11 @@ public interface SessionDao {
     @Query("SELECT * FROM Session where sessionStart >= :sessionStart AND sessionEnd <= :sessionEnd")
     List<SessionWithApps> getSessionsInTimeframe(long sessionStart, long sessionEnd);
 
+    // one page of the sessions in a time period, continuing after the last session id of the previous page
+    @Transaction
+    @Query("SELECT * FROM Session where sessionStart >= :sessionStart AND sessionEnd <= :sessionEnd AND sessionId > :afterId ORDER BY sessionId LIMIT :limit")
+    List<SessionWithApps> getSessionsInTimeframePage(long sessionStart, long sessionEnd, long afterId, int limit);
+
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     long insertSession(Session session);
 
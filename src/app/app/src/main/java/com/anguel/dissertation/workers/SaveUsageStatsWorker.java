@@ -17,11 +17,13 @@ import androidx.work.WorkerParameters;
 
 import com.anguel.dissertation.R;
 import com.anguel.dissertation.persistence.DatabaseAPI;
+import com.anguel.dissertation.persistence.entity.SessionWithApps;
 import com.anguel.dissertation.persistence.entity.app.App;
 import com.anguel.dissertation.persistence.entity.session.Session;
 import com.google.firebase.perf.metrics.AddTrace;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
@@ -85,12 +87,6 @@ public class SaveUsageStatsWorker extends Worker {
         currentSession.setSessionEnd(endTime);
         currentSession.setAnxious(anxious);
 
-
-        long sessionId = Objects.requireNonNull(databaseAPI).saveSession(currentSession, getApplicationContext());
-        if (sessionId == -1L) {
-            return Result.failure();
-        }
-
         List<UsageStats> appList = Objects.requireNonNull(usm).queryUsageStats(UsageStatsManager.INTERVAL_BEST, startTime, endTime);
 
         if (appList != null && appList.size() == 0) {
@@ -114,15 +110,22 @@ public class SaveUsageStatsWorker extends Worker {
             app.setLastTimeUsed(s.getLastTimeUsed());
             app.setName(additionalDetails.get(getString(R.string.name)));
             app.setPackageName(s.getPackageName());
-            app.setSessionIdFK(sessionId);
             app.setTotalTimeInForeground(s.getTotalTimeInForeground());
 
             sessionApps.add(app);
         }
 
-        long count = databaseAPI.saveApps(sessionApps, getApplicationContext()).size();
+        // the session, its apps and its training samples are written in one transaction, the worker thread can wait for it
+        List<Long> sessionIds;
+        try {
+            sessionIds = Objects.requireNonNull(databaseAPI)
+                    .saveSessionsWithAppsAsync(Collections.singletonList(SessionWithApps.of(currentSession, sessionApps)), getApplicationContext())
+                    .get();
+        } catch (Exception e) {
+            return Result.failure();
+        }
 
-        if (count != sessionApps.size()) {
+        if (sessionIds.size() != 1) {
             return Result.failure();
         }
 
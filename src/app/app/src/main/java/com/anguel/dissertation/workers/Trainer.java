@@ -13,10 +13,12 @@ import androidx.work.WorkerParameters;
 import com.anguel.dissertation.R;
 import com.anguel.dissertation.ml.ModelStats;
 import com.anguel.dissertation.ml.ModelType;
+import com.anguel.dissertation.ml.SessionFrameBuilder;
+import com.anguel.dissertation.ml.smile.base.cart.ColumnOrder;
 import com.anguel.dissertation.ml.smile.classification.RandomForest;
+import com.anguel.dissertation.ml.smile.classification.RandomForestCodec;
 import com.anguel.dissertation.ml.smile.data.DataFrame;
 import com.anguel.dissertation.ml.smile.data.formula.Formula;
-import com.anguel.dissertation.ml.smile.io.Read;
 import com.anguel.dissertation.ml.smile.validation.ClassificationMetrics;
 import com.anguel.dissertation.ml.smile.validation.metric.Accuracy;
 import com.anguel.dissertation.ml.smile.validation.metric.ConfusionMatrix;
@@ -27,32 +29,42 @@ import com.anguel.dissertation.ml.smile.validation.metric.Precision;
 import com.anguel.dissertation.ml.smile.validation.metric.Sensitivity;
 import com.anguel.dissertation.ml.smile.validation.metric.Specificity;
 import com.anguel.dissertation.persistence.DatabaseAPI;
-import com.anguel.dissertation.persistence.entity.SessionWithApps;
-import com.anguel.dissertation.persistence.entity.app.App;
+import com.anguel.dissertation.persistence.entity.sample.TrainingSample;
 import com.anguel.dissertation.utils.Utils;
 import com.google.android.gms.tasks.Task;
 import com.google.firebase.functions.FirebaseFunctions;
 import com.google.firebase.perf.metrics.AddTrace;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Random;
 
 import io.sentry.Sentry;
 
 
 public class Trainer extends Worker {
-    private static final String currentModelPath = "current_model.dat";
-    private static final String dataPath = "data.arff";
+    private static final String currentModelPath = "current_model.rf";
+    // java serialized model written by older versions, only read once to migrate it
+    private static final String legacyModelPath = "current_model.dat";
+    // upper bound on the trees kept in the merged model, so it doesn't grow every day
+    private static final int maxMergedTrees = 1500;
+    // samples read from the database at a time when setting up the data
+    private static final int samplePageSize = 1000;
+    // sort order of the overall model's rows, so the next overall run only sorts the new rows
+    private static final String trainingOrderPath = "training_order.bin";
     private FirebaseFunctions functions;
+    // sort order of the training rows of the overall model, null if the trees have to sort them
+    private int[][] trainOrder;
 
     public Trainer(@NonNull Context context, @NonNull WorkerParameters workerParams) {
         super(context, workerParams);
@@ -76,17 +88,17 @@ public class Trainer extends Worker {
             setForegroundAsync(createForegroundInfo(overallModel));
             long currentTime = Utils.getInstance().getTime();
 
-            boolean dataSetUp = setUpData(overallModel, currentTime);
-            if (!dataSetUp) {
+            DataFrame data = setUpData(overallModel, currentTime);
+            if (data == null) {
                 throw new Exception("data was not set up");
             }
 
             if (overallModel) {
-                RandomForest overallForest = trainModel();
+                RandomForest overallForest = trainModel(data, trainOrder);
                 sendModelStats(overallForest, ModelType.OVERALL, currentTime)
                         .addOnCompleteListener(Trainer::onComplete);
             } else {
-                RandomForest current = trainModel();
+                RandomForest current = trainModel(data, null);
                 sendModelStats(current, ModelType.DAILY, currentTime)
                         .addOnCompleteListener(Trainer::onComplete);
 
@@ -106,71 +118,142 @@ public class Trainer extends Worker {
     }
 
     private Result closeWorker() {
-        removeData();
         return Result.success();
     }
 
-    private String getARFFHeader() {
-        StringBuilder result = new StringBuilder();
-        result.append("@RELATION sessionWithApps\n\n");
-        String[] attributes = {"sessionLength", "totalTimeInForeground", "anxious"};
-        for (String attr : Arrays.copyOfRange(attributes, 0, 2)) {
-            result.append("@ATTRIBUTE ".concat(attr).concat(" NUMERIC\n"));
-        }
-        result.append("@ATTRIBUTE anxious {false,true}\n");
-        result.append("\n@DATA\n");
-        result.trimToSize();
-        return result.toString();
-    }
-
-    private String convertSessionsToString(SessionWithApps sessionWithApps) {
-        StringBuilder result = new StringBuilder();
-        boolean anxious = sessionWithApps.getSession().isAnxious();
-        long sessionLength = Math.abs(sessionWithApps.getSession().getSessionEnd() - sessionWithApps.getSession().getSessionStart());
-        for (App app : sessionWithApps.getSessionApps()) {
-            result.append(String.format("%s,%s,%s\n", sessionLength, Math.abs(app.getTotalTimeInForeground()), anxious));
-        }
-        result.trimToSize();
-        return result.toString();
-    }
-
-    // extracts the data and saves it in a temporary file
+    // extracts the data straight into the columns of a data frame
     @AddTrace(name = "setUpData")
-    private boolean setUpData(boolean getAllData, long currentTime) {
-        boolean success = true;
+    private DataFrame setUpData(boolean getAllData, long currentTime) {
+        DataFrame data = null;
 
-        try (FileOutputStream fos = getApplicationContext().openFileOutput(dataPath, Context.MODE_PRIVATE)) {
-            fos.write(getARFFHeader().getBytes(StandardCharsets.UTF_8));
-            List<SessionWithApps> data;
+        try {
             long prevTime;
             if (getAllData) {
                 prevTime = Utils.getInstance().getDataCutOffTime();
             } else {
                 prevTime = Utils.getInstance().getPreviousTime(currentTime, 24L);
             }
-            data = DatabaseAPI.getInstance().getSessionsInTimePeriod(prevTime, currentTime, getApplicationContext());
-            for (SessionWithApps sessionWithApps : data) {
-                fos.write(convertSessionsToString(sessionWithApps).getBytes(StandardCharsets.UTF_8));
+            // the features are precomputed when sessions are saved, read them page by page straight into the columns
+            SessionFrameBuilder builder = new SessionFrameBuilder();
+            if (!getAllData) {
+                long count = DatabaseAPI.getInstance().streamTrainingSamplesInTimePeriod(prevTime, currentTime, samplePageSize, getApplicationContext(), builder::addSamples);
+                if (count >= 0) {
+                    data = builder.build();
+                }
+                return data;
+            }
+
+            // the samples come in the order of ids, so the rows sorted last time are the first ones if none went away
+            TrainingOrder saved = getSavedTrainingOrder(prevTime);
+            long savedLastId = saved == null ? -1 : saved.lastSampleId;
+            int[] savedRows = {0};
+            long[] lastId = {0};
+            long count = DatabaseAPI.getInstance().streamTrainingSamplesInTimePeriod(prevTime, currentTime, samplePageSize, getApplicationContext(), samples -> {
+                for (TrainingSample sample : samples) {
+                    if (sample.getSampleId() <= savedLastId) savedRows[0]++;
+                    lastId[0] = Math.max(lastId[0], sample.getSampleId());
+                }
+                builder.addSamples(samples);
+            });
+            if (count >= 0) {
+                int[] rows = builder.permutation(new Random());
+                data = builder.build(rows);
+                trainOrder = getTrainingOrder(builder, rows, saved, savedRows[0], prevTime, lastId[0]);
             }
-            fos.flush();
         } catch (Exception e) {
             Sentry.captureException(e);
-            success = false;
         }
 
-        return success;
+        return data;
+    }
+
+    // sorts the new rows into the saved order of the rows in the database, instead of sorting them all again.
+    // returns the order of the training rows of the shuffled frame, or null to sort them while training
+    @AddTrace(name = "getTrainingOrder")
+    private int[][] getTrainingOrder(SessionFrameBuilder builder, int[] rows, TrainingOrder saved, int savedRows, long startTime, long lastSampleId) {
+        try {
+            int n = rows.length;
+            int[] databaseRows = new int[n];
+            for (int i = 0; i < n; i++) {
+                databaseRows[i] = i;
+            }
+            DataFrame x = Formula.lhs("anxious").x(builder.build(databaseRows));
+
+            ColumnOrder order = null;
+            if (saved != null && saved.order.size() == savedRows) {
+                try {
+                    order = saved.order.append(x);
+                } catch (IllegalArgumentException | IllegalStateException e) {
+                    Sentry.captureException(e);
+                }
+            }
+            if (order == null) {
+                order = new ColumnOrder(x);
+            }
+            saveTrainingOrder(new TrainingOrder(startTime, lastSampleId, order));
+
+            // the training rows are the first of the shuffled frame
+            int split = trainSize(n);
+            int[] position = new int[n];
+            Arrays.fill(position, -1);
+            for (int i = 0; i < split; i++) {
+                position[rows[i]] = i;
+            }
+            return order.select(position, Formula.lhs("anxious").x(builder.build(Arrays.copyOf(rows, split))));
+        } catch (Exception e) {
+            Sentry.captureException(e);
+            return null;
+        }
+    }
+
+    // get the saved order if it was made from the same start time
+    private TrainingOrder getSavedTrainingOrder(long startTime) {
+        File file = new File(getApplicationContext().getFilesDir(), trainingOrderPath);
+        if (!file.exists()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            long savedStartTime = in.readLong();
+            long lastSampleId = in.readLong();
+            if (savedStartTime != startTime) {
+                return null;
+            }
+            return new TrainingOrder(savedStartTime, lastSampleId, ColumnOrder.read(in));
+        } catch (Exception e) {
+            Sentry.captureException(e);
+            return null;
+        }
     }
 
-    // makes sure to delete the file when done
-    private boolean removeData() {
-        return new File(getApplicationContext().getFilesDir(), dataPath).delete();
+    // save the order next to the models, replacing the old one only once it is fully written
+    private void saveTrainingOrder(TrainingOrder order) {
+        File file = new File(getApplicationContext().getFilesDir(), trainingOrderPath);
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeLong(order.startTime);
+            out.writeLong(order.lastSampleId);
+            order.order.write(out);
+        } catch (Exception e) {
+            temp.delete();
+            Sentry.captureException(e);
+            return;
+        }
+
+        if (!temp.renameTo(file)) {
+            temp.delete();
+        }
     }
 
-    // train a new model on the day's current data
+    // 70% of the rows are used for training
+    private static int trainSize(int size) {
+        return (int) Math.floor(size * 0.7);
+    }
+
+    // train a new model on the day's current data, with the sort order of the training rows if known
     @AddTrace(name = "trainModel")
-    private RandomForest trainModel() throws Exception {
-        DataFrame originalDf = Read.arff(dataPath, getApplicationContext());
-        int split = (int) Math.floor(originalDf.size() * 0.7); // 70% split
+    private RandomForest trainModel(DataFrame originalDf, int[][] order) throws Exception {
+        int split = trainSize(originalDf.size()); // 70% split
         DataFrame train = originalDf.slice(0, split);
         DataFrame test = originalDf.slice(split, originalDf.size());
 
@@ -188,7 +271,8 @@ public class Trainer extends Worker {
         RandomForest forest = RandomForest.fit(
                 anxious,
                 train,
-                props
+                props,
+                order
         );
 
         int[] predictions = forest.predict(test);
@@ -223,7 +307,8 @@ public class Trainer extends Worker {
         } else if (m2 == null) {
             return m1;
         }
-        return m1.merge(m2);
+        // the saved model goes first, so while under the bound its file is only appended to
+        return m2.merge(m1, maxMergedTrees);
     }
 
     // get the current forest model from the device
@@ -233,9 +318,34 @@ public class Trainer extends Worker {
         if (lastTimeMerged < Utils.getInstance().getDataCutOffTime()) {
             // ignore the merged model, delete it actually
             new File(getApplicationContext().getFilesDir(), currentModelPath).delete();
+            new File(getApplicationContext().getFilesDir(), legacyModelPath).delete();
+            return model;
+        }
+
+        File file = new File(getApplicationContext().getFilesDir(), currentModelPath);
+        if (!file.exists()) {
+            return getLegacySavedModel();
+        }
+
+        try {
+            // a view of the mapped file, trees are only read when touched
+            model = RandomForestCodec.read(file);
+        } catch (Exception e) {
+            Sentry.captureException(e);
+        }
+
+        return model;
+    }
+
+    // get the model saved with java serialization by older versions
+    private RandomForest getLegacySavedModel() {
+        RandomForest model = null;
+        File file = new File(getApplicationContext().getFilesDir(), legacyModelPath);
+        if (!file.exists()) {
             return model;
         }
-        try (FileInputStream fis = getApplicationContext().openFileInput(currentModelPath);
+
+        try (FileInputStream fis = new FileInputStream(file);
              ObjectInputStream objectInputStream = new ObjectInputStream(fis)) {
             model = (RandomForest) objectInputStream.readObject();
         } catch (Exception e) {
@@ -248,10 +358,11 @@ public class Trainer extends Worker {
     // save the new merged model to the device
     private boolean saveNewModel(RandomForest model) {
         boolean success = true;
-        try (FileOutputStream fileOutputStream = getApplicationContext().openFileOutput(currentModelPath, Context.MODE_PRIVATE);
-             ObjectOutputStream objectOutputStream = new ObjectOutputStream(fileOutputStream)) {
-            objectOutputStream.writeObject(model);
-            objectOutputStream.flush();
+        File file = new File(getApplicationContext().getFilesDir(), currentModelPath);
+        try {
+            // appends the new trees if the saved ones were all kept, otherwise rewrites the file
+            RandomForestCodec.save(model, file, RandomForestCodec.VARINT_COUNTS);
+            new File(getApplicationContext().getFilesDir(), legacyModelPath).delete();
         } catch (Exception e) {
             success = false;
             Sentry.captureException(e);
@@ -307,4 +418,17 @@ public class Trainer extends Worker {
 
         return new ForegroundInfo(R.integer.ml_channel_notif_id, notification);
     }
+
+    // the sort order of the rows of the overall model's data, with the period and last sample it was made from
+    private static class TrainingOrder {
+        final long startTime;
+        final long lastSampleId;
+        final ColumnOrder order;
+
+        TrainingOrder(long startTime, long lastSampleId, ColumnOrder order) {
+            this.startTime = startTime;
+            this.lastSampleId = lastSampleId;
+            this.order = order;
+        }
+    }
 }
@@ -0,0 +1,61 @@
+package com.anguel.dissertation.ml.smile;
+
+import com.anguel.dissertation.ml.ModelStats;
+import com.anguel.dissertation.ml.smile.base.cart.SplitRule;
+import com.anguel.dissertation.ml.smile.classification.RandomForest;
+import com.anguel.dissertation.ml.smile.data.DataFrame;
+import com.anguel.dissertation.ml.smile.data.formula.Formula;
+import com.anguel.dissertation.ml.smile.data.measure.NominalScale;
+import com.anguel.dissertation.ml.smile.data.type.DataTypes;
+import com.anguel.dissertation.ml.smile.data.type.StructField;
+import com.anguel.dissertation.ml.smile.data.vector.ByteVector;
+import com.anguel.dissertation.ml.smile.data.vector.DoubleVector;
+import com.anguel.dissertation.ml.smile.validation.metric.ConfusionMatrix;
+
+import java.util.Random;
+import java.util.stream.LongStream;
+
+/**
+ * Synthetic session data in the layout of the app's training frames.
+ */
+public class SessionData {
+    public static final Formula FORMULA = Formula.lhs("anxious");
+
+    /**
+     * Returns n random sessions. The lengths are whole milliseconds, so that
+     * the split values (midpoints) are exact in float too.
+     */
+    public static DataFrame of(int n, long seed) {
+        Random random = new Random(seed);
+        double[] length = new double[n];
+        double[] foreground = new double[n];
+        byte[] anxious = new byte[n];
+        for (int i = 0; i < n; i++) {
+            length[i] = Math.floor(random.nextDouble() * 3600_000);
+            foreground[i] = Math.floor(random.nextDouble() * length[i]);
+            double z = length[i] / 3600_000 + 0.5 * foreground[i] / 3600_000 + random.nextGaussian() * 0.3;
+            anxious[i] = (byte) (z > 0.7 ? 1 : 0);
+        }
+
+        NominalScale scale = new NominalScale("false", "true");
+        return DataFrame.of(
+                DoubleVector.of(new StructField("sessionLength", DataTypes.DoubleType), length),
+                DoubleVector.of(new StructField("totalTimeInForeground", DataTypes.DoubleType), foreground),
+                ByteVector.of(new StructField("anxious", scale.type(), scale), anxious));
+    }
+
+    /**
+     * Fits a small random forest with model statistics, as the trainer does.
+     */
+    public static RandomForest forest(DataFrame data, int ntrees, long seed) {
+        RandomForest forest = RandomForest.fit(FORMULA, data, ntrees, 0, SplitRule.GINI,
+                20, data.size() / 5, 5, 1.0, null, LongStream.range(seed, seed + ntrees), 1);
+        forest.setModelStats(ModelStats.builder()
+                .accuracy(0.8)
+                .trainSize(data.size())
+                .testSize(data.size() / 3)
+                .confusionMatrix(new ConfusionMatrix(new int[][]{{10, 2}, {3, 5}}))
+                .build());
+        return forest;
+    }
+}
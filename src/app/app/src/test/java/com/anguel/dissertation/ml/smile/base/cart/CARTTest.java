@@ -0,0 +1,25 @@
+package com.anguel.dissertation.ml.smile.base.cart;
+
+import com.anguel.dissertation.ml.smile.sort.RadixSortTest;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CARTTest {
+    @Test
+    public void testSort() {
+        // both sides of the radix sort threshold
+        for (int n : new int[]{0, 1, 2, 7, 100, 1023, 1024, 5000}) {
+            double[] x = RadixSortTest.values(n, n);
+            int[] expected = RadixSortTest.order(x);
+            double[] a = x.clone();
+            int[] order = CART.sort(a);
+            assertArrayEquals(expected, order);
+            for (int i = 0; i < n; i++) {
+                assertEquals(0, Double.compare(x[order[i]], a[i]));
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.anguel.dissertation.ml.smile.base.cart;
+
+import com.anguel.dissertation.ml.smile.data.DataFrame;
+import com.anguel.dissertation.ml.smile.data.measure.NominalScale;
+import com.anguel.dissertation.ml.smile.data.type.StructField;
+import com.anguel.dissertation.ml.smile.data.vector.DoubleVector;
+import com.anguel.dissertation.ml.smile.data.vector.IntVector;
+import com.anguel.dissertation.ml.smile.sort.RadixSortTest;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ColumnOrderTest {
+    /**
+     * Returns a data frame of a column with special values, a column with
+     * many ties, a continuous column and a nominal column.
+     */
+    private static DataFrame data(int n, long seed) {
+        Random random = new Random(seed);
+        double[] ties = new double[n];
+        double[] length = new double[n];
+        int[] day = new int[n];
+        for (int i = 0; i < n; i++) {
+            ties[i] = random.nextInt(20);
+            length[i] = Math.floor(random.nextDouble() * 3600_000);
+            day[i] = random.nextInt(7);
+        }
+
+        NominalScale scale = new NominalScale("mon", "tue", "wed", "thu", "fri", "sat", "sun");
+        return DataFrame.of(
+                DoubleVector.of("special", RadixSortTest.values(n, seed)),
+                DoubleVector.of("ties", ties),
+                DoubleVector.of("length", length),
+                IntVector.of(new StructField("day", scale.type(), scale), day));
+    }
+
+    private static void assertOrder(int[][] expected, int[][] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int j = 0; j < expected.length; j++) {
+            assertArrayEquals(expected[j], actual[j]);
+        }
+    }
+
+    @Test
+    public void testAppend() {
+        // small and large blocks on both sides of the radix sort threshold
+        DataFrame data = data(12000, 1);
+        int[] sizes = {0, 1, 500, 1500, 1501, 5000, 12000};
+        ColumnOrder order = new ColumnOrder(data.slice(0, 0));
+        for (int size : sizes) {
+            DataFrame x = data.slice(0, size);
+            order = order.append(x);
+            assertEquals(size, order.size());
+            assertOrder(CART.order(x), order.order());
+        }
+        assertNull(order.order()[3]);
+    }
+
+    @Test
+    public void testSelect() {
+        DataFrame data = data(5000, 2);
+        ColumnOrder order = new ColumnOrder(data);
+        Random random = new Random(3);
+        for (int m : new int[]{0, 100, 2000, 5000}) {
+            // a random sample of rows in a random order
+            int[] index = new int[data.size()];
+            for (int i = 0; i < index.length; i++) {
+                index[i] = i;
+            }
+            for (int i = index.length; i > 1; i--) {
+                int j = random.nextInt(i);
+                int t = index[i - 1];
+                index[i - 1] = index[j];
+                index[j] = t;
+            }
+            index = Arrays.copyOf(index, m);
+
+            int[] position = new int[data.size()];
+            Arrays.fill(position, -1);
+            for (int i = 0; i < m; i++) {
+                position[index[i]] = i;
+            }
+
+            DataFrame x = data.of(index);
+            assertOrder(CART.order(x), order.select(position, x));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testChangedRows() {
+        DataFrame data = data(100, 4);
+        ColumnOrder order = new ColumnOrder(data);
+        double[] ties = data.column(1).toDoubleArray();
+        ties[order.order()[1][0]] = 100;
+        order.append(DataFrame.of(data.column(0), DoubleVector.of("ties", ties), data.column(2), data.column(3)));
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+        DataFrame data = data(3000, 5);
+        ColumnOrder order = new ColumnOrder(data);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        order.write(new DataOutputStream(bytes));
+        ColumnOrder read = ColumnOrder.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(order.size(), read.size());
+        assertOrder(order.order(), read.order());
+    }
+}
@@ -0,0 +1,130 @@
+package com.anguel.dissertation.ml.smile.base.cart;
+
+import com.anguel.dissertation.ml.smile.SessionData;
+import com.anguel.dissertation.ml.smile.classification.RandomForest;
+import com.anguel.dissertation.ml.smile.classification.RandomForestCodec;
+import com.anguel.dissertation.ml.smile.data.DataFrame;
+import com.anguel.dissertation.ml.smile.data.RowCursor;
+import com.anguel.dissertation.ml.smile.math.MathEx;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class FlatForestTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // the trees of a forest take the predictors only
+    private final DataFrame x = SessionData.FORMULA.x(SessionData.of(1000, 2));
+
+    /**
+     * Returns a fitted forest, compiled from its nodes, and the forest read
+     * back with every codec flag, compiled by the decoder.
+     */
+    private List<RandomForest> forests() throws IOException {
+        RandomForest forest = SessionData.forest(SessionData.of(3000, 1), 30, 1);
+        List<RandomForest> forests = new ArrayList<>();
+        forests.add(forest);
+        for (int flags : new int[]{0, RandomForestCodec.FLOAT_VALUES, RandomForestCodec.VARINT_COUNTS,
+                RandomForestCodec.FLOAT_VALUES | RandomForestCodec.VARINT_COUNTS}) {
+            File file = folder.newFile();
+            RandomForestCodec.write(forest, file, flags);
+            forests.add(RandomForestCodec.read(file));
+        }
+        return forests;
+    }
+
+    @Test
+    public void leaf() throws IOException {
+        for (RandomForest forest : forests()) {
+            leaf(forest);
+        }
+    }
+
+    private void leaf(RandomForest forest) {
+        RandomForest.Model[] models = forest.models();
+        FlatForest flat = forest.flat();
+        double[][] columns = FlatForest.columns(x);
+        RowCursor row = x.cursor();
+        while (row.next()) {
+            int i = row.index();
+            double[] a = flat.row(row);
+            for (int t = 0; t < models.length; t++) {
+                DecisionNode node = (DecisionNode) models[t].tree().root().predict(row);
+                assertEquals(node.output(), flat.predict(t, a));
+                assertEquals(node.output(), flat.predict(t, columns, i));
+            }
+        }
+    }
+
+    @Test
+    public void vote() throws IOException {
+        for (RandomForest forest : forests()) {
+            vote(forest);
+        }
+    }
+
+    private void vote(RandomForest forest) {
+        RandomForest.Model[] models = forest.models();
+        FlatForest flat = forest.flat();
+        int k = flat.numClasses();
+        int[] batch = flat.vote(FlatForest.columns(x), x.size());
+
+        RowCursor row = x.cursor();
+        while (row.next()) {
+            int[] count = new int[k];
+            for (RandomForest.Model model : models) {
+                DecisionNode node = (DecisionNode) model.tree().root().predict(row);
+                count[node.output()]++;
+            }
+            int expected = MathEx.whichMax(count);
+            assertEquals(expected, flat.vote(flat.row(row)));
+            assertEquals(expected, batch[row.index()]);
+        }
+    }
+
+    @Test
+    public void posteriori() throws IOException {
+        for (RandomForest forest : forests()) {
+            posteriori(forest);
+        }
+    }
+
+    private void posteriori(RandomForest forest) {
+        RandomForest.Model[] models = forest.models();
+        FlatForest flat = forest.flat();
+        int k = flat.numClasses();
+        double[][] batch = new double[x.size()][k];
+        int[] y = flat.vote(FlatForest.columns(x), x.size(), batch);
+
+        double[] leaf = new double[k];
+        double[] prob = new double[k];
+        RowCursor row = x.cursor();
+        while (row.next()) {
+            double[] expected = new double[k];
+            for (RandomForest.Model model : models) {
+                DecisionNode node = (DecisionNode) model.tree().root().predict(row);
+                node.posteriori(leaf);
+                for (int j = 0; j < k; j++) {
+                    expected[j] += model.weight * leaf[j];
+                }
+            }
+            MathEx.unitize1(expected);
+
+            int i = row.index();
+            assertEquals(MathEx.whichMax(expected), flat.vote(flat.row(row), prob));
+            assertArrayEquals(expected, prob, 1E-12);
+            assertEquals(MathEx.whichMax(expected), y[i]);
+            assertArrayEquals(expected, batch[i], 1E-12);
+        }
+    }
+}
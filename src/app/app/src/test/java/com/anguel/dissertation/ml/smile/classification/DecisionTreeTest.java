@@ -0,0 +1,93 @@
+package com.anguel.dissertation.ml.smile.classification;
+
+import com.anguel.dissertation.ml.smile.SessionData;
+import com.anguel.dissertation.ml.smile.base.cart.SplitRule;
+import com.anguel.dissertation.ml.smile.data.DataFrame;
+import com.anguel.dissertation.ml.smile.data.RowCursor;
+import com.anguel.dissertation.ml.smile.data.measure.NominalScale;
+import com.anguel.dissertation.ml.smile.data.type.StructField;
+import com.anguel.dissertation.ml.smile.data.vector.BaseVector;
+import com.anguel.dissertation.ml.smile.data.vector.IntVector;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DecisionTreeTest {
+    private static final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @AfterClass
+    public static void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Returns the sessions with a nominal column of the weekday too.
+     */
+    private static DataFrame data(int n, long seed) {
+        Random random = new Random(seed);
+        int[] day = new int[n];
+        for (int i = 0; i < n; i++) {
+            day[i] = random.nextInt(7);
+        }
+
+        NominalScale scale = new NominalScale("mon", "tue", "wed", "thu", "fri", "sat", "sun");
+        return SessionData.of(n, seed).merge(IntVector.of(new StructField("day", scale.type(), scale), day));
+    }
+
+    private static List<String> lines(DecisionTree tree) {
+        List<String> lines = new ArrayList<>();
+        tree.root().toString(tree.schema(), tree.response(), null, 0, BigInteger.ONE, lines);
+        return lines;
+    }
+
+    private static void assertSameTree(DecisionTree expected, DecisionTree actual, DataFrame x) {
+        assertEquals(lines(expected), lines(actual));
+        assertArrayEquals(expected.importance(), actual.importance(), 0.0);
+        RowCursor row = x.cursor();
+        while (row.next()) {
+            assertEquals(expected.predict(row), actual.predict(row));
+        }
+    }
+
+    private void test(DataFrame train, DataFrame test, int maxNodes) {
+        DataFrame x = SessionData.FORMULA.x(train);
+        BaseVector y = SessionData.FORMULA.y(train);
+        ClassLabels codec = ClassLabels.fit(y);
+
+        DecisionTree sequential = new DecisionTree(x, codec.y, y.field(), codec.k, SplitRule.GINI, 20, maxNodes, 5, -1, null, null);
+        DecisionTree parallel = new DecisionTree(x, codec.y, y.field(), codec.k, SplitRule.GINI, 20, maxNodes, 5, executor);
+        assertTrue(sequential.size() > 10);
+        assertSameTree(sequential, parallel, SessionData.FORMULA.x(test));
+
+        // the plain fit may take either path
+        DecisionTree tree = DecisionTree.fit(SessionData.FORMULA, train, SplitRule.GINI, 20, maxNodes, 5);
+        assertEquals(lines(sequential), lines(tree));
+        assertArrayEquals(sequential.importance(), tree.importance(), 0.0);
+    }
+
+    @Test
+    public void bestFirst() {
+        test(SessionData.of(20000, 1), SessionData.of(2000, 2), 200);
+    }
+
+    @Test
+    public void depthFirst() {
+        test(SessionData.of(20000, 1), SessionData.of(2000, 2), Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void nominal() {
+        test(data(20000, 1), data(2000, 2), 200);
+    }
+}
@@ -0,0 +1,41 @@
+package com.anguel.dissertation.ml.smile.classification;
+
+import com.anguel.dissertation.ml.smile.SessionData;
+import com.anguel.dissertation.ml.smile.base.cart.SplitRule;
+import com.anguel.dissertation.ml.smile.data.DataFrame;
+
+import org.junit.Test;
+
+import java.util.stream.LongStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ExtraTreesTest {
+    private final DataFrame train = SessionData.of(3000, 1);
+
+    private ExtraTrees fit(int ntrees, long seed) {
+        ExtraTrees model = ExtraTrees.fit(SessionData.FORMULA, train, ntrees, 0, SplitRule.GINI,
+                20, train.size() / 5, 5, LongStream.range(seed, seed + ntrees), 1);
+        model.setModelStats(SessionData.forest(train, 1, seed).getModelStats());
+        return model;
+    }
+
+    @Test
+    public void testMerge() {
+        ExtraTrees a = fit(10, 1);
+        ExtraTrees b = fit(15, 100);
+        RandomForest forest = SessionData.forest(train, 5, 200);
+
+        ExtraTrees merged = a.merge(b);
+        assertEquals(25, merged.size());
+        assertSame(a.formula(), merged.formula());
+
+        assertEquals(20, a.merge(b, 20).size());
+        assertEquals(12, a.merge(forest, 12, 0.5).size());
+
+        // the merge keeps the class of the forest it is called on
+        assertEquals(ExtraTrees.class, a.merge(forest, 100).getClass());
+        assertEquals(RandomForest.class, forest.merge(a, 100).getClass());
+    }
+}
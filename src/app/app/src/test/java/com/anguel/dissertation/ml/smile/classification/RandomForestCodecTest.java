@@ -0,0 +1,131 @@
+package com.anguel.dissertation.ml.smile.classification;
+
+import com.anguel.dissertation.ml.smile.SessionData;
+import com.anguel.dissertation.ml.smile.data.DataFrame;
+import com.anguel.dissertation.ml.smile.data.RowCursor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RandomForestCodecTest {
+    private static final int[] FLAGS = {
+            0,
+            RandomForestCodec.FLOAT_VALUES,
+            RandomForestCodec.VARINT_COUNTS,
+            RandomForestCodec.FLOAT_VALUES | RandomForestCodec.VARINT_COUNTS
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final DataFrame train = SessionData.of(3000, 1);
+    private final DataFrame test = SessionData.of(1000, 2);
+
+    private static void assertSameForest(RandomForest expected, RandomForest actual, DataFrame test) {
+        assertEquals(expected.size(), actual.size());
+        assertArrayEquals(expected.importance(), actual.importance(), 0.0);
+        assertArrayEquals(expected.predict(test), actual.predict(test));
+        // the trees of a forest take the predictors only
+        DataFrame x = SessionData.FORMULA.x(test);
+        for (int t = 0; t < expected.size(); t++) {
+            DecisionTree a = expected.models()[t].tree();
+            DecisionTree b = actual.models()[t].tree();
+            RowCursor row = x.cursor();
+            while (row.next()) {
+                assertEquals(a.predict(row), b.predict(row));
+            }
+        }
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        RandomForest forest = SessionData.forest(train, 20, 1);
+        for (int flags : FLAGS) {
+            File file = folder.newFile();
+            RandomForestCodec.write(forest, file, flags);
+            RandomForest read = RandomForestCodec.read(file);
+            assertSameForest(forest, read, test);
+            // the confusion matrix has no equals
+            assertEquals(forest.getModelStats().toString(), read.getModelStats().toString());
+        }
+    }
+
+    @Test
+    public void append() throws IOException {
+        RandomForest more = SessionData.forest(SessionData.of(3000, 3), 10, 100);
+        for (int flags : FLAGS) {
+            File file = folder.newFile();
+            RandomForestCodec.write(SessionData.forest(train, 20, 1), file, flags);
+            byte[] before = Files.readAllBytes(file.toPath());
+
+            RandomForest merged = RandomForestCodec.read(file).merge(more, 100);
+            RandomForestCodec.save(merged, file, flags);
+            byte[] after = Files.readAllBytes(file.toPath());
+
+            // the old version is kept as the prefix of file
+            assertTrue(after.length > before.length);
+            assertArrayEquals(before, Arrays.copyOf(after, before.length));
+            assertSameForest(merged, RandomForestCodec.read(file), test);
+        }
+    }
+
+    @Test
+    public void mergeRewrite() throws IOException {
+        RandomForest more = SessionData.forest(SessionData.of(3000, 3), 10, 100);
+        for (int flags : FLAGS) {
+            File file = folder.newFile();
+            RandomForestCodec.write(SessionData.forest(train, 20, 1), file, flags);
+            byte[] before = Files.readAllBytes(file.toPath());
+
+            // the mapped trees are not leading, so the file is rewritten
+            RandomForest merged = more.merge(RandomForestCodec.read(file), 100);
+            RandomForestCodec.save(merged, file, flags);
+            byte[] after = Files.readAllBytes(file.toPath());
+
+            assertTrue(!Arrays.equals(before, Arrays.copyOf(after, before.length)));
+            assertSameForest(merged, RandomForestCodec.read(file), test);
+        }
+    }
+
+    @Test
+    public void interruptedAppend() throws IOException {
+        RandomForest base = SessionData.forest(train, 20, 1);
+        RandomForest more = SessionData.forest(SessionData.of(3000, 3), 10, 100);
+        for (int flags : FLAGS) {
+            File file = folder.newFile();
+            RandomForestCodec.write(base, file, flags);
+            long length = file.length();
+            RandomForestCodec.save(RandomForestCodec.read(file).merge(more, 100), file, flags);
+            byte[] appended = Files.readAllBytes(file.toPath());
+
+            // cut anywhere in the new segment, footer or trailer
+            for (long cut : new long[]{length + 1, (length + appended.length) / 2, appended.length - 13, appended.length - 12, appended.length - 1}) {
+                ByteBuffer buffer = ByteBuffer.wrap(Arrays.copyOf(appended, (int) cut));
+                assertSameForest(base, RandomForestCodec.read(buffer), test);
+            }
+
+            // the same on a file, which can be appended to again
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(appended.length - 5);
+            }
+            RandomForest recovered = RandomForestCodec.read(file);
+            assertSameForest(base, recovered, test);
+
+            RandomForest merged = recovered.merge(more, 100);
+            RandomForestCodec.save(merged, file, flags);
+            assertSameForest(merged, RandomForestCodec.read(file), test);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.anguel.dissertation.ml.smile.data;
+
+import com.anguel.dissertation.ml.smile.SessionData;
+import com.anguel.dissertation.ml.smile.data.vector.FloatVector;
+import com.anguel.dissertation.ml.smile.data.vector.IntVector;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class ChunkedDataFrameTest {
+    /**
+     * Returns the sessions with an integer column too.
+     */
+    private static DataFrame data(int n, long seed) {
+        Random random = new Random(seed);
+        int[] apps = new int[n];
+        for (int i = 0; i < n; i++) {
+            apps[i] = random.nextInt(20);
+        }
+        return SessionData.of(n, seed).merge(IntVector.of("apps", apps));
+    }
+
+    private static void assertSameData(DataFrame expected, DataFrame actual) {
+        // the union of a simple data frame drops the measures, a chunked one keeps them
+        assertEquals(expected.ncol(), actual.ncol());
+        assertEquals(expected.size(), actual.size());
+        for (int j = 0; j < expected.ncol(); j++) {
+            assertEquals(expected.schema().field(j).name, actual.schema().field(j).name);
+            assertEquals(expected.schema().field(j).type, actual.schema().field(j).type);
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i, j), actual.get(i, j));
+            }
+        }
+    }
+
+    @Test
+    public void testUnion() {
+        // blocks smaller and larger than a chunk, ending inside and at the end of a chunk
+        int[] sizes = {1, 100, 4095, 1, 4096, 10000, 2000, 0, 3};
+        DataFrame base = data(5000, 0);
+        ChunkedDataFrame chunked = new ChunkedDataFrame(base);
+        assertSameData(base, chunked);
+
+        DataFrame[] blocks = new DataFrame[sizes.length];
+        List<ChunkedDataFrame> versions = new ArrayList<>();
+        for (int k = 0; k < sizes.length; k++) {
+            blocks[k] = data(sizes[k], k + 1);
+            chunked = chunked.union(blocks[k]);
+            assertEquals(base.schema(), chunked.schema());
+            assertSameData(base.union(Arrays.copyOf(blocks, k + 1)), chunked);
+            versions.add(chunked);
+        }
+
+        // the old versions are unchanged by the later appends
+        for (int k = 0; k < versions.size(); k++) {
+            assertSameData(base.union(Arrays.copyOf(blocks, k + 1)), versions.get(k));
+        }
+    }
+
+    @Test
+    public void testBranches() {
+        // two appends to the same version share its partial last chunk
+        DataFrame base = data(5000, 1);
+        ChunkedDataFrame chunked = new ChunkedDataFrame(base);
+        DataFrame a = data(300, 2);
+        DataFrame b = data(5000, 3);
+        ChunkedDataFrame ca = chunked.union(a);
+        ChunkedDataFrame cb = chunked.union(b);
+        ChunkedDataFrame cab = chunked.union(a, b);
+
+        assertSameData(base, chunked);
+        assertSameData(base.union(a), ca);
+        assertSameData(base.union(b), cb);
+        assertSameData(base.union(a, b), cab);
+    }
+
+    @Test
+    public void testEmpty() {
+        DataFrame empty = data(0, 1);
+        ChunkedDataFrame chunked = new ChunkedDataFrame(empty);
+        assertSameData(empty, chunked);
+        assertSameData(data(10, 2), chunked.union(data(10, 2)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSchema() {
+        new ChunkedDataFrame(data(10, 1)).union(SessionData.of(10, 2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedColumn() {
+        new ChunkedDataFrame(DataFrame.of(FloatVector.of("x", new float[10])));
+    }
+}
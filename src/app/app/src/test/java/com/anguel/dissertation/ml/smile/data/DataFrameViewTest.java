@@ -0,0 +1,230 @@
+package com.anguel.dissertation.ml.smile.data;
+
+import com.anguel.dissertation.ml.smile.data.measure.NominalScale;
+import com.anguel.dissertation.ml.smile.data.type.DataTypes;
+import com.anguel.dissertation.ml.smile.data.type.StructField;
+import com.anguel.dissertation.ml.smile.data.vector.BaseVector;
+import com.anguel.dissertation.ml.smile.data.vector.BooleanVector;
+import com.anguel.dissertation.ml.smile.data.vector.ByteVector;
+import com.anguel.dissertation.ml.smile.data.vector.CharVector;
+import com.anguel.dissertation.ml.smile.data.vector.DoubleVector;
+import com.anguel.dissertation.ml.smile.data.vector.FloatVector;
+import com.anguel.dissertation.ml.smile.data.vector.IntVector;
+import com.anguel.dissertation.ml.smile.data.vector.LongVector;
+import com.anguel.dissertation.ml.smile.data.vector.ShortVector;
+import com.anguel.dissertation.ml.smile.data.vector.StringVector;
+
+import org.junit.Test;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DataFrameViewTest {
+    private static final int N = 1000;
+
+    private final boolean[] flag = new boolean[N];
+    private final char[] c = new char[N];
+    private final byte[] level = new byte[N];
+    private final short[] s = new short[N];
+    private final int[] i32 = new int[N];
+    private final long[] i64 = new long[N];
+    private final float[] f = new float[N];
+    private final double[] d = new double[N];
+    private final String[] string = new String[N];
+    private final DataFrame data;
+
+    public DataFrameViewTest() {
+        Random random = new Random(1);
+        for (int i = 0; i < N; i++) {
+            flag[i] = random.nextBoolean();
+            c[i] = (char) ('a' + random.nextInt(26));
+            level[i] = (byte) random.nextInt(3);
+            s[i] = (short) random.nextInt();
+            i32[i] = random.nextInt();
+            i64[i] = random.nextLong();
+            f[i] = (float) random.nextGaussian();
+            d[i] = random.nextGaussian();
+            string[i] = i % 5 == 0 ? null : "s" + i;
+        }
+        data = copy(IntStream.range(0, N).toArray());
+    }
+
+    /**
+     * Returns a data frame of the rows copied into new arrays. The double
+     * and integer columns are there on the heap and in buffers.
+     */
+    private DataFrame copy(int[] index) {
+        int n = index.length;
+        boolean[] flag = new boolean[n];
+        char[] c = new char[n];
+        byte[] level = new byte[n];
+        short[] s = new short[n];
+        int[] i32 = new int[n];
+        long[] i64 = new long[n];
+        float[] f = new float[n];
+        double[] d = new double[n];
+        String[] string = new String[n];
+        for (int i = 0; i < n; i++) {
+            int o = index[i];
+            flag[i] = this.flag[o];
+            c[i] = this.c[o];
+            level[i] = this.level[o];
+            s[i] = this.s[o];
+            i32[i] = this.i32[o];
+            i64[i] = this.i64[o];
+            f[i] = this.f[o];
+            d[i] = this.d[o];
+            string[i] = this.string[o];
+        }
+
+        NominalScale scale = new NominalScale("social", "video players", "news");
+        return DataFrame.of(
+                BooleanVector.of("flag", flag),
+                CharVector.of("char", c),
+                ByteVector.of(new StructField("level", scale.type(), scale), level),
+                ShortVector.of("short", s),
+                IntVector.of("int", i32),
+                LongVector.of("long", i64),
+                FloatVector.of("float", f),
+                DoubleVector.of("double", d),
+                StringVector.of("string", string),
+                DoubleVector.of(new StructField("doubleBuffer", DataTypes.DoubleType), DoubleBuffer.wrap(d.clone())),
+                IntVector.of(new StructField("intBuffer", DataTypes.IntegerType), IntBuffer.wrap(i32.clone())));
+    }
+
+    private static int[] range(int from, int to) {
+        return IntStream.range(from, to).toArray();
+    }
+
+    private static void assertSameData(DataFrame expected, DataFrame actual) {
+        assertEquals(expected.schema(), actual.schema());
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.ncol(), actual.ncol());
+        int n = expected.size();
+        for (int j = 0; j < expected.ncol(); j++) {
+            BaseVector column = actual.column(j);
+            assertEquals(n, column.size());
+            for (int i = 0; i < n; i++) {
+                assertEquals(expected.get(i, j), actual.get(i, j));
+                assertEquals(expected.get(i, j), column.get(i));
+                assertEquals(expected.get(i).get(j), actual.get(i).get(j));
+            }
+
+            if (expected.schema().field(j).type.isNumeric()) {
+                double[] a = expected.column(j).toDoubleArray();
+                assertArrayEquals(a, column.toDoubleArray(), 0.0);
+                for (int i = 0; i < n; i++) {
+                    assertEquals(a[i], actual.getDouble(i, j), 0.0);
+                }
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            assertEquals(expected.getBoolean(i, 0), actual.booleanVector(0).getBoolean(i));
+            assertEquals(expected.charVector(1).getChar(i), actual.charVector(1).getChar(i));
+            assertEquals(expected.getByte(i, 2), actual.getByte(i, 2));
+            assertEquals(expected.getByte(i, 2), actual.byteVector(2).getByte(i));
+            assertEquals(expected.getShort(i, 3), actual.getShort(i, 3));
+            assertEquals(expected.getShort(i, 3), actual.shortVector(3).getShort(i));
+            assertEquals(expected.getInt(i, 4), actual.getInt(i, 4));
+            assertEquals(expected.getInt(i, 4), actual.intVector(4).getInt(i));
+            assertEquals(expected.getLong(i, 5), actual.getLong(i, 5));
+            assertEquals(expected.getLong(i, 5), actual.longVector(5).getLong(i));
+            assertEquals(expected.getFloat(i, 6), actual.getFloat(i, 6), 0.0f);
+            assertEquals(expected.getFloat(i, 6), actual.floatVector(6).getFloat(i), 0.0f);
+            assertEquals(expected.getDouble(i, 7), actual.doubleVector(7).getDouble(i), 0.0);
+            assertEquals(expected.getString(i, 8), actual.stringVector(8).get(i));
+            assertEquals(expected.getDouble(i, 9), actual.doubleVector(9).getDouble(i), 0.0);
+            assertEquals(expected.getInt(i, 10), actual.intVector(10).getInt(i));
+        }
+
+        assertEquals(expected.stream().map(Tuple::toString).collect(Collectors.toList()),
+                actual.stream().map(Tuple::toString).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testSlice() {
+        int[][] ranges = {{0, 0}, {0, N}, {0, 1}, {N - 1, N}, {123, 877}, {500, 501}};
+        for (int[] range : ranges) {
+            DataFrame slice = data.slice(range[0], range[1]);
+            assertTrue(slice instanceof SliceDataFrame);
+            assertSameData(copy(range(range[0], range[1])), slice);
+        }
+
+        // a slice of a slice is a slice of the data
+        assertSameData(copy(range(150, 250)), data.slice(100, 900).slice(50, 150));
+        // the contiguous index is a slice too
+        DataFrame of = data.of(range(300, 700));
+        assertTrue(of instanceof SliceDataFrame);
+        assertSameData(copy(range(300, 700)), of);
+    }
+
+    @Test
+    public void testIndex() {
+        Random random = new Random(2);
+        int[] index = random.ints(2 * N, 0, N).toArray();
+        DataFrame view = data.of(index);
+        assertTrue(view instanceof IndexDataFrame);
+        assertSameData(copy(index), view);
+
+        // the index of a slice and the slice of an index view
+        int[] sample = random.ints(300, 0, 500).toArray();
+        int[] shifted = IntStream.of(sample).map(i -> i + 200).toArray();
+        assertSameData(copy(shifted), data.slice(200, 700).of(sample));
+        assertSameData(copy(Arrays.copyOfRange(index, 100, 400)), view.slice(100, 400));
+    }
+
+    @Test
+    public void testSelectMergeUnion() {
+        DataFrame slice = data.slice(100, 200);
+        DataFrame copy = copy(range(100, 200));
+        assertEquals(copy.select(4, 7).toString(), slice.select(4, 7).toString());
+        assertEquals(copy.drop(0, 8).toString(), slice.drop(0, 8).toString());
+        assertEquals(copy.union(copy).size(), slice.union(slice).size());
+        assertEquals(copy.union(copy).toString(), slice.union(slice).toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSlice() {
+        data.slice(10, N + 1);
+    }
+
+    @Test
+    public void testConcurrentColumns() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (int round = 0; round < 20; round++) {
+                DataFrame[] views = {data.slice(10, 990), data.of(new Random(round).ints(N, 0, N).toArray())};
+                for (DataFrame view : views) {
+                    List<Callable<BaseVector[]>> tasks = IntStream.range(0, 8)
+                            .mapToObj(t -> (Callable<BaseVector[]>) () -> IntStream.range(0, view.ncol()).mapToObj(view::column).toArray(BaseVector[]::new))
+                            .collect(Collectors.toList());
+                    BaseVector[] first = null;
+                    for (Future<BaseVector[]> future : executor.invokeAll(tasks)) {
+                        BaseVector[] columns = future.get();
+                        if (first == null) first = columns;
+                        for (int j = 0; j < columns.length; j++) {
+                            assertSame(first[j], columns[j]);
+                        }
+                    }
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
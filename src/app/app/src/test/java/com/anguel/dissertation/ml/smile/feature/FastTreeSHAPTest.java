@@ -0,0 +1,53 @@
+package com.anguel.dissertation.ml.smile.feature;
+
+import com.anguel.dissertation.ml.smile.SessionData;
+import com.anguel.dissertation.ml.smile.base.cart.CART;
+import com.anguel.dissertation.ml.smile.base.cart.ShapTable;
+import com.anguel.dissertation.ml.smile.classification.RandomForest;
+import com.anguel.dissertation.ml.smile.data.DataFrame;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class FastTreeSHAPTest {
+    private final RandomForest forest = SessionData.forest(SessionData.of(3000, 1), 20, 1);
+    private final DataFrame test = SessionData.of(500, 2);
+
+    private void assertSameShap(FastTreeSHAP fast) {
+        for (int i = 0; i < test.size(); i++) {
+            assertArrayEquals(forest.shap(test.get(i)), fast.shap(test.get(i)), 1E-10);
+        }
+        assertArrayEquals(forest.shap(test, 1), fast.shap(test, 1), 1E-10);
+        assertArrayEquals(forest.shap(test, 3), fast.shap(test, 3), 1E-10);
+    }
+
+    @Test
+    public void tables() {
+        FastTreeSHAP fast = new FastTreeSHAP(forest);
+        assertEquals(forest.size(), fast.tabulated());
+        assertSameShap(fast);
+    }
+
+    @Test
+    public void recursion() {
+        FastTreeSHAP fast = new FastTreeSHAP(forest, 0);
+        assertEquals(0, fast.tabulated());
+        assertSameShap(fast);
+    }
+
+    @Test
+    public void mixed() {
+        // a budget of the first half of trees
+        CART[] trees = forest.trees();
+        long memory = 0;
+        for (int i = 0; i < trees.length / 2; i++) {
+            memory += ShapTable.size(trees[i]) * Double.BYTES;
+        }
+
+        FastTreeSHAP fast = new FastTreeSHAP(forest, memory);
+        assertEquals(trees.length / 2, fast.tabulated());
+        assertSameShap(fast);
+    }
+}
@@ -0,0 +1,63 @@
+package com.anguel.dissertation.ml.smile.feature;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PermutationImportanceTest {
+    private static final int N = 1000;
+    private static final int P = 3;
+
+    private final double[][] x = new double[P][N];
+    private final int[] y = new int[N];
+
+    public PermutationImportanceTest() {
+        Random random = new Random(1);
+        for (int i = 0; i < N; i++) {
+            for (int j = 0; j < P; j++) {
+                x[j][i] = random.nextGaussian();
+            }
+            y[i] = x[0][i] > 0 ? 1 : 0;
+        }
+    }
+
+    // predicts by the sign of the first column, checking that the model gets the predictors only
+    private static int[] predict(double[][] x, int n) {
+        assertEquals(P, x.length);
+        int[] prediction = new int[n];
+        for (int i = 0; i < n; i++) {
+            prediction[i] = x[0][i] > 0 ? 1 : 0;
+        }
+        return prediction;
+    }
+
+    @Test
+    public void test() {
+        double[][] copy = new double[P][];
+        for (int j = 0; j < P; j++) {
+            copy[j] = x[j].clone();
+        }
+
+        PermutationImportance importance = PermutationImportance.of(PermutationImportanceTest::predict, x, N, y, 5, 1, null);
+        assertEquals(1.0, importance.accuracy, 0.0);
+        assertEquals(0.5, importance.mean[0], 0.1);
+        assertEquals(0.0, importance.mean[1], 0.0);
+        assertEquals(0.0, importance.mean[2], 0.0);
+        // the data are not modified
+        assertArrayEquals(copy, x);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            PermutationImportance parallel = PermutationImportance.of(PermutationImportanceTest::predict, x, N, y, 5, 1, executor);
+            assertArrayEquals(importance.mean, parallel.mean, 0.0);
+            assertArrayEquals(importance.sd, parallel.sd, 0.0);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
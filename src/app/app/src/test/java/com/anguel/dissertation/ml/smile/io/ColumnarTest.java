@@ -0,0 +1,143 @@
+package com.anguel.dissertation.ml.smile.io;
+
+import com.anguel.dissertation.ml.smile.data.DataFrame;
+import com.anguel.dissertation.ml.smile.data.measure.NominalScale;
+import com.anguel.dissertation.ml.smile.data.type.StructField;
+import com.anguel.dissertation.ml.smile.data.vector.BooleanVector;
+import com.anguel.dissertation.ml.smile.data.vector.ByteVector;
+import com.anguel.dissertation.ml.smile.data.vector.CharVector;
+import com.anguel.dissertation.ml.smile.data.vector.DoubleVector;
+import com.anguel.dissertation.ml.smile.data.vector.FloatVector;
+import com.anguel.dissertation.ml.smile.data.vector.IntVector;
+import com.anguel.dissertation.ml.smile.data.vector.LongVector;
+import com.anguel.dissertation.ml.smile.data.vector.ShortVector;
+import com.anguel.dissertation.ml.smile.data.vector.StringVector;
+import com.anguel.dissertation.ml.smile.data.vector.Vector;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class ColumnarTest {
+    private static final String[] COLUMNS = {
+            "flag", "level", "char", "short", "int", "long", "float", "double", "string"
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Returns a data frame of every supported column type. The blocks
+     * of large frames span several encoding buffers.
+     */
+    private static DataFrame data(int n, long seed) {
+        Random random = new Random(seed);
+        boolean[] flag = new boolean[n];
+        byte[] level = new byte[n];
+        char[] c = new char[n];
+        short[] s = new short[n];
+        int[] i32 = new int[n];
+        long[] i64 = new long[n];
+        float[] f = new float[n];
+        double[] d = new double[n];
+        String[] string = new String[n];
+        for (int i = 0; i < n; i++) {
+            flag[i] = random.nextBoolean();
+            level[i] = (byte) random.nextInt(3);
+            c[i] = (char) (random.nextInt(0xD000) + 1);
+            s[i] = (short) random.nextInt();
+            i32[i] = random.nextInt(100) - 50;
+            i64[i] = random.nextLong();
+            f[i] = i % 97 == 0 ? Float.NaN : (float) random.nextGaussian();
+            d[i] = i % 89 == 0 ? Double.NaN : i % 83 == 0 ? -0.0 : Math.floor(random.nextDouble() * 3600_000);
+            string[i] = i % 7 == 0 ? null : i % 11 == 0 ? "" : "session é " + random.nextInt(1000);
+        }
+
+        NominalScale scale = new NominalScale("social", "video players", "news");
+        return DataFrame.of(
+                BooleanVector.of("flag", flag),
+                ByteVector.of(new StructField("level", scale.type(), scale), level),
+                CharVector.of("char", c),
+                ShortVector.of("short", s),
+                IntVector.of("int", i32),
+                LongVector.of("long", i64),
+                FloatVector.of("float", f),
+                DoubleVector.of("double", d),
+                StringVector.of("string", string));
+    }
+
+    private void test(DataFrame data, String... compressed) throws IOException {
+        File file = folder.newFile();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            Columnar.write(data, channel, compressed);
+        }
+
+        DataFrame read;
+        try (Columnar columnar = new Columnar(FileChannel.open(file.toPath(), StandardOpenOption.READ))) {
+            assertEquals(data.schema(), columnar.schema());
+            assertEquals(data.size(), columnar.size());
+            assertMinMax(data, columnar);
+            read = columnar.read();
+        }
+
+        // the mapped columns are still valid after the file is closed
+        assertEquals(data.schema(), read.schema());
+        assertEquals(data.size(), read.size());
+        for (int j = 0; j < data.ncol(); j++) {
+            for (int i = 0; i < data.size(); i++) {
+                assertEquals(COLUMNS[j] + "[" + i + "]", data.get(i, j), read.get(i, j));
+            }
+        }
+    }
+
+    private static void assertMinMax(DataFrame data, Columnar columnar) {
+        for (int j = 3; j <= 7; j++) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < data.size(); i++) {
+                double x = data.getDouble(i, j);
+                if (x < min) min = x;
+                if (x > max) max = x;
+            }
+            assertEquals(data.size() == 0 ? Double.NaN : min, columnar.min(j), 0.0);
+            assertEquals(data.size() == 0 ? Double.NaN : max, columnar.max(j), 0.0);
+        }
+    }
+
+    @Test
+    public void testRaw() throws IOException {
+        test(data(1000, 1));
+        test(data(100000, 2));
+    }
+
+    @Test
+    public void testDeflate() throws IOException {
+        test(data(1000, 3), COLUMNS);
+        test(data(100000, 4), COLUMNS);
+    }
+
+    @Test
+    public void testMixed() throws IOException {
+        test(data(50000, 5), "double", "string", "level");
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        test(data(0, 6));
+        test(data(0, 7), COLUMNS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedColumn() throws IOException {
+        // boxed values are not supported
+        test(DataFrame.of(Vector.of("boxed", Integer.class, new Integer[]{1, null, 3})));
+    }
+}
@@ -0,0 +1,108 @@
+package com.anguel.dissertation.ml.smile.io;
+
+import com.anguel.dissertation.ml.smile.data.DataFrame;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.StringReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class FastArffTest {
+    private static final String HEADER = "% the sessions\n"
+            + "@RELATION sessions\n"
+            + "\n"
+            + "@ATTRIBUTE id INTEGER\n"
+            + "@ATTRIBUTE sessionLength NUMERIC\n"
+            + "@ATTRIBUTE ratio REAL\n"
+            + "@ATTRIBUTE 'app category' {social, 'video players', \"news\"}\n"
+            + "@ATTRIBUTE note STRING\n"
+            + "@ATTRIBUTE anxious {false,true}\n"
+            + "\n"
+            + "@DATA\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Returns the rows of a data frame as strings in sorted order,
+     * as both readers shuffle the rows.
+     */
+    private static List<String> rows(DataFrame data) {
+        List<String> rows = new ArrayList<>();
+        for (int i = 0; i < data.size(); i++) {
+            StringBuilder row = new StringBuilder();
+            for (int j = 0; j < data.ncol(); j++) {
+                Object value = data.get(i, j);
+                row.append(value == null ? "null" : value.getClass().getSimpleName() + ":" + value).append('|');
+            }
+            rows.add(row.toString());
+        }
+        Collections.sort(rows);
+        return rows;
+    }
+
+    private void test(String arff) throws Exception {
+        DataFrame expected = new Arff(new StringReader(arff)).read();
+
+        File file = folder.newFile();
+        Files.write(file.toPath(), arff.getBytes(StandardCharsets.UTF_8));
+        DataFrame actual;
+        try (FastArff reader = new FastArff(FileChannel.open(file.toPath(), StandardOpenOption.READ))) {
+            actual = reader.read();
+        }
+
+        assertEquals(expected.schema(), actual.schema());
+        assertEquals(expected.size(), actual.size());
+        assertEquals(rows(expected), rows(actual));
+    }
+
+    @Test
+    public void testValues() throws Exception {
+        test(HEADER
+                + "1,1200000,0.5,social,'a note',true\n"
+                + "2, -3.25e2 ,1E-3,'video players',\"with, comma\",false\n"
+                + "% a comment line\n"
+                + "\n"
+                + "3,NaN,-0.0,news,plain,true\n"
+                + "4,?,?,?,?,?\n"
+                + "5,123456789012345678901234,1.0000001,social,'it\\'s',false\r\n"
+                + "6,0.1,3.4028235E38,news,'',true\n");
+    }
+
+    @Test
+    public void testSparse() throws Exception {
+        test(HEADER
+                + "{0 1, 1 5.5, 3 social, 4 x, 5 true}\n"
+                + "{0 2, 2 0.25, 4 y}\n"
+                + "{1 7, 4 z}\n");
+    }
+
+    @Test
+    public void testLarge() throws Exception {
+        // more than one chunk, parsed in parallel
+        String[] category = {"social", "'video players'", "news"};
+        Random random = new Random(1);
+        StringBuilder arff = new StringBuilder(HEADER);
+        for (int i = 0; arff.length() < (10 << 20); i++) {
+            arff.append(i).append(',')
+                    .append(Math.floor(random.nextDouble() * 3600_000) / 1000).append(',')
+                    .append((float) random.nextGaussian()).append(',')
+                    .append(category[random.nextInt(3)]).append(',')
+                    .append("n").append(random.nextInt(100)).append(',')
+                    .append(random.nextBoolean()).append('\n');
+        }
+        test(arff.toString());
+    }
+}
@@ -0,0 +1,84 @@
+package com.anguel.dissertation.ml.smile.sort;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class RadixSortTest {
+    /**
+     * Returns the index of values sorted by a stable sort of Double.compare.
+     */
+    public static int[] order(double[] x) {
+        return IntStream.range(0, x.length).boxed()
+                .sorted((i, j) -> Double.compare(x[i], x[j]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    /**
+     * Returns random values with many ties, signed zeros, infinities and NaNs.
+     */
+    public static double[] values(int n, long seed) {
+        double[] special = {
+                0.0, -0.0, Double.NaN, Double.longBitsToDouble(0xFFF8000000000001L),
+                Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.MIN_VALUE, -Double.MIN_VALUE,
+                Double.MAX_VALUE, -Double.MAX_VALUE
+        };
+
+        Random random = new Random(seed);
+        double[] x = new double[n];
+        for (int i = 0; i < n; i++) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    x[i] = special[random.nextInt(special.length)];
+                    break;
+                case 1:
+                    x[i] = random.nextInt(10) - 5;
+                    break;
+                default:
+                    x[i] = random.nextGaussian() * 1E6;
+            }
+        }
+        return x;
+    }
+
+    private static void test(double[] x) {
+        int[] expected = order(x);
+        double[] a = x.clone();
+        int[] order = RadixSort.sort(a);
+        assertArrayEquals(expected, order);
+        for (int i = 0; i < x.length; i++) {
+            assertEquals(0, Double.compare(x[order[i]], a[i]));
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        test(new double[0]);
+        test(new double[]{1.0});
+    }
+
+    @Test
+    public void testSpecial() {
+        test(new double[]{0.0, -0.0, 0.0, Double.NaN, -0.0, Double.NEGATIVE_INFINITY, Double.longBitsToDouble(0xFFF8000000000001L), Double.POSITIVE_INFINITY, -1.0, 1.0});
+    }
+
+    @Test
+    public void testRandom() {
+        for (int n : new int[]{10, 100, 1000, 10000, 100000}) {
+            test(values(n, n));
+        }
+    }
+
+    @Test
+    public void testConstant() {
+        double[] x = new double[1000];
+        Arrays.fill(x, 3.5);
+        test(x);
+    }
+}